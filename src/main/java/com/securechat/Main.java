@@ -3,6 +3,8 @@
  * <p>
  * Diese Klasse enthält die {@code main}-Methode, welche die Anwendung initialisiert,
  * indem sie das {@link StartWindow} im Event-Dispatch-Thread startet und sichtbar macht.
+ * Mit {@code --relay <port> <relay-passkey> <verzeichnis>} wird stattdessen der
+ * {@link RelayServer} ohne grafische Oberfläche gestartet.
  * 
  * @author Milos Hornik
  */
@@ -10,6 +12,10 @@ package com.securechat;
 
 import javax.swing.SwingUtilities;
 import com.securechat.gui.StartWindow;
+import com.securechat.relay.RelayServer;
+
+import java.io.IOException;
+import java.util.Arrays;
 
 public class Main {
     /**
@@ -18,8 +24,13 @@ public class Main {
      * dass die GUI-Komponenten korrekt initialisiert und verwaltet werden.
      *
      * @param args Programmargumente
+     * @throws IOException wenn das Relay nicht gestartet werden kann
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--relay")) {
+            RelayServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         SwingUtilities.invokeLater(() -> {
             StartWindow startWindow = new StartWindow();
             startWindow.setVisible(true);
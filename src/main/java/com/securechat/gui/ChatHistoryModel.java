@@ -0,0 +1,247 @@
+/**
+ * Listenmodell des Chatverlaufs, das Nachrichten erst beim Zeichnen aus dem {@link MessageStore} liest.
+ * <p>
+ * Die Klasse {@code ChatHistoryModel} hält pro Zeile nur einen {@code int}: den Index der
+ * Nachricht im {@link MessageStore} oder, für Hinweise wie Fehlermeldungen, einen Verweis auf
+ * einen separat gespeicherten Hinweistext. Texte, Absender und Zeitstempel werden erst in
+ * {@link #getElementAt(int)} über eine wiederverwendete {@link MessageStore.View} gelesen, also
+ * nur für sichtbare Zeilen. Zeilen dürfen aus beliebigen Threads angehängt werden; die
+ * Benachrichtigung der Oberfläche wird gesammelt und erfolgt höchstens einmal pro Durchlauf des
+ * Event-Dispatch-Threads. Sehr lange Texte werden gekürzt angezeigt; dafür wird nur der
+ * angezeigte Anfang dekodiert. Den ganzen Text einer Zeile liefert {@link #getFullText(int)}.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.gui;
+
+import com.securechat.model.MessageStore;
+
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+public class ChatHistoryModel extends AbstractListModel<ChatHistoryModel.Entry> {
+    private static final Color INCOMING_COLOR = Color.BLUE;
+    private static final Color OUTGOING_COLOR = Color.GRAY;
+    /**
+     * Längere Texte werden gekürzt angezeigt; die Suche und {@link #getFullText(int)} sehen
+     * weiterhin den ganzen Text.
+     */
+    private static final int MAX_ROW_CHARS = 16 * 1024;
+
+    /**
+     * Inhalt einer Zeile.
+     *
+     * @param text      anzuzeigender Text
+     * @param color     Textfarbe
+     * @param imageId   Bild-ID bei Bildnachrichten, sonst {@code null}
+     * @param fileName  Dateiname bei Bildnachrichten, sonst {@code null}
+     * @param truncated {@code true}, wenn der Text gekürzt ist
+     */
+    public record Entry(String text, Color color, String imageId, String fileName, boolean truncated) {
+    }
+
+    private record Notice(String text, Color color) {
+    }
+
+    private final MessageStore.View view;
+    private final List<Notice> notices = new ArrayList<>();
+    private final BitSet backfilled = new BitSet();
+    private final BitSet gaps = new BitSet();
+    private int[] rows = new int[1024];
+    private int count;
+    private int published;
+    private int changedFrom = Integer.MAX_VALUE;
+    private int changedTo = -1;
+    private boolean publishScheduled;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param store Nachrichtenspeicher der Sitzung
+     */
+    public ChatHistoryModel(MessageStore store) {
+        this.view = store.view();
+    }
+
+    /**
+     * Hängt eine gespeicherte Nachricht an.
+     *
+     * @param index Index der Nachricht im {@link MessageStore}
+     * @return Zeile der Nachricht
+     */
+    public int addStored(int index) {
+        return add(index);
+    }
+
+    /**
+     * Hängt eine beim Abgleich des Verlaufs nachgeholte Nachricht an.
+     *
+     * @param index Index der Nachricht im {@link MessageStore}
+     * @return Zeile der Nachricht
+     */
+    public synchronized int addBackfilled(int index) {
+        int row = add(index);
+        backfilled.set(row);
+        return row;
+    }
+
+    /**
+     * Hängt einen Hinweis an, der nicht zum gespeicherten Verlauf gehört.
+     *
+     * @param text  Hinweistext
+     * @param color Textfarbe
+     * @return Zeile des Hinweises
+     */
+    public synchronized int addNotice(String text, Color color) {
+        notices.add(new Notice(text, color));
+        return add(-notices.size());
+    }
+
+    /**
+     * Markiert eine Zeile, deren gestreamter Text Lücken hat.
+     *
+     * @param row Zeile
+     */
+    public synchronized void markGap(int row) {
+        gaps.set(row);
+        changed(row);
+    }
+
+    /**
+     * Meldet, dass sich der Inhalt einer Zeile geändert hat (z. B. weil eine gestreamte Nachricht
+     * gewachsen ist).
+     *
+     * @param row Zeile
+     */
+    public synchronized void changed(int row) {
+        changedFrom = Math.min(changedFrom, row);
+        changedTo = Math.max(changedTo, row);
+        schedulePublish();
+    }
+
+    private synchronized int add(int value) {
+        if (count == rows.length) {
+            rows = Arrays.copyOf(rows, rows.length * 2);
+        }
+        rows[count] = value;
+        schedulePublish();
+        return count++;
+    }
+
+    private void schedulePublish() {
+        if (!publishScheduled) {
+            publishScheduled = true;
+            SwingUtilities.invokeLater(this::publish);
+        }
+    }
+
+    /**
+     * Meldet alle seit dem letzten Aufruf angehängten und geänderten Zeilen an die Oberfläche.
+     * Läuft im Event-Dispatch-Thread.
+     */
+    private void publish() {
+        int from;
+        int to;
+        int changedFirst;
+        int changedLast;
+        synchronized (this) {
+            from = published;
+            to = count;
+            published = count;
+            changedFirst = changedFrom;
+            changedLast = Math.min(changedTo, from - 1);
+            changedFrom = Integer.MAX_VALUE;
+            changedTo = -1;
+            publishScheduled = false;
+        }
+        if (changedFirst <= changedLast) {
+            fireContentsChanged(this, changedFirst, changedLast);
+        }
+        if (to > from) {
+            fireIntervalAdded(this, from, to - 1);
+        }
+    }
+
+    /**
+     * Gibt die Anzahl der Zeilen zurück, die der Oberfläche bereits gemeldet wurden.
+     *
+     * @return Anzahl Zeilen
+     */
+    @Override
+    public synchronized int getSize() {
+        return published;
+    }
+
+    /**
+     * Liest den Inhalt einer Zeile.
+     *
+     * @param row Zeile
+     * @return Inhalt der Zeile
+     */
+    @Override
+    public synchronized Entry getElementAt(int row) {
+        int value = rows[row];
+        if (value < 0) {
+            Notice notice = notices.get(-value - 1);
+            return new Entry(notice.text(), notice.color(), null, null, false);
+        }
+        view.moveTo(value);
+        StringBuilder text = header(row);
+        boolean truncated = false;
+        if (view.getTextBytes() <= MAX_ROW_CHARS) {
+            // Ein Zeichen belegt mindestens ein Byte, der Text passt also ganz
+            text.append(view.getText());
+        } else {
+            String prefix = view.getTextPrefix(MAX_ROW_CHARS);
+            int omitted = view.getTextLength() - prefix.length();
+            text.append(prefix);
+            if (omitted > 0) {
+                text.append(" … (").append(omitted).append(" Zeichen gekürzt, Rechtsklick zeigt den ganzen Text)");
+                truncated = true;
+            }
+        }
+        boolean image = view.isImage();
+        return new Entry(text.toString(), view.isIncoming() ? INCOMING_COLOR : OUTGOING_COLOR,
+                image ? view.getImageId() : null, image ? view.getText() : null, truncated);
+    }
+
+    /**
+     * Liest den ungekürzten Inhalt einer Zeile, z. B. zum Anzeigen oder Kopieren.
+     *
+     * @param row Zeile
+     * @return ganzer Text der Zeile
+     */
+    public synchronized String getFullText(int row) {
+        int value = rows[row];
+        if (value < 0) {
+            return notices.get(-value - 1).text();
+        }
+        view.moveTo(value);
+        return header(row).append(view.getText()).toString();
+    }
+
+    /**
+     * Baut den Kopf einer Nachrichtenzeile aus Markierungen, Zeitstempel und Absender. Die
+     * {@link MessageStore.View} muss bereits auf die Nachricht positioniert sein.
+     *
+     * @param row Zeile
+     * @return Kopf, an den der Text angehängt wird
+     */
+    private StringBuilder header(int row) {
+        StringBuilder text = new StringBuilder();
+        if (backfilled.get(row)) {
+            text.append("[nachgeholt] ");
+        }
+        text.append('[').append(view.getTimestamp()).append("] ").append(view.getSenderIp()).append(": ");
+        if (gaps.get(row)) {
+            text.append("[Teile fehlen] ");
+        }
+        return text;
+    }
+}
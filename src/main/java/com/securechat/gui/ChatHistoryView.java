@@ -0,0 +1,435 @@
+/**
+ * Virtualisierte Anzeige des Chatverlaufs.
+ * <p>
+ * Die Klasse {@code ChatHistoryView} zeigt die Zeilen eines {@link ChatHistoryModel} an, legt
+ * aber wie eine {@link JList} keine Komponente pro Zeile an: Beim Zeichnen werden nur die
+ * sichtbaren Zeilen gelesen und über einen {@link CellRendererPane} mit wiederverwendeten
+ * Renderern gezeichnet. Die Höhe einer Zeile wird beim ersten Zeichnen gemessen und
+ * zwischengespeichert; noch nicht gemessene Zeilen zählen mit einer geschätzten Zeilenhöhe. Die
+ * Höhen liegen in einem Fenwick-Baum, sodass Position und Zeile an einer Koordinate in
+ * logarithmischer Zeit bestimmt werden und Anhängen, Zeichnen und Scrollen unabhängig von der
+ * Länge des Verlaufs bleiben. {@link JList} selbst eignet sich dafür nicht, weil deren UI bei
+ * unterschiedlich hohen Zeilen alle Zeilen vermisst und linear durchsucht.
+ * <p>
+ * Steht die Anzeige am Ende des Verlaufs, folgt sie neuen Zeilen automatisch. Ein Klick auf eine
+ * Bildzeile öffnet das Original. Da gezeichnete Zeilen nicht markiert werden können, bietet das
+ * Kontextmenü einer Zeile an, ihren ganzen (auch gekürzten) Text in einem Fenster anzuzeigen, in
+ * dem er markiert werden kann, oder ihn in die Zwischenablage zu kopieren.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.gui;
+
+import javax.swing.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Arrays;
+
+public class ChatHistoryView extends JComponent implements Scrollable, ListDataListener {
+    private final ChatHistoryModel model;
+    private final CellRendererPane rendererPane = new CellRendererPane();
+    private final JTextArea textRenderer = createTextRenderer();
+    private final JTextArea imageTextRenderer = createTextRenderer();
+    private final ThumbnailView thumbnailRenderer;
+    private final JPanel imageRenderer = new JPanel(new BorderLayout());
+    private final RowHeights heights = new RowHeights();
+    private int layoutWidth = -1;
+
+    /**
+     * Höhen aller Zeilen als Fenwick-Baum über die Präfixsummen. Gemessene Höhen sind positiv,
+     * veraltete Messungen negativ (sie zählen weiter, bis sie neu gemessen sind) und
+     * ungemessene Zeilen {@code 0} (sie zählen mit der Schätzung).
+     */
+    private static final class RowHeights {
+        private long[] tree = new long[1025];
+        private int[] values = new int[1024];
+        private int size;
+        private int estimate = 16;
+
+        private int size() {
+            return size;
+        }
+
+        private void add(int rows) {
+            for (int r = 0; r < rows; r++) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                    tree = Arrays.copyOf(tree, values.length + 1);
+                }
+                int i = ++size;
+                long sum = estimate;
+                int lower = i - (i & -i);
+                for (int j = i - 1; j > lower; j -= j & -j) {
+                    sum += tree[j];
+                }
+                tree[i] = sum;
+                values[i - 1] = 0;
+            }
+        }
+
+        private int current(int row) {
+            int value = values[row];
+            return value > 0 ? value : value < 0 ? -value : estimate;
+        }
+
+        /**
+         * @return gemessene Höhe oder {@code -1}, wenn die Zeile (neu) gemessen werden muss
+         */
+        private int get(int row) {
+            return values[row] > 0 ? values[row] : -1;
+        }
+
+        /**
+         * @return {@code true}, wenn sich die Gesamthöhe dadurch geändert hat
+         */
+        private boolean set(int row, int height) {
+            int delta = height - current(row);
+            values[row] = height;
+            for (int i = row + 1; delta != 0 && i <= size; i += i & -i) {
+                tree[i] += delta;
+            }
+            return delta != 0;
+        }
+
+        private void markStale(int row) {
+            if (values[row] > 0) {
+                values[row] = -values[row];
+            }
+        }
+
+        private long offset(int row) {
+            long sum = 0;
+            for (int i = row; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        private long total() {
+            return offset(size);
+        }
+
+        private int rowAt(long y) {
+            int position = 0;
+            long remaining = y;
+            for (int step = Integer.highestOneBit(Math.max(size, 1)); step > 0; step >>= 1) {
+                int next = position + step;
+                if (next <= size && tree[next] <= remaining) {
+                    position = next;
+                    remaining -= tree[next];
+                }
+            }
+            return Math.min(position, Math.max(size - 1, 0));
+        }
+
+        /**
+         * Verwirft alle Messungen, z. B. weil sich die Breite geändert hat.
+         */
+        private void reset(int estimate) {
+            this.estimate = estimate;
+            Arrays.fill(values, 0, size, 0);
+            for (int i = 1; i <= size; i++) {
+                tree[i] = (long) estimate * (i & -i);
+            }
+        }
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param model      Zeilen des Verlaufs
+     * @param imageCache Cache für die Vorschaubilder
+     */
+    public ChatHistoryView(ChatHistoryModel model, ImageCache imageCache) {
+        this.model = model;
+        this.thumbnailRenderer = new ThumbnailView(imageCache, this);
+        JPanel thumbnailRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+        thumbnailRow.setOpaque(false);
+        thumbnailRow.add(thumbnailRenderer);
+        imageRenderer.setOpaque(false);
+        imageRenderer.add(imageTextRenderer, BorderLayout.NORTH);
+        imageRenderer.add(thumbnailRow, BorderLayout.CENTER);
+
+        add(rendererPane);
+        setOpaque(true);
+        setBackground(UIManager.getColor("TextPane.background"));
+        setToolTipText("");
+        heights.reset(lineHeight());
+        heights.add(model.getSize());
+        model.addListDataListener(this);
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                showContextMenu(e);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                showContextMenu(e);
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                ChatHistoryModel.Entry entry = entryAt(e.getY());
+                if (entry != null && entry.imageId() != null && SwingUtilities.isLeftMouseButton(e)) {
+                    ThumbnailView.openOriginal(ChatHistoryView.this, imageCache, entry.imageId(), entry.fileName());
+                }
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                ChatHistoryModel.Entry entry = entryAt(e.getY());
+                setCursor(Cursor.getPredefinedCursor(entry != null && entry.imageId() != null
+                        ? Cursor.HAND_CURSOR : Cursor.DEFAULT_CURSOR));
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+    }
+
+    /**
+     * Zeigt bei einem Popup-Auslöser das Kontextmenü der Zeile unter dem Mauszeiger an.
+     *
+     * @param e Mausereignis
+     */
+    private void showContextMenu(MouseEvent e) {
+        int row = rowAt(e.getY());
+        if (!e.isPopupTrigger() || row < 0) {
+            return;
+        }
+        JPopupMenu menu = new JPopupMenu();
+        JMenuItem show = new JMenuItem("Ganzen Text anzeigen");
+        show.addActionListener(a -> showFullText(model.getFullText(row)));
+        JMenuItem copy = new JMenuItem("Text kopieren");
+        copy.addActionListener(a -> {
+            StringSelection selection = new StringSelection(model.getFullText(row));
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
+        });
+        menu.add(show);
+        menu.add(copy);
+        menu.show(this, e.getX(), e.getY());
+    }
+
+    /**
+     * Öffnet den Text einer Zeile in einem Fenster, in dem er markiert und kopiert werden kann.
+     *
+     * @param text ganzer Text der Zeile
+     */
+    private void showFullText(String text) {
+        JTextArea area = createTextRenderer();
+        area.setOpaque(true);
+        area.setText(text);
+        area.setCaretPosition(0);
+        JScrollPane scroll = new JScrollPane(area, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
+                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+        scroll.setPreferredSize(new Dimension(640, 480));
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(this), "Nachricht", Dialog.ModalityType.MODELESS);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.add(scroll);
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+    }
+
+    private static JTextArea createTextRenderer() {
+        JTextArea renderer = new JTextArea();
+        renderer.setLineWrap(true);
+        renderer.setWrapStyleWord(true);
+        renderer.setEditable(false);
+        renderer.setOpaque(false);
+        renderer.setFont(UIManager.getFont("TextPane.font"));
+        renderer.setBorder(BorderFactory.createEmptyBorder(1, 4, 1, 4));
+        return renderer;
+    }
+
+    private int lineHeight() {
+        Insets insets = textRenderer.getInsets();
+        return textRenderer.getFontMetrics(textRenderer.getFont()).getHeight() + insets.top + insets.bottom;
+    }
+
+    /**
+     * Zeichnet die sichtbaren Zeilen und misst dabei alle, deren Höhe noch nicht bekannt ist.
+     *
+     * @param g Grafikkontext
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        int width = getWidth();
+        if (width <= 0) {
+            return;
+        }
+        boolean atEnd = isAtEnd();
+        if (width != layoutWidth) {
+            layoutWidth = width;
+            heights.reset(lineHeight());
+        }
+        int size = Math.min(model.getSize(), heights.size());
+        boolean resized = false;
+        int row = heights.rowAt(clip.y);
+        long y = heights.offset(row);
+        for (; row < size && y < clip.y + clip.height; row++) {
+            ChatHistoryModel.Entry entry = model.getElementAt(row);
+            Component renderer = prepare(entry, width);
+            int height = heights.get(row);
+            if (height < 0) {
+                height = measure(entry);
+                resized |= heights.set(row, height);
+            }
+            rendererPane.paintComponent(g, renderer, this, 0, (int) y, width, height, true);
+            y += height;
+        }
+        if (resized) {
+            revalidate();
+            if (atEnd) {
+                scrollToEnd();
+            }
+        }
+    }
+
+    /**
+     * Bereitet den passenden Renderer für eine Zeile vor.
+     *
+     * @param entry Inhalt der Zeile
+     * @param width verfügbare Breite
+     * @return Renderer
+     */
+    private Component prepare(ChatHistoryModel.Entry entry, int width) {
+        JTextArea text = entry.imageId() == null ? textRenderer : imageTextRenderer;
+        text.setForeground(entry.color());
+        text.setText(entry.text());
+        text.setSize(width, Short.MAX_VALUE);
+        if (entry.imageId() == null) {
+            return textRenderer;
+        }
+        thumbnailRenderer.setImageId(entry.imageId());
+        return imageRenderer;
+    }
+
+    /**
+     * Misst die Höhe einer mit {@link #prepare(ChatHistoryModel.Entry, int)} vorbereiteten Zeile.
+     *
+     * @param entry Inhalt der Zeile
+     * @return Höhe in Pixeln
+     */
+    private int measure(ChatHistoryModel.Entry entry) {
+        if (entry.imageId() == null) {
+            return textRenderer.getPreferredSize().height;
+        }
+        return imageTextRenderer.getPreferredSize().height + ImageCache.THUMBNAIL_SIZE;
+    }
+
+    private ChatHistoryModel.Entry entryAt(int y) {
+        int row = rowAt(y);
+        return row < 0 ? null : model.getElementAt(row);
+    }
+
+    private int rowAt(int y) {
+        int size = Math.min(model.getSize(), heights.size());
+        if (size == 0 || y < 0 || y >= heights.total()) {
+            return -1;
+        }
+        return heights.rowAt(y);
+    }
+
+    private boolean isAtEnd() {
+        Rectangle visible = getVisibleRect();
+        return visible.y + visible.height >= getHeight() - 1;
+    }
+
+    private void scrollToEnd() {
+        // Erst nach dem Layout, das revalidate() eingereiht hat, ist die neue Höhe bekannt
+        SwingUtilities.invokeLater(() -> scrollRectToVisible(new Rectangle(0, getHeight() - 1, 1, 1)));
+    }
+
+    /**
+     * Übernimmt neue Zeilen mit geschätzter Höhe.
+     *
+     * @param e Ereignis des Modells
+     */
+    @Override
+    public void intervalAdded(ListDataEvent e) {
+        boolean atEnd = isAtEnd();
+        heights.add(e.getIndex1() - e.getIndex0() + 1);
+        revalidate();
+        repaint();
+        if (atEnd) {
+            scrollToEnd();
+        }
+    }
+
+    /**
+     * Wird vom {@link ChatHistoryModel} nicht ausgelöst; die Höhen werden neu aufgebaut.
+     *
+     * @param e Ereignis des Modells
+     */
+    @Override
+    public void intervalRemoved(ListDataEvent e) {
+        heights.size = 0;
+        heights.add(model.getSize());
+        heights.reset(lineHeight());
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Lässt geänderte Zeilen beim nächsten Zeichnen neu messen.
+     *
+     * @param e Ereignis des Modells
+     */
+    @Override
+    public void contentsChanged(ListDataEvent e) {
+        boolean atEnd = isAtEnd();
+        for (int row = Math.max(0, e.getIndex0()); row <= e.getIndex1() && row < heights.size(); row++) {
+            heights.markStale(row);
+        }
+        repaint();
+        if (atEnd) {
+            scrollToEnd();
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(ImageCache.THUMBNAIL_SIZE, (int) Math.min(Integer.MAX_VALUE, heights.total()));
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        ChatHistoryModel.Entry entry = entryAt(e.getY());
+        return entry != null && entry.imageId() != null ? entry.fileName() + " (Klicken zum Vergrößern)" : null;
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(2 * ImageCache.THUMBNAIL_SIZE, ImageCache.THUMBNAIL_SIZE);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? lineHeight() : 10;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport viewport && viewport.getHeight() > getPreferredSize().height;
+    }
+}
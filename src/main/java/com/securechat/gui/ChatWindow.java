@@ -2,36 +2,59 @@
  * Fenster für den Peer-to-Peer-Chat.
  * <p>
  * Die Klasse {@code ChatWindow} stellt das Hauptfenster für die Chat-Kommunikation dar.
- * Sie bietet ein Textfeld zur Anzeige des Chatverlaufs, ein Eingabefeld, sowie die Möglichkeit,
- * Nachrichten zu senden und darzustellen. Die Verwaltung der Chat-Logik erfolgt über einen
- * {@link IOManager}. Das Fenster reagiert auf Schließen-Events und informiert das Startfenster
- * über Statusänderungen.
+ * Sie bietet eine virtualisierte Anzeige des Chatverlaufs ({@link ChatHistoryView}), ein Eingabefeld,
+ * sowie die Möglichkeit, Nachrichten und Bilder zu senden und darzustellen. Nachrichten werden
+ * über ihren Index im {@link MessageStore} angezeigt, sodass der Verlauf nicht ein zweites Mal
+ * als Text im Fenster liegt. Die Verwaltung der Chat-Logik erfolgt über einen {@link IOManager}.
+ * Das Fenster reagiert auf Schließen-Events und informiert das Startfenster über
+ * Statusänderungen. Mit Strg+F wird der {@link MessageStore} der Sitzung durchsucht.
  * 
  * @author Milos Hornik
  */
 package com.securechat.gui;
 
+import javax.imageio.ImageIO;
 import javax.swing.*;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.StyleConstants;
-import javax.swing.text.StyledDocument;
 
 import com.securechat.io.IOManager;
+import com.securechat.model.MessageStore;
 
-import javax.swing.text.Style;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 //TODO: Unique ID für ChatWindow erstellen
 
-public class ChatWindow extends JFrame implements WindowListener {
+public class ChatWindow extends JFrame implements WindowListener, ChatWindowAccess {
+    private static final int MAX_OPEN_STREAMS = 16;
+    private static final int MAX_SEARCH_HITS = 500;
+
     private final IOManager ioManager;
     private final Boolean isHost;
     private final StartWindowAccess startWindowAccess;
+    private final ImageCache imageCache = new ImageCache();
+    private final Map<String, StreamState> openStreams = new LinkedHashMap<>();
+    private final ChatHistoryModel history;
 
-    private JTextPane chatArea;
     private JTextField inputField;
 
+    /**
+     * Zeile einer gerade empfangenen, gestreamten Nachricht.
+     */
+    private static final class StreamState {
+        private final int row;
+        private int nextIndex;
+
+        private StreamState(int row) {
+            this.row = row;
+        }
+    }
+
     /**
      * Erstellt ein neues ChatWindow für Host oder Client.
      *
@@ -43,6 +66,7 @@ public class ChatWindow extends JFrame implements WindowListener {
         this.isHost = isHost;
         this.ioManager = ioManager;
         this.startWindowAccess = startWindowAccess;
+        this.history = new ChatHistoryModel(ioManager.getMessageStore());
 
         setTitle("P2P Chat - " + (isHost ? "Host" : "Client"));
         setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
@@ -64,9 +88,8 @@ public class ChatWindow extends JFrame implements WindowListener {
      * Initialisiert die GUI-Komponenten und das Layout des Fensters.
      */
     private void initComponents() {
-        chatArea = new JTextPane();
-        chatArea.setEditable(false);
-        JScrollPane scroll = new JScrollPane(chatArea);
+        JScrollPane scroll = new JScrollPane(new ChatHistoryView(history, imageCache),
+                ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED, ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
 
         inputField = new JTextField();
         inputField.addActionListener(e -> ioManager.sendChatMessage());
@@ -74,12 +97,57 @@ public class ChatWindow extends JFrame implements WindowListener {
         JButton sendButton = new JButton("Senden");
         sendButton.addActionListener(e -> ioManager.sendChatMessage());
 
+        JButton imageButton = new JButton("Bild");
+        imageButton.addActionListener(e -> chooseImage());
+
+        JButton latencyButton = new JButton("Latenz");
+        latencyButton.addActionListener(e -> new LatencyWindow(ioManager.getLatencyTracer(), ioManager.getBandwidth()));
+
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 3));
+        buttonPanel.add(latencyButton);
+        buttonPanel.add(imageButton);
+        buttonPanel.add(sendButton);
+
         JPanel inputPanel = new JPanel(new BorderLayout());
         inputPanel.add(inputField, BorderLayout.CENTER);
-        inputPanel.add(sendButton, BorderLayout.EAST);
+        inputPanel.add(buttonPanel, BorderLayout.EAST);
 
         add(scroll, BorderLayout.CENTER);
         add(inputPanel, BorderLayout.SOUTH);
+
+        getRootPane().registerKeyboardAction(e -> searchHistory(), KeyStroke.getKeyStroke("ctrl F"),
+                JComponent.WHEN_IN_FOCUSED_WINDOW);
+    }
+
+    /**
+     * Fragt nach einem Suchbegriff und zeigt die passenden Nachrichten des Verlaufs an.
+     * Gelesen wird über eine einzige {@link MessageStore.View}, die je Treffer neu positioniert wird.
+     */
+    private void searchHistory() {
+        String query = JOptionPane.showInputDialog(this, "Suchbegriff:", "Verlauf durchsuchen", JOptionPane.QUESTION_MESSAGE);
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        MessageStore store = ioManager.getMessageStore();
+        MessageStore.View view = store.view();
+        DefaultListModel<String> hits = new DefaultListModel<>();
+        int[] total = {0};
+        store.search(query, index -> {
+            if (total[0]++ < MAX_SEARCH_HITS) {
+                view.moveTo(index);
+                hits.addElement("[" + view.getTimestamp() + "] " + view.getSenderIp() + ": " + view.getText());
+            }
+        });
+        if (total[0] == 0) {
+            JOptionPane.showMessageDialog(this, "Keine Treffer für \"" + query + "\".", "Verlauf durchsuchen", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        JScrollPane results = new JScrollPane(new JList<>(hits));
+        results.setPreferredSize(new Dimension(460, 240));
+        String title = total[0] > MAX_SEARCH_HITS
+                ? total[0] + " Treffer (die ersten " + MAX_SEARCH_HITS + " werden angezeigt)"
+                : total[0] + " Treffer";
+        JOptionPane.showMessageDialog(this, results, title, JOptionPane.PLAIN_MESSAGE);
     }
 
     /**
@@ -87,6 +155,7 @@ public class ChatWindow extends JFrame implements WindowListener {
      *
      * @return Text im Eingabefeld
      */
+    @Override
     public String getInputText() {
         return inputField.getText().trim();
     }
@@ -94,26 +163,123 @@ public class ChatWindow extends JFrame implements WindowListener {
     /**
      * Setzt das Eingabefeld zurück.
      */
+    @Override
     public void clearInput() {
         inputField.setText("");
     }
 
     /**
-     * Hängt eine Nachricht im Chatbereich an und färbt sie.
+     * Hängt einen Hinweis (z. B. eine Fehlermeldung) im Chatbereich an, der nicht zum
+     * gespeicherten Verlauf gehört.
      *
-     * @param text  Nachrichtentext
-     * @param color Farbe für die Nachricht
+     * @param text  Hinweistext
+     * @param color Farbe für den Hinweis
      */
+    @Override
     public void appendMessage(String text, Color color) {
-        StyledDocument doc = chatArea.getStyledDocument();
-        Style style = chatArea.addStyle("Style", null);
-        StyleConstants.setForeground(style, color);
-        try {
-            doc.insertString(doc.getLength(), text + "\n", style);
-            chatArea.setCaretPosition(doc.getLength());
-        } catch (BadLocationException e) {
-            e.printStackTrace();
+        history.addNotice(text, color);
+    }
+
+    /**
+     * Hängt eine gespeicherte Nachricht oder ein gespeichertes Bild im Chatbereich an.
+     * Bilder müssen vorher mit {@link #storeImage(String, byte[])} abgelegt worden sein.
+     *
+     * @param index Index der Nachricht im {@link MessageStore}
+     */
+    @Override
+    public void appendStored(int index) {
+        history.addStored(index);
+    }
+
+    /**
+     * Hängt eine beim Abgleich des Verlaufs nachgeholte Nachricht im Chatbereich an.
+     *
+     * @param index Index der Nachricht im {@link MessageStore}
+     */
+    @Override
+    public void appendBackfilled(int index) {
+        history.addBackfilled(index);
+    }
+
+    /**
+     * Beginnt die Anzeige einer gestreamten Nachricht. Weitere Teile werden mit
+     * {@link MessageStore#extend(int, String)} gespeichert und mit
+     * {@link #appendStream(String, int)} in derselben Zeile angezeigt, auch wenn zwischendurch
+     * andere Nachrichten angehängt wurden.
+     *
+     * @param streamId ID des Streams
+     * @param index    Index der Nachricht im {@link MessageStore}
+     */
+    @Override
+    public synchronized void beginStream(String streamId, int index) {
+        openStreams.put(streamId, new StreamState(history.addStored(index)));
+        if (openStreams.size() > MAX_OPEN_STREAMS) {
+            Iterator<String> eldest = openStreams.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Zeigt den nächsten, bereits gespeicherten Teil einer gestreamten Nachricht an.
+     *
+     * @param streamId ID des Streams
+     * @param index    fortlaufende Nummer des Teils
+     */
+    @Override
+    public synchronized void appendStream(String streamId, int index) {
+        StreamState stream = openStreams.get(streamId);
+        if (stream == null) {
+            return;
         }
+        if (index != stream.nextIndex) {
+            history.markGap(stream.row);
+        }
+        stream.nextIndex = index + 1;
+        history.changed(stream.row);
+    }
+
+    /**
+     * Schliesst eine gestreamte Nachricht ab.
+     *
+     * @param streamId ID des Streams
+     */
+    @Override
+    public synchronized void endStream(String streamId) {
+        openStreams.remove(streamId);
+    }
+
+    /**
+     * Legt die Originaldaten eines Bildes ab, damit es später angezeigt werden kann.
+     *
+     * @param imageId   eindeutige Bild-ID
+     * @param imageData Originaldaten des Bildes
+     * @throws IOException wenn die Daten nicht abgelegt werden können
+     */
+    @Override
+    public void storeImage(String imageId, byte[] imageData) throws IOException {
+        imageCache.storeOriginal(imageId, imageData);
+    }
+
+    /**
+     * Öffnet einen Dateidialog und übergibt das gewählte Bild dem {@link IOManager}.
+     */
+    private void chooseImage() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Bilder", ImageIO.getReaderFileSuffixes()));
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            File file = chooser.getSelectedFile();
+            ioManager.sendImage(file);
+        }
+    }
+
+    /**
+     * Gibt das Fenster und alle zwischengespeicherten Bilder frei.
+     */
+    @Override
+    public void dispose() {
+        super.dispose();
+        imageCache.dispose();
     }
 
     /**
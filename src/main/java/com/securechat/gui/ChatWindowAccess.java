@@ -0,0 +1,88 @@
+/**
+ * Interface für den Zugriff des IO-Managers auf das Chatfenster.
+ * <p>
+ * Das Interface {@code ChatWindowAccess} definiert die Methoden, über die der
+ * {@link com.securechat.io.IOManager} Nachrichten anzeigt und Eingaben abholt. Das
+ * {@link ChatWindow} implementiert es; ohne Bildschirm, etwa in Tests, kann eine eigene
+ * Implementierung an seine Stelle treten.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.gui;
+
+import java.awt.Color;
+import java.io.IOException;
+
+public interface ChatWindowAccess {
+
+    /**
+     * Gibt den aktuellen Inhalt des Eingabefelds zurück.
+     *
+     * @return Text im Eingabefeld
+     */
+    String getInputText();
+
+    /**
+     * Setzt das Eingabefeld zurück.
+     */
+    void clearInput();
+
+    /**
+     * Hängt einen Hinweis an, der nicht zum gespeicherten Verlauf gehört.
+     *
+     * @param text  Hinweistext
+     * @param color Farbe für den Hinweis
+     */
+    void appendMessage(String text, Color color);
+
+    /**
+     * Hängt eine gespeicherte Nachricht oder ein gespeichertes Bild an.
+     *
+     * @param index Index der Nachricht im {@link com.securechat.model.MessageStore}
+     */
+    void appendStored(int index);
+
+    /**
+     * Hängt eine beim Abgleich des Verlaufs nachgeholte Nachricht an.
+     *
+     * @param index Index der Nachricht im {@link com.securechat.model.MessageStore}
+     */
+    void appendBackfilled(int index);
+
+    /**
+     * Beginnt die Anzeige einer gestreamten Nachricht.
+     *
+     * @param streamId ID des Streams
+     * @param index    Index der Nachricht im {@link com.securechat.model.MessageStore}
+     */
+    void beginStream(String streamId, int index);
+
+    /**
+     * Zeigt den nächsten, bereits gespeicherten Teil einer gestreamten Nachricht an.
+     *
+     * @param streamId ID des Streams
+     * @param index    fortlaufende Nummer des Teils
+     */
+    void appendStream(String streamId, int index);
+
+    /**
+     * Schliesst eine gestreamte Nachricht ab.
+     *
+     * @param streamId ID des Streams
+     */
+    void endStream(String streamId);
+
+    /**
+     * Legt die Originaldaten eines Bildes ab, damit es später angezeigt werden kann.
+     *
+     * @param imageId   eindeutige Bild-ID
+     * @param imageData Originaldaten des Bildes
+     * @throws IOException wenn die Daten nicht abgelegt werden können
+     */
+    void storeImage(String imageId, byte[] imageData) throws IOException;
+
+    /**
+     * Schliesst das Chatfenster.
+     */
+    void dispose();
+}
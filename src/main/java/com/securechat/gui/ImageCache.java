@@ -0,0 +1,247 @@
+/**
+ * Verwaltet empfangene und gesendete Bilder eines Chatfensters.
+ * <p>
+ * Die Klasse {@code ImageCache} legt die Originaldaten jedes Bildes in einer temporären Datei ab,
+ * damit sie nicht dauerhaft im Speicher liegen. Vorschaubilder werden ausschliesslich auf einem
+ * Hintergrund-Pool dekodiert und skaliert (nie im Event-Dispatch-Thread) und in einem nach Bytes
+ * begrenzten LRU-Cache gehalten. Wird ein Vorschaubild verdrängt, wird es beim nächsten Zeichnen
+ * erneut geladen; Originale werden nur bei Bedarf dekodiert. Der Speicherbedarf bleibt dadurch
+ * unabhängig von der Anzahl der Bilder einer Sitzung begrenzt.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.gui;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class ImageCache {
+    public static final int THUMBNAIL_SIZE = 200;
+    private static final long MAX_CACHE_BYTES = 32L * 1024 * 1024;
+
+    private final Map<String, Path> originals = new ConcurrentHashMap<>();
+    private final Map<String, BufferedImage> thumbnails = new LinkedHashMap<>(64, 0.75f, true);
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Set<String> broken = ConcurrentHashMap.newKeySet();
+    private final ExecutorService decoder;
+    private long cachedBytes;
+
+    /**
+     * Erstellt einen neuen Cache mit eigenem Dekodier-Pool.
+     */
+    public ImageCache() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        int threads = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+        this.decoder = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "ImageDecoder-Thread-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    /**
+     * Legt die Originaldaten eines Bildes in einer temporären Datei ab.
+     *
+     * @param imageId   eindeutige Bild-ID
+     * @param imageData Originaldaten
+     * @throws IOException wenn die Datei nicht geschrieben werden kann
+     */
+    public void storeOriginal(String imageId, byte[] imageData) throws IOException {
+        Path file = Files.createTempFile("securechat-", ".img");
+        file.toFile().deleteOnExit();
+        Files.write(file, imageData);
+        originals.put(imageId, file);
+    }
+
+    /**
+     * Liefert das Vorschaubild aus dem Cache. Fehlt es, wird es im Hintergrund geladen und
+     * {@code onLoaded} danach im Event-Dispatch-Thread aufgerufen.
+     *
+     * @param imageId  Bild-ID
+     * @param onLoaded Rückruf nach erfolgreichem Laden (z. B. {@code repaint})
+     * @return Vorschaubild oder {@code null}, solange es noch nicht geladen ist
+     */
+    public BufferedImage getThumbnail(String imageId, Runnable onLoaded) {
+        synchronized (thumbnails) {
+            BufferedImage cached = thumbnails.get(imageId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Path file = originals.get(imageId);
+        if (file != null && !broken.contains(imageId) && pending.add(imageId)) {
+            decoder.execute(() -> {
+                try {
+                    BufferedImage thumbnail = decodeThumbnail(file);
+                    if (thumbnail == null) {
+                        broken.add(imageId);
+                    } else {
+                        putThumbnail(imageId, thumbnail);
+                    }
+                } catch (IOException e) {
+                    broken.add(imageId);
+                } finally {
+                    pending.remove(imageId);
+                    SwingUtilities.invokeLater(onLoaded);
+                }
+            });
+        }
+        return null;
+    }
+
+    /**
+     * Prüft, ob ein Bild nicht dekodiert werden konnte.
+     *
+     * @param imageId Bild-ID
+     * @return {@code true}, wenn das Bild fehlerhaft ist
+     */
+    public boolean isBroken(String imageId) {
+        return broken.contains(imageId);
+    }
+
+    /**
+     * Dekodiert das Original im Hintergrund und übergibt es im Event-Dispatch-Thread.
+     *
+     * @param imageId  Bild-ID
+     * @param onLoaded Rückruf mit dem Originalbild oder {@code null}, falls es nicht geladen werden konnte
+     */
+    public void loadOriginal(String imageId, Consumer<BufferedImage> onLoaded) {
+        Path file = originals.get(imageId);
+        decoder.execute(() -> {
+            BufferedImage image = null;
+            try {
+                if (file != null) {
+                    image = ImageIO.read(file.toFile());
+                }
+            } catch (IOException ignored) {
+            }
+            BufferedImage result = image;
+            SwingUtilities.invokeLater(() -> onLoaded.accept(result));
+        });
+    }
+
+    /**
+     * Beendet den Dekodier-Pool und löscht die temporären Dateien.
+     */
+    public void dispose() {
+        decoder.shutdownNow();
+        synchronized (thumbnails) {
+            thumbnails.clear();
+            cachedBytes = 0;
+        }
+        for (Path file : originals.values()) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+        }
+        originals.clear();
+    }
+
+    /**
+     * Fügt ein Vorschaubild ein und verdrängt die am längsten nicht genutzten Einträge.
+     *
+     * @param imageId   Bild-ID
+     * @param thumbnail Vorschaubild
+     */
+    private void putThumbnail(String imageId, BufferedImage thumbnail) {
+        synchronized (thumbnails) {
+            BufferedImage previous = thumbnails.put(imageId, thumbnail);
+            if (previous != null) {
+                cachedBytes -= sizeOf(previous);
+            }
+            cachedBytes += sizeOf(thumbnail);
+            Iterator<Map.Entry<String, BufferedImage>> eldest = thumbnails.entrySet().iterator();
+            while (cachedBytes > MAX_CACHE_BYTES && eldest.hasNext()) {
+                Map.Entry<String, BufferedImage> entry = eldest.next();
+                if (entry.getKey().equals(imageId)) {
+                    continue;
+                }
+                cachedBytes -= sizeOf(entry.getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Dekodiert ein Bild mit Unterabtastung, sodass auch sehr große Originale
+     * nur in etwa Vorschaugröße in den Speicher geladen werden, und skaliert es anschliessend.
+     * Maßgeblich ist die längere Kante, damit auch extreme Seitenverhältnisse höchstens mit
+     * doppelter Vorschaugröße dekodiert werden.
+     *
+     * @param file Datei mit den Originaldaten
+     * @return Vorschaubild oder {@code null}, wenn das Format nicht unterstützt wird
+     * @throws IOException bei Lesefehlern
+     */
+    private static BufferedImage decodeThumbnail(Path file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = Math.max(1, Math.max(width, height) / (THUMBNAIL_SIZE * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return scale(reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Skaliert ein Bild proportional auf höchstens {@link #THUMBNAIL_SIZE} Pixel Kantenlänge.
+     *
+     * @param source Quellbild
+     * @return skaliertes Bild
+     */
+    private static BufferedImage scale(BufferedImage source) {
+        double factor = Math.min(1.0, (double) THUMBNAIL_SIZE / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * factor));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Schätzt den Speicherbedarf eines Vorschaubilds.
+     *
+     * @param image Vorschaubild
+     * @return Größe in Byte
+     */
+    private static long sizeOf(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+}
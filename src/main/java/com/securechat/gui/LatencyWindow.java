@@ -0,0 +1,183 @@
+/**
+ * Fenster mit der laufenden Latenzmessung einer Sitzung.
+ * <p>
+ * Die Klasse {@code LatencyWindow} zeigt für jede Stufe des {@link LatencyTracer} Anzahl,
+ * Mittelwert, Perzentile und Maximum in Millisekunden sowie den geschätzten Uhrenversatz an.
+ * Darunter stehen die Kennzahlen der Sitzung beim {@link BandwidthScheduler}: gesendete Bytes,
+ * Zuteilungen, mittlere und längste Wartezeit sowie wartende Anforderungen.
+ * Die Tabelle wird jede Sekunde aktualisiert, solange das Fenster offen ist. Die Messwerte
+ * lassen sich als CSV-Datei exportieren und zurücksetzen.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.gui;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.AbstractTableModel;
+
+import com.securechat.io.BandwidthScheduler;
+import com.securechat.io.LatencyHistogram;
+import com.securechat.io.LatencyTracer;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+public class LatencyWindow extends JFrame {
+    private static final int REFRESH_INTERVAL_MS = 1000;
+    private static final String[] COLUMNS = {"Stufe", "Anzahl", "Mittel", "p50", "p90", "p99", "p99.9", "Max"};
+
+    private final LatencyTracer tracer;
+    private final BandwidthScheduler.Peer bandwidth;
+    private final LatencyTableModel tableModel = new LatencyTableModel();
+    private final JLabel clockLabel = new JLabel();
+    private final JLabel bandwidthLabel = new JLabel();
+    private final Timer refreshTimer;
+
+    /**
+     * Tabellenmodell, das die Histogramme bei jedem Zugriff direkt ausliest.
+     */
+    private final class LatencyTableModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return tracer.getHistograms().size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return column == 0 ? COLUMNS[0] : COLUMNS[column] + " (ms)";
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            LatencyHistogram h = tracer.getHistograms().get(row);
+            switch (column) {
+                case 0:
+                    return h.getName();
+                case 1:
+                    return h.getCount();
+                case 2:
+                    return millis(h.getMean());
+                case 3:
+                    return millis(h.getPercentile(50));
+                case 4:
+                    return millis(h.getPercentile(90));
+                case 5:
+                    return millis(h.getPercentile(99));
+                case 6:
+                    return millis(h.getPercentile(99.9));
+                default:
+                    return millis(h.getMax());
+            }
+        }
+    }
+
+    /**
+     * Erstellt das Fenster und startet die Aktualisierung.
+     *
+     * @param tracer    anzuzeigende Latenzmessung
+     * @param bandwidth Anteil der Sitzung am Bandbreiten-Scheduler
+     */
+    public LatencyWindow(LatencyTracer tracer, BandwidthScheduler.Peer bandwidth) {
+        this.tracer = tracer;
+        this.bandwidth = bandwidth;
+        setTitle("Latenz");
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setSize(640, 240);
+        setLocationByPlatform(true);
+
+        JTable table = new JTable(tableModel);
+        table.setFillsViewportHeight(true);
+
+        JButton exportButton = new JButton("Exportieren");
+        exportButton.addActionListener(e -> exportCsv());
+        JButton resetButton = new JButton("Zurücksetzen");
+        resetButton.addActionListener(e -> {
+            tracer.reset();
+            refresh();
+        });
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(resetButton);
+        buttonPanel.add(exportButton);
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        JPanel labelPanel = new JPanel(new GridLayout(2, 1));
+        labelPanel.add(clockLabel);
+        labelPanel.add(bandwidthLabel);
+        southPanel.add(labelPanel, BorderLayout.CENTER);
+        southPanel.add(buttonPanel, BorderLayout.EAST);
+
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(southPanel, BorderLayout.SOUTH);
+
+        refreshTimer = new Timer(REFRESH_INTERVAL_MS, e -> refresh());
+        refresh();
+        refreshTimer.start();
+        setVisible(true);
+    }
+
+    /**
+     * Liest die Messwerte neu aus.
+     */
+    private void refresh() {
+        tableModel.fireTableDataChanged();
+        if (tracer.isClockSynchronized()) {
+            clockLabel.setText(" Uhrenversatz: " + millis(tracer.getClockOffsetMicros())
+                    + " ms, Umlaufzeit: " + millis(tracer.getRoundTripMicros()) + " ms");
+        } else {
+            clockLabel.setText(" Uhrenversatz: noch nicht gemessen");
+        }
+        bandwidthLabel.setText(String.format(Locale.ROOT,
+                " Senden: %.1f KiB in %d Zuteilungen, Wartezeit Mittel %s ms, Max %s ms, wartend %d",
+                bandwidth.getBytesSent() / 1024.0, bandwidth.getGrants(), millis(bandwidth.getMeanWaitMicros()),
+                millis(bandwidth.getMaxWaitMicros()), bandwidth.getQueuedRequests()));
+    }
+
+    /**
+     * Fragt nach einer Zieldatei und schreibt die Messwerte als CSV.
+     */
+    private void exportCsv() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV-Dateien", "csv"));
+        chooser.setSelectedFile(new File("latenz.csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            tracer.writeCsv(out);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Export fehlgeschlagen: " + e.getMessage(), "Fehler", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Formatiert Mikrosekunden als Millisekunden.
+     *
+     * @param micros Wert in Mikrosekunden
+     * @return Millisekunden mit drei Nachkommastellen
+     */
+    private static String millis(double micros) {
+        return String.format(Locale.ROOT, "%.3f", micros / 1000.0);
+    }
+
+    /**
+     * Beendet die Aktualisierung und gibt das Fenster frei.
+     */
+    @Override
+    public void dispose() {
+        refreshTimer.stop();
+        super.dispose();
+    }
+}
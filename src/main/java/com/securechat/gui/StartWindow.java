@@ -5,6 +5,8 @@
  * der Peer-to-Peer-Chatverbindung bereit. Von hier aus können Nutzer die Verbindung als Host
  * oder Client initiieren, den Status überwachen sowie den Verbindungsauf- und -abbau steuern.
  * Zudem werden Statusmeldungen und dynamische Logos basierend auf dem Verbindungsstatus angezeigt.
+ * Statusmeldungen laufen über ein {@link StatusLog} und werden gesammelt einmal pro Intervall
+ * angezeigt; der Statusbereich behält nur die letzten {@code securechat.statuslog.lines} Zeilen.
  * 
  * Die Klasse implementiert die Interfaces {@link StartWindowAccess}, {@link IOAccessReceiver} 
  * und {@link WindowListener}, um Rückmeldungen und IO-Funktionen zu verarbeiten.
@@ -14,18 +16,24 @@
 package com.securechat.gui;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 
 import com.securechat.io.IOAccess;
 import com.securechat.io.IOAccessReceiver;
+import com.securechat.io.StatusLog;
 import com.securechat.network.ConnectionManager;
 import com.securechat.network.ConnectionState;
+import com.securechat.network.SessionRegistry;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.util.List;
 
 //TODO: Möglichkeit mehrere Verbindungen (ConnectionManager) zu erstellen implementieren
 
 public class StartWindow extends JFrame implements StartWindowAccess, IOAccessReceiver, WindowListener {
+    private static final int MAX_STATUS_LINES = Integer.getInteger("securechat.statuslog.lines", 500);
+    private static final int MAX_LINES_PER_REFRESH = 50;
 
     private JTextField ipField;
     private JTextField passkeyField;
@@ -37,9 +45,11 @@ public class StartWindow extends JFrame implements StartWindowAccess, IOAccessRe
     private Boolean isHost;
     private Boolean isClient;
 
+    private final SessionRegistry sessionRegistry = new SessionRegistry();
     private volatile ConnectionManager manager;
     private IOAccess ioAccess;
     private JLabel logoLabel;
+    private final StatusLog statusLog;
    
     /**
      * Erstellt das Startfenster und initialisiert alle GUI-Komponenten.
@@ -58,6 +68,7 @@ public class StartWindow extends JFrame implements StartWindowAccess, IOAccessRe
             }
         });
         initComponents();
+        statusLog = StatusLog.open(this::showStatusEvents);
         setVisible(true);
     }
 
@@ -66,8 +77,7 @@ public class StartWindow extends JFrame implements StartWindowAccess, IOAccessRe
      */
     private void initComponents() {
 
-        ConnectionState state = ConnectionState.getState();
-        ImageIcon logo = getLogo(state);     
+        ImageIcon logo = getLogo(ConnectionState.DISCONNECTED);
 
         logoLabel = new JLabel(logo);
         logoLabel.setHorizontalAlignment(SwingConstants.CENTER);
@@ -101,7 +111,7 @@ public class StartWindow extends JFrame implements StartWindowAccess, IOAccessRe
         scroll.setBorder(BorderFactory.createEmptyBorder(0, 10, 10, 10));
         scroll.setPreferredSize(new Dimension(380, 100));
 
-        panel.add(new JLabel("Host IP:"));
+        panel.add(new JLabel("Host-Adresse (IP oder Hostname):"));
         panel.add(ipField);
         panel.add(new JLabel("Passkey:"));
         panel.add(passkeyField);
@@ -127,7 +137,7 @@ public class StartWindow extends JFrame implements StartWindowAccess, IOAccessRe
         String ip = ipField.getText().trim();
         String passkey = passkeyField.getText().trim();
         if (ConnectionManager.prepareConnection(isHost, isClient, ip, passkey, this)) {
-            manager = new ConnectionManager(isHost, ip, passkey, this, this);
+            manager = sessionRegistry.createSession(isHost, ip, passkey, this, this);
             manager.startConnection();
             connectGUIState();
         }
@@ -205,10 +215,75 @@ public class StartWindow extends JFrame implements StartWindowAccess, IOAccessRe
      */
     @Override
     public void onStatusUpdate(String message) {
-        SwingUtilities.invokeLater(() -> {
-            statusArea.append(message + "\n");
-            statusArea.setCaretPosition(statusArea.getDocument().getLength());
-        });
+        statusLog.log(StatusLog.Level.INFO, message);
+    }
+
+    /**
+     * Zeigt eine Statusmeldung mit Schweregrad im Statusbereich an.
+     *
+     * @param level   Schweregrad
+     * @param message anzuzeigende Nachricht
+     */
+    @Override
+    public void onStatusUpdate(StatusLog.Level level, String message) {
+        statusLog.log(level, message);
+    }
+
+    /**
+     * Fasst die Statusmeldungen eines Intervalls zu einem Text zusammen und hängt ihn mit einer
+     * einzigen Aktualisierung an den Statusbereich an. Direkt aufeinanderfolgende gleiche
+     * Meldungen werden zusammengezogen, und pro Aktualisierung werden höchstens
+     * {@link #MAX_LINES_PER_REFRESH} Zeilen angezeigt.
+     *
+     * @param events  Meldungen des Intervalls
+     * @param dropped Anzahl verworfener Meldungen
+     */
+    private void showStatusEvents(List<StatusLog.Event> events, long dropped) {
+        StringBuilder text = new StringBuilder();
+        int lines = 0;
+        int omitted = 0;
+        for (int i = 0; i < events.size(); ) {
+            String message = events.get(i).message();
+            int repeats = 1;
+            while (i + repeats < events.size() && events.get(i + repeats).message().equals(message)) {
+                repeats++;
+            }
+            i += repeats;
+            if (lines++ < MAX_LINES_PER_REFRESH) {
+                text.append(message);
+                if (repeats > 1) {
+                    text.append(" (").append(repeats).append("×)");
+                }
+                text.append('\n');
+            } else {
+                omitted += repeats;
+            }
+        }
+        if (omitted > 0) {
+            text.append("… ").append(omitted).append(" weitere Meldungen\n");
+        }
+        if (dropped > 0) {
+            text.append(dropped).append(" Statusmeldungen verworfen\n");
+        }
+        SwingUtilities.invokeLater(() -> appendStatus(text.toString()));
+    }
+
+    /**
+     * Hängt Text an den Statusbereich an und entfernt die ältesten Zeilen über
+     * {@link #MAX_STATUS_LINES}.
+     *
+     * @param text anzuhängender Text
+     */
+    private void appendStatus(String text) {
+        statusArea.append(text);
+        int excess = statusArea.getLineCount() - 1 - MAX_STATUS_LINES;
+        if (excess > 0) {
+            try {
+                statusArea.replaceRange("", 0, statusArea.getLineStartOffset(excess));
+            } catch (BadLocationException ignored) {
+            }
+        }
+        statusArea.setCaretPosition(statusArea.getDocument().getLength());
     }
 
     /**
@@ -242,6 +317,7 @@ public class StartWindow extends JFrame implements StartWindowAccess, IOAccessRe
         SwingUtilities.invokeLater(() -> {
             if (ioAccess != null) {
                 ioAccess.sendSystemMessage("REMOTESTATE", "DISCONNECT");
+                ioAccess = null;
             }
             if (manager != null) {
                 manager.closeConnection();
@@ -262,8 +338,8 @@ public class StartWindow extends JFrame implements StartWindowAccess, IOAccessRe
             if (manager != null) {
                 manager.closeConnection();
                 manager = null;
-                ConnectionState.setState(ConnectionState.DISCONNECTED);
             }
+            ioAccess = null;
             onStatusUpdate("Verbindung wurde getrennt.");
             updateLogo(ConnectionState.DISCONNECTED);
             disconnectGUIState();
@@ -278,13 +354,13 @@ public class StartWindow extends JFrame implements StartWindowAccess, IOAccessRe
      */
     @Override
     public void onConnectionFailed(String error) {
-        SwingUtilities.invokeLater(() -> {
-            onStatusUpdate(error);
-            if (!isHost) {
+        onStatusUpdate(StatusLog.Level.WARN, error);
+        if (!isHost) {
+            SwingUtilities.invokeLater(() -> {
                 disconnectGUIState();
                 updateLogo(ConnectionState.FAILED);
-            }
-        });
+            });
+        }
     }
 
     /**
@@ -313,9 +389,8 @@ public class StartWindow extends JFrame implements StartWindowAccess, IOAccessRe
         );
 
         if (result == JOptionPane.YES_OPTION) {
-            if (manager != null) {
-                manager.closeConnection();
-            }
+            sessionRegistry.closeAll();
+            statusLog.close();
             System.exit(0);
         }
     }
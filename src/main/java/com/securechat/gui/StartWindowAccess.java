@@ -10,6 +10,8 @@
  */
 package com.securechat.gui;
 
+import com.securechat.io.StatusLog;
+
 public interface StartWindowAccess {
 
     /**
@@ -18,6 +20,15 @@ public interface StartWindowAccess {
      */
     void onStatusUpdate(String message);
 
+    /**
+     * Wird aufgerufen, um Statusmeldungen mit Schweregrad weiterzugeben.
+     * @param level   Schweregrad
+     * @param message Statusmeldung
+     */
+    default void onStatusUpdate(StatusLog.Level level, String message) {
+        onStatusUpdate(message);
+    }
+
     /**
      * Wird aufgerufen, um den Verbindungsstatus auf "Verbinde..." zu setzen.
      */
@@ -0,0 +1,94 @@
+/**
+ * Renderer für ein Bild im Chatverlauf.
+ * <p>
+ * Die Klasse {@code ThumbnailView} hält selbst keine Bilddaten, sondern fragt beim Zeichnen
+ * den {@link ImageCache} nach dem Vorschaubild. Solange es noch nicht dekodiert ist, wird ein
+ * Platzhalter gezeichnet und der Verlauf nach dem Laden neu gezeichnet. Die Komponente hat eine
+ * feste Größe, damit sich das Layout des Chatverlaufs beim Nachladen nicht verschiebt. Eine
+ * Instanz wird von der {@link ChatHistoryView} für alle sichtbaren Bildzeilen wiederverwendet.
+ * Mit {@link #openOriginal(Component, ImageCache, String, String)} wird das Original in einem
+ * eigenen Fenster geöffnet, wobei es erst zu diesem Zeitpunkt im Hintergrund geladen wird.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.gui;
+
+import javax.swing.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+public class ThumbnailView extends JComponent {
+    private final ImageCache imageCache;
+    private final Component repaintTarget;
+    private String imageId;
+
+    /**
+     * Erstellt einen Renderer für Vorschaubilder.
+     *
+     * @param imageCache    Cache, der die Bilder verwaltet
+     * @param repaintTarget Komponente, die nach dem Laden eines Vorschaubilds neu gezeichnet wird
+     */
+    public ThumbnailView(ImageCache imageCache, Component repaintTarget) {
+        this.imageCache = imageCache;
+        this.repaintTarget = repaintTarget;
+        Dimension size = new Dimension(ImageCache.THUMBNAIL_SIZE, ImageCache.THUMBNAIL_SIZE);
+        setPreferredSize(size);
+        setMinimumSize(size);
+        setMaximumSize(size);
+    }
+
+    /**
+     * Legt fest, welches Bild als Nächstes gezeichnet wird.
+     *
+     * @param imageId Bild-ID
+     */
+    public void setImageId(String imageId) {
+        this.imageId = imageId;
+    }
+
+    /**
+     * Zeichnet das Vorschaubild oder einen Platzhalter.
+     *
+     * @param g Grafikkontext
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        BufferedImage thumbnail = imageCache.getThumbnail(imageId, repaintTarget::repaint);
+        if (thumbnail != null) {
+            int x = (getWidth() - thumbnail.getWidth()) / 2;
+            int y = (getHeight() - thumbnail.getHeight()) / 2;
+            g.drawImage(thumbnail, x, y, null);
+            return;
+        }
+        g.setColor(Color.LIGHT_GRAY);
+        g.drawRect(0, 0, getWidth() - 1, getHeight() - 1);
+        g.setColor(Color.GRAY);
+        String label = imageCache.isBroken(imageId) ? "Bild nicht lesbar" : "Lade Vorschau...";
+        FontMetrics metrics = g.getFontMetrics();
+        g.drawString(label, (getWidth() - metrics.stringWidth(label)) / 2, getHeight() / 2);
+    }
+
+    /**
+     * Lädt das Original im Hintergrund und zeigt es anschliessend in einem eigenen Fenster an.
+     *
+     * @param parent     Komponente, über der das Fenster geöffnet wird
+     * @param imageCache Cache, der das Bild verwaltet
+     * @param imageId    Bild-ID
+     * @param fileName   Dateiname für den Fenstertitel
+     */
+    public static void openOriginal(Component parent, ImageCache imageCache, String imageId, String fileName) {
+        imageCache.loadOriginal(imageId, image -> {
+            if (image == null) {
+                JOptionPane.showMessageDialog(parent, "Das Bild konnte nicht geladen werden.", fileName, JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(parent), fileName);
+            dialog.add(new JScrollPane(new JLabel(new ImageIcon(image))));
+            dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+            dialog.setSize(Math.min(image.getWidth() + 40, 1024), Math.min(image.getHeight() + 60, 768));
+            dialog.setLocationRelativeTo(parent);
+            dialog.setVisible(true);
+        });
+    }
+}
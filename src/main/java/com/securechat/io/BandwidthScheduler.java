@@ -0,0 +1,430 @@
+/**
+ * Verteilt die ausgehende Bandbreite fair auf alle Sitzungen einer JVM.
+ * <p>
+ * Die Klasse {@code BandwidthScheduler} vergibt Sendeerlaubnisse nach Deficit Round Robin:
+ * Jede Sitzung mit wartenden Frames erhält pro Runde ein Quantum an Bytes gutgeschrieben und darf
+ * Frames senden, solange ihr Guthaben reicht. Eine Sitzung, die grosse Frames in schneller Folge
+ * sendet, kann dadurch kleine, interaktive Nachrichten anderer Sitzungen nicht verdrängen; eine
+ * Sitzung, die länger als die Sendedauer eines Quantums geruht hat, wird zudem vor den dauerhaft
+ * sendenden eingereiht. Mit {@link Peer#reserve()} wartet ein Sender schon vor dem Kodieren und
+ * Verschlüsseln des nächsten Frames auf eine Erlaubnis über ein Quantum; nicht verbrauchte Bytes
+ * werden den folgenden Anforderungen angerechnet. Dadurch wird auch die Rechenzeit für die
+ * Verschlüsselung anteilig begrenzt.
+ * <p>
+ * Die Gesamtrate und die Rate je Sitzung werden über Token-Buckets mit {@link #BURST_MILLIS}
+ * Millisekunden Burst begrenzt; eine Anfrage, die grösser als der Vorrat ist, wird erfüllt,
+ * sobald der Vorrat positiv ist, und geht als Schuld in die folgenden Zuteilungen ein. Grosse
+ * Frames fordert der {@link FrameWriter} daher in Abschnitten von {@link Peer#getQuantum()} Bytes
+ * an. Grenzwerte: System-Properties {@code securechat.bandwidth.total} und
+ * {@code securechat.bandwidth.peer} in Bytes pro Sekunde (0 oder nicht gesetzt = unbegrenzt).
+ * Ohne Grenzen wartet kein Sender.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class BandwidthScheduler {
+    public static final int DEFAULT_QUANTUM = 16 * 1024;
+    public static final long BURST_MILLIS = 100;
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final BandwidthScheduler SHARED = new BandwidthScheduler(
+            Long.getLong("securechat.bandwidth.total", 0), Long.getLong("securechat.bandwidth.peer", 0), DEFAULT_QUANTUM);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final ArrayDeque<Peer> active = new ArrayDeque<>();
+    private final List<Peer> peers = new CopyOnWriteArrayList<>();
+    private final TokenBucket link;
+    private final long defaultPeerRate;
+    private final int quantum;
+    private final long sparseNanos;
+
+    /**
+     * Token-Bucket mit {@link #BURST_MILLIS} Burst. Nur unter der Sperre des Schedulers verwenden.
+     */
+    private static final class TokenBucket {
+        private final long rate;
+        private final double burst;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        private TokenBucket(long rate) {
+            this.rate = rate;
+            this.burst = Math.max(1, rate * BURST_MILLIS / 1000.0);
+            this.tokens = burst;
+        }
+
+        private void refill(long now) {
+            if (rate > 0) {
+                tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1e9);
+            }
+            lastRefill = now;
+        }
+
+        private boolean available() {
+            return rate <= 0 || tokens > 0;
+        }
+
+        private void take(int bytes) {
+            if (rate > 0) {
+                tokens -= bytes;
+            }
+        }
+
+        private long nanosUntilAvailable() {
+            return rate <= 0 || tokens > 0 ? 0 : (long) Math.ceil((1 - tokens) * 1e9 / rate);
+        }
+    }
+
+    /**
+     * Sendeanfrage eines Frames.
+     */
+    private static final class Request {
+        private final int bytes;
+        private boolean granted;
+
+        private Request(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Anteil einer Sitzung am Scheduler samt Kennzahlen. {@link #close()} meldet die Sitzung ab.
+     */
+    public final class Peer implements AutoCloseable {
+        private final String name;
+        private final TokenBucket bucket;
+        private final ArrayDeque<Request> waiting = new ArrayDeque<>();
+        private long deficit;
+        private int credit;
+        private long lastGrantNanos = System.nanoTime();
+        private boolean closed;
+        // Nur unter der Sperre geschrieben, daher genügt volatile für die Leser
+        private volatile long bytesSent;
+        private volatile long grants;
+        private volatile long waitNanos;
+        private volatile long maxWaitNanos;
+
+        private Peer(String name, long rate) {
+            this.name = name;
+            this.bucket = new TokenBucket(rate);
+        }
+
+        /**
+         * Wartet, bis die Sitzung die angegebene Anzahl Bytes senden darf. Ein mit
+         * {@link #reserve()} vorab zugeteiltes Guthaben wird zuerst verbraucht.
+         *
+         * @param bytes Grösse des Frames bzw. Abschnitts in Bytes
+         * @throws InterruptedIOException wenn der Thread beim Warten unterbrochen wird
+         * @throws IOException            wenn die Sitzung abgemeldet wurde
+         */
+        public void acquire(int bytes) throws IOException {
+            lock.lock();
+            try {
+                int prepaid = Math.min(credit, bytes);
+                credit -= prepaid;
+                bytes -= prepaid;
+            } finally {
+                lock.unlock();
+            }
+            if (bytes > 0) {
+                await(bytes);
+            }
+        }
+
+        /**
+         * Wartet vor dem Kodieren eines Frames auf die Erlaubnis für ein Quantum, sofern kein
+         * Guthaben aus einer früheren Reservierung übrig ist. Das Guthaben wird mit den folgenden
+         * {@link #acquire(int)}-Aufrufen verrechnet, sodass kein Byte doppelt zugeteilt wird.
+         *
+         * @throws InterruptedIOException wenn der Thread beim Warten unterbrochen wird
+         * @throws IOException            wenn die Sitzung abgemeldet wurde
+         */
+        public void reserve() throws IOException {
+            lock.lock();
+            try {
+                if (credit > 0) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            await(quantum);
+            lock.lock();
+            try {
+                credit += quantum;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Reiht eine Anforderung ein und wartet auf ihre Zuteilung.
+         *
+         * @param bytes angeforderte Bytes
+         * @throws InterruptedIOException wenn der Thread beim Warten unterbrochen wird
+         * @throws IOException            wenn die Sitzung abgemeldet wurde
+         */
+        private void await(int bytes) throws IOException {
+            long start = System.nanoTime();
+            Request request = new Request(bytes);
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IOException("Sitzung beim Bandbreiten-Scheduler abgemeldet");
+                }
+                if (waiting.isEmpty()) {
+                    // Wie neue Flows bei fq_codel: Sitzungen, die länger als ein Quantum geruht haben,
+                    // kommen als Nächste an die Reihe; dauerhaft sendende reihen sich hinten ein
+                    if (start - lastGrantNanos > sparseNanos) {
+                        active.addFirst(this);
+                    } else {
+                        active.addLast(this);
+                    }
+                }
+                waiting.addLast(request);
+                while (!request.granted) {
+                    long nanos = dispatch();
+                    if (request.granted) {
+                        break;
+                    }
+                    if (closed) {
+                        throw new IOException("Sitzung beim Bandbreiten-Scheduler abgemeldet");
+                    }
+                    changed.awaitNanos(Math.min(MAX_WAIT_NANOS, Math.max(1, nanos)));
+                }
+                long waited = System.nanoTime() - start;
+                waitNanos += waited;
+                maxWaitNanos = Math.max(maxWaitNanos, waited);
+            } catch (InterruptedException e) {
+                if (!request.granted) {
+                    withdraw(request);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Warten auf Sendeerlaubnis unterbrochen");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Gibt den Namen der Sitzung zurück.
+         *
+         * @return Name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gibt die Grösse zurück, in der grosse Frames angefordert werden sollten.
+         *
+         * @return Quantum in Bytes
+         */
+        public int getQuantum() {
+            return quantum;
+        }
+
+        /**
+         * Gibt die Anzahl zugeteilter Bytes zurück.
+         *
+         * @return Bytes
+         */
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * Gibt die Anzahl der Zuteilungen zurück (ganze Frames oder Abschnitte grosser Frames).
+         *
+         * @return Zuteilungen
+         */
+        public long getGrants() {
+            return grants;
+        }
+
+        /**
+         * Gibt die mittlere Wartezeit pro Zuteilung zurück.
+         *
+         * @return Wartezeit in Mikrosekunden
+         */
+        public double getMeanWaitMicros() {
+            long frames = grants;
+            return frames == 0 ? 0 : waitNanos / 1e3 / frames;
+        }
+
+        /**
+         * Gibt die längste Wartezeit einer Zuteilung zurück.
+         *
+         * @return Wartezeit in Mikrosekunden
+         */
+        public long getMaxWaitMicros() {
+            return maxWaitNanos / 1_000;
+        }
+
+        /**
+         * Gibt die Anzahl derzeit wartender Anforderungen zurück.
+         *
+         * @return wartende Anforderungen
+         */
+        public int getQueuedRequests() {
+            lock.lock();
+            try {
+                return waiting.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Meldet die Sitzung ab; wartende Sender erhalten eine {@link IOException}.
+         */
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                closed = true;
+                credit = 0;
+                waiting.clear();
+                active.remove(this);
+                peers.remove(this);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Entfernt eine nicht mehr benötigte Anfrage. Nur unter der Sperre aufrufen.
+         *
+         * @param request Anfrage
+         */
+        private void withdraw(Request request) {
+            waiting.remove(request);
+            if (waiting.isEmpty()) {
+                active.remove(this);
+                deficit = 0;
+            }
+        }
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param totalRate       Gesamtrate in Bytes pro Sekunde, 0 = unbegrenzt
+     * @param defaultPeerRate Rate je Sitzung in Bytes pro Sekunde, 0 = unbegrenzt
+     * @param quantum         Guthaben je Sitzung und Runde in Bytes
+     */
+    public BandwidthScheduler(long totalRate, long defaultPeerRate, int quantum) {
+        this.link = new TokenBucket(totalRate);
+        this.defaultPeerRate = defaultPeerRate;
+        this.quantum = quantum;
+        this.sparseNanos = totalRate > 0 ? quantum * 1_000_000_000L / totalRate : 0;
+    }
+
+    /**
+     * Gibt den gemeinsam genutzten Scheduler der Anwendung zurück.
+     *
+     * @return gemeinsamer Scheduler
+     */
+    public static BandwidthScheduler shared() {
+        return SHARED;
+    }
+
+    /**
+     * Meldet eine Sitzung mit der Standardrate an.
+     *
+     * @param name Name der Sitzung, z. B. die Adresse der Gegenstelle
+     * @return Anteil der Sitzung
+     */
+    public Peer register(String name) {
+        return register(name, defaultPeerRate);
+    }
+
+    /**
+     * Meldet eine Sitzung mit eigener Rate an.
+     *
+     * @param name Name der Sitzung
+     * @param rate Rate in Bytes pro Sekunde, 0 = unbegrenzt
+     * @return Anteil der Sitzung
+     */
+    public Peer register(String name, long rate) {
+        Peer peer = new Peer(name, rate);
+        peers.add(peer);
+        return peer;
+    }
+
+    /**
+     * Gibt alle angemeldeten Sitzungen zurück, z. B. für die Anzeige ihrer Kennzahlen.
+     *
+     * @return Momentaufnahme der Sitzungen
+     */
+    public List<Peer> getPeers() {
+        return new ArrayList<>(peers);
+    }
+
+    /**
+     * Teilt Sendeerlaubnisse nach Deficit Round Robin zu, solange Gesamt- und Sitzungsrate es
+     * zulassen. Nur unter der Sperre aufrufen.
+     *
+     * @return Nanosekunden, bis frühestens wieder zugeteilt werden kann
+     */
+    private long dispatch() {
+        long now = System.nanoTime();
+        link.refill(now);
+        for (Peer peer : active) {
+            peer.bucket.refill(now);
+        }
+        boolean granted = false;
+        boolean eligible = true;
+        while (eligible && link.available() && !active.isEmpty()) {
+            eligible = false;
+            for (int i = active.size(); i > 0 && link.available(); i--) {
+                Peer peer = active.pollFirst();
+                if (peer.bucket.available()) {
+                    eligible = true;
+                    peer.deficit += quantum;
+                    Request head;
+                    while ((head = peer.waiting.peekFirst()) != null && head.bytes <= peer.deficit
+                            && link.available() && peer.bucket.available()) {
+                        peer.waiting.pollFirst();
+                        peer.deficit -= head.bytes;
+                        link.take(head.bytes);
+                        peer.bucket.take(head.bytes);
+                        peer.bytesSent += head.bytes;
+                        peer.grants++;
+                        peer.lastGrantNanos = now;
+                        head.granted = true;
+                        granted = true;
+                    }
+                }
+                if (peer.waiting.isEmpty()) {
+                    peer.deficit = 0;
+                } else {
+                    active.addLast(peer);
+                }
+            }
+        }
+        if (granted) {
+            changed.signalAll();
+        }
+        long wait = link.nanosUntilAvailable();
+        if (wait == 0) {
+            wait = Long.MAX_VALUE;
+            for (Peer peer : active) {
+                wait = Math.min(wait, peer.bucket.nanosUntilAvailable());
+            }
+        }
+        return wait;
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ * Inhaltsadressierter Cache für grosse, wiederholt gesendete Nutzdaten.
+ * <p>
+ * Die Klasse {@code BlobCache} legt Nutzdaten (Bilder, lange Texte) unter ihrem SHA-256-Hash ab.
+ * Der Sender bietet einen Inhalt zuerst nur per Hash an und überträgt die Bytes nur dann, wenn
+ * der Empfänger ihn noch nicht kennt (siehe {@link IOManager}). Gehalten werden die Daten in
+ * zwei Stufen, beide nach Bytes begrenzt und nach LRU verdrängt: im Speicher und in einem
+ * temporären Verzeichnis, in das aus dem Speicher verdrängte Einträge ausgelagert werden. Das
+ * Verzeichnis ist nur für den eigenen Benutzer lesbar und wird beim Beenden der JVM gelöscht.
+ * Ausgelagerte Einträge werden mit AES-GCM unter einem zufälligen Schlüssel verschlüsselt, der
+ * nur im Speicher dieser JVM liegt; bleiben Dateien nach einem Absturz liegen, sind sie ohne ihn
+ * unlesbar. Der Hash dient als zusätzliche authentifizierte Angabe, sodass eine vertauschte oder
+ * veränderte Datei beim Zurückholen verworfen wird.
+ * Beim Ablegen wird der Hash immer nachgerechnet, damit eine Gegenstelle keinen fremden Inhalt
+ * unter einem bekannten Hash unterschieben kann.
+ * <p>
+ * Die Grenzen lassen sich über {@code securechat.blobcache.memory} und
+ * {@code securechat.blobcache.disk} (jeweils in Byte) einstellen.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class BlobCache {
+    /**
+     * Kleinere Inhalte werden direkt gesendet; Angebot und Antwort kosten mehr, als sie sparen.
+     */
+    public static final int MIN_BLOB_SIZE = 4 * 1024;
+    private static final long DEFAULT_MEMORY_BYTES = 32L * 1024 * 1024;
+    private static final long DEFAULT_DISK_BYTES = 256L * 1024 * 1024;
+    private static final int HASH_LENGTH = 64;
+    private static final String SPILL_CIPHER = "AES/GCM/NoPadding";
+    private static final int SPILL_IV_SIZE = 12;
+    private static final int SPILL_TAG_BITS = 128;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final BlobCache SHARED = new BlobCache(
+            Long.getLong("securechat.blobcache.memory", DEFAULT_MEMORY_BYTES),
+            Long.getLong("securechat.blobcache.disk", DEFAULT_DISK_BYTES));
+
+    private final long memoryLimit;
+    private final long diskLimit;
+    private final Map<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Long> disk = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+    private Path directory;
+    private SecretKey spillKey;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param memoryLimit maximale Grösse der Einträge im Speicher in Byte
+     * @param diskLimit   maximale Grösse der ausgelagerten Einträge in Byte, {@code 0} ohne Auslagerung
+     */
+    public BlobCache(long memoryLimit, long diskLimit) {
+        this.memoryLimit = memoryLimit;
+        this.diskLimit = diskLimit;
+    }
+
+    /**
+     * Gibt den gemeinsam genutzten Cache der Anwendung zurück.
+     *
+     * @return gemeinsamer Cache
+     */
+    public static BlobCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Berechnet den Schlüssel eines Inhalts.
+     *
+     * @param data Inhalt
+     * @return SHA-256-Hash in Kleinbuchstaben-Hex
+     */
+    public static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    /**
+     * Prüft, ob eine Zeichenkette ein gültiger Schlüssel ist. Nur solche Schlüssel werden als
+     * Dateinamen verwendet.
+     *
+     * @param hash zu prüfende Zeichenkette
+     * @return {@code true} bei 64 Hex-Zeichen in Kleinbuchstaben
+     */
+    public static boolean isValidHash(String hash) {
+        if (hash == null || hash.length() != HASH_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Legt einen Inhalt ab und gibt seinen Schlüssel zurück.
+     *
+     * @param data Inhalt
+     * @return SHA-256-Hash des Inhalts
+     */
+    public String put(byte[] data) {
+        String hash = hash(data);
+        store(hash, data);
+        return hash;
+    }
+
+    /**
+     * Legt einen Inhalt unter einem angekündigten Schlüssel ab, sofern er dazu passt.
+     *
+     * @param hash erwarteter Schlüssel
+     * @param data Inhalt
+     * @return {@code false}, wenn der Hash des Inhalts nicht dem Schlüssel entspricht
+     */
+    public boolean put(String hash, byte[] data) {
+        if (!hash(data).equals(hash)) {
+            return false;
+        }
+        store(hash, data);
+        return true;
+    }
+
+    /**
+     * Prüft, ob ein Inhalt vorhanden ist, ohne ihn zu laden.
+     *
+     * @param hash Schlüssel
+     * @return {@code true}, wenn der Inhalt im Speicher oder ausgelagert vorliegt
+     */
+    public synchronized boolean contains(String hash) {
+        return memory.containsKey(hash) || disk.containsKey(hash);
+    }
+
+    /**
+     * Liefert einen Inhalt. Ausgelagerte Einträge werden zurück in den Speicher geholt.
+     *
+     * @param hash Schlüssel
+     * @return Inhalt oder {@code null}, wenn er nicht (mehr) vorhanden ist
+     */
+    public synchronized byte[] get(String hash) {
+        byte[] data = memory.get(hash);
+        if (data == null && disk.containsKey(hash)) {
+            data = readFromDisk(hash);
+            if (data != null && data.length <= memoryLimit / 4) {
+                insertIntoMemory(hash, data);
+            }
+        }
+        return data;
+    }
+
+    private synchronized void store(String hash, byte[] data) {
+        if (memory.get(hash) != null) {
+            return;
+        }
+        if (data.length > memoryLimit / 4) {
+            // Sehr grosse Einträge würden den Speicher-Cache leerfegen
+            if (disk.get(hash) == null) {
+                writeToDisk(hash, data);
+            }
+        } else {
+            insertIntoMemory(hash, data);
+        }
+    }
+
+    private void insertIntoMemory(String hash, byte[] data) {
+        memory.put(hash, data);
+        memoryBytes += data.length;
+        Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator();
+        while (memoryBytes > memoryLimit && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            if (eldest.getKey().equals(hash)) {
+                continue;
+            }
+            it.remove();
+            memoryBytes -= eldest.getValue().length;
+            if (!disk.containsKey(eldest.getKey())) {
+                writeToDisk(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+    private void writeToDisk(String hash, byte[] data) {
+        if (data.length > diskLimit) {
+            return;
+        }
+        try {
+            Path file = directory().resolve(hash);
+            Files.write(file, seal(hash, data));
+        } catch (IOException | UncheckedIOException | GeneralSecurityException e) {
+            return;
+        }
+        disk.put(hash, (long) data.length);
+        diskBytes += data.length;
+        Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+        while (diskBytes > diskLimit && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(hash)) {
+                continue;
+            }
+            it.remove();
+            diskBytes -= eldest.getValue();
+            deleteQuietly(directory.resolve(eldest.getKey()));
+        }
+    }
+
+    private byte[] readFromDisk(String hash) {
+        try {
+            return open(hash, Files.readAllBytes(directory.resolve(hash)));
+        } catch (IOException | GeneralSecurityException e) {
+            diskBytes -= disk.remove(hash);
+            deleteQuietly(directory.resolve(hash));
+            return null;
+        }
+    }
+
+    /**
+     * Verschlüsselt einen Eintrag für die Auslagerung.
+     *
+     * @param hash Schlüssel des Eintrags, wird mit authentifiziert
+     * @param data Inhalt
+     * @return Initialisierungsvektor gefolgt von Chiffrat und Tag
+     * @throws GeneralSecurityException wenn AES-GCM nicht verfügbar ist
+     */
+    private byte[] seal(String hash, byte[] data) throws GeneralSecurityException {
+        byte[] iv = new byte[SPILL_IV_SIZE];
+        RANDOM.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(SPILL_CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, spillKey, new GCMParameterSpec(SPILL_TAG_BITS, iv));
+        cipher.updateAAD(hash.getBytes(StandardCharsets.US_ASCII));
+        byte[] sealed = new byte[SPILL_IV_SIZE + cipher.getOutputSize(data.length)];
+        System.arraycopy(iv, 0, sealed, 0, SPILL_IV_SIZE);
+        cipher.doFinal(data, 0, data.length, sealed, SPILL_IV_SIZE);
+        return sealed;
+    }
+
+    /**
+     * Entschlüsselt einen ausgelagerten Eintrag.
+     *
+     * @param hash   Schlüssel des Eintrags
+     * @param sealed Dateiinhalt aus {@link #seal(String, byte[])}
+     * @return Inhalt
+     * @throws GeneralSecurityException wenn die Datei verändert oder vertauscht wurde
+     */
+    private byte[] open(String hash, byte[] sealed) throws GeneralSecurityException {
+        if (sealed.length < SPILL_IV_SIZE) {
+            throw new GeneralSecurityException("Ausgelagerter Eintrag zu kurz");
+        }
+        Cipher cipher = Cipher.getInstance(SPILL_CIPHER);
+        cipher.init(Cipher.DECRYPT_MODE, spillKey, new GCMParameterSpec(SPILL_TAG_BITS, sealed, 0, SPILL_IV_SIZE));
+        cipher.updateAAD(hash.getBytes(StandardCharsets.US_ASCII));
+        return cipher.doFinal(sealed, SPILL_IV_SIZE, sealed.length - SPILL_IV_SIZE);
+    }
+
+    /**
+     * Legt das Auslagerungsverzeichnis und den Schlüssel für die Auslagerung beim ersten Bedarf
+     * an. Temporäre Verzeichnisse erhalten auf POSIX-Systemen die Rechte {@code rwx------}.
+     *
+     * @return Auslagerungsverzeichnis
+     * @throws IOException              wenn es nicht angelegt werden kann
+     * @throws GeneralSecurityException wenn kein AES-Schlüssel erzeugt werden kann
+     */
+    private Path directory() throws IOException, GeneralSecurityException {
+        if (spillKey == null) {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256);
+            spillKey = generator.generateKey();
+        }
+        if (directory == null) {
+            directory = Files.createTempDirectory("securechat-blobs-");
+            Path created = directory;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteDirectory(created), "BlobCacheCleanup-Thread"));
+        }
+        return directory;
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(BlobCache::deleteQuietly);
+        } catch (IOException ignored) {
+        }
+        deleteQuietly(directory);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Pool wiederverwendbarer {@link ByteBuffer} in festen Größenklassen.
+ * <p>
+ * Die Klasse {@code BufferPool} stellt Heap- und Direct-Buffer für die Sende- und Empfangspfade
+ * bereit, damit pro Nachricht keine neuen Byte-Arrays angelegt werden müssen. Angefragte Größen
+ * werden auf die nächste Größenklasse (Zweierpotenz ab 512 Byte) aufgerundet; größere Anfragen
+ * als die grösste Klasse werden ungepoolt bedient. Jede Klasse hält nur eine begrenzte Anzahl
+ * freier Buffer vor, sodass der Pool selbst nicht unbegrenzt wächst.
+ * <p>
+ * Mit der System-Property {@code securechat.bufferpool.debug=true} merkt sich der Pool zu jedem
+ * ausgeliehenen Buffer den Aufrufer. Nicht zurückgegebene Buffer können dann über
+ * {@link #reportLeaks()} ausgegeben werden; doppelte Rückgaben werden sofort gemeldet.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+
+public class BufferPool {
+    private static final int MIN_SHIFT = 9;   // 512 Byte
+    private static final int MAX_SHIFT = 22;  // 4 MiB
+    private static final int RETAINED_PER_CLASS = 32;
+    private static final BufferPool SHARED = new BufferPool(Boolean.getBoolean("securechat.bufferpool.debug"));
+
+    private final ArrayBlockingQueue<ByteBuffer>[] heapClasses;
+    private final ArrayBlockingQueue<ByteBuffer>[] directClasses;
+    private final boolean debug;
+    private final Map<ByteBuffer, Throwable> outstanding = new IdentityHashMap<>();
+
+    /**
+     * Erstellt einen neuen Pool.
+     *
+     * @param debug {@code true}, um ausgeliehene Buffer zur Leck-Erkennung zu verfolgen
+     */
+    public BufferPool(boolean debug) {
+        this.debug = debug;
+        heapClasses = newClasses();
+        directClasses = newClasses();
+    }
+
+    /**
+     * Legt die Warteschlangen aller Größenklassen an.
+     *
+     * @return eine leere Warteschlange pro Größenklasse
+     */
+    // Generische Arrays lassen sich nicht direkt anlegen; das Array verlässt diese Methode nur
+    // mit Warteschlangen für ByteBuffer.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayBlockingQueue<ByteBuffer>[] newClasses() {
+        ArrayBlockingQueue<ByteBuffer>[] classes = new ArrayBlockingQueue[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new ArrayBlockingQueue<>(RETAINED_PER_CLASS);
+        }
+        return classes;
+    }
+
+    /**
+     * Gibt den gemeinsam genutzten Pool der Anwendung zurück.
+     *
+     * @return gemeinsamer Pool
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Leiht einen Heap-Buffer mit mindestens der angegebenen Kapazität aus.
+     * Der Buffer ist geleert (Position 0, Limit = Kapazität).
+     *
+     * @param minCapacity benötigte Mindestkapazität in Byte
+     * @return ausgeliehener Buffer
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        return acquire(minCapacity, false);
+    }
+
+    /**
+     * Leiht einen Direct-Buffer mit mindestens der angegebenen Kapazität aus,
+     * z. B. für kanalbasierte Ein- und Ausgabe ohne zusätzliche Kopie.
+     *
+     * @param minCapacity benötigte Mindestkapazität in Byte
+     * @return ausgeliehener Buffer
+     */
+    public ByteBuffer acquireDirect(int minCapacity) {
+        return acquire(minCapacity, true);
+    }
+
+    /**
+     * Gibt einen ausgeliehenen Buffer an den Pool zurück. Danach darf er nicht mehr verwendet werden.
+     *
+     * @param buffer zurückzugebender Buffer oder {@code null}
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (debug) {
+            synchronized (outstanding) {
+                if (outstanding.remove(buffer) == null) {
+                    new IllegalStateException("Buffer wurde doppelt oder ohne Ausleihe zurückgegeben").printStackTrace();
+                    return;
+                }
+            }
+        }
+        int index = classIndex(buffer.capacity());
+        if (index < 0 || (1 << (index + MIN_SHIFT)) != buffer.capacity()) {
+            return; // ungepoolte Größe: dem GC überlassen
+        }
+        buffer.clear();
+        (buffer.isDirect() ? directClasses : heapClasses)[index].offer(buffer);
+    }
+
+    /**
+     * Vergrößert einen ausgeliehenen Buffer: Es wird ein größerer Buffer ausgeliehen,
+     * der Inhalt bis zur aktuellen Position kopiert und der alte Buffer zurückgegeben.
+     *
+     * @param buffer      bisheriger Buffer (im Schreibmodus)
+     * @param minCapacity benötigte Mindestkapazität
+     * @return neuer Buffer mit kopiertem Inhalt und gleicher Position
+     */
+    public ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer larger = acquire(Math.max(minCapacity, buffer.capacity() * 2), buffer.isDirect());
+        buffer.flip();
+        larger.put(buffer);
+        release(buffer);
+        return larger;
+    }
+
+    /**
+     * Gibt die Anzahl derzeit ausgeliehener Buffer zurück (nur im Debug-Modus gezählt).
+     *
+     * @return Anzahl ausgeliehener Buffer oder {@code -1}, wenn der Debug-Modus aus ist
+     */
+    public int outstandingCount() {
+        if (!debug) {
+            return -1;
+        }
+        synchronized (outstanding) {
+            return outstanding.size();
+        }
+    }
+
+    /**
+     * Gibt für jeden noch nicht zurückgegebenen Buffer die Stelle der Ausleihe auf {@code System.err} aus.
+     *
+     * @return Anzahl gemeldeter Lecks ({@code 0}, wenn der Debug-Modus aus ist)
+     */
+    public int reportLeaks() {
+        if (!debug) {
+            return 0;
+        }
+        List<Throwable> leaks;
+        synchronized (outstanding) {
+            leaks = new ArrayList<>(outstanding.values());
+        }
+        for (Throwable leak : leaks) {
+            leak.printStackTrace();
+        }
+        return leaks.size();
+    }
+
+    /**
+     * Leiht einen Buffer aus der passenden Größenklasse aus oder legt einen neuen an.
+     *
+     * @param minCapacity benötigte Mindestkapazität
+     * @param direct      {@code true} für Direct-Buffer
+     * @return ausgeliehener Buffer
+     */
+    private ByteBuffer acquire(int minCapacity, boolean direct) {
+        int index = classIndex(minCapacity);
+        ByteBuffer buffer = null;
+        if (index >= 0) {
+            buffer = (direct ? directClasses : heapClasses)[index].poll();
+            if (buffer == null) {
+                int capacity = 1 << (index + MIN_SHIFT);
+                buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+            }
+        } else {
+            buffer = direct ? ByteBuffer.allocateDirect(minCapacity) : ByteBuffer.allocate(minCapacity);
+        }
+        if (debug) {
+            synchronized (outstanding) {
+                outstanding.put(buffer, new Throwable("Nicht zurückgegebener Buffer (" + buffer.capacity() + " Byte) ausgeliehen bei"));
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Bestimmt die Größenklasse für eine Kapazität.
+     *
+     * @param capacity gewünschte Kapazität
+     * @return Index der Größenklasse oder {@code -1}, wenn die Kapazität zu groß ist
+     */
+    private static int classIndex(int capacity) {
+        if (capacity <= (1 << MIN_SHIFT)) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+}
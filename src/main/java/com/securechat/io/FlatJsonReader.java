@@ -0,0 +1,385 @@
+/**
+ * Liest flache JSON-Objekte ohne Zwischenobjekte direkt in Nachrichtenklassen.
+ * <p>
+ * Die Klasse {@code FlatJsonReader} ist der schnelle Weg von {@link MessageCodec#read(Class)}.
+ * Gson legt für jede Nachricht einen {@code JsonReader} samt Zeichenpuffer an und kopiert Texte,
+ * die länger als dieser Puffer sind, über einen wachsenden {@code StringBuilder}. Dieser Leser
+ * arbeitet dagegen direkt auf dem bereits dekodierten Zeichenpuffer und erzeugt pro Nachricht
+ * nur das Nachrichtenobjekt und seine String-Felder. Unterstützt werden Klassen mit einem
+ * parameterlosen Konstruktor, deren Felder ausschliesslich vom Typ {@code String}, {@code int},
+ * {@code long} oder {@code boolean} sind, und Objekte ohne verschachtelte Werte. Für alles andere,
+ * etwa Gleitkommazahlen oder ungewöhnliche Schreibweisen, liefert {@link #read(CharBuffer, Class)}
+ * {@code null}, und der Aufrufer fällt auf Gson zurück. Eine Instanz ist nicht threadsicher.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+final class FlatJsonReader {
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final int UNKNOWN_FIELD = -1;
+    private static final int UNSUPPORTED = -2;
+    private static final int MAX_RETAINED_CHARS = 64 * 1024;
+    private static final String[] KNOWN_TYPES = {"CHAT", "CHUNK", "SYSTEM", "IMAGE", "RELAY"};
+
+    private static final ClassValue<Binding> BINDINGS = new ClassValue<>() {
+        @Override
+        protected Binding computeValue(Class<?> type) {
+            return Binding.of(type);
+        }
+    };
+
+    private StringBuilder unescaped = new StringBuilder();
+    private char[] text;
+    private int pos;
+    private int end;
+
+    /**
+     * Felder und Konstruktor einer unterstützten Klasse.
+     *
+     * @param constructor parameterloser Konstruktor
+     * @param names       JSON-Namen der Felder
+     * @param fields      Felder in derselben Reihenfolge
+     */
+    private record Binding(Constructor<?> constructor, String[] names, Field[] fields) {
+        private static final Binding NONE = new Binding(null, null, null);
+
+        private static Binding of(Class<?> type) {
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                List<Field> fields = new ArrayList<>();
+                for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                            continue;
+                        }
+                        Class<?> fieldType = field.getType();
+                        if (fieldType != String.class && fieldType != int.class && fieldType != long.class
+                                && fieldType != boolean.class) {
+                            return NONE;
+                        }
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+                String[] names = new String[fields.size()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = fields.get(i).getName();
+                }
+                return new Binding(constructor, names, fields.toArray(new Field[0]));
+            } catch (NoSuchMethodException | RuntimeException e) {
+                return NONE;
+            }
+        }
+    }
+
+    /**
+     * Liest den Text zwischen Position und Limit in eine neue Instanz der Klasse. Die Position
+     * des Buffers bleibt unverändert.
+     *
+     * @param <T>   Nachrichtentyp
+     * @param chars JSON-Text; muss ein Heap-Buffer sein
+     * @param type  Zielklasse
+     * @return Nachrichtenobjekt oder {@code null}, wenn Text oder Klasse nicht unterstützt werden
+     */
+    <T> T read(CharBuffer chars, Class<T> type) {
+        Binding binding = BINDINGS.get(type);
+        if (binding.constructor() == null || !chars.hasArray()) {
+            return null;
+        }
+        text = chars.array();
+        pos = chars.arrayOffset() + chars.position();
+        end = chars.arrayOffset() + chars.limit();
+        try {
+            Object message = binding.constructor().newInstance(NO_ARGS);
+            return readObject(binding, message) ? type.cast(message) : null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        } finally {
+            text = null;
+            if (unescaped.capacity() > MAX_RETAINED_CHARS) {
+                unescaped = new StringBuilder();
+            }
+        }
+    }
+
+    /**
+     * Liest alle Felder des Objekts.
+     *
+     * @param binding Felder der Zielklasse
+     * @param message zu füllende Instanz
+     * @return {@code false}, wenn der Text nicht unterstützt wird
+     * @throws IllegalAccessException wenn ein Feld nicht gesetzt werden kann
+     */
+    private boolean readObject(Binding binding, Object message) throws IllegalAccessException {
+        skipWhitespace();
+        if (!consume('{')) {
+            return false;
+        }
+        skipWhitespace();
+        if (consume('}')) {
+            return atEnd();
+        }
+        do {
+            skipWhitespace();
+            int index = readName(binding);
+            if (index == UNSUPPORTED) {
+                return false;
+            }
+            Field field = index == UNKNOWN_FIELD ? null : binding.fields()[index];
+            skipWhitespace();
+            if (!consume(':')) {
+                return false;
+            }
+            skipWhitespace();
+            if (!readValue(field, message)) {
+                return false;
+            }
+            skipWhitespace();
+        } while (consume(','));
+        return consume('}') && atEnd();
+    }
+
+    /**
+     * Liest einen Feldnamen und ordnet ihn einem Feld der Zielklasse zu.
+     *
+     * @param binding Felder der Zielklasse
+     * @return Index des Felds, {@link #UNKNOWN_FIELD} bei einem unbekannten Namen oder
+     * {@link #UNSUPPORTED}, wenn der Text nicht unterstützt wird
+     */
+    private int readName(Binding binding) {
+        if (!consume('"')) {
+            return UNSUPPORTED;
+        }
+        int start = pos;
+        while (pos < end && text[pos] != '"') {
+            if (text[pos] == '\\') {
+                return UNSUPPORTED;
+            }
+            pos++;
+        }
+        if (pos == end) {
+            return UNSUPPORTED;
+        }
+        int length = pos - start;
+        pos++;
+        String[] names = binding.names();
+        for (int i = 0; i < names.length; i++) {
+            if (matches(names[i], start, length)) {
+                return i;
+            }
+        }
+        return UNKNOWN_FIELD;
+    }
+
+    /**
+     * Liest einen Wert und setzt ihn im Feld; unbekannte Felder werden übersprungen.
+     *
+     * @param field   Zielfeld oder {@code null}
+     * @param message zu füllende Instanz
+     * @return {@code false}, wenn der Wert nicht unterstützt wird
+     * @throws IllegalAccessException wenn das Feld nicht gesetzt werden kann
+     */
+    private boolean readValue(Field field, Object message) throws IllegalAccessException {
+        if (pos == end) {
+            return false;
+        }
+        Class<?> type = field == null ? null : field.getType();
+        char c = text[pos];
+        if (c == '"') {
+            if (type != null && type != String.class) {
+                return false;
+            }
+            String value = readString(field != null && field.getName().equals("type"));
+            if (value == null) {
+                return false;
+            }
+            if (field != null) {
+                field.set(message, value);
+            }
+            return true;
+        }
+        if (c == 'n') {
+            if (!literal("null")) {
+                return false;
+            }
+            if (type == String.class) {
+                field.set(message, null);
+            }
+            return true;
+        }
+        if (c == 't' || c == 'f') {
+            boolean value = c == 't';
+            if (!literal(value ? "true" : "false") || (type != null && type != boolean.class)) {
+                return false;
+            }
+            if (field != null) {
+                field.setBoolean(message, value);
+            }
+            return true;
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) {
+            if (type != null && type != int.class && type != long.class) {
+                return false;
+            }
+            boolean negative = consume('-');
+            int start = pos;
+            long value = 0;
+            while (pos < end && text[pos] >= '0' && text[pos] <= '9') {
+                if (value > (Long.MAX_VALUE - 9) / 10) {
+                    return false;
+                }
+                value = value * 10 + (text[pos++] - '0');
+            }
+            if (pos == start || (pos < end && (text[pos] == '.' || text[pos] == 'e' || text[pos] == 'E'))) {
+                return false;
+            }
+            value = negative ? -value : value;
+            if (type == int.class) {
+                if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                    return false;
+                }
+                field.setInt(message, (int) value);
+            } else if (type == long.class) {
+                field.setLong(message, value);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Liest einen String. Ohne Escape-Sequenzen wird er direkt aus dem Zeichenpuffer erzeugt.
+     *
+     * @param canonical bekannte Nachrichtentypen als Konstante zurückgeben
+     * @return String oder {@code null} bei ungültigem Text
+     */
+    private String readString(boolean canonical) {
+        pos++;
+        int start = pos;
+        while (pos < end && text[pos] != '"' && text[pos] != '\\') {
+            pos++;
+        }
+        if (pos == end) {
+            return null;
+        }
+        if (text[pos] == '"') {
+            int length = pos - start;
+            pos++;
+            String known = canonical ? knownType(text, start, length) : null;
+            return known != null ? known : new String(text, start, length);
+        }
+        unescaped.setLength(0);
+        unescaped.append(text, start, pos - start);
+        while (pos < end) {
+            char c = text[pos++];
+            if (c == '"') {
+                return unescaped.toString();
+            }
+            if (c != '\\') {
+                unescaped.append(c);
+                continue;
+            }
+            if (pos == end) {
+                return null;
+            }
+            char escape = text[pos++];
+            switch (escape) {
+                case '"', '\\', '/' -> unescaped.append(escape);
+                case 'b' -> unescaped.append('\b');
+                case 'f' -> unescaped.append('\f');
+                case 'n' -> unescaped.append('\n');
+                case 'r' -> unescaped.append('\r');
+                case 't' -> unescaped.append('\t');
+                case 'u' -> {
+                    if (end - pos < 4) {
+                        return null;
+                    }
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(text[pos++], 16);
+                        if (digit < 0) {
+                            return null;
+                        }
+                        value = value << 4 | digit;
+                    }
+                    unescaped.append((char) value);
+                }
+                default -> {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gibt einen bekannten Nachrichtentyp als Konstante zurück, damit pro Nachricht kein String
+     * für den Typ entsteht.
+     *
+     * @param text   Zeichen
+     * @param start  erste Position des Typs
+     * @param length Länge des Typs
+     * @return Konstante oder {@code null}, wenn der Typ nicht bekannt ist
+     */
+    static String knownType(char[] text, int start, int length) {
+        for (String known : KNOWN_TYPES) {
+            if (matches(known, text, start, length)) {
+                return known;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(String name, int start, int length) {
+        return matches(name, text, start, length);
+    }
+
+    private static boolean matches(String name, char[] text, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean literal(String word) {
+        if (end - pos < word.length() || !matches(word, pos, word.length())) {
+            return false;
+        }
+        pos += word.length();
+        return true;
+    }
+
+    private boolean consume(char c) {
+        if (pos < end && text[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && (text[pos] == ' ' || text[pos] == '\n' || text[pos] == '\r' || text[pos] == '\t')) {
+            pos++;
+        }
+    }
+
+    private boolean atEnd() {
+        skipWhitespace();
+        return pos == end;
+    }
+}
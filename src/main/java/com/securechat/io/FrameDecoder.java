@@ -0,0 +1,247 @@
+/**
+ * Empfangspipeline für verschlüsselte Frames.
+ * <p>
+ * Die Klasse {@code FrameDecoder} fasst die Stufen des Empfangspfads zusammen: Entschlüsseln
+ * ({@link #decrypt(ByteBuffer)}), JSON-Parsen ({@link #parse(ByteBuffer)}) und Zuordnen zur
+ * passenden Nachrichtenklasse ({@link #toMessage(JsonObject)}). Die Stufen sind einzeln
+ * aufrufbar, damit z. B. der {@link TrafficReplayer} sie getrennt vermessen kann. Der
+ * Empfangspfad verwendet stattdessen {@link #readType(ByteBuffer)} und
+ * {@link #readMessage(String)}, die Parsen und Zuordnen ohne Zwischenbaum zusammenfassen.
+ * Eine Instanz ist nicht threadsicher; mehrere Instanzen können sich jedoch ein
+ * {@link ReplayWindow} teilen, um Frames einer Verbindung parallel zu entschlüsseln.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.securechat.model.ChatChunk;
+import com.securechat.model.ChatMessage;
+import com.securechat.model.ImageMessage;
+import com.securechat.model.SystemMessage;
+import com.securechat.security.Base64Codec;
+import com.securechat.security.ChunkedCipher;
+import com.securechat.security.CryptoManager;
+import com.securechat.security.ReplayWindow;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.security.GeneralSecurityException;
+
+public class FrameDecoder {
+    private final CryptoManager cryptoManager;
+    private final ChunkedCipher chunkedCipher;
+    private final BufferPool bufferPool;
+    private final MessageCodec codec;
+    private final ReplayWindow replayWindow;
+    private JsonObject pending;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param cryptoManager Schlüsselverwaltung der Sitzung
+     * @param bufferPool    Pool für Zwischen- und Klartextpuffer
+     */
+    public FrameDecoder(CryptoManager cryptoManager, BufferPool bufferPool) {
+        this(cryptoManager, bufferPool, new ReplayWindow());
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param cryptoManager Schlüsselverwaltung der Sitzung
+     * @param bufferPool    Pool für Zwischen- und Klartextpuffer
+     * @param replayWindow  Fenster der empfangenen Sequenznummern, ggf. mit anderen Decodern geteilt
+     */
+    public FrameDecoder(CryptoManager cryptoManager, BufferPool bufferPool, ReplayWindow replayWindow) {
+        this.replayWindow = replayWindow;
+        this.cryptoManager = cryptoManager;
+        this.chunkedCipher = new ChunkedCipher(cryptoManager);
+        this.bufferPool = bufferPool;
+        this.codec = new MessageCodec(bufferPool);
+    }
+
+    /**
+     * Entschlüsselt einen Frame in einen gepoolten Buffer.
+     * Der Aufrufer muss den Buffer nach Gebrauch an den Pool zurückgeben.
+     *
+     * @param frame Base64-Frame zwischen Position und Limit; wird vollständig konsumiert
+     * @return Klartext im Lesemodus
+     * @throws GeneralSecurityException bei Entschlüsselungsfehlern oder wiederholten Frames
+     */
+    public ByteBuffer decrypt(ByteBuffer frame) throws GeneralSecurityException {
+        if (frame.hasRemaining() && frame.get(frame.position()) == FrameEncoder.CHUNKED_MARKER) {
+            return decryptChunked(frame);
+        }
+        ByteBuffer scratch = bufferPool.acquire(frame.remaining());
+        ByteBuffer plaintext = bufferPool.acquire(frame.remaining());
+        try {
+            cryptoManager.decryptFrame(frame, scratch, plaintext, replayWindow);
+            plaintext.flip();
+            return plaintext;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            bufferPool.release(plaintext);
+            throw e;
+        } finally {
+            bufferPool.release(scratch);
+        }
+    }
+
+    /**
+     * Vergisst alle bisher empfangenen Sequenznummern, damit eine Aufzeichnung erneut
+     * abgespielt werden kann.
+     */
+    public void resetReplayWindow() {
+        replayWindow.reset();
+    }
+
+    /**
+     * Entschlüsselt einen blockweise verschlüsselten Frame parallel.
+     *
+     * @param frame markierter Base64-Frame; wird vollständig konsumiert
+     * @return Klartext im Lesemodus
+     * @throws GeneralSecurityException bei Entschlüsselungsfehlern
+     */
+    private ByteBuffer decryptChunked(ByteBuffer frame) throws GeneralSecurityException {
+        frame.get();
+        ByteBuffer scratch = bufferPool.acquire(Base64Codec.maxDecodedLength(frame.remaining()));
+        ByteBuffer plaintext = null;
+        try {
+            int cipherLength = Base64Codec.decode(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(),
+                    scratch.array(), scratch.arrayOffset());
+            frame.position(frame.limit());
+            scratch.limit(cipherLength);
+            plaintext = bufferPool.acquire(ChunkedCipher.plaintextLength(scratch));
+            chunkedCipher.decrypt(scratch, plaintext, replayWindow);
+            plaintext.flip();
+            return plaintext;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            if (plaintext != null) {
+                bufferPool.release(plaintext);
+            }
+            throw e;
+        } finally {
+            bufferPool.release(scratch);
+        }
+    }
+
+    /**
+     * Parst den Klartext als JSON.
+     *
+     * @param plaintext Klartext im Lesemodus; wird vollständig konsumiert
+     * @return JSON-Objekt
+     * @throws CharacterCodingException bei ungültigem UTF-8
+     */
+    public JsonObject parse(ByteBuffer plaintext) throws CharacterCodingException {
+        return codec.decode(plaintext);
+    }
+
+    /**
+     * Dekodiert den Klartext und liest seinen Nachrichtentyp. Die Nachricht selbst wird
+     * unmittelbar danach mit {@link #readMessage(String)} gelesen.
+     *
+     * @param plaintext Klartext im Lesemodus; wird vollständig konsumiert
+     * @return Typ oder ein leerer String, wenn keiner angegeben ist
+     * @throws CharacterCodingException bei ungültigem UTF-8
+     */
+    public String readType(ByteBuffer plaintext) throws CharacterCodingException {
+        String type = codec.decodeType(plaintext);
+        if (type != null) {
+            pending = null;
+            return type;
+        }
+        // Typfeld nicht am Anfang: über den JSON-Baum lesen
+        pending = codec.readTree();
+        return typeOf(pending);
+    }
+
+    /**
+     * Liest die zuvor mit {@link #readType(ByteBuffer)} dekodierte Nachricht. Bekannte Typen
+     * werden direkt aus dem Text in ihre Nachrichtenklasse gelesen.
+     *
+     * @param type von {@link #readType(ByteBuffer)} gelieferter Typ
+     * @return Nachrichtenobjekt oder {@code null} bei unbekanntem Typ
+     */
+    public Object readMessage(String type) {
+        JsonObject json = pending;
+        pending = null;
+        if (json != null) {
+            return toMessage(json);
+        }
+        Class<?> messageClass = messageClass(type);
+        return messageClass == null ? null : codec.read(messageClass);
+    }
+
+    /**
+     * Ordnet ein JSON-Objekt anhand seines Typs der passenden Nachrichtenklasse zu.
+     *
+     * @param json geparstes JSON-Objekt
+     * @return Nachrichtenobjekt oder {@code null} bei unbekanntem Typ
+     */
+    public Object toMessage(JsonObject json) {
+        Class<?> messageClass = messageClass(typeOf(json));
+        return messageClass == null ? null : codec.fromJson(json, messageClass);
+    }
+
+    /**
+     * Gibt die Nachrichtenklasse zu einem Typ zurück.
+     *
+     * @param type Typfeld
+     * @return Nachrichtenklasse oder {@code null} bei unbekanntem Typ
+     */
+    private static Class<?> messageClass(String type) {
+        switch (type) {
+            case "SYSTEM":
+                return SystemMessage.class;
+            case "CHAT":
+                return ChatMessage.class;
+            case "CHUNK":
+                return ChatChunk.class;
+            case "IMAGE":
+                return ImageMessage.class;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Wandelt ein JSON-Objekt in eine bestimmte Nachrichtenklasse um, unabhängig vom Typfeld.
+     *
+     * @param <T>  Nachrichtentyp
+     * @param json geparstes JSON-Objekt
+     * @param type Zielklasse
+     * @return Nachrichtenobjekt
+     */
+    public <T> T toMessage(JsonObject json, Class<T> type) {
+        return codec.fromJson(json, type);
+    }
+
+    /**
+     * Durchläuft alle Stufen für einen Frame.
+     *
+     * @param frame Base64-Frame zwischen Position und Limit; wird vollständig konsumiert
+     * @return Nachrichtenobjekt oder {@code null} bei unbekanntem Typ
+     * @throws GeneralSecurityException bei Entschlüsselungsfehlern
+     * @throws CharacterCodingException bei ungültigem UTF-8
+     */
+    public Object decode(ByteBuffer frame) throws GeneralSecurityException, CharacterCodingException {
+        ByteBuffer plaintext = decrypt(frame);
+        try {
+            return readMessage(readType(plaintext));
+        } finally {
+            bufferPool.release(plaintext);
+        }
+    }
+
+    /**
+     * Liest den Nachrichtentyp eines JSON-Objekts.
+     *
+     * @param json geparstes JSON-Objekt
+     * @return Typ oder ein leerer String, wenn keiner angegeben ist
+     */
+    public static String typeOf(JsonObject json) {
+        JsonElement type = json.get("type");
+        return type == null || type.isJsonNull() ? "" : type.getAsString();
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Sendepipeline für verschlüsselte Frames.
+ * <p>
+ * Die Klasse {@code FrameEncoder} ist das Gegenstück zum {@link FrameDecoder}: Sie serialisiert
+ * eine Nachricht als JSON, verschlüsselt sie und liefert den Base64-Frame in einem gepoolten
+ * Buffer. Nachrichten ab {@link #CHUNKED_THRESHOLD} Byte werden mit dem {@link ChunkedCipher}
+ * parallel verschlüsselt; solche Frames beginnen mit {@link #CHUNKED_MARKER}, das nicht im
+ * Base64-Alphabet vorkommt. Im Chat erreichen nur Bildnachrichten diese Grösse; lange Texte
+ * zerlegt der {@link IOManager} vorher in Teile von wenigen Kilobyte, die jeweils als
+ * gewöhnlicher Frame verschlüsselt werden. Eine Instanz ist nicht threadsicher; Aufrufer aus mehreren Threads
+ * müssen sich selbst synchronisieren.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import com.securechat.security.Base64Codec;
+import com.securechat.security.ChunkedCipher;
+import com.securechat.security.CryptoManager;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+public class FrameEncoder {
+    public static final byte CHUNKED_MARKER = '~';
+    public static final int CHUNKED_THRESHOLD = 4 * ChunkedCipher.CHUNK_SIZE;
+
+    private final CryptoManager cryptoManager;
+    private final ChunkedCipher chunkedCipher;
+    private final BufferPool bufferPool;
+    private final MessageCodec codec;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param cryptoManager Schlüsselverwaltung der Sitzung
+     * @param bufferPool    Pool für Zwischen- und Frame-Buffer
+     */
+    public FrameEncoder(CryptoManager cryptoManager, BufferPool bufferPool) {
+        this.cryptoManager = cryptoManager;
+        this.chunkedCipher = new ChunkedCipher(cryptoManager);
+        this.bufferPool = bufferPool;
+        this.codec = new MessageCodec(bufferPool);
+    }
+
+    /**
+     * Kodiert und verschlüsselt eine Nachricht.
+     * Der Aufrufer muss den Frame nach Gebrauch an den Pool zurückgeben.
+     *
+     * @param message zu sendende Nachricht
+     * @return Base64-Frame im Lesemodus
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     */
+    public ByteBuffer encode(Object message) throws GeneralSecurityException {
+        ByteBuffer plaintext = codec.encode(message);
+        int length = plaintext.remaining();
+        if (length >= CHUNKED_THRESHOLD) {
+            return encodeChunked(plaintext);
+        }
+        ByteBuffer scratch = bufferPool.acquire(CryptoManager.ciphertextLength(length));
+        ByteBuffer frame = bufferPool.acquire(CryptoManager.frameLength(length));
+        try {
+            cryptoManager.encryptFrame(plaintext, scratch, frame);
+            frame.flip();
+            return frame;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            bufferPool.release(frame);
+            throw e;
+        } finally {
+            bufferPool.release(plaintext);
+            bufferPool.release(scratch);
+        }
+    }
+
+    /**
+     * Verschlüsselt einen grossen Klartext blockweise parallel.
+     *
+     * @param plaintext gepoolter Klartext; wird an den Pool zurückgegeben
+     * @return markierter Base64-Frame im Lesemodus
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     */
+    private ByteBuffer encodeChunked(ByteBuffer plaintext) throws GeneralSecurityException {
+        int cipherLength = ChunkedCipher.encryptedLength(plaintext.remaining());
+        ByteBuffer scratch = bufferPool.acquire(cipherLength);
+        ByteBuffer frame = bufferPool.acquire(1 + Base64Codec.encodedLength(cipherLength));
+        try {
+            chunkedCipher.encrypt(plaintext, scratch);
+            frame.put(CHUNKED_MARKER);
+            int written = Base64Codec.encode(scratch.array(), scratch.arrayOffset(), cipherLength,
+                    frame.array(), frame.arrayOffset() + frame.position());
+            frame.position(frame.position() + written);
+            frame.flip();
+            return frame;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            bufferPool.release(frame);
+            throw e;
+        } finally {
+            bufferPool.release(plaintext);
+            bufferPool.release(scratch);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Liest zeilenbasierte Frames aus einem Eingabestrom in einen gepoolten Buffer.
+ * <p>
+ * Die Klasse {@code FrameReader} ersetzt {@code BufferedReader.readLine()} im Empfangspfad.
+ * Die Bytes werden direkt in einen Buffer aus dem {@link BufferPool} gelesen und jeder Frame
+ * wird als Sicht auf diesen Buffer geliefert, ohne Strings oder Kopien zu erzeugen. Die Sicht ist
+ * nur bis zum nächsten Aufruf von {@link #nextFrame()} gültig. Frames, die länger als die
+ * konfigurierte Maximalgröße sind, werden mit einer {@link IOException} abgewiesen.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class FrameReader implements Closeable {
+    private static final int INITIAL_CAPACITY = 8192;
+
+    private final InputStream in;
+    private final BufferPool pool;
+    private final int maxFrameSize;
+    private ByteBuffer buffer;
+    private ByteBuffer frameView;
+    private int frameStart;
+    private int scanPosition;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param in           Eingabestrom, z. B. vom Socket
+     * @param pool         Pool, aus dem der Lesepuffer stammt
+     * @param maxFrameSize maximale Länge eines Frames in Byte
+     */
+    public FrameReader(InputStream in, BufferPool pool, int maxFrameSize) {
+        this.in = in;
+        this.pool = pool;
+        this.maxFrameSize = maxFrameSize;
+        this.buffer = pool.acquire(INITIAL_CAPACITY);
+        this.frameView = buffer.duplicate();
+    }
+
+    /**
+     * Liest den nächsten Frame (ohne Zeilenende).
+     *
+     * @return Sicht auf den Frame oder {@code null} am Ende des Stroms
+     * @throws IOException bei Lesefehlern oder zu grossen Frames
+     */
+    public ByteBuffer nextFrame() throws IOException {
+        while (true) {
+            byte[] array = buffer.array();
+            int end = buffer.position();
+            for (int i = scanPosition; i < end; i++) {
+                if (array[i] == '\n') {
+                    int frameEnd = i > frameStart && array[i - 1] == '\r' ? i - 1 : i;
+                    frameView.limit(frameEnd).position(frameStart);
+                    frameStart = i + 1;
+                    scanPosition = frameStart;
+                    return frameView;
+                }
+            }
+            scanPosition = end;
+            if (end - frameStart > maxFrameSize) {
+                throw new IOException("Frame überschreitet die maximale Größe von " + maxFrameSize + " Byte");
+            }
+            makeRoom();
+            int read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+            if (read < 0) {
+                return null;
+            }
+            buffer.position(buffer.position() + read);
+        }
+    }
+
+    /**
+     * Gibt den Lesepuffer an den Pool zurück. Der Eingabestrom wird nicht geschlossen.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            frameView = null;
+        }
+    }
+
+    /**
+     * Schafft Platz im Buffer, indem bereits gelieferte Frames verworfen werden
+     * oder der Buffer vergrößert wird.
+     */
+    private void makeRoom() {
+        if (buffer.hasRemaining()) {
+            return;
+        }
+        if (frameStart > 0) {
+            int pending = buffer.position() - frameStart;
+            System.arraycopy(buffer.array(), frameStart, buffer.array(), 0, pending);
+            buffer.position(pending);
+            scanPosition -= frameStart;
+            frameStart = 0;
+            if (buffer.hasRemaining()) {
+                return;
+            }
+        }
+        buffer = pool.grow(buffer, buffer.capacity() * 2);
+        frameView = buffer.duplicate();
+    }
+}
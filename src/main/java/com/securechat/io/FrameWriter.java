@@ -0,0 +1,65 @@
+/**
+ * Schreibt zeilenbasierte Frames auf einen Ausgabestrom.
+ * <p>
+ * Die Klasse {@code FrameWriter} ist das Gegenstück zum {@link FrameReader}. Sie schreibt
+ * Frames direkt aus (gepoolten) Heap-Buffern, ergänzt das Zeilenende und leert den Strom.
+ * Die Methode {@link #writeFrame(ByteBuffer)} ist synchronisiert, damit Frames verschiedener
+ * Sender-Threads nicht ineinander geschrieben werden. Mit einem {@link BandwidthScheduler.Peer}
+ * wird ein Frame in Abschnitten von einem Quantum geschrieben und vor jedem Abschnitt auf die
+ * Sendeerlaubnis gewartet, sodass auch grosse Frames andere Sitzungen nur kurz aufhalten.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+public class FrameWriter {
+    private final OutputStream out;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param out Ausgabestrom, z. B. vom Socket
+     */
+    public FrameWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 8192);
+    }
+
+    /**
+     * Schreibt einen Frame samt Zeilenende und leert den Strom.
+     *
+     * @param frame Heap-Buffer mit dem Frame zwischen Position und Limit; wird vollständig konsumiert
+     * @throws IOException bei Schreibfehlern
+     */
+    public synchronized void writeFrame(ByteBuffer frame) throws IOException {
+        writeFrame(frame, null);
+    }
+
+    /**
+     * Schreibt einen Frame samt Zeilenende abschnittsweise nach Zuteilung durch den Scheduler.
+     *
+     * @param frame  Heap-Buffer mit dem Frame zwischen Position und Limit; wird vollständig konsumiert
+     * @param pacing Anteil der Sitzung am {@link BandwidthScheduler} oder {@code null} ohne Begrenzung
+     * @throws IOException bei Schreibfehlern oder wenn das Warten unterbrochen wird
+     */
+    public synchronized void writeFrame(ByteBuffer frame, BandwidthScheduler.Peer pacing) throws IOException {
+        int slice = pacing == null ? Integer.MAX_VALUE : pacing.getQuantum();
+        while (frame.hasRemaining()) {
+            int length = Math.min(slice, frame.remaining());
+            if (pacing != null) {
+                pacing.acquire(length);
+            }
+            out.write(frame.array(), frame.arrayOffset() + frame.position(), length);
+            frame.position(frame.position() + length);
+            if (pacing != null && frame.hasRemaining()) {
+                out.flush();
+            }
+        }
+        out.write('\n');
+        out.flush();
+    }
+}
@@ -0,0 +1,399 @@
+/**
+ * Gleicht den Nachrichtenverlauf zweier Peers über Bereichs-Prüfsummen ab.
+ * <p>
+ * Die Klasse {@code HistorySync} vergleicht die Nachrichten eines {@link MessageStore}, die vor
+ * einem gemeinsamen Stichtag liegen, mit denen der Gegenseite, ohne den Verlauf zu übertragen.
+ * Beide Seiten sortieren ihre Nachrichten nach (Zeitstempel, {@link MessageStore#digest(int)})
+ * und tauschen für Schlüsselbereiche nur Anzahl und Summe der Kennungen aus. Stimmt ein Bereich
+ * überein, ist er erledigt; sonst teilt ihn die antwortende Seite in {@link #BRANCHES} Teile
+ * oder schickt, wenn er klein ist, die Kennungen selbst. Wer beide Listen kennt, sendet die
+ * fehlenden Nachrichten und fordert die eigenen fehlenden an. Die übertragene Datenmenge wächst
+ * so mit der Grösse des Unterschieds (mal dem Logarithmus des Verlaufs), nicht mit dem Verlauf.
+ * <p>
+ * Nachrichten (als Payload von System-Nachrichten mit Subtyp {@code HISTSYNC}):
+ * {@code BEGIN stichtag bereiche}, {@code RANGES bereiche}, {@code NEED kennung...},
+ * {@code ITEM zeit flags absender text}, {@code DONE} und {@code DONEACK}. Ein Bereich ist
+ * {@code obergrenze:F:anzahl:summe}, {@code obergrenze:I:kennung,...} oder {@code obergrenze:S};
+ * die Untergrenze ist die Obergrenze des vorherigen Bereichs. Nachrichten ab dem Stichtag gehören
+ * nicht zum Abgleich, damit laufende Nachrichten nicht doppelt ankommen. Gleiche Nachrichten
+ * (gleicher Absender, gleiche Sekunde, gleicher Text) zählen als eine.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import com.securechat.model.MessageStore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class HistorySync {
+    public static final int BRANCHES = 16;
+    public static final int LEAF_SIZE = 32;
+    private static final long CUTOFF_MARGIN_MS = 5000;
+    private static final int FLAG_AUTHOR = 1;
+    private static final int FLAG_IMAGE = 2;
+
+    private final MessageStore store;
+    private final Listener listener;
+    private Snapshot snapshot;
+    private final Set<Long> received = new HashSet<>();
+    private int receivedCount;
+    private int sentCount;
+
+    /**
+     * Empfängt Ergebnisse und ausgehende Nachrichten des Abgleichs.
+     */
+    public interface Listener {
+        /**
+         * Sendet eine Nachricht an die Gegenseite.
+         *
+         * @param payload Payload der System-Nachricht
+         */
+        void send(String payload);
+
+        /**
+         * Meldet eine nachgeholte Nachricht, die bereits im Verlauf gespeichert wurde.
+         *
+         * @param index Index im {@link MessageStore}
+         */
+        void onReceived(int index);
+
+        /**
+         * Meldet das Ende des Abgleichs.
+         *
+         * @param received Anzahl nachgeholter Nachrichten
+         * @param sent     Anzahl an die Gegenseite gesendeter Nachrichten
+         */
+        void onFinished(int received, int sent);
+    }
+
+    /**
+     * Sortierte Schlüssel aller Nachrichten vor dem Stichtag samt Präfixsummen der Kennungen.
+     */
+    private static final class Snapshot {
+        private final long cutoff;
+        private final long[] timestamps;
+        private final long[] ids;
+        private final int[] indices;
+        private final long[] prefix;
+        private Map<Long, Integer> positions;
+
+        private Snapshot(MessageStore store, long cutoff) {
+            this.cutoff = cutoff;
+            MessageStore.View view = store.view();
+            int size = store.size();
+            long[][] keys = new long[size][];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                long timestamp = view.moveTo(i).getTimestampMillis();
+                if (timestamp < cutoff) {
+                    keys[n++] = new long[] {timestamp, store.digest(i), i};
+                }
+            }
+            keys = Arrays.copyOf(keys, n);
+            Arrays.sort(keys, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+            timestamps = new long[n];
+            ids = new long[n];
+            indices = new int[n];
+            prefix = new long[n + 1];
+            for (int i = 0; i < n; i++) {
+                timestamps[i] = keys[i][0];
+                ids[i] = keys[i][1];
+                indices[i] = (int) keys[i][2];
+                prefix[i + 1] = prefix[i] + ids[i];
+            }
+        }
+
+        private int size() {
+            return ids.length;
+        }
+
+        /**
+         * Sucht die erste Position, deren Schlüssel nicht kleiner als die Grenze ist.
+         *
+         * @param bound Grenze
+         * @return Position zwischen 0 und {@link #size()}
+         */
+        private int position(Bound bound) {
+            int low = 0;
+            int high = ids.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (bound.compareTo(timestamps[mid], ids[mid]) > 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private Bound key(int position) {
+            return new Bound(timestamps[position], ids[position]);
+        }
+
+        private Integer find(long id) {
+            if (positions == null) {
+                positions = new HashMap<>();
+                for (int i = 0; i < ids.length; i++) {
+                    positions.put(ids[i], i);
+                }
+            }
+            return positions.get(id);
+        }
+    }
+
+    /**
+     * Schlüsselgrenze eines Bereichs; Bereiche schliessen ihre Obergrenze aus.
+     */
+    private record Bound(long timestamp, long id) {
+        private static final Bound MAX = new Bound(Long.MAX_VALUE, Long.MAX_VALUE);
+
+        private int compareTo(long otherTimestamp, long otherId) {
+            return timestamp != otherTimestamp ? Long.compare(timestamp, otherTimestamp) : Long.compare(id, otherId);
+        }
+
+        private static Bound parse(String value) {
+            if (value.equals("*")) {
+                return MAX;
+            }
+            int dot = value.indexOf('.');
+            return new Bound(Long.parseLong(value.substring(0, dot)), Long.parseUnsignedLong(value.substring(dot + 1), 16));
+        }
+
+        @Override
+        public String toString() {
+            return equals(MAX) ? "*" : timestamp + "." + Long.toHexString(id);
+        }
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param store    abzugleichender Verlauf
+     * @param listener Empfänger der ausgehenden Nachrichten und Ergebnisse
+     */
+    public HistorySync(MessageStore store, Listener listener) {
+        this.store = store;
+        this.listener = listener;
+    }
+
+    /**
+     * Beginnt den Abgleich als initiierende Seite. Stichtag ist der Beginn der aktuellen Sekunde
+     * abzüglich eines Sicherheitsabstands.
+     */
+    public synchronized void start() {
+        long now = System.currentTimeMillis();
+        begin(now - now % 1000 - CUTOFF_MARGIN_MS);
+        List<String> ranges = new ArrayList<>();
+        split(0, snapshot.size(), Bound.MAX, ranges);
+        listener.send("BEGIN " + snapshot.cutoff + " " + String.join(" ", ranges));
+    }
+
+    /**
+     * Verarbeitet eine Nachricht der Gegenseite.
+     *
+     * @param payload Payload der System-Nachricht
+     * @throws IllegalArgumentException bei ungültigen Nachrichten
+     */
+    public synchronized void onMessage(String payload) {
+        String[] parts = payload.split(" ", -1);
+        switch (parts[0]) {
+            case "BEGIN":
+                begin(Long.parseLong(parts[1]));
+                reconcile(parts, 2);
+                break;
+            case "RANGES":
+                requireSnapshot();
+                reconcile(parts, 1);
+                break;
+            case "NEED":
+                requireSnapshot();
+                for (int i = 1; i < parts.length; i++) {
+                    Integer position = snapshot.find(Long.parseUnsignedLong(parts[i], 16));
+                    if (position != null) {
+                        sendItem(position);
+                    }
+                }
+                break;
+            case "ITEM":
+                requireSnapshot();
+                receiveItem(parts);
+                break;
+            case "DONE":
+                listener.send("DONEACK");
+                listener.onFinished(receivedCount, sentCount);
+                break;
+            case "DONEACK":
+                listener.onFinished(receivedCount, sentCount);
+                break;
+            default:
+                throw new IllegalArgumentException("Unbekannte Abgleich-Nachricht " + parts[0]);
+        }
+    }
+
+    private void begin(long cutoff) {
+        snapshot = new Snapshot(store, cutoff);
+        received.clear();
+        receivedCount = 0;
+        sentCount = 0;
+    }
+
+    private void requireSnapshot() {
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Abgleich wurde nicht begonnen");
+        }
+    }
+
+    /**
+     * Beantwortet eine Liste von Bereichen. Fehlende Nachrichten der Gegenseite werden sofort
+     * gesendet, eigene fehlende gesammelt angefordert; sind danach alle Bereiche erledigt, endet
+     * der Abgleich.
+     *
+     * @param parts Teile der Nachricht
+     * @param first Index des ersten Bereichs
+     */
+    private void reconcile(String[] parts, int first) {
+        List<String> reply = new ArrayList<>();
+        List<String> needed = new ArrayList<>();
+        boolean open = false;
+        int lowerPosition = 0;
+        for (int i = first; i < parts.length; i++) {
+            if (parts[i].isEmpty()) {
+                continue;
+            }
+            String[] range = parts[i].split(":", -1);
+            Bound upper = Bound.parse(range[0]);
+            int upperPosition = snapshot.position(upper);
+            if (upperPosition < lowerPosition) {
+                throw new IllegalArgumentException("Bereiche nicht aufsteigend");
+            }
+            if (range[1].equals("F")) {
+                int count = Integer.parseInt(range[2]);
+                long sum = Long.parseUnsignedLong(range[3], 16);
+                if (count == upperPosition - lowerPosition
+                        && sum == snapshot.prefix[upperPosition] - snapshot.prefix[lowerPosition]) {
+                    skip(upper, reply);
+                } else {
+                    split(lowerPosition, upperPosition, upper, reply);
+                    open = true;
+                }
+            } else if (range[1].equals("I")) {
+                Set<Long> theirs = new HashSet<>();
+                if (!range[2].isEmpty()) {
+                    for (String id : range[2].split(",")) {
+                        theirs.add(Long.parseUnsignedLong(id, 16));
+                    }
+                }
+                Set<Long> mine = new HashSet<>();
+                for (int p = lowerPosition; p < upperPosition; p++) {
+                    if (mine.add(snapshot.ids[p]) && !theirs.contains(snapshot.ids[p])) {
+                        sendItem(p);
+                    }
+                }
+                for (long id : theirs) {
+                    if (!mine.contains(id)) {
+                        needed.add(Long.toHexString(id));
+                    }
+                }
+                skip(upper, reply);
+            } else if (range[1].equals("S")) {
+                skip(upper, reply);
+            } else {
+                throw new IllegalArgumentException("Unbekannte Bereichsart " + range[1]);
+            }
+            lowerPosition = upperPosition;
+        }
+        if (!needed.isEmpty()) {
+            listener.send("NEED " + String.join(" ", needed));
+        }
+        listener.send(open ? "RANGES " + String.join(" ", reply) : "DONE");
+    }
+
+    /**
+     * Fügt einen erledigten Bereich an; direkt aufeinanderfolgende werden zusammengefasst.
+     *
+     * @param upper Obergrenze
+     * @param reply bisherige Antwort
+     */
+    private static void skip(Bound upper, List<String> reply) {
+        if (!reply.isEmpty() && reply.get(reply.size() - 1).endsWith(":S")) {
+            reply.remove(reply.size() - 1);
+        }
+        reply.add(upper + ":S");
+    }
+
+    /**
+     * Beschreibt die eigenen Nachrichten eines Bereichs: kleine Bereiche (oder solche, deren
+     * Nachrichten alle denselben Schlüssel haben) als Liste der Kennungen, grössere als
+     * {@link #BRANCHES} Teilbereiche mit Anzahl und Summe.
+     *
+     * @param from  erste Position
+     * @param to    Position hinter dem Bereich
+     * @param upper Obergrenze des Bereichs
+     * @param out   Ausgabe
+     */
+    private void split(int from, int to, Bound upper, List<String> out) {
+        if (to - from <= LEAF_SIZE || snapshot.key(from).equals(snapshot.key(to - 1))) {
+            StringBuilder ids = new StringBuilder();
+            long previous = 0;
+            for (int p = from; p < to; p++) {
+                if (p > from && snapshot.ids[p] == previous) {
+                    continue;
+                }
+                if (ids.length() > 0) {
+                    ids.append(',');
+                }
+                ids.append(Long.toHexString(snapshot.ids[p]));
+                previous = snapshot.ids[p];
+            }
+            out.add(upper + ":I:" + ids);
+            return;
+        }
+        int start = from;
+        for (int k = 1; k <= BRANCHES; k++) {
+            Bound bound = k == BRANCHES ? upper : snapshot.key(from + (int) ((long) k * (to - from) / BRANCHES));
+            int end = k == BRANCHES ? to : snapshot.position(bound);
+            if (end == start && k < BRANCHES) {
+                continue;
+            }
+            out.add(bound + ":F:" + (end - start) + ":" + Long.toHexString(snapshot.prefix[end] - snapshot.prefix[start]));
+            start = end;
+        }
+    }
+
+    private void sendItem(int position) {
+        MessageStore.View view = store.view().moveTo(snapshot.indices[position]);
+        int flags = (view.isIncoming() ? 0 : FLAG_AUTHOR) | (view.isImage() ? FLAG_IMAGE : 0);
+        Base64.Encoder base64 = Base64.getEncoder();
+        listener.send("ITEM " + view.getTimestampMillis() + " " + flags + " "
+                + base64.encodeToString(view.getSenderIp().getBytes(StandardCharsets.UTF_8)) + " "
+                + base64.encodeToString(view.getText().getBytes(StandardCharsets.UTF_8)));
+        sentCount++;
+    }
+
+    private void receiveItem(String[] parts) {
+        long timestamp = Long.parseLong(parts[1]);
+        int flags = Integer.parseInt(parts[2]);
+        String senderIp = new String(Base64.getDecoder().decode(parts[3]), StandardCharsets.UTF_8);
+        String text = new String(Base64.getDecoder().decode(parts[4]), StandardCharsets.UTF_8);
+        boolean image = (flags & FLAG_IMAGE) != 0;
+        long id = MessageStore.digest(senderIp, timestamp, image, text);
+        if (timestamp >= snapshot.cutoff || snapshot.find(id) != null || !received.add(id)) {
+            return;
+        }
+        // Von der Gegenseite verfasste Nachrichten sind aus unserer Sicht empfangen
+        byte flag = (byte) (((flags & FLAG_AUTHOR) != 0 ? MessageStore.INCOMING : 0) | (image ? MessageStore.IMAGE : 0));
+        int index = store.append(text, senderIp, timestamp, flag);
+        receivedCount++;
+        listener.onReceived(index);
+    }
+}
@@ -1,148 +1,578 @@
 /**
  * Verantwortlich für die Ein- und Ausgabe (IO) im SecureChat-System.
  * <p>
- * Die Klasse {@code IOManager} verwaltet die verschlüsselte Kommunikation über einen Socket,
+ * Die Klasse {@code IOManager} verwaltet die verschlüsselte Kommunikation über eine {@link Connection},
  * verarbeitet eingehende Chat- und Systemnachrichten und steuert die Anzeige im zugehörigen Chatfenster.
- * Sie setzt auf Threads für Empfang und Verarbeitung, nutzt intern Warteschlangen und übernimmt
- * die Verschlüsselung/Entschlüsselung über den {@link CryptoManager}.
+ * Sie setzt auf Threads für Empfang, Verarbeitung und Senden, nutzt intern Warteschlangen und übernimmt
+ * die Verschlüsselung/Entschlüsselung über den {@link CryptoManager}. Alle Threads und Ressourcen einer
+ * Sitzung gehören einem {@link SessionScope}.
  * 
  * @author Milos Hornik
  */
 package com.securechat.io;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.securechat.gui.ChatWindow;
+import com.securechat.gui.ChatWindowAccess;
 import com.securechat.gui.StartWindowAccess;
+import com.securechat.model.ChatChunk;
 import com.securechat.model.ChatMessage;
+import com.securechat.model.ImageMessage;
+import com.securechat.model.MessageStore;
 import com.securechat.model.SystemMessage;
 import com.securechat.security.CryptoManager;
+import com.securechat.security.KeyRotator;
+import com.securechat.security.PasskeyManager;
+import com.securechat.transport.Connection;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
 
 import java.io.*;
 import java.awt.Color;
 import java.net.InetAddress;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class IOManager implements IOAccess {
-    private final Socket socket;
+    private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_IMAGE_SIZE = 8 * 1024 * 1024;
+    private static final int STREAM_CHUNK_CHARS = 8192;
+    private static final int MAX_OPEN_STREAMS = 16;
+    private static final int CLOCK_SYNC_INITIAL_PROBES = 4;
+    private static final long CLOCK_SYNC_INITIAL_INTERVAL_MS = 250;
+    private static final long CLOCK_SYNC_INTERVAL_MS = 10_000;
+    private static final int SYSTEM_HANDLER_THREADS = 2;
+    private static final long REMOTE_DISCONNECT_DELAY_MS = 5000;
+    private static final long CLOSE_FLUSH_MS = 500;
+    private static final long BLOB_OFFER_TIMEOUT_MS = 2000;
+    private static final int MAX_PROMISED_BLOBS = 16;
+    private static final int MAX_EXCHANGED_BLOBS = 1024;
+    private static final int MAX_HISTORIES = 8;
+    private static final Map<String, MessageStore> HISTORIES = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MessageStore> eldest) {
+                    return size() > MAX_HISTORIES;
+                }
+            });
+
+    private final Connection connection;
     private final CryptoManager cryptoManager;
-    private final ChatWindow chatWindow;
+    private final KeyRotator keyRotator;
+    private final ChatWindowAccess chatWindow;
     private final StartWindowAccess startWindowAccess;
-    private final BlockingQueue<ChatMessage> chatQueue = new LinkedBlockingQueue<>();
-    private final BlockingQueue<SystemMessage> systemQueue = new LinkedBlockingQueue<>();
-    private final Gson gson = new Gson();
+    private final BlockingQueue<Object> chatQueue = new LinkedBlockingQueue<>();
+    private final SystemMessageDispatcher systemDispatcher;
+    private final AtomicBoolean remoteDisconnected = new AtomicBoolean();
+    private final BufferPool bufferPool = BufferPool.shared();
+    private final ReceivePipeline receivePipeline;
+    private final FrameEncoder frameEncoder;
+    private final FrameWriter frameWriter;
+    private final SendQueue sendQueue;
+    private final TrafficRecorder trafficRecorder;
+    private final BandwidthScheduler.Peer bandwidth;
+    private final LatencyTracer latencyTracer = new LatencyTracer();
+    private final MessageStore messageStore;
+    private final HistorySync historySync;
+    private final BlobCache blobCache = BlobCache.shared();
+    private final Map<Long, CompletableFuture<Boolean>> blobOffers = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> promisedBlobs = new ConcurrentHashMap<>();
+    private final AtomicLong nextBlobOffer = new AtomicLong();
+    private final Set<String> exchangedBlobs = Collections.synchronizedSet(Collections.newSetFromMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_EXCHANGED_BLOBS;
+                }
+            }));
+    private final SessionScope scope = new SessionScope("IOManager");
+    private final String localIp;
+    private final boolean isHost;
 
     /**
-     * Konstruktor, der die Instanzen initialisiert.
+     * Konstruktor, der die Instanzen initialisiert. Der Verlauf gehört zur Gegenstelle und bleibt
+     * über Verbindungsabbrüche hinweg erhalten; gehalten werden die Verläufe der
+     * {@value #MAX_HISTORIES} zuletzt verbundenen Gegenstellen.
      * 
-     * @param socket           Verwendeter Socket
-     * @param passkey          Schlüssel für Verschlüsselung
+     * @param connection       Verwendete Verbindung eines beliebigen Transports
+     * @param sessionKey       ausgehandelter Sitzungsschlüssel
+     * @param peerId           Kennung der Gegenstelle, siehe {@link PasskeyManager#peerId(String)}
      * @param isHost           {@code true} wenn Host, {@code false} wenn Client
      * @param startWindowAccess Zugriff auf das Startfenster für Callbacks
+     * @throws IOException wenn der Ausgabestrom der Verbindung nicht verfügbar ist
+     */
+    public IOManager(Connection connection, byte[] sessionKey, String peerId, Boolean isHost, StartWindowAccess startWindowAccess) throws IOException {
+        this(connection, sessionKey, peerId, isHost, startWindowAccess, ioManager -> new ChatWindow(isHost, ioManager, startWindowAccess));
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert und die Anzeige über die angegebene Fabrik
+     * erzeugt, z. B. ohne Bildschirm.
+     * 
+     * @param connection        Verwendete Verbindung eines beliebigen Transports
+     * @param sessionKey        ausgehandelter Sitzungsschlüssel
+     * @param peerId            Kennung der Gegenstelle, siehe {@link PasskeyManager#peerId(String)}
+     * @param isHost            {@code true} wenn Host, {@code false} wenn Client
+     * @param startWindowAccess Zugriff auf das Startfenster für Callbacks
+     * @param chatWindowFactory erzeugt die Anzeige für diesen IO-Manager
+     * @throws IOException wenn der Ausgabestrom der Verbindung nicht verfügbar ist
      */
-    public IOManager(Socket socket, String passkey, Boolean isHost, StartWindowAccess startWindowAccess) {
-        this.socket = socket;
-        this.cryptoManager = new CryptoManager(passkey);
+    public IOManager(Connection connection, byte[] sessionKey, String peerId, Boolean isHost, StartWindowAccess startWindowAccess,
+                     Function<IOManager, ChatWindowAccess> chatWindowFactory) throws IOException {
+        this.connection = connection;
+        this.isHost = isHost;
+        this.messageStore = HISTORIES.computeIfAbsent(peerId, peer -> new MessageStore());
+        this.historySync = new HistorySync(messageStore, new HistorySync.Listener() {
+            @Override
+            public void send(String payload) {
+                sendSystemMessage("HISTSYNC", payload);
+            }
+
+            @Override
+            public void onReceived(int index) {
+                chatWindow.appendBackfilled(index);
+            }
+
+            @Override
+            public void onFinished(int received, int sent) {
+                startWindowAccess.onStatusUpdate("Verlauf abgeglichen: " + received + " Nachrichten nachgeholt, " + sent + " gesendet");
+            }
+        });
+        this.cryptoManager = new CryptoManager(sessionKey);
+        this.receivePipeline = scope.register(new ReceivePipeline(cryptoManager, bufferPool, ReceivePipeline.defaultThreads(), this::deliver));
+        this.frameEncoder = new FrameEncoder(cryptoManager, bufferPool);
+        this.frameWriter = new FrameWriter(connection.getOutputStream());
+        this.sendQueue = scope.register(new SendQueue(this::writeMessage));
+        this.trafficRecorder = TrafficRecorder.fromSystemProperty(bufferPool);
+        if (trafficRecorder != null) {
+            scope.register(trafficRecorder::close);
+            trafficRecorder.recordKey(0, sessionKey);
+        }
+        this.keyRotator = new KeyRotator(cryptoManager, sessionKey, isHost, new KeyRotator.Listener() {
+            @Override
+            public void sendRekey(int epoch, byte[] publicKey) throws IOException {
+                SystemMessage message = new SystemMessage("REKEY", epoch + " " + Base64.getEncoder().encodeToString(publicKey), localIp);
+                awaitSent(sendQueue.send(() -> message));
+            }
+
+            @Override
+            public void onKeyInstalled(int epoch, byte[] key) {
+                if (trafficRecorder != null) {
+                    trafficRecorder.recordKey(epoch, key);
+                }
+            }
+
+            @Override
+            public void onRekeyFailed(String reason) {
+                startWindowAccess.onStatusUpdate(StatusLog.Level.WARN, "Schlüsselwechsel fehlgeschlagen: " + reason);
+            }
+        });
+        scope.register(connection);
+        this.bandwidth = scope.register(BandwidthScheduler.shared().register(connection.getRemoteDescription()));
+        this.systemDispatcher = scope.register(new SystemMessageDispatcher(SYSTEM_HANDLER_THREADS, startWindowAccess));
+        this.localIp = InetAddress.getLocalHost().getHostAddress();
         this.startWindowAccess = startWindowAccess;
-        this.chatWindow = new ChatWindow(isHost, this, startWindowAccess);
+        this.chatWindow = chatWindowFactory.apply(this);
+        registerSystemHandlers();
+    }
+
+    /**
+     * Trägt die Handler für alle bekannten Subtypen von System-Nachrichten ein.
+     */
+    private void registerSystemHandlers() {
+        systemDispatcher.register("REKEY", message -> {
+            String[] parts = message.getPayload().split(" ");
+            try {
+                keyRotator.onRekeyMessage(Integer.parseInt(parts[0]), Base64.getDecoder().decode(parts[1]));
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                startWindowAccess.onStatusUpdate(StatusLog.Level.WARN, "Ungültige Schlüsselwechsel-Nachricht verworfen");
+            }
+        });
+        systemDispatcher.register("REMOTESTATE", message -> {
+            if (message.getPayload().equals("DISCONNECT") && remoteDisconnected.compareAndSet(false, true)) {
+                chatWindow.appendMessage("[SYSTEM] " + message.getSenderIp() + " hat die Verbindung getrennt", Color.RED);
+                chatWindow.appendMessage("Das Fenster wird in " + (REMOTE_DISCONNECT_DELAY_MS / 1000) + " Sekunden geschlossen.", Color.RED);
+                systemDispatcher.schedule(() -> {
+                    chatWindow.dispose();
+                    startWindowAccess.onRemoteDisconnect();
+                }, REMOTE_DISCONNECT_DELAY_MS);
+            }
+        });
+        systemDispatcher.register("BLOB", message -> {
+            String[] parts = message.getPayload().split(" ");
+            try {
+                if (parts[0].equals("OFFER")) {
+                    long offer = Long.parseLong(parts[1]);
+                    sendSystemMessage("BLOB", (promiseBlob(parts[2]) ? "HAVE " : "WANT ") + offer);
+                } else if (parts[0].equals("HAVE") || parts[0].equals("WANT")) {
+                    CompletableFuture<Boolean> answer = blobOffers.remove(Long.parseLong(parts[1]));
+                    if (answer != null) {
+                        answer.complete(parts[0].equals("HAVE"));
+                    }
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                startWindowAccess.onStatusUpdate(StatusLog.Level.WARN, "Ungültige Blob-Nachricht verworfen");
+            }
+        });
+        systemDispatcher.register("HISTSYNC", message -> {
+            try {
+                historySync.onMessage(message.getPayload());
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                startWindowAccess.onStatusUpdate(StatusLog.Level.WARN, "Ungültige Abgleich-Nachricht verworfen: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Sagt einen angebotenen Inhalt zu, wenn er mit dieser Gegenstelle ausgetauscht wurde und
+     * noch im {@link BlobCache} liegt, und hält ihn fest, bis die Referenz eintrifft oder die
+     * Zusage verfällt. Inhalte aus anderen Sitzungen werden nicht zugesagt, sonst könnte eine
+     * Gegenstelle per Angebot abfragen, was im gemeinsamen Cache liegt.
+     * 
+     * @param hash angebotener Hash
+     * @return {@code true}, wenn der Inhalt vorhanden ist und nicht gesendet werden muss
+     */
+    private boolean promiseBlob(String hash) {
+        if (!BlobCache.isValidHash(hash) || !exchangedBlobs.contains(hash) || promisedBlobs.size() >= MAX_PROMISED_BLOBS) {
+            return false;
+        }
+        byte[] data = blobCache.get(hash);
+        if (data == null) {
+            return false;
+        }
+        promisedBlobs.put(hash, data);
+        systemDispatcher.schedule(() -> promisedBlobs.remove(hash, data), 4 * BLOB_OFFER_TIMEOUT_MS);
+        return true;
+    }
+
+    /**
+     * Holt den Inhalt einer empfangenen Referenz.
+     * 
+     * @param hash Hash aus der Referenz
+     * @return Inhalt oder {@code null}, wenn er weder zugesagt noch im Cache ist
+     */
+    private byte[] resolveBlob(String hash) {
+        byte[] data = promisedBlobs.remove(hash);
+        return data != null ? data : blobCache.get(hash);
+    }
+
+    /**
+     * Legt einen grossen Inhalt im {@link BlobCache} ab und bietet ihn der Gegenseite per Hash an
+     * (System-Nachricht {@code BLOB}: {@code "OFFER id hash"}, Antwort {@code "HAVE id"} oder
+     * {@code "WANT id"}). Blockiert, bis die Antwort eintrifft, höchstens aber
+     * {@link #BLOB_OFFER_TIMEOUT_MS}; bleibt sie aus, wird der Inhalt vollständig gesendet.
+     * 
+     * @param content zu sendender Inhalt
+     * @return Hash, wenn die Gegenseite den Inhalt bereits hat, sonst {@code null}
+     * @throws InterruptedException wenn der sendende Thread unterbrochen wird
+     */
+    private String offerBlob(byte[] content) throws InterruptedException {
+        if (content.length < BlobCache.MIN_BLOB_SIZE) {
+            return null;
+        }
+        String hash = blobCache.put(content);
+        exchangedBlobs.add(hash);
+        long offer = nextBlobOffer.incrementAndGet();
+        CompletableFuture<Boolean> answer = new CompletableFuture<>();
+        blobOffers.put(offer, answer);
+        try {
+            sendSystemMessage("BLOB", "OFFER " + offer + " " + hash);
+            return answer.get(BLOB_OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS) ? hash : null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        } finally {
+            blobOffers.remove(offer);
+        }
     }
 
     /**
-     * Startet die Threads für Empfang und Verarbeitung von Nachrichten.
+     * Startet die Threads für Empfang und Verarbeitung von Nachrichten. Der Client gleicht danach
+     * den Verlauf über {@link HistorySync} (System-Nachrichten mit Subtyp {@code HISTSYNC}) mit dem
+     * Host ab; nachgeholte Nachrichten werden im Chatfenster markiert.
      */
     public void startCommunicationThreads() {
+        scope.start("Sender-Thread", sendQueue::run);
         startReceiver();
         startChatHandler();
-        startSystemHandler();
+        startKeyRotation();
+        startClockSync();
+        if (!isHost) {
+            historySync.start();
+        }
     }
 
     /**
-     * Thread, der verschlüsselte Nachrichten vom Socket liest und in die passenden Queues stellt.
+     * Beendet die Sitzung: gibt bereits eingereihten Chat- und System-Nachrichten (etwa der
+     * Abmeldung) bis zu {@link #CLOSE_FLUSH_MS} Zeit, schliesst Verbindung und Aufzeichnung,
+     * unterbricht alle Threads und schliesst das Chatfenster. Mehrfache Aufrufe sind wirkungslos.
+     */
+    public void close() {
+        if (scope.isClosed()) {
+            return;
+        }
+        sendQueue.flush(CLOSE_FLUSH_MS);
+        scope.close();
+        chatQueue.clear();
+        closeChatWindow();
+    }
+
+    /**
+     * Wartet, bis alle Threads dieser Sitzung beendet sind.
+     * 
+     * @param timeoutMs maximale Wartezeit in Millisekunden
+     * @return {@code true}, wenn alle Threads beendet sind
+     * @throws InterruptedException wenn der wartende Thread unterbrochen wird
+     */
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        boolean threadsDone = scope.awaitTermination(timeoutMs);
+        return systemDispatcher.awaitTermination(Math.max(0, deadline - System.currentTimeMillis())) && threadsDone;
+    }
+
+    /**
+     * Thread, der Frames von der Verbindung liest und der {@link ReceivePipeline} übergibt. Entschlüsselt
+     * und dekodiert wird im Pool der Pipeline, die Ergebnisse verteilt {@link #deliver(ReceivePipeline.Decoded)}.
      */
     private void startReceiver() {
-        Thread receiverThread = new Thread(() -> {
-            try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
-                String line;
-                while ((line = in.readLine()) != null) {
-                    try {
-                        String decrypted = cryptoManager.decrypt(line);
-                        JsonObject jsonObject = JsonParser.parseString(decrypted).getAsJsonObject();
-                        String type = jsonObject.get("type").getAsString();
-                        if (type.equals("SYSTEM")) {
-                            SystemMessage sysMSG = gson.fromJson(decrypted, SystemMessage.class);
-                            systemQueue.put(sysMSG);                            
-                        } else if (type.equals("CHAT")) {
-                            ChatMessage msg = gson.fromJson(decrypted, ChatMessage.class);
-                            chatQueue.put(msg);
-                        } else {
-                            chatWindow.appendMessage("[Unbekannter Nachrichtentyp] " + type, Color.ORANGE);
-                        }
-                    } catch (Exception ex) {
-                        chatWindow.appendMessage("[Fehler beim Entschlüsseln] " + ex.getMessage(), Color.ORANGE);
+        scope.start("Receiver-Thread", () -> {
+            try (FrameReader in = new FrameReader(connection.getInputStream(), bufferPool, MAX_FRAME_SIZE)) {
+                ByteBuffer frame;
+                while ((frame = in.nextFrame()) != null) {
+                    long receivedMicros = LatencyTracer.nowMicros();
+                    long receivedNanos = System.nanoTime();
+                    if (trafficRecorder != null) {
+                        trafficRecorder.recordInbound(frame);
                     }
+                    receivePipeline.submit(frame, receivedMicros, receivedNanos);
                 }
             } catch (IOException e) {
-                chatWindow.appendMessage("[Verbindung unerwartet getrennt] " + e.getMessage(), Color.RED);
+                if (!scope.isClosed()) {
+                    chatWindow.appendMessage("[Verbindung unerwartet getrennt] " + e.getMessage(), Color.RED);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (trafficRecorder != null) {
+                    trafficRecorder.close();
+                }
             }
-        }, "Receiver-Thread");
-        receiverThread.start();
+        });
+    }
+
+    /**
+     * Verteilt ein dekodiertes Ergebnis der {@link ReceivePipeline} in Empfangsreihenfolge.
+     * 
+     * @param decoded Ergebnis der Pipeline
+     * @throws InterruptedException wenn der ausliefernde Thread unterbrochen wird
+     */
+    private void deliver(ReceivePipeline.Decoded decoded) throws InterruptedException {
+        Object message = decoded.message();
+        if (decoded.error() != null) {
+            chatWindow.appendMessage("[Fehler beim Entschlüsseln] " + decoded.error().getMessage(), Color.ORANGE);
+        } else if (message instanceof SystemMessage sysMSG && sysMSG.getSubtype().equals("CLOCKSYNC")) {
+            handleClockSync(sysMSG.getPayload(), decoded.receivedMicros());
+        } else if (message instanceof SystemMessage sysMSG) {
+            systemDispatcher.dispatch(sysMSG);
+        } else if (message instanceof ChatMessage reference && reference.getBlobHash() != null) {
+            byte[] text = resolveBlob(reference.getBlobHash());
+            if (text == null) {
+                chatWindow.appendMessage("[Nachricht nicht im Cache] " + reference.getSenderIp(), Color.ORANGE);
+                return;
+            }
+            chatQueue.put(new ReceivedChat(reference.resolve(new String(text, StandardCharsets.UTF_8)), decoded.receivedMicros(),
+                    (decoded.decodedNanos() - decoded.receivedNanos()) / 1_000, System.nanoTime()));
+        } else if (message instanceof ChatMessage msg) {
+            chatQueue.put(new ReceivedChat(msg, decoded.receivedMicros(),
+                    (decoded.decodedNanos() - decoded.receivedNanos()) / 1_000, System.nanoTime()));
+        } else if (message instanceof ChatChunk) {
+            chatQueue.put(message);
+        } else if (message instanceof ImageMessage image) {
+            byte[] imageData = image.getBlobHash() != null ? resolveBlob(image.getBlobHash()) : image.getImageData();
+            if (imageData == null) {
+                chatWindow.appendMessage("[Bild nicht im Cache] " + image.getFileName(), Color.ORANGE);
+                return;
+            }
+            if (image.getBlobHash() == null && imageData.length >= BlobCache.MIN_BLOB_SIZE) {
+                exchangedBlobs.add(blobCache.put(imageData));
+            }
+            try {
+                chatWindow.storeImage(image.getImageId(), imageData);
+            } catch (IOException e) {
+                chatWindow.appendMessage("[Fehler beim Entschlüsseln] " + e.getMessage(), Color.ORANGE);
+                return;
+            }
+            chatWindow.appendStored(messageStore.appendImage(image, true));
+        } else {
+            chatWindow.appendMessage("[Unbekannter Nachrichtentyp] " + decoded.type(), Color.ORANGE);
+        }
     }
 
     /**
      * Thread zur Verarbeitung und Anzeige von Chat-Nachrichten.
+     * Teile gestreamter Nachrichten werden sofort angezeigt, sobald sie eintreffen.
      */
     private void startChatHandler() {
-        Thread chatHandlerThread = new Thread(() -> {
-            while (true) {
+        scope.start("ChatHandler-Thread", () -> {
+            Map<String, Integer> storedStreams = new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > MAX_OPEN_STREAMS;
+                }
+            };
+            // Auch den geschlossenen Scope prüfen: invokeLater verschluckt eine Unterbrechung,
+            // die eintrifft, während es den Event-Dispatch-Thread startet
+            while (!Thread.currentThread().isInterrupted() && !scope.isClosed()) {
                 try {
-                    ChatMessage msg = chatQueue.take();
-                    chatWindow.appendMessage("[" + msg.getTimestamp() + "] " + msg.getSenderIp() + ": " + msg.getText(), Color.BLUE);
+                    Object next = chatQueue.take();
+                    if (next instanceof ReceivedChat received) {
+                        ChatMessage msg = received.message();
+                        int index = messageStore.append(msg, true);
+                        long renderStart = System.nanoTime();
+                        long queueMicros = (renderStart - received.queuedNanos()) / 1_000;
+                        chatWindow.appendStored(index);
+                        // Erst wenn der Event-Dispatch-Thread hier ankommt, ist die Einfügung sichtbar
+                        SwingUtilities.invokeLater(() -> latencyTracer.record(msg.getSentMicros(), received.receivedMicros(),
+                                received.decryptMicros(), queueMicros, (System.nanoTime() - renderStart) / 1_000));
+                    } else if (next instanceof ChatChunk chunk) {
+                        if (chunk.getIndex() == 0) {
+                            int index = messageStore.append(chunk.getText(), chunk.getSenderIp(),
+                                    MessageStore.timestampMillis(chunk.getSentMicros(), chunk.getTimestamp()), MessageStore.INCOMING);
+                            storedStreams.put(chunk.getStreamId(), index);
+                            chatWindow.beginStream(chunk.getStreamId(), index);
+                        } else if (storedStreams.containsKey(chunk.getStreamId())) {
+                            messageStore.extend(storedStreams.get(chunk.getStreamId()), chunk.getText());
+                        }
+                        chatWindow.appendStream(chunk.getStreamId(), chunk.getIndex());
+                        if (chunk.isLast()) {
+                            Integer stored = storedStreams.remove(chunk.getStreamId());
+                            if (stored != null) {
+                                cacheStreamedText(stored);
+                            }
+                            chatWindow.endStream(chunk.getStreamId());
+                        }
+                    }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
                 }
             }
-        }, "ChatHandler-Thread");
-        chatHandlerThread.start();
+        });
     }
 
     /**
-     * Thread zur Verarbeitung und Anzeige von System-Nachrichten.
+     * Legt einen vollständig empfangenen, gestreamten Text im {@link BlobCache} ab, damit er bei
+     * einer Wiederholung nicht erneut übertragen werden muss.
+     * 
+     * @param index Index des Textes im {@link MessageStore}
      */
-    private void startSystemHandler() {
-        Thread systemHandlerThread = new Thread(() -> {
-            while (true) {
+    private void cacheStreamedText(int index) {
+        byte[] text = messageStore.view().moveTo(index).getText().getBytes(StandardCharsets.UTF_8);
+        if (text.length >= BlobCache.MIN_BLOB_SIZE) {
+            exchangedBlobs.add(blobCache.put(text));
+        }
+    }
+
+    /**
+     * Thread, der den Sitzungsschlüssel bei Bedarf im Hintergrund wechselt.
+     */
+    private void startKeyRotation() {
+        scope.start("KeyRotation-Thread", () -> {
+            while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    SystemMessage sysMSG = systemQueue.take();
-                    String subtype = sysMSG.getSubtype();
-                    String payload = sysMSG.getPayload();
-                    String senderIP = sysMSG.getSenderIp();
-                    
-                    if (subtype.equals("REMOTESTATE")) {
-                        if (payload.equals("DISCONNECT")) {
-                            chatWindow.appendMessage("[SYSTEM] " + senderIP + " hat die Verbindung getrennt", Color.RED);
-                            chatWindow.appendMessage("Das Fenster wird in 5 Sekunden geschlossen.", Color.RED);
-                            try {
-                                Thread.sleep(5000);
-                                chatWindow.dispose();
-                                startWindowAccess.onRemoteDisconnect();
-                                break;
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                                break;
-                            }   
-                        }
-                    }
+                    keyRotator.process(1000);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
-                    break;
                 }
             }
-        }, "SystemHandler-Thread");
-        systemHandlerThread.start();
+        });
+    }
+
+    /**
+     * Thread, der den Uhrenversatz zur Gegenstelle misst: zu Beginn einige Messungen in
+     * kurzem Abstand, danach in grösseren Abständen, um Drift nachzuführen.
+     */
+    private void startClockSync() {
+        scope.start("ClockSync-Thread", () -> {
+            for (int probe = 0; !Thread.currentThread().isInterrupted(); probe++) {
+                sendSystemMessage(() -> new SystemMessage("CLOCKSYNC", "REQ " + LatencyTracer.nowMicros(), localIp));
+                try {
+                    Thread.sleep(probe < CLOCK_SYNC_INITIAL_PROBES ? CLOCK_SYNC_INITIAL_INTERVAL_MS : CLOCK_SYNC_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    /**
+     * Beantwortet eine Uhrenanfrage oder übernimmt eine Antwort in den {@link LatencyTracer}.
+     * Läuft im ausliefernden Thread der {@link ReceivePipeline}.
+     * 
+     * @param payload        {@code "REQ t0"} oder {@code "RESP t0 t1 t2"}
+     * @param receivedMicros lokaler Empfangszeitpunkt des Frames
+     */
+    private void handleClockSync(String payload, long receivedMicros) {
+        String[] parts = payload.split(" ");
+        try {
+            if (parts[0].equals("REQ")) {
+                long requestSent = Long.parseLong(parts[1]);
+                // Nur einreihen: die Auslieferung darf nie auf die Verbindung warten. Der
+                // Sendezeitpunkt t2 wird erst im Sende-Thread direkt vor dem Kodieren gelesen.
+                sendSystemMessage(() -> new SystemMessage("CLOCKSYNC",
+                        "RESP " + requestSent + " " + receivedMicros + " " + LatencyTracer.nowMicros(), localIp));
+            } else if (parts[0].equals("RESP")) {
+                latencyTracer.addClockSample(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]), receivedMicros);
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            startWindowAccess.onStatusUpdate(StatusLog.Level.WARN, "Ungültige Uhrenabgleich-Nachricht verworfen");
+        }
+    }
+
+    /**
+     * Gibt die Latenzmessung dieser Sitzung zurück.
+     * 
+     * @return Latenzmessung
+     */
+    public LatencyTracer getLatencyTracer() {
+        return latencyTracer;
+    }
+
+    /**
+     * Gibt den Anteil dieser Sitzung am {@link BandwidthScheduler} samt Kennzahlen zurück.
+     * 
+     * @return Anteil der Sitzung
+     */
+    public BandwidthScheduler.Peer getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * Gibt den Nachrichtenverlauf dieser Sitzung zurück.
+     * 
+     * @return Nachrichtenverlauf
+     */
+    public MessageStore getMessageStore() {
+        return messageStore;
     }
 
     /**
@@ -152,35 +582,186 @@ public class IOManager implements IOAccess {
         try {
             String text = chatWindow.getInputText().trim();
             if (text.isEmpty()) return;
-            String localIp = InetAddress.getLocalHost().getHostAddress();
             ChatMessage message = new ChatMessage(text, localIp);
-            chatWindow.appendMessage("[" + message.getTimestamp() + "] " + message.getSenderIp() + ": " + message.getText(), Color.GRAY);
-            String json = gson.toJson(message);
-            String encrypted = cryptoManager.encrypt(json);
-            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-            out.println(encrypted);
+            chatWindow.appendStored(messageStore.append(message, false));
             chatWindow.clearInput();
+            if (text.length() > STREAM_CHUNK_CHARS) {
+                scope.start("StreamSender-Thread", () -> sendStreamed(message));
+            } else {
+                sendQueue.send(() -> message).whenComplete((sent, e) -> {
+                    if (e != null && !scope.isClosed()) {
+                        chatWindow.appendMessage("[Unerwarteter Fehler beim Senden] " + e.getMessage(), Color.ORANGE);
+                    }
+                });
+            }
         } catch (Exception e) {
             chatWindow.appendMessage("[Unerwarteter Fehler beim Senden] " + e.getMessage(), Color.ORANGE);
         }
     }
 
     /**
-     * Sendet eine System-Nachricht (z. B. für Trennungsereignisse).
+     * Sendet eine große Nachricht in Teilen von höchstens {@link #STREAM_CHUNK_CHARS} Zeichen.
+     * Jeder Teil wird einzeln kodiert, verschlüsselt und geschrieben, sodass weder Sender noch
+     * Empfänger die gesamte Nachricht in einem Frame puffern müssen und andere Nachrichten
+     * zwischen den Teilen gesendet werden können. Kennt die Gegenseite den Text bereits, wird nur
+     * eine Referenz gesendet.
+     * 
+     * @param message zu sendende Nachricht
+     */
+    private void sendStreamed(ChatMessage message) {
+        String text = message.getText();
+        String streamId = UUID.randomUUID().toString();
+        try {
+            String known = offerBlob(text.getBytes(StandardCharsets.UTF_8));
+            if (known != null) {
+                ChatMessage reference = message.toReference(known);
+                awaitSent(sendQueue.send(() -> reference));
+                return;
+            }
+            CompletableFuture<Void> sent = null;
+            for (int start = 0, index = 0; start < text.length() && !scope.isClosed(); index++) {
+                if (sent != null && sent.isCompletedExceptionally()) {
+                    break;
+                }
+                int end = Math.min(text.length(), start + STREAM_CHUNK_CHARS);
+                if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end--; // Ersatzzeichenpaare nicht zwischen zwei Teilen trennen
+                }
+                boolean last = end == text.length();
+                ChatChunk chunk = new ChatChunk(streamId, index, last, text.substring(start, end),
+                        message.getSenderIp(), message.getTimestamp(), message.getSentMicros());
+                sent = sendQueue.sendBulk(() -> chunk);
+                start = end;
+            }
+            if (sent != null) {
+                awaitSent(sent);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (!scope.isClosed()) {
+                chatWindow.appendMessage("[Unerwarteter Fehler beim Senden] " + e.getMessage(), Color.ORANGE);
+            }
+        }
+    }
+
+    /**
+     * Sendet ein Bild an den Kommunikationspartner. Lesen, Prüfen, Anbieten per Hash und
+     * Verschlüsseln erfolgen in einem eigenen Thread, damit das Chatfenster reaktionsfähig bleibt.
+     * 
+     * @param file zu sendende Bilddatei
+     */
+    public void sendImage(File file) {
+        scope.start("ImageSender-Thread", () -> {
+            try {
+                if (file.length() > MAX_IMAGE_SIZE) {
+                    chatWindow.appendMessage("[Bild zu groß] Maximal " + (MAX_IMAGE_SIZE / (1024 * 1024)) + " MB erlaubt", Color.ORANGE);
+                    return;
+                }
+                if (!isReadableImage(file)) {
+                    chatWindow.appendMessage("[Kein unterstütztes Bildformat] " + file.getName(), Color.ORANGE);
+                    return;
+                }
+                byte[] imageData = Files.readAllBytes(file.toPath());
+                ImageMessage message = new ImageMessage(file.getName(), imageData, localIp);
+                chatWindow.storeImage(message.getImageId(), imageData);
+                chatWindow.appendStored(messageStore.appendImage(message, false));
+                String known = offerBlob(imageData);
+                if (known != null) {
+                    ImageMessage reference = message.toReference(known);
+                    awaitSent(sendQueue.send(() -> reference));
+                } else {
+                    awaitSent(sendQueue.sendBulk(() -> message));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                if (!scope.isClosed()) {
+                    chatWindow.appendMessage("[Unerwarteter Fehler beim Senden des Bildes] " + e.getMessage(), Color.ORANGE);
+                }
+            }
+        });
+    }
+
+    /**
+     * Prüft, ob für die Datei ein passender Bild-Decoder verfügbar ist.
+     * 
+     * @param file zu prüfende Datei
+     * @return {@code true}, wenn das Format unterstützt wird
+     * @throws IOException bei Lesefehlern
+     */
+    private static boolean isReadableImage(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            return input != null && ImageIO.getImageReaders(input).hasNext();
+        }
+    }
+
+    /**
+     * Sendet eine System-Nachricht (z. B. für Trennungsereignisse). Die Nachricht wird nur
+     * eingereiht; der Aufrufer wartet nicht auf die Verbindung.
      * 
      * @param subtype  Subtyp der System-Nachricht (z. B. "REMOTESTATE")
      * @param payload  Nutzdaten der System-Nachricht
      */
     @Override
     public void sendSystemMessage(String subtype, String payload) {
+        sendSystemMessage(() -> new SystemMessage(subtype, payload, localIp));
+    }
+
+    /**
+     * Reiht eine System-Nachricht ein, die erst im Sende-Thread erzeugt wird.
+     * 
+     * @param message liefert die Nachricht
+     */
+    private void sendSystemMessage(Supplier<SystemMessage> message) {
+        sendQueue.send(message).whenComplete((sent, e) -> {
+            if (e != null && !scope.isClosed()) {
+                startWindowAccess.onStatusUpdate(StatusLog.Level.ERROR, "[Fehler beim Senden von Systemnachricht] " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Wartet, bis eine eingereihte Nachricht geschrieben ist.
+     * 
+     * @param sent Ergebnis von {@link SendQueue#send(Supplier)} bzw. {@link SendQueue#sendBulk(Supplier)}
+     * @throws IOException wenn das Senden scheitert oder der wartende Thread unterbrochen wird
+     */
+    private static void awaitSent(CompletableFuture<Void> sent) throws IOException {
         try {
-            SystemMessage message = new SystemMessage(subtype, payload, InetAddress.getLocalHost().getHostAddress());
-            String json = gson.toJson(message);
-            String encrypted = cryptoManager.encrypt(json);
-            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-            out.println(encrypted);
-        } catch (Exception e) {
-            startWindowAccess.onStatusUpdate("[Fehler beim Senden von Systemnachricht - DISCONNECT] " + e.getMessage());
+            sent.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Senden unterbrochen");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Erzeugt, kodiert, verschlüsselt und schreibt eine Nachricht über gepoolte Buffer. Läuft
+     * ausschliesslich im Sende-Thread der {@link SendQueue}. Schon vor dem Kodieren wird beim
+     * {@link BandwidthScheduler} ein Quantum reserviert, geschrieben wird im Takt seiner
+     * Zuteilungen an diese Sitzung. Einzelne Chat- und Bildnachrichten dürfen einander überholen
+     * (sofern der Transport das unterstützt); Systemnachrichten und Teile gestreamter Nachrichten
+     * bleiben geordnet.
+     * 
+     * @param next liefert die zu sendende Nachricht
+     * @throws IOException bei Schreibfehlern
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     */
+    private void writeMessage(Supplier<?> next) throws IOException, GeneralSecurityException {
+        bandwidth.reserve();
+        Object message = next.get();
+        connection.setOrderedDelivery(!(message instanceof ChatMessage || message instanceof ImageMessage));
+        ByteBuffer frame = frameEncoder.encode(message);
+        try {
+            if (trafficRecorder != null) {
+                trafficRecorder.recordOutbound(frame);
+            }
+            frameWriter.writeFrame(frame, bandwidth);
+        } finally {
+            bufferPool.release(frame);
         }
     }
 
@@ -193,4 +774,15 @@ public class IOManager implements IOAccess {
             this.chatWindow.dispose();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Empfangene Chat-Nachricht samt Zeitstempeln für die Latenzmessung.
+     * 
+     * @param message        Nachricht
+     * @param receivedMicros Empfangszeitpunkt des Frames (Wanduhr)
+     * @param decryptMicros  Dauer von Entschlüsseln und Parsen
+     * @param queuedNanos    Zeitpunkt des Einreihens ({@link System#nanoTime()})
+     */
+    private record ReceivedChat(ChatMessage message, long receivedMicros, long decryptMicros, long queuedNanos) {
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Histogramm für Latenzen in Mikrosekunden mit konstantem Speicherbedarf.
+ * <p>
+ * Die Klasse {@code LatencyHistogram} ordnet Werte logarithmisch gestuften Buckets zu: Jede
+ * Zweierpotenz ist in {@link #SUB_BUCKETS} gleich breite Teile unterteilt, sodass die relative
+ * Abweichung eines Perzentils höchstens etwa 6 % beträgt. Das Aufzeichnen ist threadsicher,
+ * sperrfrei und legt keine Objekte an.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+    public static final int SUB_BUCKETS = 16;
+    private static final int SUB_BITS = 4;
+    private static final int MAGNITUDES = 40;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(MAGNITUDES * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param name Bezeichnung, z. B. der Stufe
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Zeichnet einen Wert auf; negative Werte werden als 0 gezählt.
+     *
+     * @param micros Latenz in Mikrosekunden
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Gibt die Bezeichnung zurück.
+     *
+     * @return Bezeichnung
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gibt die Anzahl aufgezeichneter Werte zurück.
+     *
+     * @return Anzahl
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gibt den Mittelwert zurück.
+     *
+     * @return Mittelwert in Mikrosekunden
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Gibt den grössten aufgezeichneten Wert zurück.
+     *
+     * @return Maximum in Mikrosekunden
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Schätzt ein Perzentil anhand der Bucket-Obergrenzen.
+     *
+     * @param percentile Perzentil zwischen 0 und 100
+     * @return Obergrenze des Buckets, in dem das Perzentil liegt, in Mikrosekunden
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Setzt alle Werte zurück.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Schreibt alle belegten Buckets als CSV-Zeilen {@code name;obergrenze_us;anzahl}.
+     *
+     * @param out Ziel
+     * @throws IOException bei Schreibfehlern
+     */
+    public void writeBuckets(Writer out) throws IOException {
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            if (c > 0) {
+                out.write(name + ";" + upperBoundOf(i) + ";" + c + "\n");
+            }
+        }
+    }
+
+    /**
+     * Bestimmt den Bucket eines Werts.
+     *
+     * @param value nicht-negativer Wert
+     * @return Bucket-Index
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        int sub = (int) (value >>> (magnitude - 1)) - SUB_BUCKETS;
+        return Math.min(magnitude * SUB_BUCKETS + sub, MAGNITUDES * SUB_BUCKETS - 1);
+    }
+
+    /**
+     * Bestimmt die grösste Zahl, die einem Bucket zugeordnet wird.
+     *
+     * @param bucket Bucket-Index
+     * @return Obergrenze in Mikrosekunden
+     */
+    private static long upperBoundOf(int bucket) {
+        int magnitude = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        if (magnitude == 0) {
+            return sub;
+        }
+        return ((long) (SUB_BUCKETS + sub + 1) << (magnitude - 1)) - 1;
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Misst die Latenz von Chat-Nachrichten vom Senden bis zur Anzeige beim Empfänger.
+ * <p>
+ * Die Klasse {@code LatencyTracer} sammelt pro empfangener {@link com.securechat.model.ChatMessage}
+ * die Dauer der Stufen Netzwerk (Sendezeitpunkt bis Eintreffen des Frames), Entschlüsseln
+ * (inklusive Parsen), Warteschlange (bis der Chat-Handler die Nachricht übernimmt) und
+ * Darstellung (bis der Event-Dispatch-Thread die Einfügung verarbeitet hat) sowie deren Summe
+ * in je einem {@link LatencyHistogram}.
+ * <p>
+ * Da Sende- und Empfangszeitpunkt von verschiedenen Uhren stammen, wird der Uhrenversatz
+ * zur Gegenstelle wie bei NTP aus Zeitstempelquadrupeln geschätzt; von den letzten
+ * {@link #CLOCK_SAMPLES} Messungen zählt die mit der kürzesten Umlaufzeit, weil deren
+ * Versatzfehler am kleinsten ist. Solange keine Messung vorliegt, werden nur die lokalen
+ * Stufen aufgezeichnet.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+public class LatencyTracer {
+    public static final int CLOCK_SAMPLES = 8;
+
+    private final LatencyHistogram total = new LatencyHistogram("Gesamt");
+    private final LatencyHistogram network = new LatencyHistogram("Netzwerk");
+    private final LatencyHistogram decrypt = new LatencyHistogram("Entschlüsseln");
+    private final LatencyHistogram queue = new LatencyHistogram("Warteschlange");
+    private final LatencyHistogram render = new LatencyHistogram("Darstellung");
+    private final List<LatencyHistogram> histograms = List.of(total, network, decrypt, queue, render);
+
+    private final long[] sampleOffsets = new long[CLOCK_SAMPLES];
+    private final long[] sampleRoundTrips = new long[CLOCK_SAMPLES];
+    private int sampleCount;
+    private volatile long clockOffset;
+    private volatile long roundTrip = -1;
+
+    /**
+     * Gibt die aktuelle Wanduhrzeit in Mikrosekunden seit der Epoche zurück.
+     *
+     * @return Mikrosekunden seit der Epoche
+     */
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+    }
+
+    /**
+     * Übernimmt eine Uhrenmessung. Alle Zeitpunkte in Mikrosekunden seit der Epoche.
+     *
+     * @param requestSent      lokaler Sendezeitpunkt der Anfrage
+     * @param requestReceived  Empfangszeitpunkt der Anfrage bei der Gegenstelle
+     * @param responseSent     Sendezeitpunkt der Antwort bei der Gegenstelle
+     * @param responseReceived lokaler Empfangszeitpunkt der Antwort
+     */
+    public synchronized void addClockSample(long requestSent, long requestReceived, long responseSent, long responseReceived) {
+        long rtt = (responseReceived - requestSent) - (responseSent - requestReceived);
+        if (rtt < 0) {
+            return;
+        }
+        int slot = sampleCount++ % CLOCK_SAMPLES;
+        sampleOffsets[slot] = ((requestReceived - requestSent) + (responseSent - responseReceived)) / 2;
+        sampleRoundTrips[slot] = rtt;
+        int best = 0;
+        for (int i = 1; i < Math.min(sampleCount, CLOCK_SAMPLES); i++) {
+            if (sampleRoundTrips[i] < sampleRoundTrips[best]) {
+                best = i;
+            }
+        }
+        clockOffset = sampleOffsets[best];
+        roundTrip = sampleRoundTrips[best];
+    }
+
+    /**
+     * Gibt an, ob bereits ein Uhrenversatz geschätzt wurde.
+     *
+     * @return {@code true}, wenn mindestens eine Uhrenmessung vorliegt
+     */
+    public boolean isClockSynchronized() {
+        return roundTrip >= 0;
+    }
+
+    /**
+     * Gibt den geschätzten Uhrenversatz zurück (Uhr der Gegenstelle minus lokale Uhr).
+     *
+     * @return Versatz in Mikrosekunden
+     */
+    public long getClockOffsetMicros() {
+        return clockOffset;
+    }
+
+    /**
+     * Gibt die Umlaufzeit der verwendeten Uhrenmessung zurück.
+     *
+     * @return Umlaufzeit in Mikrosekunden oder -1 ohne Messung
+     */
+    public long getRoundTripMicros() {
+        return roundTrip;
+    }
+
+    /**
+     * Zeichnet die Stufen einer angezeigten Nachricht auf.
+     *
+     * @param sentMicros     Sendezeitpunkt laut Absender (0, wenn unbekannt)
+     * @param receivedMicros lokaler Empfangszeitpunkt des Frames
+     * @param decryptMicros  Dauer von Entschlüsseln und Parsen
+     * @param queueMicros    Wartezeit bis zur Übernahme durch den Chat-Handler
+     * @param renderMicros   Dauer bis zur Verarbeitung im Event-Dispatch-Thread
+     */
+    public void record(long sentMicros, long receivedMicros, long decryptMicros, long queueMicros, long renderMicros) {
+        decrypt.record(decryptMicros);
+        queue.record(queueMicros);
+        render.record(renderMicros);
+        if (sentMicros > 0 && isClockSynchronized()) {
+            long networkMicros = Math.max(0, receivedMicros - (sentMicros - clockOffset));
+            network.record(networkMicros);
+            total.record(networkMicros + decryptMicros + queueMicros + renderMicros);
+        }
+    }
+
+    /**
+     * Gibt die Histogramme in der Reihenfolge Gesamt, Netzwerk, Entschlüsseln,
+     * Warteschlange, Darstellung zurück.
+     *
+     * @return unveränderliche Liste der Histogramme
+     */
+    public List<LatencyHistogram> getHistograms() {
+        return histograms;
+    }
+
+    /**
+     * Setzt alle Histogramme zurück; der Uhrenversatz bleibt erhalten.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Exportiert Kennzahlen und Bucket-Belegung aller Stufen als CSV (Semikolon-getrennt).
+     *
+     * @param out Ziel
+     * @throws IOException bei Schreibfehlern
+     */
+    public void writeCsv(Writer out) throws IOException {
+        out.write("# uhrenversatz_us;" + clockOffset + ";umlaufzeit_us;" + roundTrip + "\n");
+        out.write("stufe;anzahl;mittel_us;p50_us;p90_us;p99_us;p999_us;max_us\n");
+        for (LatencyHistogram h : histograms) {
+            out.write(String.format(Locale.ROOT, "%s;%d;%.1f;%d;%d;%d;%d;%d%n", h.getName(), h.getCount(), h.getMean(),
+                    h.getPercentile(50), h.getPercentile(90), h.getPercentile(99), h.getPercentile(99.9), h.getMax()));
+        }
+        out.write("\nstufe;obergrenze_us;anzahl\n");
+        for (LatencyHistogram h : histograms) {
+            h.writeBuckets(out);
+        }
+    }
+}
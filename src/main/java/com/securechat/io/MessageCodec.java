@@ -0,0 +1,214 @@
+/**
+ * Wandelt Nachrichtenobjekte in UTF-8-kodiertes JSON um und zurück.
+ * <p>
+ * Die Klasse {@code MessageCodec} bündelt die JSON-Verarbeitung der Sende- und Empfangspfade.
+ * Sie verwendet wiederverwendbare Zeichenpuffer, Encoder und Decoder, schreibt direkt in
+ * Buffer aus dem {@link BufferPool} und parst jede Nachricht nur einmal. Steht das Typfeld am
+ * Anfang des JSON-Objekts (wie bei allen von Gson geschriebenen Nachrichten), liest
+ * {@link #decodeType(ByteBuffer)} es ohne Parser aus, und {@link #read(Class)} füllt die
+ * Nachrichtenklasse anschliessend direkt aus dem Text, ohne Zwischenbaum aus {@link JsonObject}.
+ * Eine Instanz ist nicht threadsicher; Sende- und Empfangspfad verwenden daher jeweils eine
+ * eigene Instanz.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+public class MessageCodec {
+    private static final String TYPE_PREFIX = "{\"type\":\"";
+
+    private final Gson gson = new Gson();
+    private final BufferPool pool;
+    private final StringBuilder json = new StringBuilder(256);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+    private final CharBufferReader reader = new CharBufferReader();
+    private final FlatJsonReader flatReader = new FlatJsonReader();
+    private CharBuffer chars = CharBuffer.allocate(1024);
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param pool Pool, aus dem die Ausgabe-Buffer stammen
+     */
+    public MessageCodec(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Serialisiert eine Nachricht als UTF-8-JSON in einen gepoolten Buffer.
+     * Der Aufrufer muss den Buffer nach Gebrauch mit {@link BufferPool#release(ByteBuffer)} zurückgeben.
+     *
+     * @param message zu serialisierende Nachricht
+     * @return Buffer im Lesemodus mit dem JSON
+     */
+    public ByteBuffer encode(Object message) {
+        json.setLength(0);
+        gson.toJson(message, json);
+        ByteBuffer out = pool.acquire((int) (json.length() * encoder.maxBytesPerChar()));
+        encoder.reset();
+        CharBuffer in = CharBuffer.wrap(json);
+        CoderResult result = encoder.encode(in, out, true);
+        if (result.isOverflow()) {
+            throw new IllegalStateException("Ausgabepuffer zu klein");
+        }
+        encoder.flush(out);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Parst UTF-8-JSON aus einem Buffer.
+     *
+     * @param utf8 Buffer mit dem JSON zwischen Position und Limit; wird vollständig konsumiert
+     * @return geparstes JSON-Objekt
+     * @throws CharacterCodingException bei ungültigem UTF-8
+     */
+    public JsonObject decode(ByteBuffer utf8) throws CharacterCodingException {
+        decodeChars(utf8);
+        return readTree();
+    }
+
+    /**
+     * Dekodiert UTF-8-JSON aus einem Buffer und liest das Typfeld, sofern es am Anfang des Objekts
+     * steht. Der Text bleibt für genau einen anschliessenden Aufruf von {@link #read(Class)} oder
+     * {@link #readTree()} erhalten.
+     *
+     * @param utf8 Buffer mit dem JSON zwischen Position und Limit; wird vollständig konsumiert
+     * @return Typ oder {@code null}, wenn das Objekt nicht mit einem einfachen Typfeld beginnt
+     * @throws CharacterCodingException bei ungültigem UTF-8
+     */
+    public String decodeType(ByteBuffer utf8) throws CharacterCodingException {
+        decodeChars(utf8);
+        int start = chars.position();
+        int end = chars.limit();
+        if (end - start <= TYPE_PREFIX.length()) {
+            return null;
+        }
+        for (int i = 0; i < TYPE_PREFIX.length(); i++) {
+            if (chars.get(start + i) != TYPE_PREFIX.charAt(i)) {
+                return null;
+            }
+        }
+        for (int i = start + TYPE_PREFIX.length(); i < end; i++) {
+            char c = chars.get(i);
+            if (c == '"') {
+                int offset = chars.arrayOffset() + start + TYPE_PREFIX.length();
+                int length = i - start - TYPE_PREFIX.length();
+                String known = FlatJsonReader.knownType(chars.array(), offset, length);
+                return known != null ? known : new String(chars.array(), offset, length);
+            }
+            if (c == '\\') {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Liest den zuvor mit {@link #decodeType(ByteBuffer)} dekodierten Text direkt in eine
+     * Nachrichtenklasse. Flache Nachrichten liest der {@link FlatJsonReader} ohne Gson; alle
+     * übrigen liest Gson.
+     *
+     * @param <T>  Nachrichtentyp
+     * @param type Zielklasse
+     * @return Nachrichtenobjekt
+     * @throws JsonParseException bei ungültigem JSON
+     */
+    public <T> T read(Class<T> type) {
+        T flat = flatReader.read(chars, type);
+        if (flat != null) {
+            return flat;
+        }
+        reader.reset(chars);
+        T message = gson.fromJson(reader, type);
+        if (message == null) {
+            throw new JsonParseException("Leere Nachricht");
+        }
+        return message;
+    }
+
+    /**
+     * Parst den zuvor mit {@link #decodeType(ByteBuffer)} dekodierten Text als JSON-Objekt.
+     *
+     * @return geparstes JSON-Objekt
+     */
+    public JsonObject readTree() {
+        reader.reset(chars);
+        return JsonParser.parseReader(reader).getAsJsonObject();
+    }
+
+    /**
+     * Dekodiert UTF-8 in den wiederverwendeten Zeichenpuffer, der danach im Lesemodus ist.
+     *
+     * @param utf8 Buffer mit dem JSON zwischen Position und Limit; wird vollständig konsumiert
+     * @throws CharacterCodingException bei ungültigem UTF-8
+     */
+    private void decodeChars(ByteBuffer utf8) throws CharacterCodingException {
+        if (chars.capacity() < utf8.remaining()) {
+            chars = CharBuffer.allocate(Math.max(utf8.remaining(), chars.capacity() * 2));
+        }
+        chars.clear();
+        decoder.reset();
+        CoderResult result = decoder.decode(utf8, chars, true);
+        if (result.isError()) {
+            result.throwException();
+        }
+        decoder.flush(chars);
+        chars.flip();
+    }
+
+    /**
+     * Wandelt ein bereits geparstes JSON-Objekt in die gewünschte Nachrichtenklasse um.
+     *
+     * @param <T>    Nachrichtentyp
+     * @param object geparstes JSON-Objekt
+     * @param type   Zielklasse
+     * @return Nachrichtenobjekt
+     */
+    public <T> T fromJson(JsonObject object, Class<T> type) {
+        return gson.fromJson(object, type);
+    }
+
+    /**
+     * Wiederverwendbarer {@link Reader} über einem {@link CharBuffer}.
+     */
+    private static final class CharBufferReader extends Reader {
+        private CharBuffer source;
+
+        private void reset(CharBuffer source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, source.remaining());
+            source.get(cbuf, off, count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
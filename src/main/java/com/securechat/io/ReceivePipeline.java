@@ -0,0 +1,251 @@
+/**
+ * Entschlüsselt und dekodiert empfangene Frames parallel und liefert sie in Empfangsreihenfolge aus.
+ * <p>
+ * Die Klasse {@code ReceivePipeline} trennt den Empfangspfad in zwei Stufen: Der lesende Thread
+ * zerlegt nur den Datenstrom in Frames und übergibt sie mit {@link #submit(ByteBuffer, long, long)};
+ * ein kleiner Pool entschlüsselt, parst und ordnet sie zu. Jeder Frame erhält beim Einreichen eine
+ * laufende Nummer, unter der das Ergebnis in einem Ringpuffer abgelegt wird. Wer einen Frame
+ * fertigstellt, liefert anschliessend alle lückenlos vorliegenden Ergebnisse an die {@link Sink}
+ * aus, sodass die Reihenfolge des Datenstroms erhalten bleibt. Höchstens {@link #WINDOW} Frames
+ * sind gleichzeitig unterwegs; ist das Fenster voll, wartet der lesende Thread.
+ * <p>
+ * Jeder Pool-Thread besitzt einen eigenen {@link FrameDecoder}; die Wiederholungsprüfung teilen
+ * sich alle über ein gemeinsames {@link ReplayWindow}, das umsortierte Sequenznummern innerhalb
+ * seines Fensters akzeptiert. Mit 0 Threads wird im lesenden Thread dekodiert.
+ * Die Anzahl der Threads lässt sich über die System-Property {@code securechat.receive.threads} setzen.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import com.securechat.security.CryptoManager;
+import com.securechat.security.ReplayWindow;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReceivePipeline implements AutoCloseable {
+    public static final int WINDOW = 64;
+    private static final int MAX_DEFAULT_THREADS = 4;
+
+    private final BufferPool bufferPool;
+    private final Sink sink;
+    private final ExecutorService workers;
+    private final ThreadLocal<FrameDecoder> decoders;
+    private final Decoded[] slots = new Decoded[WINDOW];
+    private final Semaphore inFlight = new Semaphore(WINDOW);
+    private final AtomicBoolean delivering = new AtomicBoolean();
+    private long nextSubmit;
+    private long nextDelivery;
+
+    /**
+     * Ergebnis eines dekodierten Frames samt Zeitstempeln.
+     *
+     * @param message        Nachrichtenobjekt oder {@code null} bei unbekanntem Typ oder Fehler
+     * @param type           Typfeld des JSON-Objekts oder {@code null} bei Fehler
+     * @param error          Fehler beim Entschlüsseln oder Parsen, sonst {@code null}
+     * @param receivedMicros Empfangszeitpunkt des Frames (Wanduhr)
+     * @param receivedNanos  Empfangszeitpunkt des Frames ({@link System#nanoTime()})
+     * @param decodedNanos   Zeitpunkt der Fertigstellung ({@link System#nanoTime()})
+     */
+    public record Decoded(Object message, String type, Exception error, long receivedMicros, long receivedNanos,
+            long decodedNanos) {
+    }
+
+    /**
+     * Empfänger der Ergebnisse. Wird nie gleichzeitig aufgerufen, aber aus wechselnden Threads.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * Verarbeitet das nächste Ergebnis in Empfangsreihenfolge.
+         *
+         * @param decoded Ergebnis
+         * @throws InterruptedException wenn der ausliefernde Thread unterbrochen wird
+         */
+        void deliver(Decoded decoded) throws InterruptedException;
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param cryptoManager Schlüsselverwaltung der Sitzung
+     * @param bufferPool    Pool für Frame-Kopien und Klartextpuffer
+     * @param threads       Anzahl der Pool-Threads; 0 dekodiert im einreichenden Thread
+     * @param sink          Empfänger der Ergebnisse
+     */
+    public ReceivePipeline(CryptoManager cryptoManager, BufferPool bufferPool, int threads, Sink sink) {
+        this.bufferPool = bufferPool;
+        this.sink = sink;
+        ReplayWindow replayWindow = new ReplayWindow();
+        this.decoders = ThreadLocal.withInitial(() -> new FrameDecoder(cryptoManager, bufferPool, replayWindow));
+        if (threads > 0) {
+            AtomicInteger threadCounter = new AtomicInteger();
+            this.workers = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "Decrypt-Thread-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.workers = null;
+        }
+    }
+
+    /**
+     * Bestimmt die Anzahl der Pool-Threads aus der System-Property {@code securechat.receive.threads}
+     * oder, falls nicht gesetzt, aus der Anzahl der Prozessoren abzüglich des lesenden Threads.
+     *
+     * @return Anzahl der Pool-Threads
+     */
+    public static int defaultThreads() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        return Integer.getInteger("securechat.receive.threads", Math.min(MAX_DEFAULT_THREADS, cpus - 1));
+    }
+
+    /**
+     * Reicht einen Frame ein. Der Frame wird kopiert und darf danach weiterverwendet werden.
+     * Nur von einem einzigen Thread aufrufen.
+     *
+     * @param frame          Base64-Frame zwischen Position und Limit; wird vollständig konsumiert
+     * @param receivedMicros Empfangszeitpunkt (Wanduhr)
+     * @param receivedNanos  Empfangszeitpunkt ({@link System#nanoTime()})
+     * @throws InterruptedException wenn der Thread beim Warten auf einen freien Platz unterbrochen wird
+     */
+    public void submit(ByteBuffer frame, long receivedMicros, long receivedNanos) throws InterruptedException {
+        inFlight.acquire();
+        long sequence = nextSubmit++;
+        ByteBuffer copy = bufferPool.acquire(frame.remaining());
+        copy.put(frame).flip();
+        if (workers == null) {
+            complete(sequence, decode(copy, receivedMicros, receivedNanos));
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    complete(sequence, decode(copy, receivedMicros, receivedNanos));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            bufferPool.release(copy);
+            throw new InterruptedException("Empfangspipeline geschlossen");
+        }
+    }
+
+    /**
+     * Wartet, bis alle eingereichten Frames ausgeliefert sind.
+     *
+     * @param timeoutMs maximale Wartezeit in Millisekunden
+     * @return {@code true}, wenn nichts mehr unterwegs ist
+     * @throws InterruptedException wenn der wartende Thread unterbrochen wird
+     */
+    public boolean awaitDelivery(long timeoutMs) throws InterruptedException {
+        if (!inFlight.tryAcquire(WINDOW, timeoutMs, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        inFlight.release(WINDOW);
+        return true;
+    }
+
+    /**
+     * Beendet den Pool; noch nicht ausgelieferte Ergebnisse werden verworfen.
+     */
+    @Override
+    public void close() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Entschlüsselt, parst und ordnet einen Frame zu.
+     *
+     * @param frame          Kopie des Frames; wird an den Pool zurückgegeben
+     * @param receivedMicros Empfangszeitpunkt (Wanduhr)
+     * @param receivedNanos  Empfangszeitpunkt ({@link System#nanoTime()})
+     * @return Ergebnis, ggf. mit Fehler
+     */
+    private Decoded decode(ByteBuffer frame, long receivedMicros, long receivedNanos) {
+        FrameDecoder decoder = decoders.get();
+        ByteBuffer plaintext = null;
+        try {
+            plaintext = decoder.decrypt(frame);
+            String type = decoder.readType(plaintext);
+            return new Decoded(decoder.readMessage(type), type, null,
+                    receivedMicros, receivedNanos, System.nanoTime());
+        } catch (Exception e) {
+            return new Decoded(null, null, e, receivedMicros, receivedNanos, System.nanoTime());
+        } finally {
+            bufferPool.release(plaintext);
+            bufferPool.release(frame);
+        }
+    }
+
+    /**
+     * Legt ein Ergebnis ab und liefert alle lückenlos vorliegenden Ergebnisse aus. Liefert bereits
+     * ein anderer Thread aus, übernimmt dieser auch das neue Ergebnis.
+     *
+     * @param sequence laufende Nummer des Frames
+     * @param decoded  Ergebnis
+     * @throws InterruptedException wenn der ausliefernde Thread unterbrochen wird
+     */
+    private void complete(long sequence, Decoded decoded) throws InterruptedException {
+        synchronized (slots) {
+            slots[(int) (sequence % WINDOW)] = decoded;
+        }
+        while (delivering.compareAndSet(false, true)) {
+            try {
+                Decoded next;
+                while ((next = takeNext()) != null) {
+                    try {
+                        sink.deliver(next);
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            } finally {
+                delivering.set(false);
+            }
+            // Ein anderer Thread kann sein Ergebnis abgelegt haben, nachdem hier zuletzt geprüft wurde
+            if (!hasNext()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Entnimmt das nächste Ergebnis in Reihenfolge, sofern es vorliegt.
+     *
+     * @return Ergebnis oder {@code null}
+     */
+    private Decoded takeNext() {
+        synchronized (slots) {
+            int index = (int) (nextDelivery % WINDOW);
+            Decoded next = slots[index];
+            if (next != null) {
+                slots[index] = null;
+                nextDelivery++;
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Prüft, ob das nächste Ergebnis in Reihenfolge vorliegt.
+     *
+     * @return {@code true}, wenn es ausgeliefert werden kann
+     */
+    private boolean hasNext() {
+        synchronized (slots) {
+            return slots[(int) (nextDelivery % WINDOW)] != null;
+        }
+    }
+}
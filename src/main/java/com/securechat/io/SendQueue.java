@@ -0,0 +1,163 @@
+/**
+ * Warteschlange für ausgehende Nachrichten einer Sitzung, die ein einzelner Sende-Thread abarbeitet.
+ * <p>
+ * Die Klasse {@code SendQueue} entkoppelt die sendenden Threads vom Socket: Kodieren,
+ * Verschlüsseln und das im Takt des {@link BandwidthScheduler} gedrosselte Schreiben übernimmt
+ * allein der Thread, der {@link #run()} ausführt. Der Event-Dispatch-Thread und die Auslieferung
+ * der {@link ReceivePipeline} reihen nur ein und blockieren nie auf einer vollen Verbindung.
+ * <p>
+ * Es gibt zwei Spuren. Interaktive Nachrichten (Chat- und System-Nachrichten) werden stets vor
+ * dem nächsten Frame der Massendaten-Spur (Teile gestreamter Nachrichten, Bilder) geschrieben und
+ * so zwischen die Teile eines laufenden Transfers eingeschoben. Die Massendaten-Spur fasst nur
+ * {@link #MAX_BULK} Frames; wer sie füllt, wartet, bis der Sende-Thread aufgeholt hat. Innerhalb
+ * einer Spur bleibt die Reihenfolge erhalten. Nachrichten werden erst unmittelbar vor dem Kodieren
+ * erzeugt, damit darin enthaltene Zeitstempel den tatsächlichen Sendezeitpunkt wiedergeben.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+public class SendQueue implements AutoCloseable {
+    private static final int MAX_BULK = 4;
+
+    /**
+     * Schreibt eine Nachricht auf die Verbindung; wird nur vom Sende-Thread aufgerufen.
+     */
+    @FunctionalInterface
+    public interface Writer {
+        /**
+         * Erzeugt, kodiert und schreibt eine Nachricht.
+         *
+         * @param message liefert die zu sendende Nachricht
+         * @throws IOException              bei Schreibfehlern
+         * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+         */
+        void write(Supplier<?> message) throws IOException, GeneralSecurityException;
+    }
+
+    private record Pending(Supplier<?> message, CompletableFuture<Void> sent) {
+    }
+
+    private final Writer writer;
+    private final BlockingQueue<Pending> interactive = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Pending> bulk = new ArrayBlockingQueue<>(MAX_BULK);
+    private final Semaphore available = new Semaphore(0);
+    private volatile CompletableFuture<Void> lastInteractive = CompletableFuture.completedFuture(null);
+    private volatile boolean closed;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param writer schreibt die Nachrichten im Sende-Thread
+     */
+    public SendQueue(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Reiht eine interaktive Nachricht ein. Blockiert nie.
+     *
+     * @param message liefert die Nachricht beim Senden
+     * @return wird abgeschlossen, sobald die Nachricht geschrieben ist oder das Senden scheitert
+     */
+    public CompletableFuture<Void> send(Supplier<?> message) {
+        Pending pending = new Pending(message, new CompletableFuture<>());
+        interactive.add(pending);
+        lastInteractive = pending.sent();
+        return signal(pending);
+    }
+
+    /**
+     * Reiht einen Frame der Massendaten-Spur ein und wartet dafür, bis darin Platz ist.
+     *
+     * @param message liefert die Nachricht beim Senden
+     * @return wird abgeschlossen, sobald die Nachricht geschrieben ist oder das Senden scheitert
+     * @throws InterruptedException wenn der wartende Thread unterbrochen wird
+     */
+    public CompletableFuture<Void> sendBulk(Supplier<?> message) throws InterruptedException {
+        Pending pending = new Pending(message, new CompletableFuture<>());
+        bulk.put(pending);
+        return signal(pending);
+    }
+
+    private CompletableFuture<Void> signal(Pending pending) {
+        available.release();
+        if (closed) {
+            failPending();
+        }
+        return pending.sent();
+    }
+
+    /**
+     * Schreibt eingereihte Nachrichten, bis der Thread unterbrochen wird. Interaktive Nachrichten
+     * haben Vorrang vor Massendaten.
+     */
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                available.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            Pending next = interactive.poll();
+            if (next == null) {
+                next = bulk.poll();
+            }
+            if (next == null) {
+                continue;
+            }
+            try {
+                writer.write(next.message());
+                next.sent().complete(null);
+            } catch (Exception e) {
+                next.sent().completeExceptionally(e);
+            }
+        }
+        failPending();
+    }
+
+    /**
+     * Wartet, bis alle bisher eingereihten interaktiven Nachrichten geschrieben sind, z. B. damit
+     * eine Abmeldung vor dem Schliessen der Verbindung noch hinausgeht.
+     *
+     * @param timeoutMs maximale Wartezeit in Millisekunden
+     */
+    public void flush(long timeoutMs) {
+        try {
+            lastInteractive.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+        }
+    }
+
+    /**
+     * Nimmt keine Nachrichten mehr an; noch nicht geschriebene scheitern mit einer
+     * {@link IOException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        failPending();
+    }
+
+    private void failPending() {
+        Pending pending;
+        while ((pending = interactive.poll()) != null || (pending = bulk.poll()) != null) {
+            pending.sent().completeExceptionally(new IOException("Sitzung geschlossen"));
+        }
+    }
+}
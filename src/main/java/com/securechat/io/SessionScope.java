@@ -0,0 +1,169 @@
+/**
+ * Strukturierter Lebenszyklus für alle Threads und Ressourcen einer Sitzung.
+ * <p>
+ * Die Klasse {@code SessionScope} besitzt sämtliche Threads, die für eine Sitzung gestartet
+ * werden, sowie alle Ressourcen, die mit ihr enden müssen (Socket, Executor, Recorder usw.).
+ * {@link #close()} schliesst zuerst die Ressourcen in umgekehrter Reihenfolge ihrer Registrierung,
+ * wodurch blockierende Lesevorgänge abbrechen, und unterbricht danach alle Threads. Nach dem
+ * Schliessen werden keine neuen Threads mehr gestartet. Mit {@link #awaitTermination(long)}
+ * kann auf das tatsächliche Ende aller Threads gewartet werden. Beendete Threads verlassen den
+ * Scope von selbst; Ressourcen, die vorher enden, werden mit {@link #deregister(AutoCloseable)}
+ * entfernt, damit ein langlebiger Scope nicht unbegrenzt wächst.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SessionScope implements AutoCloseable {
+    private final String name;
+    private final List<Thread> threads = new ArrayList<>();
+    private final Deque<AutoCloseable> resources = new ArrayDeque<>();
+    private boolean closed;
+
+    /**
+     * Erstellt einen neuen, offenen Scope.
+     *
+     * @param name Name der Sitzung, wird den Thread-Namen vorangestellt
+     */
+    public SessionScope(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Startet einen Thread, der zu dieser Sitzung gehört.
+     *
+     * @param threadName Name des Threads
+     * @param task       auszuführende Aufgabe
+     * @return gestarteter Thread oder {@code null}, wenn der Scope bereits geschlossen ist
+     */
+    public synchronized Thread start(String threadName, Runnable task) {
+        if (closed) {
+            return null;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    threads.remove(Thread.currentThread());
+                }
+            }
+        }, name + "-" + threadName);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Registriert eine Ressource, die beim Schliessen des Scopes geschlossen wird.
+     * Ist der Scope bereits geschlossen, wird die Ressource sofort geschlossen.
+     *
+     * @param <T>      Typ der Ressource
+     * @param resource zu verwaltende Ressource
+     * @return die übergebene Ressource
+     */
+    public <T extends AutoCloseable> T register(T resource) {
+        boolean closeNow;
+        synchronized (this) {
+            closeNow = closed;
+            if (!closeNow) {
+                resources.push(resource);
+            }
+        }
+        if (closeNow) {
+            closeQuietly(resource);
+        }
+        return resource;
+    }
+
+    /**
+     * Nimmt eine Ressource wieder aus dem Scope, ohne sie zu schliessen, z. B. wenn sie vor dem
+     * Scope endet und nicht bis zu dessen Ende gehalten werden soll.
+     *
+     * @param resource zuvor registrierte Ressource
+     */
+    public synchronized void deregister(AutoCloseable resource) {
+        resources.remove(resource);
+    }
+
+    /**
+     * Gibt an, ob der Scope bereits geschlossen wurde.
+     *
+     * @return {@code true}, wenn geschlossen
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Schliesst alle Ressourcen und unterbricht alle Threads der Sitzung.
+     * Mehrfache Aufrufe sind wirkungslos. Die Methode wartet nicht auf das Ende der Threads.
+     */
+    @Override
+    public void close() {
+        List<AutoCloseable> toClose;
+        List<Thread> toInterrupt;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(resources);
+            toInterrupt = new ArrayList<>(threads);
+            resources.clear();
+        }
+        for (AutoCloseable resource : toClose) {
+            closeQuietly(resource);
+        }
+        for (Thread thread : toInterrupt) {
+            if (thread != Thread.currentThread()) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wartet, bis alle Threads der Sitzung beendet sind.
+     *
+     * @param timeoutMs maximale Wartezeit in Millisekunden
+     * @return {@code true}, wenn alle Threads beendet sind
+     * @throws InterruptedException wenn der wartende Thread unterbrochen wird
+     */
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        List<Thread> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(threads);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (Thread thread : snapshot) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                break;
+            }
+            if (thread != Thread.currentThread()) {
+                thread.join(remaining);
+            }
+        }
+        return snapshot.stream().noneMatch(t -> t != Thread.currentThread() && t.isAlive());
+    }
+
+    /**
+     * Schliesst eine Ressource und meldet Fehler lediglich auf {@code System.err}.
+     *
+     * @param resource zu schliessende Ressource
+     */
+    private static void closeQuietly(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            System.err.println("Fehler beim Schließen einer Sitzungsressource: " + e.getMessage());
+        }
+    }
+}
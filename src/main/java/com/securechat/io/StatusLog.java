@@ -0,0 +1,293 @@
+/**
+ * Asynchrones Ereignisprotokoll für Statusmeldungen.
+ * <p>
+ * Die Klasse {@code StatusLog} nimmt Statusmeldungen aus beliebigen Threads entgegen, ohne zu
+ * sperren oder zu blockieren: Jede Meldung wird als {@link Event} mit Zeitpunkt, {@link Level}
+ * und Thread in einen begrenzten Ringpuffer eingereiht. Ist der Puffer voll, wird die Meldung
+ * verworfen und nur gezählt. Ein eigener Thread leert den Puffer einmal pro Intervall, schreibt
+ * die Ereignisse optional in eine Datei und übergibt sie gesammelt an einen {@link Listener}.
+ * Damit kostet eine Flut von Meldungen (z. B. bei vielen Verbindungsversuchen auf einem Host)
+ * höchstens eine Aktualisierung der Oberfläche pro Intervall.
+ * <p>
+ * Intervall, Puffergrösse und Datei lassen sich über {@code securechat.statuslog.interval}
+ * (Millisekunden), {@code securechat.statuslog.capacity} und {@code securechat.statuslog.file}
+ * einstellen.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class StatusLog {
+    private static final int DEFAULT_INTERVAL_MS = 100;
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    /**
+     * Schweregrad einer Meldung. {@link #DEBUG} erscheint nur in der Datei.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    /**
+     * Eine protokollierte Meldung.
+     *
+     * @param timeMillis Zeitpunkt in Millisekunden seit der Epoche
+     * @param level      Schweregrad
+     * @param thread     Name des meldenden Threads
+     * @param message    Meldung
+     */
+    public record Event(long timeMillis, Level level, String thread, String message) {
+    }
+
+    /**
+     * Empfänger der gesammelten Ereignisse eines Intervalls.
+     */
+    public interface Listener {
+        /**
+         * Wird im Thread des Protokolls einmal pro Intervall mit neuen Ereignissen aufgerufen.
+         *
+         * @param events  Ereignisse in Meldungsreihenfolge ohne {@link Level#DEBUG}
+         * @param dropped Anzahl seit dem letzten Aufruf verworfener Meldungen
+         */
+        void onEvents(List<Event> events, long dropped);
+    }
+
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final long intervalNanos;
+    private final Path file;
+    private final Listener listener;
+    private long head;
+    private Writer writer;
+    private boolean fileFailed;
+    private volatile boolean closed;
+    private Thread thread;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param capacity   Grösse des Ringpuffers, wird auf eine Zweierpotenz aufgerundet
+     * @param intervalMs Abstand der Auslieferungen in Millisekunden
+     * @param file       Datei, an die alle Ereignisse angehängt werden, oder {@code null}
+     * @param listener   Empfänger der Ereignisse
+     */
+    public StatusLog(int capacity, long intervalMs, Path file, Listener listener) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new Event[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMs));
+        this.file = file;
+        this.listener = listener;
+    }
+
+    /**
+     * Erstellt ein Protokoll mit den Einstellungen aus den Systemeigenschaften und startet es.
+     *
+     * @param listener Empfänger der Ereignisse
+     * @return gestartetes Protokoll
+     */
+    public static StatusLog open(Listener listener) {
+        String file = System.getProperty("securechat.statuslog.file");
+        StatusLog log = new StatusLog(
+                Integer.getInteger("securechat.statuslog.capacity", DEFAULT_CAPACITY),
+                Long.getLong("securechat.statuslog.interval", DEFAULT_INTERVAL_MS),
+                file == null || file.isBlank() ? null : Path.of(file),
+                listener);
+        log.start();
+        return log;
+    }
+
+    /**
+     * Startet den Thread, der den Puffer leert.
+     */
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this::run, "StatusLog-Thread");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Reiht eine Meldung ein. Blockiert nie; ist der Puffer voll, wird die Meldung verworfen.
+     *
+     * @param level   Schweregrad
+     * @param message Meldung
+     * @return {@code false}, wenn die Meldung verworfen wurde
+     */
+    public boolean log(Level level, String message) {
+        Event event = new Event(System.currentTimeMillis(), level, Thread.currentThread().getName(), message);
+        long position = tail.get();
+        while (true) {
+            long difference = sequences.get((int) position & mask) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        int slot = (int) position & mask;
+        slots[slot] = event;
+        sequences.set(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * Liefert noch ausstehende Ereignisse sofort aus und beendet den Thread.
+     */
+    public void close() {
+        closed = true;
+        Thread current;
+        synchronized (this) {
+            current = thread;
+        }
+        if (current != null) {
+            LockSupport.unpark(current);
+            try {
+                current.join(TimeUnit.NANOSECONDS.toMillis(intervalNanos) + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Schleife des Protokoll-Threads.
+     */
+    private void run() {
+        List<Event> batch = new ArrayList<>();
+        try {
+            while (!closed) {
+                LockSupport.parkNanos(this, intervalNanos);
+                flush(batch);
+            }
+            flush(batch);
+        } finally {
+            closeWriter();
+        }
+    }
+
+    /**
+     * Leert den Puffer, schreibt die Datei und benachrichtigt den Empfänger.
+     *
+     * @param batch wiederverwendete Liste für die Ereignisse
+     */
+    private void flush(List<Event> batch) {
+        Event event;
+        while ((event = poll()) != null) {
+            batch.add(event);
+        }
+        long lost = dropped.getAndSet(0);
+        if (batch.isEmpty() && lost == 0) {
+            return;
+        }
+        write(batch, lost);
+        batch.removeIf(e -> e.level() == Level.DEBUG);
+        if (!batch.isEmpty() || lost > 0) {
+            try {
+                listener.onEvents(List.copyOf(batch), lost);
+            } catch (RuntimeException e) {
+                System.err.println("Fehler beim Ausliefern von Statusmeldungen: " + e.getMessage());
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Entnimmt das älteste Ereignis. Wird nur vom Protokoll-Thread aufgerufen.
+     *
+     * @return Ereignis oder {@code null}, wenn der Puffer leer ist
+     */
+    private Event poll() {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return null;
+        }
+        Event event = slots[slot];
+        slots[slot] = null;
+        sequences.set(slot, head + slots.length);
+        head++;
+        return event;
+    }
+
+    /**
+     * Hängt die Ereignisse an die Datei an. Schlägt das fehl, wird die Dateiausgabe abgeschaltet.
+     *
+     * @param events Ereignisse
+     * @param lost   Anzahl verworfener Meldungen
+     */
+    private void write(List<Event> events, long lost) {
+        if (file == null || fileFailed) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            for (Event event : events) {
+                writer.write(format(event));
+                writer.write(System.lineSeparator());
+            }
+            if (lost > 0) {
+                writer.write(lost + " Statusmeldungen verworfen (Puffer voll)" + System.lineSeparator());
+            }
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Statusprotokoll " + file + " nicht schreibbar: " + e.getMessage());
+            closeWriter();
+            fileFailed = true;
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Formatiert ein Ereignis als Zeile der Protokolldatei.
+     *
+     * @param event Ereignis
+     * @return Zeile ohne Zeilenumbruch
+     */
+    public static String format(Event event) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(event.timeMillis()), ZoneId.systemDefault());
+        return TIME_FORMAT.format(time) + " " + event.level() + " [" + event.thread() + "] " + event.message();
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Verteilt System-Nachrichten anhand ihres Subtyps an registrierte Handler.
+ * <p>
+ * Die Klasse {@code SystemMessageDispatcher} ersetzt die Verarbeitung in einem einzelnen Thread:
+ * Jeder Subtyp hat eine eigene Spur, deren Nachrichten der Reihe nach, aber unabhängig von
+ * anderen Subtypen auf einem kleinen Thread-Pool abgearbeitet werden. Ein langsamer Handler hält
+ * damit nur Nachrichten seines eigenen Subtyps auf. Verzögerte Aktionen werden mit
+ * {@link #schedule(Runnable, long)} eingeplant, statt einen Thread schlafen zu lassen.
+ * Nachrichten ohne registrierten Handler werden verworfen.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import com.securechat.gui.StartWindowAccess;
+import com.securechat.model.SystemMessage;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SystemMessageDispatcher implements AutoCloseable {
+    private static final int MAX_MESSAGES_PER_TURN = 16;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor executor;
+    private final StartWindowAccess startWindowAccess;
+
+    /**
+     * Verarbeitet System-Nachrichten eines Subtyps.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * Verarbeitet eine Nachricht.
+         *
+         * @param message empfangene System-Nachricht
+         * @throws Exception bei Verarbeitungsfehlern; wird als Statusmeldung ausgegeben
+         */
+        void handle(SystemMessage message) throws Exception;
+    }
+
+    /**
+     * Warteschlange eines Subtyps, die höchstens von einem Pool-Thread gleichzeitig abgearbeitet wird.
+     */
+    private final class Lane implements Runnable {
+        private final String subtype;
+        private final Handler handler;
+        private final Queue<SystemMessage> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Lane(String subtype, Handler handler) {
+            this.subtype = subtype;
+            this.handler = handler;
+        }
+
+        /**
+         * Reiht eine Nachricht ein und plant die Spur ein, falls sie gerade ruht.
+         *
+         * @param message Nachricht
+         */
+        private void enqueue(SystemMessage message) {
+            pending.add(message);
+            scheduleIfIdle();
+        }
+
+        private void scheduleIfIdle() {
+            if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    pending.clear(); // Dispatcher bereits geschlossen
+                }
+            }
+        }
+
+        /**
+         * Arbeitet eine begrenzte Anzahl Nachrichten ab und gibt den Thread danach
+         * für andere Spuren frei.
+         */
+        @Override
+        public void run() {
+            try {
+                SystemMessage message;
+                for (int i = 0; i < MAX_MESSAGES_PER_TURN && (message = pending.poll()) != null; i++) {
+                    try {
+                        handler.handle(message);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception e) {
+                        startWindowAccess.onStatusUpdate(StatusLog.Level.ERROR, "Fehler bei System-Nachricht " + subtype + ": " + e.getMessage());
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            scheduleIfIdle();
+        }
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param threads           Anzahl der Pool-Threads
+     * @param startWindowAccess Zugriff auf das Startfenster für Fehlermeldungen
+     */
+    public SystemMessageDispatcher(int threads, StartWindowAccess startWindowAccess) {
+        this.startWindowAccess = startWindowAccess;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread thread = new Thread(r, "SystemHandler-Thread-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Registriert den Handler für einen Subtyp.
+     *
+     * @param subtype Subtyp, z. B. {@code "REKEY"}
+     * @param handler Handler
+     * @throws IllegalStateException wenn für den Subtyp bereits ein Handler registriert ist
+     */
+    public void register(String subtype, Handler handler) {
+        if (lanes.putIfAbsent(subtype, new Lane(subtype, handler)) != null) {
+            throw new IllegalStateException("Handler für " + subtype + " bereits registriert");
+        }
+    }
+
+    /**
+     * Übergibt eine Nachricht ihrem Handler, ohne auf dessen Ausführung zu warten.
+     *
+     * @param message empfangene System-Nachricht
+     * @return {@code false}, wenn für den Subtyp kein Handler registriert ist
+     */
+    public boolean dispatch(SystemMessage message) {
+        Lane lane = message.getSubtype() == null ? null : lanes.get(message.getSubtype());
+        if (lane == null) {
+            return false;
+        }
+        lane.enqueue(message);
+        return true;
+    }
+
+    /**
+     * Plant eine Aktion verzögert auf dem Pool ein.
+     *
+     * @param task    Aktion
+     * @param delayMs Verzögerung in Millisekunden
+     * @return Handle zum Abbrechen oder {@code null}, wenn der Dispatcher geschlossen ist
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+        try {
+            return executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Wartet, bis alle Pool-Threads nach {@link #close()} beendet sind.
+     *
+     * @param timeoutMs maximale Wartezeit in Millisekunden
+     * @return {@code true}, wenn alle Threads beendet sind
+     * @throws InterruptedException wenn der wartende Thread unterbrochen wird
+     */
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        return executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Verwirft ausstehende Nachrichten und geplante Aktionen und unterbricht laufende Handler.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (Lane lane : lanes.values()) {
+            lane.pending.clear();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * Zeichnet den verschlüsselten Datenverkehr einer Sitzung in einer kompakten Datei auf.
+ * <p>
+ * Die Klasse {@code TrafficRecorder} wird vom {@link IOManager} aufgerufen, wenn die
+ * System-Property {@code securechat.capture} auf ein Verzeichnis gesetzt ist. Jeder ein- und
+ * ausgehende Frame wird unverändert (also verschlüsselt) mit Zeitstempel aufgezeichnet.
+ * Die Frames werden in gepoolte Buffer kopiert und von einem eigenen Thread geschrieben,
+ * damit die Sende- und Empfangspfade nicht auf die Festplatte warten. Ist die Warteschlange
+ * voll, wird der Frame verworfen und gezählt.
+ * <p>
+ * Dateiformat: Kopf {@code "SCCAP"}, Versionsbyte, Startzeit in Millisekunden (8 Byte),
+ * danach je Frame: Richtung ({@code 'I'} oder {@code 'O'}), Abstand zum vorherigen Frame in
+ * Nanosekunden (Varint), Länge (Varint) und die Frame-Bytes. Da jede Sitzung eigene Schlüssel
+ * aushandelt, werden zusätzlich die Sitzungsschlüssel als Datensätze {@code 'K'} (Epoche und
+ * Schlüssel) aufgezeichnet; eine Aufzeichnung ist daher wie der Passkey zu schützen. Die Datei
+ * wird neu angelegt und ist, wo das Dateisystem POSIX-Rechte kennt, nur für den Besitzer lesbar.
+ * Gelesen wird das Format vom {@link TrafficReplayer}.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TrafficRecorder {
+    public static final byte[] MAGIC = "SCCAP".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 2;
+    public static final byte INBOUND = 'I';
+    public static final byte OUTBOUND = 'O';
+    public static final byte KEY = 'K';
+
+    private static final int HEADER_SIZE = 1 + 8;
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final AtomicInteger captureCounter = new AtomicInteger();
+
+    private final BufferPool bufferPool;
+    private final BlockingQueue<ByteBuffer> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ByteBuffer endOfStream = ByteBuffer.allocate(0);
+    private final AtomicLong dropped = new AtomicLong();
+    private final DataOutputStream out;
+    private final File file;
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    /**
+     * Erstellt einen Recorder, der in die angegebene Datei schreibt.
+     *
+     * @param file       Zieldatei
+     * @param bufferPool Pool für die Kopien der Frames
+     * @throws IOException wenn die Datei nicht angelegt werden kann oder bereits existiert
+     */
+    public TrafficRecorder(File file, BufferPool bufferPool) throws IOException {
+        this.file = file;
+        this.bufferPool = bufferPool;
+        this.out = new DataOutputStream(new BufferedOutputStream(createPrivate(file), 64 * 1024));
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        this.writerThread = new Thread(this::writeLoop, "TrafficRecorder-Thread");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Legt die Aufzeichnungsdatei neu an, wo möglich mit den Rechten {@code rw-------}. Eine
+     * bestehende Datei (oder ein symbolischer Link) wird nie überschrieben.
+     *
+     * @param file Zieldatei
+     * @return Ausgabestrom in die Datei
+     * @throws IOException wenn die Datei nicht angelegt werden kann oder bereits existiert
+     */
+    private static OutputStream createPrivate(File file) throws IOException {
+        EnumSet<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            FileAttribute<?> ownerOnly = PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"));
+            return Channels.newOutputStream(Files.newByteChannel(file.toPath(), options, ownerOnly));
+        }
+        return Channels.newOutputStream(Files.newByteChannel(file.toPath(), options));
+    }
+
+    /**
+     * Erstellt einen Recorder gemäß der System-Property {@code securechat.capture}.
+     *
+     * @param bufferPool Pool für die Kopien der Frames
+     * @return Recorder oder {@code null}, wenn die Aufzeichnung nicht aktiviert ist
+     * @throws IOException wenn die Datei nicht angelegt werden kann
+     */
+    public static TrafficRecorder fromSystemProperty(BufferPool bufferPool) throws IOException {
+        String directory = System.getProperty("securechat.capture");
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        File dir = new File(directory);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Aufzeichnungsverzeichnis kann nicht angelegt werden: " + dir);
+        }
+        String name = "capture-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                + "-" + captureCounter.incrementAndGet() + ".sccap";
+        return new TrafficRecorder(new File(dir, name), bufferPool);
+    }
+
+    /**
+     * Zeichnet einen empfangenen Frame auf, ohne dessen Position zu verändern.
+     *
+     * @param frame empfangener Frame (Heap-Buffer)
+     */
+    public void recordInbound(ByteBuffer frame) {
+        record(INBOUND, frame);
+    }
+
+    /**
+     * Zeichnet einen gesendeten Frame auf, ohne dessen Position zu verändern.
+     *
+     * @param frame gesendeter Frame (Heap-Buffer)
+     */
+    public void recordOutbound(ByteBuffer frame) {
+        record(OUTBOUND, frame);
+    }
+
+    /**
+     * Zeichnet einen Sitzungsschlüssel auf, damit die folgenden Frames offline
+     * entschlüsselt werden können.
+     *
+     * @param epoch Epoche des Schlüssels
+     * @param key   Schlüssel
+     */
+    public void recordKey(int epoch, byte[] key) {
+        ByteBuffer data = ByteBuffer.allocate(1 + key.length);
+        data.put((byte) epoch).put(key).flip();
+        record(KEY, data);
+    }
+
+    /**
+     * Gibt die Zieldatei der Aufzeichnung zurück.
+     *
+     * @return Zieldatei
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gibt die Anzahl verworfener Frames zurück.
+     *
+     * @return Anzahl verworfener Frames
+     */
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+
+    /**
+     * Schreibt alle noch ausstehenden Frames und schliesst die Datei.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(endOfStream);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Kopiert einen Frame samt Richtung und Zeitstempel in einen gepoolten Buffer
+     * und übergibt ihn dem Schreib-Thread.
+     *
+     * @param direction Richtung des Frames
+     * @param frame     Frame (Heap-Buffer)
+     */
+    private void record(byte direction, ByteBuffer frame) {
+        if (closed) {
+            return;
+        }
+        int length = frame.remaining();
+        ByteBuffer copy = bufferPool.acquire(HEADER_SIZE + length);
+        copy.put(direction);
+        copy.putLong(System.nanoTime());
+        copy.put(frame.array(), frame.arrayOffset() + frame.position(), length);
+        copy.flip();
+        if (direction == KEY) {
+            // Ohne Schlüssel wären alle folgenden Frames unlesbar, daher nie verwerfen
+            try {
+                queue.put(copy);
+            } catch (InterruptedException e) {
+                bufferPool.release(copy);
+                Thread.currentThread().interrupt();
+            }
+        } else if (!queue.offer(copy)) {
+            bufferPool.release(copy);
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Schreibt die aufgezeichneten Frames, bis {@link #close()} aufgerufen wird.
+     */
+    private void writeLoop() {
+        long previous = -1;
+        try {
+            while (true) {
+                ByteBuffer record = queue.take();
+                if (record == endOfStream) {
+                    break;
+                }
+                try {
+                    byte direction = record.get();
+                    long timestamp = record.getLong();
+                    out.writeByte(direction);
+                    writeVarint(out, previous < 0 ? 0 : timestamp - previous);
+                    writeVarint(out, record.remaining());
+                    out.write(record.array(), record.arrayOffset() + record.position(), record.remaining());
+                    previous = timestamp;
+                } finally {
+                    bufferPool.release(record);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Aufzeichnung abgebrochen: " + e.getMessage());
+        } finally {
+            ByteBuffer record;
+            while ((record = queue.poll()) != null) {
+                if (record != endOfStream) {
+                    bufferPool.release(record);
+                }
+            }
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Schreibt eine nicht-negative Zahl als Varint (7 Bit pro Byte).
+     *
+     * @param out   Ziel
+     * @param value Wert
+     * @throws IOException bei Schreibfehlern
+     */
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
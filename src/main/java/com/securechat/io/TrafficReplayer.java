@@ -0,0 +1,234 @@
+/**
+ * Spielt eine Aufzeichnung des {@link TrafficRecorder} offline durch die Empfangspipeline.
+ * <p>
+ * Die Klasse {@code TrafficReplayer} liest die aufgezeichneten Frames und führt sie Stufe für
+ * Stufe durch den {@link FrameDecoder}: Entschlüsseln, Parsen und Zuordnen zur Nachrichtenklasse.
+ * Die Wiedergabe erfolgt entweder so schnell wie möglich oder im aufgezeichneten Tempo.
+ * Anschliessend wird pro Stufe der Durchsatz ausgegeben, sodass verschiedene Versionen mit
+ * realem Datenverkehr verglichen werden können.
+ * <p>
+ * Die Sitzungsschlüssel werden den Schlüsseldatensätzen der Aufzeichnung entnommen.
+ * <p>
+ * Aufruf: {@code java -cp securechat.jar com.securechat.io.TrafficReplayer <datei> [--realtime] [--outbound] [--repeat N]}
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import com.google.gson.JsonObject;
+import com.securechat.security.CryptoManager;
+import com.securechat.security.KeyExchange;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class TrafficReplayer {
+    private final CryptoManager cryptoManager;
+    private final FrameDecoder decoder;
+    private final BufferPool bufferPool;
+    private long frames;
+    private long bytes;
+    private long failures;
+    private long decryptNanos;
+    private long parseNanos;
+    private long dispatchNanos;
+
+    /**
+     * Ein aufgezeichneter Frame.
+     */
+    private static final class CapturedFrame {
+        private final byte direction;
+        private final long delayNanos;
+        private final byte[] data;
+
+        private CapturedFrame(byte direction, long delayNanos, byte[] data) {
+            this.direction = direction;
+            this.delayNanos = delayNanos;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     */
+    public TrafficReplayer() {
+        this.bufferPool = new BufferPool(false);
+        // Platzhalter für Epoche 0; die echten Schlüssel folgen aus der Aufzeichnung
+        this.cryptoManager = new CryptoManager(new byte[KeyExchange.SESSION_KEY_SIZE]);
+        this.decoder = new FrameDecoder(cryptoManager, bufferPool);
+    }
+
+    /**
+     * Einstiegspunkt für die Wiedergabe über die Kommandozeile.
+     *
+     * @param args Datei und optionale Schalter
+     * @throws IOException wenn die Aufzeichnung nicht gelesen werden kann
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Aufruf: TrafficReplayer <datei> [--realtime] [--outbound] [--repeat N]");
+            System.exit(2);
+        }
+        List<String> options = Arrays.asList(args).subList(1, args.length);
+        boolean realtime = options.contains("--realtime");
+        byte direction = options.contains("--outbound") ? TrafficRecorder.OUTBOUND : TrafficRecorder.INBOUND;
+        int repeat = 1;
+        int repeatIndex = options.indexOf("--repeat");
+        if (repeatIndex >= 0 && repeatIndex + 1 < options.size()) {
+            repeat = Integer.parseInt(options.get(repeatIndex + 1));
+        }
+
+        List<CapturedFrame> capture = readCapture(new File(args[0]));
+        TrafficReplayer replayer = new TrafficReplayer();
+        for (int i = 0; i < repeat; i++) {
+            replayer.replay(capture, direction, realtime);
+        }
+        replayer.printReport();
+    }
+
+    /**
+     * Liest eine Aufzeichnung vollständig ein.
+     *
+     * @param file Aufzeichnungsdatei
+     * @return aufgezeichnete Frames in Reihenfolge
+     * @throws IOException bei Lesefehlern oder ungültigem Format
+     */
+    private static List<CapturedFrame> readCapture(File file) throws IOException {
+        List<CapturedFrame> frames = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            byte[] magic = new byte[TrafficRecorder.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, TrafficRecorder.MAGIC) || in.readUnsignedByte() != TrafficRecorder.VERSION) {
+                throw new IOException("Keine gültige Aufzeichnung: " + file);
+            }
+            in.readLong(); // Startzeit
+            while (true) {
+                int direction = in.read();
+                if (direction < 0) {
+                    break;
+                }
+                long delay = readVarint(in);
+                byte[] data = new byte[(int) readVarint(in)];
+                in.readFully(data);
+                frames.add(new CapturedFrame((byte) direction, delay, data));
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Führt die Frames einer Richtung durch die Empfangspipeline.
+     *
+     * @param capture   aufgezeichnete Frames
+     * @param direction {@link TrafficRecorder#INBOUND} oder {@link TrafficRecorder#OUTBOUND}
+     * @param realtime  {@code true}, um die aufgezeichneten Abstände einzuhalten
+     */
+    private void replay(List<CapturedFrame> capture, byte direction, boolean realtime) {
+        decoder.resetReplayWindow();
+        long due = System.nanoTime();
+        for (CapturedFrame captured : capture) {
+            due += captured.delayNanos;
+            if (captured.direction == TrafficRecorder.KEY) {
+                cryptoManager.installKey(captured.data[0], Arrays.copyOfRange(captured.data, 1, captured.data.length));
+                continue;
+            }
+            if (captured.direction != direction) {
+                continue;
+            }
+            if (realtime) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            process(captured.data);
+        }
+    }
+
+    /**
+     * Verarbeitet einen Frame und misst jede Stufe einzeln.
+     *
+     * @param data Frame-Bytes
+     */
+    private void process(byte[] data) {
+        ByteBuffer frame = ByteBuffer.wrap(data);
+        ByteBuffer plaintext = null;
+        try {
+            long start = System.nanoTime();
+            plaintext = decoder.decrypt(frame);
+            long decrypted = System.nanoTime();
+            JsonObject json = decoder.parse(plaintext);
+            long parsed = System.nanoTime();
+            Object message = decoder.toMessage(json);
+            long dispatched = System.nanoTime();
+            decryptNanos += decrypted - start;
+            parseNanos += parsed - decrypted;
+            dispatchNanos += dispatched - parsed;
+            if (message == null) {
+                failures++;
+            }
+        } catch (Exception e) {
+            failures++;
+        } finally {
+            bufferPool.release(plaintext);
+        }
+        frames++;
+        bytes += data.length;
+    }
+
+    /**
+     * Gibt den Durchsatz pro Stufe aus.
+     */
+    private void printReport() {
+        System.out.printf("Frames: %d (%d fehlerhaft), %.2f MB%n", frames, failures, bytes / 1e6);
+        printStage("Entschlüsseln", decryptNanos);
+        printStage("Parsen", parseNanos);
+        printStage("Zuordnen", dispatchNanos);
+        printStage("Gesamt", decryptNanos + parseNanos + dispatchNanos);
+    }
+
+    /**
+     * Gibt den Durchsatz einer Stufe aus.
+     *
+     * @param name  Name der Stufe
+     * @param nanos aufsummierte Laufzeit der Stufe
+     */
+    private void printStage(String name, long nanos) {
+        double seconds = Math.max(nanos, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+        System.out.printf("%-14s %10.0f Frames/s %10.2f MB/s %8.2f µs/Frame%n",
+                name, frames / seconds, bytes / 1e6 / seconds, frames == 0 ? 0.0 : nanos / 1000.0 / frames);
+    }
+
+    /**
+     * Liest eine mit {@link TrafficRecorder} geschriebene Varint-Zahl.
+     *
+     * @param in Quelle
+     * @return gelesener Wert
+     * @throws IOException bei Lesefehlern oder unerwartetem Dateiende
+     */
+    private static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Unerwartetes Ende der Aufzeichnung");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Ungültige Varint-Kodierung");
+    }
+}
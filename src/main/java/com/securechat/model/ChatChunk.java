@@ -0,0 +1,122 @@
+/**
+ * Repräsentiert einen Teil einer gestreamten, sehr großen Chat-Nachricht.
+ * <p>
+ * Die Klasse {@code ChatChunk} wird verwendet, wenn eine Nachricht zu groß für einen einzelnen
+ * Frame ist. Alle Teile einer Nachricht tragen dieselbe Stream-ID und eine fortlaufende Nummer;
+ * der letzte Teil ist markiert. Jeder Teil wird einzeln verschlüsselt und übertragen, sodass der
+ * Empfänger ihn sofort entschlüsseln und anzeigen kann, ohne die ganze Nachricht zu puffern.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.model;
+
+public class ChatChunk {
+    private String type;
+    private String streamId;
+    private int index;
+    private boolean last;
+    private String text;
+    private String senderIp;
+    private String timestamp;
+    private long sentMicros;
+
+    /**
+     * Konstruktor für die Deserialisierung; alle Felder werden aus dem JSON gesetzt.
+     */
+    private ChatChunk() {
+    }
+
+    /**
+     * Erstellt einen neuen Teil einer gestreamten Nachricht.
+     *
+     * @param streamId   ID des Streams, gemeinsam für alle Teile einer Nachricht
+     * @param index      fortlaufende Nummer des Teils, beginnend bei 0
+     * @param last       {@code true}, wenn dies der letzte Teil ist
+     * @param text       Textinhalt des Teils
+     * @param senderIp   IP-Adresse des Absenders
+     * @param timestamp  Zeitstempel der gesamten Nachricht
+     * @param sentMicros Sendezeitpunkt der gesamten Nachricht in Mikrosekunden seit der Epoche
+     */
+    public ChatChunk(String streamId, int index, boolean last, String text, String senderIp, String timestamp, long sentMicros) {
+        this.type = "CHUNK";
+        this.streamId = streamId;
+        this.index = index;
+        this.last = last;
+        this.text = text;
+        this.senderIp = senderIp;
+        this.timestamp = timestamp;
+        this.sentMicros = sentMicros;
+    }
+
+    /**
+     * Gibt den Typ der Nachricht zurück.
+     * 
+     * @return Nachrichtentyp (immer "CHUNK")
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gibt die ID des Streams zurück.
+     * 
+     * @return Stream-ID
+     */
+    public String getStreamId() {
+        return streamId;
+    }
+
+    /**
+     * Gibt die fortlaufende Nummer des Teils zurück.
+     * 
+     * @return Nummer des Teils
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Gibt an, ob dies der letzte Teil der Nachricht ist.
+     * 
+     * @return {@code true} für den letzten Teil
+     */
+    public boolean isLast() {
+        return last;
+    }
+
+    /**
+     * Gibt den Textinhalt des Teils zurück.
+     * 
+     * @return Text des Teils
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Gibt die IP-Adresse des Absenders zurück.
+     * 
+     * @return Absender-IP
+     */
+    public String getSenderIp() {
+        return senderIp;
+    }
+
+    /**
+     * Gibt den Zeitstempel der Nachricht zurück.
+     * 
+     * @return Zeitstempel als String
+     */
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gibt den Sendezeitpunkt der gesamten Nachricht als absolute Zeit zurück.
+     *
+     * @return Mikrosekunden seit der Epoche, {@code 0} bei Nachrichten älterer Gegenstellen
+     */
+    public long getSentMicros() {
+        return sentMicros;
+    }
+}
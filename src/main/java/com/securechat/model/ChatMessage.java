@@ -2,13 +2,18 @@
  * Repräsentiert eine Chat-Nachricht.
  * <p>
  * Die Klasse {@code ChatMessage} kapselt alle relevanten Metadaten einer Chat-Nachricht,
- * darunter Typ (immer "CHAT"), Nachrichtentext, Absender-IP und Zeitstempel.
+ * darunter Typ (immer "CHAT"), Nachrichtentext, Absender-IP und Zeitstempel. Zusätzlich
+ * trägt sie den Sendezeitpunkt in Mikrosekunden seit der Epoche, aus dem der Empfänger die
+ * Latenz bis zur Anzeige bestimmt; ältere Gegenstellen senden ihn nicht (Wert 0).
+ * Kennt der Empfänger einen langen Text bereits, wird statt des Textes nur sein Hash im
+ * {@link com.securechat.io.BlobCache} übertragen (siehe {@link #toReference(String)}).
  * Sie kann sowohl beim Versenden als auch beim Empfangen verwendet werden.
  * 
  * @author Milos Hornik
  */
 package com.securechat.model;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -17,6 +22,14 @@ public class ChatMessage {
     private String text;
     private String senderIp;
     private String timestamp;
+    private long sentMicros;
+    private String blobHash;
+
+    /**
+     * Konstruktor für die Deserialisierung; alle Felder werden aus dem JSON gesetzt.
+     */
+    private ChatMessage() {
+    }
 
     /**
      * Erstellt eine neue ChatMessage beim Versenden.
@@ -30,6 +43,8 @@ public class ChatMessage {
         this.text = text;
         this.senderIp = senderIp;
         this.timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        Instant now = Instant.now();
+        this.sentMicros = now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
     }
 
     /**
@@ -47,6 +62,42 @@ public class ChatMessage {
         this.timestamp = timestamp; 
     }
 
+    /**
+     * Erstellt eine Kopie mit anderem Text und Hash.
+     *
+     * @param original kopierte Nachricht
+     * @param text     Text der Kopie
+     * @param blobHash Hash der Kopie
+     */
+    private ChatMessage(ChatMessage original, String text, String blobHash) {
+        this.type = original.type;
+        this.text = text;
+        this.senderIp = original.senderIp;
+        this.timestamp = original.timestamp;
+        this.sentMicros = original.sentMicros;
+        this.blobHash = blobHash;
+    }
+
+    /**
+     * Erstellt eine Referenz auf diese Nachricht, die statt des Textes nur seinen Hash trägt.
+     *
+     * @param blobHash Hash des UTF-8-kodierten Textes
+     * @return Nachricht ohne Text
+     */
+    public ChatMessage toReference(String blobHash) {
+        return new ChatMessage(this, null, blobHash);
+    }
+
+    /**
+     * Setzt den aus dem Cache geholten Text in eine empfangene Referenz ein.
+     *
+     * @param text Text der Nachricht
+     * @return vollständige Nachricht
+     */
+    public ChatMessage resolve(String text) {
+        return new ChatMessage(this, text, null);
+    }
+
     /**
      * Gibt den Typ der Nachricht zurück.
      * 
@@ -82,4 +133,22 @@ public class ChatMessage {
     public String getTimestamp() {
         return timestamp;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gibt den Sendezeitpunkt zurück.
+     * 
+     * @return Mikrosekunden seit der Epoche oder 0, wenn der Absender keinen mitschickt
+     */
+    public long getSentMicros() {
+        return sentMicros;
+    }
+
+    /**
+     * Gibt den Hash des Textes zurück, wenn die Nachricht nur eine Referenz ist.
+     * 
+     * @return Hash oder {@code null} bei Nachrichten mit Text
+     */
+    public String getBlobHash() {
+        return blobHash;
+    }
+}
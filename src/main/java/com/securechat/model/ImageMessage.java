@@ -0,0 +1,143 @@
+/**
+ * Repräsentiert eine Bild-Nachricht.
+ * <p>
+ * Die Klasse {@code ImageMessage} kapselt ein Bild samt Metadaten: Typ (immer "IMAGE"),
+ * eine eindeutige Bild-ID, den ursprünglichen Dateinamen, die Base64-kodierten Bilddaten,
+ * die Absender-IP und den Zeitstempel. Die Bilddaten werden unverändert übertragen;
+ * Dekodierung und Skalierung erfolgen erst beim Empfänger im Hintergrund. Kennt der Empfänger
+ * das Bild bereits, werden statt der Bilddaten nur deren Hash im {@link com.securechat.io.BlobCache}
+ * übertragen (siehe {@link #toReference(String)}).
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.model;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.UUID;
+
+public class ImageMessage {
+    private String type;
+    private String imageId;
+    private String fileName;
+    private String data;
+    private String senderIp;
+    private String timestamp;
+    private long sentMicros;
+    private String blobHash;
+
+    /**
+     * Konstruktor für die Deserialisierung; alle Felder werden aus dem JSON gesetzt.
+     */
+    private ImageMessage() {
+    }
+
+    /**
+     * Erstellt eine neue ImageMessage beim Versenden.
+     * Bild-ID und Zeitstempel werden automatisch gesetzt.
+     *
+     * @param fileName  ursprünglicher Dateiname
+     * @param imageData Bilddaten (z. B. PNG oder JPEG)
+     * @param senderIp  IP-Adresse des Absenders
+     */
+    public ImageMessage(String fileName, byte[] imageData, String senderIp) {
+        this.type = "IMAGE";
+        this.imageId = UUID.randomUUID().toString();
+        this.fileName = fileName;
+        this.data = Base64.getEncoder().encodeToString(imageData);
+        this.senderIp = senderIp;
+        this.timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        Instant now = Instant.now();
+        this.sentMicros = now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+    }
+
+    /**
+     * Erstellt eine Referenz auf diese Nachricht, die statt der Bilddaten nur deren Hash trägt.
+     *
+     * @param blobHash Hash der Bilddaten
+     * @return Nachricht ohne Bilddaten
+     */
+    public ImageMessage toReference(String blobHash) {
+        ImageMessage reference = new ImageMessage(fileName, new byte[0], senderIp);
+        reference.imageId = imageId;
+        reference.data = null;
+        reference.timestamp = timestamp;
+        reference.sentMicros = sentMicros;
+        reference.blobHash = blobHash;
+        return reference;
+    }
+
+    /**
+     * Gibt den Typ der Nachricht zurück.
+     * 
+     * @return Nachrichtentyp (immer "IMAGE")
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gibt die eindeutige ID des Bildes zurück.
+     * 
+     * @return Bild-ID
+     */
+    public String getImageId() {
+        return imageId;
+    }
+
+    /**
+     * Gibt den ursprünglichen Dateinamen zurück.
+     * 
+     * @return Dateiname
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Dekodiert die übertragenen Bilddaten.
+     * 
+     * @return Bilddaten als Byte-Array oder {@code null}, wenn die Nachricht nur eine Referenz ist
+     */
+    public byte[] getImageData() {
+        return data == null ? null : Base64.getDecoder().decode(data);
+    }
+
+    /**
+     * Gibt den Hash der Bilddaten zurück, wenn die Nachricht nur eine Referenz ist.
+     * 
+     * @return Hash oder {@code null} bei Nachrichten mit Bilddaten
+     */
+    public String getBlobHash() {
+        return blobHash;
+    }
+
+    /**
+     * Gibt die IP-Adresse des Absenders zurück.
+     * 
+     * @return Absender-IP
+     */
+    public String getSenderIp() {
+        return senderIp;
+    }
+
+    /**
+     * Gibt den Zeitstempel der Nachricht zurück.
+     * 
+     * @return Zeitstempel als String
+     */
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gibt den Sendezeitpunkt als absolute Zeit zurück, unabhängig von der Zeitzone des Absenders.
+     *
+     * @return Mikrosekunden seit der Epoche, {@code 0} bei Nachrichten älterer Gegenstellen
+     */
+    public long getSentMicros() {
+        return sentMicros;
+    }
+}
@@ -0,0 +1,550 @@
+/**
+ * Kompakter Speicher für den Nachrichtenverlauf einer Sitzung.
+ * <p>
+ * Die Klasse {@code MessageStore} legt Nachrichten nicht als Objekte ab, sondern spaltenweise:
+ * Texte als UTF-8 in einer nur wachsenden Arena aus Seiten zu {@link #PAGE_SIZE} Bytes,
+ * Absender als kleine Ganzzahlen (jede Adresse wird nur einmal gespeichert), Zeitstempel als
+ * {@code long} und Art der Nachricht als Flag-Byte. Pro Nachricht fallen so neben dem Text rund
+ * 30 Bytes an statt mehrerer {@link String}-Objekte. Gelesen wird über einen wiederverwendbaren
+ * {@link View}, der auf eine Nachricht positioniert wird und ihre Felder erst bei Bedarf dekodiert.
+ * <p>
+ * Gestreamte Nachrichten werden mit {@link #extend(int, String)} fortgesetzt. Jede Nachricht besitzt
+ * einen Bereich der Arena, dessen Kapazität grösser als ihr Text sein kann. Passt die Fortsetzung
+ * nicht mehr hinein, wird der Text in einen neuen Bereich mit doppelter Kapazität kopiert, sodass
+ * auch ineinander verschachtelte Streams insgesamt nur linear viel kopieren. Texte über
+ * {@link #PAGE_SIZE} erhalten eine eigene Seite, die beim Umzug freigegeben wird. Alle Methoden
+ * sind threadsicher.
+ * <p>
+ * Für den Abgleich des Verlaufs zwischen zwei Peers liefert {@link #digest(int)} eine Kennung,
+ * die auf beiden Seiten gleich ist. Dafür speichert der Store den absoluten Sendezeitpunkt der
+ * Nachricht ({@code sentMicros}); die lokale Zeitangabe als Text wird nur bei Nachrichten älterer
+ * Gegenstellen ohne diesen Wert ausgewertet, deren Kennung dann von der Zeitzone abhängt.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.model;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+public class MessageStore {
+    public static final int PAGE_SIZE = 1 << 20;
+    public static final byte INCOMING = 1;
+    public static final byte IMAGE = 2;
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_TEXT_CAPACITY = Integer.MAX_VALUE - 8;
+    private static final byte[] RELEASED_PAGE = new byte[0];
+
+    private final List<byte[]> pages = new ArrayList<>();
+    private int pageFill = PAGE_SIZE;
+    private final Map<String, Integer> senderIds = new HashMap<>();
+    private final List<String> senders = new ArrayList<>();
+    private final Map<Integer, String> imageIds = new HashMap<>();
+
+    private int count;
+    private int[] textPage = new int[INITIAL_CAPACITY];
+    private int[] textOffset = new int[INITIAL_CAPACITY];
+    private int[] textLength = new int[INITIAL_CAPACITY];
+    private int[] textCapacity = new int[INITIAL_CAPACITY];
+    private int[] sender = new int[INITIAL_CAPACITY];
+    private long[] timestamp = new long[INITIAL_CAPACITY];
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+
+    /**
+     * Lesesicht auf eine gespeicherte Nachricht. Eine Instanz kann mit {@link #moveTo(int)} beliebig
+     * oft neu positioniert werden und ist nur für einen Thread gedacht.
+     */
+    public final class View {
+        private int index = -1;
+
+        private View() {
+        }
+
+        /**
+         * Positioniert die Sicht auf eine Nachricht.
+         *
+         * @param index Index der Nachricht
+         * @return diese Sicht
+         * @throws IndexOutOfBoundsException wenn es die Nachricht nicht gibt
+         */
+        public View moveTo(int index) {
+            synchronized (MessageStore.this) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException("Nachricht " + index + " von " + count);
+                }
+            }
+            this.index = index;
+            return this;
+        }
+
+        /**
+         * Gibt den Index der aktuellen Nachricht zurück.
+         *
+         * @return Index
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Dekodiert den Text der Nachricht (bei Bildern den Dateinamen).
+         *
+         * @return Text
+         */
+        public String getText() {
+            synchronized (MessageStore.this) {
+                return new String(pages.get(textPage[index]), textOffset[index], textLength[index], StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * Dekodiert höchstens die ersten {@code maxChars} Zeichen des Textes. Gelesen werden nur
+         * so viele Bytes, wie für diese Zeichen nötig sind; ein Ersatzpaar wird nicht getrennt.
+         *
+         * @param maxChars maximale Anzahl Zeichen
+         * @return Anfang des Textes
+         */
+        public String getTextPrefix(int maxChars) {
+            CharBuffer out = CharBuffer.allocate(maxChars);
+            synchronized (MessageStore.this) {
+                ByteBuffer in = ByteBuffer.wrap(pages.get(textPage[index]), textOffset[index], textLength[index]);
+                StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                        .decode(in, out, true);
+            }
+            return out.flip().toString();
+        }
+
+        /**
+         * Zählt die Zeichen des Textes (UTF-16-Einheiten wie {@link String#length()}), ohne ihn
+         * zu dekodieren.
+         *
+         * @return Länge in Zeichen
+         */
+        public int getTextLength() {
+            synchronized (MessageStore.this) {
+                byte[] page = pages.get(textPage[index]);
+                int end = textOffset[index] + textLength[index];
+                int length = 0;
+                for (int i = textOffset[index]; i < end; i++) {
+                    int b = page[i] & 0xFF;
+                    if ((b & 0xC0) != 0x80) {
+                        length += b >= 0xF0 ? 2 : 1;
+                    }
+                }
+                return length;
+            }
+        }
+
+        /**
+         * Gibt die Länge des Textes in UTF-8-Bytes zurück, ohne ihn zu dekodieren.
+         *
+         * @return Länge in Bytes
+         */
+        public int getTextBytes() {
+            synchronized (MessageStore.this) {
+                return textLength[index];
+            }
+        }
+
+        /**
+         * Gibt die Adresse des Absenders zurück; die Instanz wird von allen Nachrichten geteilt.
+         *
+         * @return Absender-IP
+         */
+        public String getSenderIp() {
+            synchronized (MessageStore.this) {
+                return senders.get(sender[index]);
+            }
+        }
+
+        /**
+         * Gibt den Zeitstempel zurück.
+         *
+         * @return Millisekunden seit der Epoche
+         */
+        public long getTimestampMillis() {
+            synchronized (MessageStore.this) {
+                return timestamp[index];
+            }
+        }
+
+        /**
+         * Formatiert den Zeitstempel wie in {@link ChatMessage}.
+         *
+         * @return Zeitstempel als String
+         */
+        public String getTimestamp() {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(getTimestampMillis()), ZoneId.systemDefault())
+                    .format(TIMESTAMP_FORMAT);
+        }
+
+        /**
+         * Gibt an, ob die Nachricht empfangen (und nicht gesendet) wurde.
+         *
+         * @return {@code true} bei empfangenen Nachrichten
+         */
+        public boolean isIncoming() {
+            synchronized (MessageStore.this) {
+                return (flags[index] & INCOMING) != 0;
+            }
+        }
+
+        /**
+         * Gibt an, ob die Nachricht ein Bild ist.
+         *
+         * @return {@code true} bei Bildern
+         */
+        public boolean isImage() {
+            synchronized (MessageStore.this) {
+                return (flags[index] & IMAGE) != 0;
+            }
+        }
+
+        /**
+         * Gibt die Bild-ID zurück, falls die Nachricht ein Bild ist.
+         *
+         * @return Bild-ID oder {@code null}
+         */
+        public String getImageId() {
+            synchronized (MessageStore.this) {
+                return (flags[index] & IMAGE) != 0 ? imageIds.get(index) : null;
+            }
+        }
+    }
+
+    /**
+     * Erstellt eine neue Sicht, die mit {@link View#moveTo(int)} positioniert werden muss.
+     *
+     * @return Sicht
+     */
+    public View view() {
+        return new View();
+    }
+
+    /**
+     * Gibt die Anzahl gespeicherter Nachrichten zurück.
+     *
+     * @return Anzahl
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Speichert eine Chat-Nachricht.
+     *
+     * @param message  Nachricht
+     * @param incoming {@code true} bei empfangenen Nachrichten
+     * @return Index der Nachricht
+     */
+    public int append(ChatMessage message, boolean incoming) {
+        return append(message.getText(), message.getSenderIp(), timestampMillis(message.getSentMicros(), message.getTimestamp()),
+                incoming ? INCOMING : 0);
+    }
+
+    /**
+     * Speichert eine Bildnachricht; die Bilddaten selbst werden nicht gespeichert.
+     *
+     * @param message  Bildnachricht
+     * @param incoming {@code true} bei empfangenen Bildern
+     * @return Index der Nachricht
+     */
+    public synchronized int appendImage(ImageMessage message, boolean incoming) {
+        int index = append(message.getFileName(), message.getSenderIp(), timestampMillis(message.getSentMicros(), message.getTimestamp()),
+                (byte) (IMAGE | (incoming ? INCOMING : 0)));
+        imageIds.put(index, message.getImageId());
+        return index;
+    }
+
+    /**
+     * Speichert eine Nachricht.
+     *
+     * @param text            Text
+     * @param senderIp        Absender-IP
+     * @param timestampMillis Zeitstempel in Millisekunden seit der Epoche
+     * @param flag            Kombination aus {@link #INCOMING} und {@link #IMAGE}
+     * @return Index der Nachricht
+     */
+    public synchronized int append(String text, String senderIp, long timestampMillis, byte flag) {
+        if (count == flags.length) {
+            grow();
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        int index = count;
+        allocate(index, utf8.length);
+        System.arraycopy(utf8, 0, pages.get(textPage[index]), textOffset[index], utf8.length);
+        textLength[index] = utf8.length;
+        sender[index] = internSender(senderIp);
+        timestamp[index] = timestampMillis;
+        flags[index] = flag;
+        count++;
+        return index;
+    }
+
+    /**
+     * Hängt Text an eine gestreamte Nachricht an.
+     *
+     * @param index Index der Nachricht
+     * @param text  anzuhängender Text
+     */
+    public synchronized void extend(int index, String text) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Nachricht " + index + " von " + count);
+        }
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        long length = (long) textLength[index] + utf8.length;
+        if (length > MAX_TEXT_CAPACITY) {
+            throw new IllegalArgumentException("Nachricht " + index + " zu lang");
+        }
+        if (length > textCapacity[index]) {
+            int end = textOffset[index] + textCapacity[index];
+            if (textPage[index] == pages.size() - 1 && end == pageFill && textOffset[index] + length <= PAGE_SIZE) {
+                // Letzter Bereich der aktuellen Seite: an Ort und Stelle vergrössern
+                pageFill = textOffset[index] + (int) length;
+                textCapacity[index] = (int) length;
+            } else {
+                relocate(index, (int) Math.min(MAX_TEXT_CAPACITY, Math.max(length, 2L * textCapacity[index])));
+            }
+        }
+        System.arraycopy(utf8, 0, pages.get(textPage[index]), textOffset[index] + textLength[index], utf8.length);
+        textLength[index] = (int) length;
+    }
+
+    /**
+     * Berechnet die Kennung einer Nachricht für den Abgleich zwischen Peers. Eingerechnet werden
+     * Absender, Zeitstempel, Art und Text, nicht aber die Richtung, die aus Sicht der beiden Peers
+     * verschieden ist.
+     *
+     * @param index Index der Nachricht
+     * @return die ersten 64 Bit eines SHA-256 über die Felder
+     */
+    public synchronized long digest(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Nachricht " + index + " von " + count);
+        }
+        return digest(senders.get(sender[index]), timestamp[index], (flags[index] & IMAGE) != 0,
+                pages.get(textPage[index]), textOffset[index], textLength[index]);
+    }
+
+    /**
+     * Berechnet die Kennung einer noch nicht gespeicherten Nachricht wie {@link #digest(int)}.
+     *
+     * @param senderIp        Absender-IP
+     * @param timestampMillis Zeitstempel in Millisekunden seit der Epoche
+     * @param image           {@code true} bei Bildern
+     * @param text            Text
+     * @return Kennung
+     */
+    public static long digest(String senderIp, long timestampMillis, boolean image, String text) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        return digest(senderIp == null ? "" : senderIp, timestampMillis, image, utf8, 0, utf8.length);
+    }
+
+    private static long digest(String senderIp, long timestampMillis, boolean image, byte[] text, int offset, int length) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            byte[] senderBytes = senderIp.getBytes(StandardCharsets.UTF_8);
+            sha.update(ByteBuffer.allocate(4 + 8 + 1).putInt(senderBytes.length).putLong(timestampMillis)
+                    .put((byte) (image ? 1 : 0)).array());
+            sha.update(senderBytes);
+            sha.update(text, offset, length);
+            return ByteBuffer.wrap(sha.digest()).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    /**
+     * Sucht Nachrichten, deren Text die Zeichenkette enthält. Verglichen wird direkt auf den
+     * UTF-8-Bytes; ASCII-Buchstaben ohne Beachtung der Gross-/Kleinschreibung.
+     *
+     * @param query gesuchte Zeichenkette
+     * @param hits  erhält die Indizes der Treffer in aufsteigender Reihenfolge
+     */
+    public synchronized void search(String query, IntConsumer hits) {
+        byte[] needle = query.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < needle.length; i++) {
+            needle[i] = foldAscii(needle[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            if (contains(pages.get(textPage[i]), textOffset[i], textLength[i], needle)) {
+                hits.accept(i);
+            }
+        }
+    }
+
+    /**
+     * Schätzt den belegten Speicher der Arena und der Spalten.
+     *
+     * @return Bytes
+     */
+    public synchronized long getMemoryFootprint() {
+        long arena = 0;
+        for (byte[] page : pages) {
+            arena += page.length;
+        }
+        return arena + (long) flags.length * (4 + 4 + 4 + 4 + 4 + 8 + 1);
+    }
+
+    /**
+     * Liefert den Zeitstempel einer Nachricht in Millisekunden seit der Epoche. Massgeblich ist
+     * der absolute Sendezeitpunkt; nur wenn er fehlt, wird die lokale Zeitangabe gelesen.
+     *
+     * @param sentMicros Sendezeitpunkt in Mikrosekunden seit der Epoche oder {@code 0}
+     * @param timestamp  lokale Zeitangabe im Format von {@link ChatMessage}
+     * @return Millisekunden seit der Epoche
+     */
+    public static long timestampMillis(long sentMicros, String timestamp) {
+        return sentMicros > 0 ? sentMicros / 1_000 : parseTimestamp(timestamp);
+    }
+
+    /**
+     * Wandelt einen Zeitstempel im Format von {@link ChatMessage} in Millisekunden um.
+     *
+     * @param value Zeitstempel oder {@code null}
+     * @return Millisekunden seit der Epoche; aktuelle Zeit, wenn nicht lesbar
+     */
+    public static long parseTimestamp(String value) {
+        if (value != null) {
+            try {
+                return LocalDateTime.parse(value, TIMESTAMP_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+            }
+        }
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Reserviert einen Bereich am Ende der Arena für den Text einer Nachricht.
+     *
+     * @param index    Index der Nachricht
+     * @param capacity Kapazität in Bytes
+     */
+    private void allocate(int index, int capacity) {
+        if (capacity > PAGE_SIZE) {
+            // Übergrosse Texte erhalten eine eigene Seite; danach beginnt eine neue reguläre Seite
+            pages.add(new byte[capacity]);
+            textOffset[index] = 0;
+            pageFill = PAGE_SIZE;
+        } else {
+            // Auch leere Texte nie hinter eine volle oder eigene Seite legen
+            if (pageFill == PAGE_SIZE || pageFill + capacity > PAGE_SIZE) {
+                pages.add(new byte[PAGE_SIZE]);
+                pageFill = 0;
+            }
+            textOffset[index] = pageFill;
+            pageFill += capacity;
+        }
+        textPage[index] = pages.size() - 1;
+        textCapacity[index] = capacity;
+    }
+
+    /**
+     * Kopiert den Text einer Nachricht in einen neuen, grösseren Bereich. Eine eigene Seite der
+     * Nachricht wird dabei freigegeben; ein Bereich in einer regulären Seite bleibt ungenutzt,
+     * ist durch die Verdopplung aber insgesamt höchstens so gross wie die neue Kapazität.
+     *
+     * @param index    Index der Nachricht
+     * @param capacity neue Kapazität in Bytes
+     */
+    private void relocate(int index, int capacity) {
+        int oldPage = textPage[index];
+        byte[] old = pages.get(oldPage);
+        int oldOffset = textOffset[index];
+        allocate(index, capacity);
+        System.arraycopy(old, oldOffset, pages.get(textPage[index]), textOffset[index], textLength[index]);
+        if (old.length > PAGE_SIZE) {
+            pages.set(oldPage, RELEASED_PAGE);
+        }
+    }
+
+    /**
+     * Gibt die Nummer eines Absenders zurück und legt sie bei Bedarf an.
+     *
+     * @param senderIp Absender-IP
+     * @return Nummer des Absenders
+     */
+    private int internSender(String senderIp) {
+        String key = senderIp == null ? "" : senderIp;
+        Integer id = senderIds.get(key);
+        if (id == null) {
+            id = senders.size();
+            senders.add(key);
+            senderIds.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Verdoppelt die Kapazität aller Spalten.
+     */
+    private void grow() {
+        int capacity = flags.length * 2;
+        textPage = Arrays.copyOf(textPage, capacity);
+        textOffset = Arrays.copyOf(textOffset, capacity);
+        textLength = Arrays.copyOf(textLength, capacity);
+        textCapacity = Arrays.copyOf(textCapacity, capacity);
+        sender = Arrays.copyOf(sender, capacity);
+        timestamp = Arrays.copyOf(timestamp, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    /**
+     * Prüft, ob ein Bytebereich die (bereits gefaltete) Suchfolge enthält.
+     *
+     * @param data   Seite
+     * @param offset Beginn des Textes
+     * @param length Länge des Textes
+     * @param needle gefaltete Suchfolge
+     * @return {@code true} bei Treffer
+     */
+    private static boolean contains(byte[] data, int offset, int length, byte[] needle) {
+        if (needle.length == 0) {
+            return true;
+        }
+        int last = offset + length - needle.length;
+        byte first = needle[0];
+        for (int i = offset; i <= last; i++) {
+            if (foldAscii(data[i]) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < needle.length && foldAscii(data[i + j]) == needle[j]) {
+                j++;
+            }
+            if (j == needle.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wandelt ASCII-Grossbuchstaben in Kleinbuchstaben um; andere Bytes bleiben unverändert.
+     *
+     * @param b Byte
+     * @return gefaltetes Byte
+     */
+    private static byte foldAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+}
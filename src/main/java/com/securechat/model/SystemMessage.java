@@ -15,6 +15,12 @@ public class SystemMessage {
     private String payload;
     private String senderIp;
 
+    /**
+     * Konstruktor für die Deserialisierung; alle Felder werden aus dem JSON gesetzt.
+     */
+    private SystemMessage() {
+    }
+
     /**
      * Erstellt eine neue SystemMessage mit festem Typ "SYSTEM".
      *
@@ -3,7 +3,8 @@
  * <p>
  * Die Klasse {@code ConnectionManager} verwaltet die Host- und Client-Logik für den Verbindungsaufbau,
  * übernimmt die Validierung der Eingaben, bietet Rückrufe für den GUI-Status und startet den {@link IOManager}
- * für die eigentliche Kommunikationslogik.
+ * für die eigentliche Kommunikationslogik. Der {@link Transport} wird über die System-Property
+ * {@code securechat.transport} gewählt; TCP-Clients verbinden sich weiterhin über den {@link ConnectionRacer}.
  * 
  * @author Milos Hornik
  */
@@ -15,34 +16,89 @@ import java.net.*;
 import com.securechat.gui.StartWindowAccess;
 import com.securechat.io.IOAccessReceiver;
 import com.securechat.io.IOManager;
+import com.securechat.io.StatusLog;
 import com.securechat.security.PasskeyManager;
+import com.securechat.transport.Connection;
+import com.securechat.transport.ConnectionListener;
+import com.securechat.transport.TcpTransport;
+import com.securechat.transport.Transport;
+import com.securechat.transport.Transports;
 
 public class ConnectionManager {
+    private final int sessionId;
     private final Boolean isHost;
     private final String passkey;
     private final StartWindowAccess startWindowAccess;
-    private final int PORT = 5000;
+    private final int port;
+    private final ConnectionStateMachine stateMachine;
+    private final int CONNECT_TIMEOUT = 10000;
     private final IOAccessReceiver receiver;
+    private final Transport transport;
     private String remoteIp;
-    private Socket socket;
-    private ServerSocket serverSocket;
+    private Connection connection;
+    private byte[] sessionKey;
+    private ConnectionListener connectionListener;
     private IOManager ioManager;
+    private volatile ConnectionRacer racer;
 
     /**
      * Konstruktor, der die Instanzen initialisiert.
+     * Sitzungen werden üblicherweise über die {@link SessionRegistry} erzeugt.
      * 
+     * @param sessionId        Eindeutige ID der Sitzung
      * @param isHost           {@code true} für Host, {@code false} für Client
      * @param remoteIp         IP-Adresse des Partners
+     * @param port             Port, auf dem gehostet bzw. verbunden wird
      * @param passkey          Gemeinsamer Passkey
      * @param startWindowAccess Zugriff auf GUI-Komponente für Statusmeldungen
      * @param receiver         Empfänger für IOAccess-Objekt (z. B. StartWindow)
      */
-    public ConnectionManager(Boolean isHost, String remoteIp, String passkey, StartWindowAccess startWindowAccess, IOAccessReceiver receiver) {
+    public ConnectionManager(int sessionId, Boolean isHost, String remoteIp, int port, String passkey, StartWindowAccess startWindowAccess, IOAccessReceiver receiver) {
+        this.sessionId = sessionId;
         this.isHost = isHost;
         this.remoteIp = remoteIp;
+        this.port = port;
         this.passkey = passkey;
         this.startWindowAccess = startWindowAccess;
         this.receiver = receiver;
+        this.stateMachine = new ConnectionStateMachine(sessionId);
+        this.transport = Transports.fromSystemProperty();
+    }
+
+    /**
+     * Gibt die ID dieser Sitzung zurück.
+     * 
+     * @return Sitzungs-ID
+     */
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Gibt an, ob diese Sitzung als Host läuft.
+     * 
+     * @return {@code true} für Host, {@code false} für Client
+     */
+    public Boolean isHost() {
+        return isHost;
+    }
+
+    /**
+     * Gibt den Zustandsautomaten dieser Sitzung zurück, z. B. um Listener zu registrieren.
+     * 
+     * @return Zustandsautomat der Sitzung
+     */
+    public ConnectionStateMachine getStateMachine() {
+        return stateMachine;
+    }
+
+    /**
+     * Gibt den aktuellen Verbindungsstatus dieser Sitzung zurück.
+     * 
+     * @return aktueller Zustand
+     */
+    public ConnectionState getState() {
+        return stateMachine.getState();
     }
 
     /**
@@ -65,8 +121,8 @@ public class ConnectionManager {
                 startWindowAccess.onStatusUpdate("Bitte IP-Adresse eingeben.");
                 return false;
             }
-            if (!isValidIpAddress(ip)) {
-                startWindowAccess.onStatusUpdate("Bitte eine gültige IP-Adresse eingeben.");
+            if (!isValidAddress(ip)) {
+                startWindowAccess.onStatusUpdate("Bitte eine gültige IP-Adresse oder einen gültigen Hostnamen eingeben.");
                 return false;
             }
         }
@@ -81,14 +137,30 @@ public class ConnectionManager {
         return true;
     }
 
+    /**
+     * Prüft, ob eine Zeichenkette eine gültige IPv4-, IPv6-Adresse oder ein gültiger Hostname ist.
+     * 
+     * @param address Adresse als String
+     * @return {@code true} wenn gültig, sonst {@code false}
+     */
+    private static Boolean isValidAddress(String address) {
+        if (address.contains(":")) {
+            return isValidIpv6Address(address);
+        }
+        if (address.matches("[0-9.]+")) {
+            return isValidIpv4Address(address);
+        }
+        return isValidHostname(address);
+    }
+
     /**
      * Prüft, ob eine Zeichenkette eine gültige IPv4-Adresse ist.
      * 
      * @param ip IP-Adresse als String
      * @return {@code true} wenn gültig, sonst {@code false}
      */
-    private static Boolean isValidIpAddress(String ip) {
-        String[] parts = ip.split("\\.");
+    private static Boolean isValidIpv4Address(String ip) {
+        String[] parts = ip.split("\\.", -1);
         if (parts.length != 4) {
             return false;
         }
@@ -105,11 +177,49 @@ public class ConnectionManager {
         return true;
     }
 
+    /**
+     * Prüft, ob eine Zeichenkette eine gültige IPv6-Adresse ist (optional in eckigen Klammern).
+     * Da die Zeichenkette ausschliesslich aus Hex-Ziffern und Trennzeichen besteht,
+     * findet dabei keine DNS-Auflösung statt.
+     * 
+     * @param ip IP-Adresse als String
+     * @return {@code true} wenn gültig, sonst {@code false}
+     */
+    private static Boolean isValidIpv6Address(String ip) {
+        String literal = ip.startsWith("[") && ip.endsWith("]") ? ip.substring(1, ip.length() - 1) : ip;
+        if (!literal.matches("[0-9a-fA-F:.]+(%[0-9A-Za-z_.-]+)?")) {
+            return false;
+        }
+        try {
+            return InetAddress.getByName(literal) instanceof Inet6Address;
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Prüft, ob eine Zeichenkette ein syntaktisch gültiger Hostname nach RFC 1123 ist.
+     * 
+     * @param hostname Hostname als String
+     * @return {@code true} wenn gültig, sonst {@code false}
+     */
+    private static Boolean isValidHostname(String hostname) {
+        if (hostname.length() > 253) {
+            return false;
+        }
+        for (String label : hostname.split("\\.", -1)) {
+            if (!label.matches("[A-Za-z0-9]([A-Za-z0-9-]{0,61}[A-Za-z0-9])?")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Startet den Verbindungsaufbau in einem neuen Thread.
      */
     public void startConnection() {
-        if (socket != null) {
+        if (connection != null) {
             startWindowAccess.onStatusUpdate("Verbindung bereits aktiv.");
             return;
         }
@@ -124,62 +234,75 @@ public class ConnectionManager {
                 }
             } catch (Exception ignored) { 
             }
-        }, "ConnectionManager-Thread").start();
+        }, "ConnectionManager-Thread-" + sessionId).start();
     }
 
     /**
-     * Schliesst die bestehende Verbindung oder den ServerSocket.
+     * Schliesst die bestehende Verbindung oder den Listener des Hosts.
      */
     public void closeConnection() {
         try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-                serverSocket = null;
+            if (connectionListener != null && !connectionListener.isClosed()) {
+                connectionListener.close();
+                connectionListener = null;
                 startWindowAccess.onStatusUpdate("Host wurde beendet");
-                ConnectionState.setState(ConnectionState.DISCONNECTED);
-            } else if (socket != null && !socket.isClosed()) {
-                socket.close();
-                socket = null;
-                ConnectionState.setState(ConnectionState.DISCONNECTED);
+                stateMachine.transitionTo(ConnectionState.DISCONNECTED);
+            } else if (connection != null && !connection.isClosed()) {
+                if (ioManager != null) {
+                    ioManager.close();
+                    ioManager = null;
+                }
+                connection.close();
+                connection = null;
+                stateMachine.transitionTo(ConnectionState.DISCONNECTED);
             } else {
+                if (racer != null) {
+                    racer.cancel();
+                }
                 startWindowAccess.onStatusUpdate("Verbindungsversuch abgebrochen");
-                ConnectionState.setState(ConnectionState.ABORTED);
+                stateMachine.transitionTo(ConnectionState.ABORTED);
             }
         } catch (IOException e) {
-            startWindowAccess.onStatusUpdate("Fehler beim Schließen der Verbindung: " + e.getMessage());
+            startWindowAccess.onStatusUpdate(StatusLog.Level.ERROR, "Fehler beim Schließen der Verbindung: " + e.getMessage());
         }
     }
 
     /**
-     * Startet einen ServerSocket und wartet auf eingehende Verbindungen.
+     * Startet einen Listener des Transports und wartet auf eingehende Verbindungen.
+     * Die Handshakes laufen nebenläufig im {@link HandshakeAcceptor}; die erste erfolgreich
+     * authentifizierte Verbindung wird übernommen, danach werden keine weiteren angenommen.
      * 
      * @throws Exception bei Fehlern während des Verbindungsaufbaus
      */
     private void startHost() throws Exception {
         startWindowAccess.onStatusUpdate("Starte Host...");
-        serverSocket = new ServerSocket(PORT);
-        startWindowAccess.onStatusUpdate("Host gestartet");
-        while(true) {
-            ConnectionState.setState(ConnectionState.WAITING);
-            startWindowAccess.onConnecting();
-            startWindowAccess.onStatusUpdate("Warte auf eingehende Verbindung...");
-            socket = serverSocket.accept();
-            ConnectionState.setState(ConnectionState.CONNECTING);
-            startWindowAccess.onStatusUpdate("Anfrage von " + socket.getInetAddress().getHostAddress());
-            startWindowAccess.onStatusUpdate("Empfange Passkey...");
+        connectionListener = transport.listen(port);
+        startWindowAccess.onStatusUpdate("Host gestartet (" + connectionListener.getLocalDescription() + ")");
+        stateMachine.transitionTo(ConnectionState.WAITING);
+        startWindowAccess.onConnecting();
+        startWindowAccess.onStatusUpdate("Warte auf eingehende Verbindung...");
 
-            if (PasskeyManager.verifyPasskey(socket, passkey, isHost)) {
+        HandshakeAcceptor acceptor = new HandshakeAcceptor(connectionListener, passkey, new HandshakeAcceptor.Listener() {
+            @Override
+            public boolean onAuthenticated(Connection authenticated, byte[] key) {
+                startWindowAccess.onStatusUpdate("Anfrage von " + authenticated.getRemoteDescription());
                 startWindowAccess.onStatusUpdate("Passkey gültig");
+                connection = authenticated;
+                sessionKey = key;
+                connectionListener = null;
+                stateMachine.transitionTo(ConnectionState.CONNECTING);
                 startIOManager();
-                ConnectionState.setState(ConnectionState.CONNECTED);
+                stateMachine.transitionTo(ConnectionState.CONNECTED);
                 startWindowAccess.onConnected();
-                break;
-            } else {
-                ConnectionState.setState(ConnectionState.FAILED);
-                startWindowAccess.onConnectionFailed("Ungültiger Passkey. Verbindung abgelehnt");
-                socket.close();
+                return true;
             }
-        }
+
+            @Override
+            public void onRejected(InetAddress source, String reason) {
+                startWindowAccess.onConnectionFailed("Verbindung von " + source.getHostAddress() + " abgelehnt: " + reason);
+            }
+        });
+        acceptor.run();
     }
 
     /**
@@ -189,49 +312,68 @@ public class ConnectionManager {
      */
     private void startClient() throws Exception {
         try {
-            ConnectionState.setState(ConnectionState.CONNECTING);
+            stateMachine.transitionTo(ConnectionState.CONNECTING);
             startWindowAccess.onConnecting();
             startWindowAccess.onStatusUpdate("Versuche Verbindung zu " + remoteIp + "...");
-            Socket newSocket = new Socket();
-            newSocket.connect(new InetSocketAddress(remoteIp, PORT), 10000);
-            socket = newSocket;
+            if (transport instanceof TcpTransport) {
+                racer = new ConnectionRacer(port, CONNECT_TIMEOUT);
+                Socket newSocket = racer.connect(stripBrackets(remoteIp));
+                racer = null;
+                connection = TcpTransport.wrap(newSocket);
+            } else {
+                connection = transport.connect(stripBrackets(remoteIp), port, CONNECT_TIMEOUT);
+            }
 
-            startWindowAccess.onStatusUpdate("Verbindung erfolgreich");
+            startWindowAccess.onStatusUpdate("Verbindung erfolgreich über " + connection.getRemoteDescription());
             startWindowAccess.onStatusUpdate("Sende Passkey...");
 
-            if (PasskeyManager.verifyPasskey(socket, passkey, isHost)) {
+            sessionKey = PasskeyManager.establishSession(connection, passkey, isHost, CONNECT_TIMEOUT);
+            if (sessionKey != null) {
                 startWindowAccess.onStatusUpdate("Passkey bestätigt");
                 startIOManager();
-                ConnectionState.setState(ConnectionState.CONNECTED);
+                stateMachine.transitionTo(ConnectionState.CONNECTED);
                 startWindowAccess.onConnected();
             } else {
-                ConnectionState.setState(ConnectionState.FAILED);
+                stateMachine.transitionTo(ConnectionState.FAILED);
                 startWindowAccess.onConnectionFailed("Ungültiger Passkey. Verbindung fehlgeschlagen.");
-                socket.close();
-                socket = null;
+                connection.close();
+                connection = null;
             }
         } catch (IOException e) {
-            if (ConnectionState.getState() == ConnectionState.ABORTED) {
+            racer = null;
+            if (stateMachine.getState() == ConnectionState.ABORTED) {
                 return;
             }
             startWindowAccess.onConnectionFailed("Verbindungsversuch fehlgeschlagen: Host ist nicht erreichbar!");
-            ConnectionState.setState(ConnectionState.FAILED);
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-                socket = null;
+            stateMachine.transitionTo(ConnectionState.FAILED);
+            if (connection != null && !connection.isClosed()) {
+                connection.close();
+                connection = null;
             }
         }
     }
 
+    /**
+     * Entfernt die eckigen Klammern einer IPv6-Adresse in URL-Schreibweise.
+     * 
+     * @param address eingegebene Adresse
+     * @return Adresse ohne eckige Klammern
+     */
+    private static String stripBrackets(String address) {
+        if (address.startsWith("[") && address.endsWith("]")) {
+            return address.substring(1, address.length() - 1);
+        }
+        return address;
+    }
+
     /**
      * Startet den {@link IOManager} für die Kommunikation.
      */
     private void startIOManager() {
         try {
-            String passkey = this.passkey;
             Boolean isHost = this.isHost;
             startWindowAccess.onStatusUpdate("Starte Chat...");
-            ioManager = new IOManager(socket, passkey, isHost, startWindowAccess);
+            ioManager = new IOManager(connection, sessionKey, PasskeyManager.peerId(passkey), isHost, startWindowAccess);
             ioManager.startCommunicationThreads();
             startWindowAccess.onStatusUpdate("Chat gestartet");
         } catch (Exception e) {
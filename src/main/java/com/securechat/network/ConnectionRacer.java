@@ -0,0 +1,208 @@
+/**
+ * Baut eine Client-Verbindung parallel über alle aufgelösten Adressen eines Hosts auf.
+ * <p>
+ * Die Klasse {@code ConnectionRacer} löst einen Hostnamen bzw. eine IP-Adresse in alle
+ * Kandidaten-Adressen (IPv6 und IPv4) auf und startet die Verbindungsversuche zeitversetzt
+ * nach dem "Happy Eyeballs"-Prinzip (RFC 8305). Der erste erfolgreich verbundene Socket gewinnt,
+ * alle übrigen Versuche werden abgebrochen. Dadurch hängt die Verbindungsdauer nicht mehr vom
+ * langsamsten bzw. unerreichbaren Pfad ab, sondern ungefähr von der RTT des schnellsten Pfads.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.network;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionRacer {
+    private static final long ATTEMPT_DELAY_MS = 250;
+
+    private final int port;
+    private final int timeoutMs;
+    private final List<Socket> pendingSockets = new ArrayList<>();
+    private volatile boolean cancelled;
+    private boolean settled;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param port      Zielport
+     * @param timeoutMs Gesamtzeit in Millisekunden, nach der der Verbindungsaufbau aufgegeben wird
+     */
+    public ConnectionRacer(int port, int timeoutMs) {
+        this.port = port;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Löst den Host auf und liefert den ersten erfolgreich verbundenen Socket.
+     *
+     * @param host Hostname, IPv4- oder IPv6-Adresse
+     * @return verbundener Socket
+     * @throws IOException wenn keine Adresse erreichbar ist oder der Versuch abgebrochen wurde
+     */
+    public Socket connect(String host) throws IOException {
+        List<InetAddress> candidates = orderCandidates(InetAddress.getAllByName(host));
+        synchronized (pendingSockets) {
+            settled = false;
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(candidates.size(), r -> {
+            Thread thread = new Thread(r, "ConnectionRacer-Thread-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Socket> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Socket>> attempts = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        IOException lastError = null;
+        Socket winner = null;
+        int started = 0;
+        int finished = 0;
+
+        try {
+            while (winner == null && finished < candidates.size() && !cancelled) {
+                if (started < candidates.size() && started == finished) {
+                    // Kein Versuch mehr offen: nächsten Kandidaten sofort starten
+                    attempts.add(completion.submit(attemptFor(candidates.get(started++))));
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                long wait = started < candidates.size()
+                        ? Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(ATTEMPT_DELAY_MS))
+                        : remaining;
+                Future<Socket> done = completion.poll(wait, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (started < candidates.size()) {
+                        // Versuch dauert zu lange: nächsten Kandidaten parallel ins Rennen schicken
+                        attempts.add(completion.submit(attemptFor(candidates.get(started++))));
+                    }
+                    continue;
+                }
+                finished++;
+                try {
+                    winner = done.get();
+                } catch (ExecutionException e) {
+                    lastError = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastError = new IOException("Verbindungsaufbau unterbrochen", e);
+        } finally {
+            cancelLosers(winner);
+            for (Future<Socket> attempt : attempts) {
+                attempt.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+
+        if (winner != null && !cancelled) {
+            return winner;
+        }
+        if (winner != null) {
+            winner.close();
+        }
+        if (cancelled) {
+            throw new IOException("Verbindungsversuch abgebrochen");
+        }
+        throw lastError != null ? lastError : new IOException("Zeitüberschreitung beim Verbindungsaufbau zu " + host);
+    }
+
+    /**
+     * Bricht alle laufenden Verbindungsversuche ab.
+     */
+    public void cancel() {
+        cancelled = true;
+        cancelLosers(null);
+    }
+
+    /**
+     * Erstellt einen einzelnen Verbindungsversuch zu einer Kandidaten-Adresse.
+     *
+     * @param address Zieladresse
+     * @return Aufgabe, die den verbundenen Socket liefert
+     */
+    private Callable<Socket> attemptFor(InetAddress address) {
+        return () -> {
+            Socket socket = new Socket();
+            synchronized (pendingSockets) {
+                if (cancelled || settled) {
+                    throw new SocketException("Verbindungsversuch abgebrochen");
+                }
+                pendingSockets.add(socket);
+            }
+            try {
+                socket.connect(new InetSocketAddress(address, port), timeoutMs);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Schliesst alle Sockets ausser dem Gewinner.
+     *
+     * @param winner erfolgreich verbundener Socket oder {@code null}
+     */
+    private void cancelLosers(Socket winner) {
+        synchronized (pendingSockets) {
+            settled = true;
+            for (Socket socket : pendingSockets) {
+                if (socket != winner) {
+                    try {
+                        socket.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+            pendingSockets.clear();
+        }
+    }
+
+    /**
+     * Sortiert die Kandidaten abwechselnd nach Adressfamilie, beginnend mit der zuerst aufgelösten.
+     *
+     * @param resolved aufgelöste Adressen
+     * @return Kandidaten in Versuchsreihenfolge
+     */
+    private static List<InetAddress> orderCandidates(InetAddress[] resolved) {
+        List<InetAddress> v6 = new ArrayList<>();
+        List<InetAddress> v4 = new ArrayList<>();
+        for (InetAddress address : resolved) {
+            (address instanceof Inet6Address ? v6 : v4).add(address);
+        }
+        boolean v6First = resolved.length > 0 && resolved[0] instanceof Inet6Address;
+        List<InetAddress> first = v6First ? v6 : v4;
+        List<InetAddress> second = v6First ? v4 : v6;
+        List<InetAddress> ordered = new ArrayList<>(resolved.length);
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) {
+                ordered.add(first.get(i));
+            }
+            if (i < second.size()) {
+                ordered.add(second.get(i));
+            }
+        }
+        return ordered;
+    }
+}
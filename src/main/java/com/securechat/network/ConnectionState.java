@@ -1,8 +1,9 @@
 /**
  * Repräsentiert den Verbindungsstatus einer Netzwerkverbindung.
  * <p>
- * Das Enum {@code ConnectionState} enthält alle möglichen Zustände einer Verbindung.
- * Es bietet außerdem statische Methoden zur globalen Verwaltung des aktuellen Status.
+ * Das Enum {@code ConnectionState} enthält alle möglichen Zustände einer Verbindung
+ * sowie die erlaubten Übergänge zwischen ihnen. Der aktuelle Zustand wird nicht mehr global,
+ * sondern pro Sitzung in einer {@link ConnectionStateMachine} gehalten.
  * 
  * @author Milos Hornik
  */
@@ -16,23 +17,28 @@ public enum ConnectionState {
     ABORTED,
     FAILED;
 
-    private static volatile ConnectionState currentState = DISCONNECTED;
-
-    /**
-     * Setzt den aktuellen Verbindungsstatus.
-     *
-     * @param newState neuer Zustand
-     */
-    public static void setState(ConnectionState newState) {
-        currentState = newState;
-    }
-
     /**
-     * Gibt den aktuellen Verbindungsstatus zurück.
+     * Prüft, ob ein Übergang von diesem Zustand in den angegebenen Zustand erlaubt ist.
      *
-     * @return aktueller Zustand
+     * @param next gewünschter Folgezustand
+     * @return {@code true} wenn der Übergang erlaubt ist, sonst {@code false}
      */
-    public static ConnectionState getState() {
-        return currentState;
+    public boolean canTransitionTo(ConnectionState next) {
+        switch (this) {
+            case DISCONNECTED:
+                return next == WAITING || next == CONNECTING || next == ABORTED;
+            case WAITING:
+                return next == CONNECTING || next == DISCONNECTED || next == ABORTED || next == FAILED;
+            case CONNECTING:
+                return next == CONNECTED || next == FAILED || next == ABORTED || next == DISCONNECTED;
+            case CONNECTED:
+                return next == DISCONNECTED || next == FAILED;
+            case ABORTED:
+                return next == DISCONNECTED;
+            case FAILED:
+                return next == WAITING || next == CONNECTING || next == DISCONNECTED || next == ABORTED;
+            default:
+                return false;
+        }
     }
-}
\ No newline at end of file
+}
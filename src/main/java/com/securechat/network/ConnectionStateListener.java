@@ -0,0 +1,22 @@
+/**
+ * Interface zur Reaktion auf Zustandsänderungen einer Sitzung.
+ * <p>
+ * Das Interface {@code ConnectionStateListener} wird von der {@link ConnectionStateMachine}
+ * nach jedem erfolgreichen Zustandsübergang aufgerufen, etwa um die GUI oder die
+ * {@link SessionRegistry} zu aktualisieren.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.network;
+
+public interface ConnectionStateListener {
+
+    /**
+     * Wird nach einem Zustandsübergang aufgerufen.
+     *
+     * @param sessionId ID der betroffenen Sitzung
+     * @param oldState  bisheriger Zustand
+     * @param newState  neuer Zustand
+     */
+    void onStateChanged(int sessionId, ConnectionState oldState, ConnectionState newState);
+}
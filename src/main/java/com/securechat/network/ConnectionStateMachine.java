@@ -0,0 +1,83 @@
+/**
+ * Zustandsautomat für den Verbindungsstatus einer einzelnen Sitzung.
+ * <p>
+ * Die Klasse {@code ConnectionStateMachine} ersetzt den früheren globalen Verbindungsstatus.
+ * Jede Sitzung besitzt ihre eigene Instanz, sodass mehrere Host- und Client-Sitzungen
+ * gleichzeitig in einer JVM laufen können. Übergänge werden gemäß
+ * {@link ConnectionState#canTransitionTo(ConnectionState)} geprüft und atomar durchgeführt;
+ * registrierte {@link ConnectionStateListener} werden nach jedem Übergang benachrichtigt.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.network;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConnectionStateMachine {
+    private final int sessionId;
+    private final AtomicReference<ConnectionState> state = new AtomicReference<>(ConnectionState.DISCONNECTED);
+    private final List<ConnectionStateListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Erstellt einen Zustandsautomaten im Zustand {@link ConnectionState#DISCONNECTED}.
+     *
+     * @param sessionId ID der zugehörigen Sitzung
+     */
+    public ConnectionStateMachine(int sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * Führt einen Zustandsübergang durch, sofern dieser erlaubt ist.
+     * Ein Übergang in den bereits aktiven Zustand gilt als erfolgreich, löst aber keine Benachrichtigung aus.
+     *
+     * @param next gewünschter Folgezustand
+     * @return {@code true} wenn sich die Sitzung danach im gewünschten Zustand befindet, sonst {@code false}
+     */
+    public boolean transitionTo(ConnectionState next) {
+        while (true) {
+            ConnectionState current = state.get();
+            if (current == next) {
+                return true;
+            }
+            if (!current.canTransitionTo(next)) {
+                return false;
+            }
+            if (state.compareAndSet(current, next)) {
+                for (ConnectionStateListener listener : listeners) {
+                    listener.onStateChanged(sessionId, current, next);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gibt den aktuellen Verbindungsstatus zurück.
+     *
+     * @return aktueller Zustand
+     */
+    public ConnectionState getState() {
+        return state.get();
+    }
+
+    /**
+     * Registriert einen Listener für Zustandsänderungen.
+     *
+     * @param listener zu registrierender Listener
+     */
+    public void addListener(ConnectionStateListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Entfernt einen zuvor registrierten Listener.
+     *
+     * @param listener zu entfernender Listener
+     */
+    public void removeListener(ConnectionStateListener listener) {
+        listeners.remove(listener);
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * Nimmt eingehende Verbindungen an und verarbeitet deren Handshakes nebenläufig.
+ * <p>
+ * Die Klasse {@code HandshakeAcceptor} trennt die Annahme von Verbindungen von der
+ * Passkey-Prüfung: Der Accept-Thread nimmt nur Verbindungen an und übergibt sie an einen
+ * begrenzten Worker-Pool. Jeder Handshake erhält eine Frist, nach deren Ablauf die Verbindung
+ * geschlossen wird, und das {@link HandshakeGate} begrenzt Rate und Parallelität pro Quelle und
+ * Netz. Die erste Nachricht des Clients muss innerhalb von {@link #FIRST_MESSAGE_TIMEOUT}
+ * eintreffen. Ein legitimer Client sendet sie direkt nach dem Verbindungsaufbau; müssen neue
+ * Verbindungen warten, werden daher Handshakes verdrängt, die schon länger als
+ * {@link #SILENT_GRACE} still sind, und sind alle Plätze belegt, der am längsten stille. Stumme
+ * Verbindungen, auch von vielen Adressen aus, blockieren damit keine legitimen Clients.
+ * Angenommen wird über einen {@link ConnectionListener} beliebigen {@link com.securechat.transport.Transport}s.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.securechat.security.PasskeyManager;
+import com.securechat.transport.Connection;
+import com.securechat.transport.ConnectionListener;
+
+public class HandshakeAcceptor {
+    private static final int MAX_CONCURRENT_HANDSHAKES = 8;
+    private static final int MAX_QUEUED_HANDSHAKES = 32;
+    private static final int FIRST_MESSAGE_TIMEOUT = 500;
+    private static final long SILENT_GRACE = 50;
+    private static final int HANDSHAKE_TIMEOUT = 5000;
+
+    private final ConnectionListener connectionListener;
+    private final String passkey;
+    private final Listener listener;
+    private final HandshakeGate gate = new HandshakeGate(5, 1.0, 2, 8);
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService deadlines;
+    private final Set<Connection> pending = ConcurrentHashMap.newKeySet();
+    private final Map<Connection, Long> silent = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile boolean stopped;
+
+    /**
+     * Callback für die Ergebnisse der Handshakes.
+     */
+    public interface Listener {
+
+        /**
+         * Wird aufgerufen, wenn ein Handshake erfolgreich war.
+         *
+         * @param connection authentifizierte Verbindung
+         * @param sessionKey ausgehandelter Sitzungsschlüssel
+         * @return {@code true}, wenn keine weiteren Verbindungen angenommen werden sollen
+         */
+        boolean onAuthenticated(Connection connection, byte[] sessionKey);
+
+        /**
+         * Wird aufgerufen, wenn ein Verbindungsversuch abgelehnt wurde oder fehlgeschlagen ist.
+         *
+         * @param source Quelladresse des Versuchs
+         * @param reason Grund der Ablehnung
+         */
+        void onRejected(InetAddress source, String reason);
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param connectionListener bereits gebundener Listener des Transports
+     * @param passkey            Gemeinsamer Passkey
+     * @param listener           Callback für erfolgreiche und abgelehnte Handshakes
+     */
+    public HandshakeAcceptor(ConnectionListener connectionListener, String passkey, Listener listener) {
+        this.connectionListener = connectionListener;
+        this.passkey = passkey;
+        this.listener = listener;
+        AtomicInteger workerCounter = new AtomicInteger();
+        // Die Warteschlange begrenzt dispatch() über pending; verdrängte Handshakes enden sofort
+        this.workers = new ThreadPoolExecutor(MAX_CONCURRENT_HANDSHAKES, MAX_CONCURRENT_HANDSHAKES,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "Handshake-Thread-" + workerCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.workers.allowCoreThreadTimeOut(true);
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "HandshakeTimeout-Thread");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Führt die Accept-Schleife aus, bis {@link #stop()} aufgerufen oder der Listener geschlossen wird.
+     *
+     * @throws IOException wenn der Listener unerwartet fehlschlägt
+     */
+    public void run() throws IOException {
+        try {
+            while (!stopped) {
+                Connection connection;
+                try {
+                    connection = connectionListener.accept();
+                } catch (SocketException e) {
+                    if (stopped || connectionListener.isClosed()) {
+                        return;
+                    }
+                    throw e;
+                }
+                dispatch(connection);
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Beendet die Annahme neuer Verbindungen. Laufende und wartende Handshakes werden abgebrochen,
+     * indem ihre Verbindungen geschlossen werden; das beendet auch blockierende Lesevorgänge.
+     */
+    public void stop() {
+        stopped = true;
+        try {
+            connectionListener.close();
+        } catch (IOException ignored) {
+        }
+        shutdown();
+        for (Connection connection : pending) {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Prüft die Zugangsregeln und übergibt die Verbindung an den Worker-Pool.
+     *
+     * @param connection neu angenommene Verbindung
+     */
+    private void dispatch(Connection connection) {
+        InetAddress source = connection.getInetAddress();
+        String refusal = gate.tryAcquire(source);
+        if (refusal != null) {
+            closeQuietly(connection);
+            listener.onRejected(source, refusal);
+            return;
+        }
+        evictSilent(workers.getQueue().size(), TimeUnit.MILLISECONDS.toNanos(SILENT_GRACE));
+        if (pending.size() >= MAX_CONCURRENT_HANDSHAKES + MAX_QUEUED_HANDSHAKES && evictSilent(1, 0) == 0) {
+            gate.release(source);
+            closeQuietly(connection);
+            listener.onRejected(source, "Host ausgelastet");
+            return;
+        }
+        pending.add(connection);
+        try {
+            workers.execute(() -> handshake(connection, source));
+        } catch (RejectedExecutionException e) {
+            pending.remove(connection);
+            gate.release(source);
+            closeQuietly(connection);
+            listener.onRejected(source, stopped ? "Host beendet" : "Host ausgelastet");
+            return;
+        }
+        if (stopped) {
+            // stop() kann die Liste bereits geleert haben, bevor die Verbindung eingetragen war
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Schliesst die Handshakes, die am längsten auf die erste Nachricht des Clients warten, und
+     * gibt ihre Plätze frei.
+     *
+     * @param max         höchstens so viele Handshakes
+     * @param minAgeNanos nur Handshakes, die mindestens so lange warten
+     * @return Anzahl verdrängter Handshakes
+     */
+    private int evictSilent(int max, long minAgeNanos) {
+        long now = System.nanoTime();
+        int evicted = 0;
+        while (evicted < max) {
+            Connection oldest;
+            synchronized (silent) {
+                Iterator<Map.Entry<Connection, Long>> iterator = silent.entrySet().iterator();
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                Map.Entry<Connection, Long> entry = iterator.next();
+                if (now - entry.getValue() < minAgeNanos) {
+                    break;
+                }
+                oldest = entry.getKey();
+                iterator.remove();
+            }
+            pending.remove(oldest);
+            closeQuietly(oldest);
+            evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Führt den Handshake für eine Verbindung innerhalb der Frist durch.
+     *
+     * @param connection zu prüfende Verbindung
+     * @param source Quelladresse
+     */
+    private void handshake(Connection connection, InetAddress source) {
+        ScheduledFuture<?> deadline = deadlines.schedule(() -> closeQuietly(connection), HANDSHAKE_TIMEOUT, TimeUnit.MILLISECONDS);
+        try {
+            if (stopped) {
+                closeQuietly(connection);
+                return;
+            }
+            silent.put(connection, System.nanoTime());
+            byte[] sessionKey = PasskeyManager.acceptSession(connection, passkey, FIRST_MESSAGE_TIMEOUT, HANDSHAKE_TIMEOUT,
+                    () -> silent.remove(connection));
+            if (!deadline.cancel(false)) {
+                listener.onRejected(source, "Zeitüberschreitung beim Handshake");
+                closeQuietly(connection);
+                return;
+            }
+            if (sessionKey == null) {
+                listener.onRejected(source, "Ungültiger Passkey");
+                closeQuietly(connection);
+                return;
+            }
+            synchronized (this) {
+                if (stopped || !pending.remove(connection)) {
+                    closeQuietly(connection);
+                    return;
+                }
+                if (listener.onAuthenticated(connection, sessionKey)) {
+                    stop();
+                }
+            }
+        } catch (Exception e) {
+            deadline.cancel(false);
+            boolean evicted = !pending.contains(connection);
+            closeQuietly(connection);
+            listener.onRejected(source, stopped ? "Host beendet"
+                    : evicted ? "Ohne erste Nachricht verdrängt"
+                    : e instanceof SocketTimeoutException ? "Zeitüberschreitung beim Handshake"
+                    : "Handshake fehlgeschlagen");
+        } finally {
+            silent.remove(connection);
+            pending.remove(connection);
+            gate.release(source);
+        }
+    }
+
+    /**
+     * Beendet Worker-Pool und Fristen-Scheduler.
+     */
+    private void shutdown() {
+        workers.shutdownNow();
+        deadlines.shutdownNow();
+    }
+
+    /**
+     * Schliesst eine Verbindung und ignoriert dabei auftretende Fehler.
+     *
+     * @param connection zu schliessende Verbindung
+     */
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
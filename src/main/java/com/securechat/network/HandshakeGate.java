@@ -0,0 +1,150 @@
+/**
+ * Zugangskontrolle für eingehende Handshakes auf einem Host.
+ * <p>
+ * Die Klasse {@code HandshakeGate} begrenzt pro Quelladresse sowohl die Rate neuer
+ * Verbindungsversuche (Token-Bucket) als auch die Anzahl gleichzeitig laufender Handshakes.
+ * Zusätzlich ist die Zahl gleichzeitiger Handshakes pro Netz begrenzt (IPv4 /24, IPv6 /64),
+ * weil ein Angreifer meist über viele benachbarte Adressen verfügt. Dadurch kann eine einzelne
+ * Quelle den Host nicht mit Verbindungsversuchen fluten und andere Teilnehmer verdrängen. Der Zustand wird lock-frei pro Quelle gehalten und
+ * inaktive Einträge werden bei Bedarf entfernt, sodass der Speicherbedarf begrenzt bleibt.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.network;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class HandshakeGate {
+    private static final int MAX_TRACKED_SOURCES = 4096;
+    private static final long IDLE_EVICTION_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final int burst;
+    private final double refillPerSecond;
+    private final int maxConcurrentPerSource;
+    private final int maxConcurrentPerNetwork;
+    private final Map<InetAddress, SourceState> sources = new ConcurrentHashMap<>();
+    private final Map<InetAddress, Integer> networks = new ConcurrentHashMap<>();
+
+    /**
+     * Zustand einer einzelnen Quelladresse.
+     */
+    private static final class SourceState {
+        private double tokens;
+        private long lastRefill;
+        private int active;
+
+        private SourceState(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param burst                  maximale Anzahl Versuche, die eine Quelle ohne Pause starten darf
+     * @param refillPerSecond        Anzahl Versuche, die pro Sekunde wieder freigegeben werden
+     * @param maxConcurrentPerSource  maximale Anzahl gleichzeitig laufender Handshakes pro Quelle
+     * @param maxConcurrentPerNetwork maximale Anzahl gleichzeitig laufender Handshakes pro Netz
+     */
+    public HandshakeGate(int burst, double refillPerSecond, int maxConcurrentPerSource, int maxConcurrentPerNetwork) {
+        this.burst = burst;
+        this.refillPerSecond = refillPerSecond;
+        this.maxConcurrentPerSource = maxConcurrentPerSource;
+        this.maxConcurrentPerNetwork = maxConcurrentPerNetwork;
+    }
+
+    /**
+     * Versucht, einen Handshake-Platz für die Quelle zu belegen.
+     * Bei Erfolg muss der Platz anschliessend mit {@link #release(InetAddress)} wieder freigegeben werden.
+     *
+     * @param source Quelladresse des Verbindungsversuchs
+     * @return {@code null} wenn der Handshake zugelassen wird, sonst der Ablehnungsgrund
+     */
+    public String tryAcquire(InetAddress source) {
+        long now = System.nanoTime();
+        if (sources.size() > MAX_TRACKED_SOURCES) {
+            evictIdle(now);
+        }
+        SourceState state = sources.computeIfAbsent(source, k -> new SourceState(burst, now));
+        synchronized (state) {
+            double elapsedSeconds = (now - state.lastRefill) / 1_000_000_000.0;
+            state.tokens = Math.min(burst, state.tokens + elapsedSeconds * refillPerSecond);
+            state.lastRefill = now;
+            if (state.active >= maxConcurrentPerSource) {
+                return "zu viele gleichzeitige Handshakes";
+            }
+            if (state.tokens < 1) {
+                return "Ratenlimit überschritten";
+            }
+            boolean[] admitted = {false};
+            networks.compute(network(source), (network, active) -> {
+                int count = active == null ? 0 : active;
+                if (count >= maxConcurrentPerNetwork) {
+                    return active;
+                }
+                admitted[0] = true;
+                return count + 1;
+            });
+            if (!admitted[0]) {
+                return "zu viele gleichzeitige Handshakes aus dem Netz";
+            }
+            state.tokens -= 1;
+            state.active++;
+            return null;
+        }
+    }
+
+    /**
+     * Gibt einen zuvor belegten Handshake-Platz wieder frei.
+     *
+     * @param source Quelladresse des Verbindungsversuchs
+     */
+    public void release(InetAddress source) {
+        SourceState state = sources.get(source);
+        if (state != null) {
+            synchronized (state) {
+                if (state.active > 0) {
+                    state.active--;
+                    networks.computeIfPresent(network(source), (network, active) -> active <= 1 ? null : active - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bildet eine Adresse auf ihr Netz ab: IPv4 auf das /24-, IPv6 auf das /64-Präfix.
+     *
+     * @param source Quelladresse
+     * @return Netzadresse
+     */
+    private static InetAddress network(InetAddress source) {
+        byte[] address = source.getAddress();
+        int prefixBytes = address.length == 4 ? 3 : 8;
+        Arrays.fill(address, prefixBytes, address.length, (byte) 0);
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Entfernt Quellen ohne laufende Handshakes, die längere Zeit inaktiv waren.
+     *
+     * @param now aktuelle Zeit in Nanosekunden
+     */
+    private void evictIdle(long now) {
+        sources.entrySet().removeIf(entry -> {
+            SourceState state = entry.getValue();
+            synchronized (state) {
+                return state.active == 0 && now - state.lastRefill > IDLE_EVICTION_NANOS;
+            }
+        });
+    }
+}
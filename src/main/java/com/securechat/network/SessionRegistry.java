@@ -0,0 +1,121 @@
+/**
+ * Verwaltet alle aktiven Sitzungen innerhalb einer JVM.
+ * <p>
+ * Die Klasse {@code SessionRegistry} erzeugt {@link ConnectionManager}-Instanzen mit eindeutiger
+ * Sitzungs-ID und hält sie, solange sie aktiv sind. Beendete Sitzungen (getrennt, abgebrochen
+ * oder als Client fehlgeschlagen) werden über ihren Zustandsautomaten automatisch entfernt.
+ * Dadurch können beliebig viele Host- und Client-Sitzungen parallel betrieben werden,
+ * z. B. für Mehrfach-Hosting oder Lasttests in einer einzigen JVM.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.securechat.gui.StartWindowAccess;
+import com.securechat.io.IOAccessReceiver;
+
+public class SessionRegistry {
+    public static final int DEFAULT_PORT = 5000;
+
+    private final Map<Integer, ConnectionManager> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSessionId = new AtomicInteger();
+
+    /**
+     * Erstellt eine neue Sitzung auf dem Standardport und registriert sie.
+     *
+     * @param isHost            {@code true} für Host, {@code false} für Client
+     * @param remoteIp          Adresse des Partners
+     * @param passkey           Gemeinsamer Passkey
+     * @param startWindowAccess Zugriff auf GUI-Komponente für Statusmeldungen
+     * @param receiver          Empfänger für IOAccess-Objekt
+     * @return neu erstellte Sitzung
+     */
+    public ConnectionManager createSession(Boolean isHost, String remoteIp, String passkey, StartWindowAccess startWindowAccess, IOAccessReceiver receiver) {
+        return createSession(isHost, remoteIp, DEFAULT_PORT, passkey, startWindowAccess, receiver);
+    }
+
+    /**
+     * Erstellt eine neue Sitzung und registriert sie.
+     *
+     * @param isHost            {@code true} für Host, {@code false} für Client
+     * @param remoteIp          Adresse des Partners
+     * @param port              Port, auf dem gehostet bzw. verbunden wird
+     * @param passkey           Gemeinsamer Passkey
+     * @param startWindowAccess Zugriff auf GUI-Komponente für Statusmeldungen
+     * @param receiver          Empfänger für IOAccess-Objekt
+     * @return neu erstellte Sitzung
+     */
+    public ConnectionManager createSession(Boolean isHost, String remoteIp, int port, String passkey, StartWindowAccess startWindowAccess, IOAccessReceiver receiver) {
+        int sessionId = nextSessionId.incrementAndGet();
+        ConnectionManager session = new ConnectionManager(sessionId, isHost, remoteIp, port, passkey, startWindowAccess, receiver);
+        sessions.put(sessionId, session);
+        session.getStateMachine().addListener(this::onStateChanged);
+        return session;
+    }
+
+    /**
+     * Gibt die Sitzung mit der angegebenen ID zurück.
+     *
+     * @param sessionId Sitzungs-ID
+     * @return Sitzung oder {@code null}, wenn keine solche Sitzung registriert ist
+     */
+    public ConnectionManager getSession(int sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Gibt eine Momentaufnahme aller registrierten Sitzungen zurück.
+     *
+     * @return registrierte Sitzungen
+     */
+    public Collection<ConnectionManager> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * Gibt die Anzahl der registrierten Sitzungen zurück.
+     *
+     * @return Anzahl Sitzungen
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Schliesst alle registrierten Sitzungen.
+     */
+    public void closeAll() {
+        List<ConnectionManager> snapshot = new ArrayList<>(sessions.values());
+        for (ConnectionManager session : snapshot) {
+            session.closeConnection();
+        }
+        sessions.clear();
+    }
+
+    /**
+     * Entfernt Sitzungen, die einen Endzustand erreicht haben.
+     *
+     * @param sessionId ID der Sitzung
+     * @param oldState  bisheriger Zustand
+     * @param newState  neuer Zustand
+     */
+    private void onStateChanged(int sessionId, ConnectionState oldState, ConnectionState newState) {
+        ConnectionManager session = sessions.get(sessionId);
+        if (session == null) {
+            return;
+        }
+        boolean finished = newState == ConnectionState.DISCONNECTED
+                || newState == ConnectionState.ABORTED
+                || (newState == ConnectionState.FAILED && !session.isHost());
+        if (finished) {
+            sessions.remove(sessionId);
+        }
+    }
+}
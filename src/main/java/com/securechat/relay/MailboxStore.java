@@ -0,0 +1,313 @@
+/**
+ * Festplattengestützte Warteschlangen für die Postfächer des Relays.
+ * <p>
+ * Die Klasse {@code MailboxStore} legt für jedes Postfach ein Verzeichnis mit einer
+ * Append-only-Datei ({@code queue.log}, Einträge mit Längenpräfix) und einem Lesezeiger
+ * ({@code cursor}) an. Im Speicher werden nur die Dateihandles der zuletzt verwendeten Postfächer
+ * gehalten (LRU), sodass auch tausende Postfächer mit begrenztem Speicher auskommen. Sobald ein
+ * Postfach vollständig ausgeliefert und bestätigt wurde, wird seine Datei wieder geleert.
+ * <p>
+ * Der belegte Plattenplatz ist je Postfach und insgesamt begrenzt. Übergaben, die eine der Grenzen
+ * überschreiten würden, werden vollständig abgelehnt, bis der Empfänger sein Postfach abgerufen hat.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.relay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class MailboxStore implements Closeable {
+    private static final int MAX_OPEN_MAILBOXES = 256;
+    private static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+    public static final long DEFAULT_MAILBOX_QUOTA = 64L * 1024 * 1024;
+    public static final long DEFAULT_TOTAL_QUOTA = 4L * 1024 * 1024 * 1024;
+
+    private final Path root;
+    private final long mailboxQuota;
+    private final long totalQuota;
+    private long totalBytes;
+    private final Map<String, Mailbox> openMailboxes = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Mailbox> eldest) {
+            if (size() > MAX_OPEN_MAILBOXES) {
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Ein geladenes Batch aus einem Postfach.
+     *
+     * @param payloads   gelesene Nutzdaten in Reihenfolge
+     * @param nextOffset Lesezeiger nach diesem Batch, für {@link #commit(String, long)}
+     */
+    public record Batch(List<byte[]> payloads, long nextOffset) {
+    }
+
+    /**
+     * Geöffnetes Postfach mit Datei und Lesezeiger.
+     */
+    private static final class Mailbox {
+        private final FileChannel queue;
+        private final FileChannel cursor;
+        private long readOffset;
+
+        private Mailbox(Path directory) throws IOException {
+            Files.createDirectories(directory);
+            this.queue = FileChannel.open(directory.resolve("queue.log"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.cursor = FileChannel.open(directory.resolve("cursor"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer value = ByteBuffer.allocate(Long.BYTES);
+            if (cursor.read(value, 0) == Long.BYTES) {
+                readOffset = value.flip().getLong();
+            }
+            readOffset = Math.min(readOffset, queue.size());
+        }
+
+        private void close() {
+            try {
+                queue.close();
+                cursor.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Erstellt einen Store im angegebenen Verzeichnis mit den Standardgrenzen
+     * {@link #DEFAULT_MAILBOX_QUOTA} und {@link #DEFAULT_TOTAL_QUOTA}.
+     *
+     * @param root Wurzelverzeichnis für alle Postfächer
+     * @throws IOException wenn das Verzeichnis nicht angelegt werden kann
+     */
+    public MailboxStore(Path root) throws IOException {
+        this(root, DEFAULT_MAILBOX_QUOTA, DEFAULT_TOTAL_QUOTA);
+    }
+
+    /**
+     * Erstellt einen Store im angegebenen Verzeichnis. Bereits vorhandene Postfächer werden auf
+     * das Gesamtkontingent angerechnet.
+     *
+     * @param root         Wurzelverzeichnis für alle Postfächer
+     * @param mailboxQuota maximale Dateigröße eines Postfachs in Bytes
+     * @param totalQuota   maximale Größe aller Postfächer zusammen in Bytes
+     * @throws IOException wenn das Verzeichnis nicht angelegt oder gelesen werden kann
+     */
+    public MailboxStore(Path root, long mailboxQuota, long totalQuota) throws IOException {
+        this.root = root;
+        this.mailboxQuota = mailboxQuota;
+        this.totalQuota = totalQuota;
+        Files.createDirectories(root);
+        try (Stream<Path> directories = Files.list(root)) {
+            for (Path directory : (Iterable<Path>) directories::iterator) {
+                Path queue = directory.resolve("queue.log");
+                if (Files.isRegularFile(queue)) {
+                    totalBytes += Files.size(queue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hängt Nutzlasten an ein Postfach an. Würde dadurch das Kontingent des Postfachs oder das
+     * Gesamtkontingent überschritten, wird keine davon gespeichert.
+     *
+     * @param mailbox  Postfach-ID
+     * @param payloads undurchsichtige Nutzdaten in Reihenfolge
+     * @return {@code false}, wenn die Nutzlasten wegen eines Kontingents abgelehnt wurden
+     * @throws IOException bei Schreibfehlern oder zu großen Nutzlasten
+     */
+    public synchronized boolean append(String mailbox, List<byte[]> payloads) throws IOException {
+        long bytes = 0;
+        for (byte[] payload : payloads) {
+            if (payload.length > MAX_PAYLOAD_SIZE) {
+                throw new IOException("Nutzlast zu groß: " + payload.length + " Byte");
+            }
+            bytes += Integer.BYTES + payload.length;
+        }
+        FileChannel queue = open(mailbox).queue;
+        long start = queue.size();
+        if (start + bytes > mailboxQuota || totalBytes + bytes > totalQuota) {
+            return false;
+        }
+        long position = start;
+        try {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            for (byte[] payload : payloads) {
+                length.clear().putInt(payload.length).flip();
+                position = writeFully(queue, length, position);
+                position = writeFully(queue, ByteBuffer.wrap(payload), position);
+            }
+        } catch (IOException e) {
+            queue.truncate(start); // keine halben Einträge stehen lassen, hinter denen weiter angehängt wird
+            throw e;
+        }
+        totalBytes += bytes;
+        return true;
+    }
+
+    /**
+     * Liest ab dem bestätigten Lesezeiger höchstens {@code maxCount} Einträge bzw. {@code maxBytes} Bytes.
+     * Es wird immer mindestens ein Eintrag gelesen, falls vorhanden.
+     *
+     * @param mailbox  Postfach-ID
+     * @param maxCount maximale Anzahl Einträge
+     * @param maxBytes maximale Gesamtgröße
+     * @return gelesenes Batch (leer, wenn keine Einträge vorliegen)
+     * @throws IOException bei Lesefehlern
+     */
+    public synchronized Batch readBatch(String mailbox, int maxCount, int maxBytes) throws IOException {
+        Mailbox box = open(mailbox);
+        List<byte[]> payloads = new ArrayList<>();
+        long offset = box.readOffset;
+        long size = box.queue.size();
+        int bytes = 0;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        while (offset + Integer.BYTES <= size && payloads.size() < maxCount) {
+            lengthBuffer.clear();
+            readFully(box.queue, lengthBuffer, offset);
+            int length = lengthBuffer.flip().getInt();
+            if (length < 0 || offset + Integer.BYTES + length > size) {
+                break; // unvollständiger Eintrag, z. B. nach einem Absturz während des Schreibens
+            }
+            if (!payloads.isEmpty() && bytes + length > maxBytes) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(box.queue, payload, offset + Integer.BYTES);
+            payloads.add(payload.array());
+            bytes += length;
+            offset += Integer.BYTES + length;
+        }
+        return new Batch(payloads, offset);
+    }
+
+    /**
+     * Bestätigt die Auslieferung bis zum angegebenen Lesezeiger. Ist das Postfach danach leer,
+     * wird seine Datei geleert.
+     *
+     * @param mailbox Postfach-ID
+     * @param offset  neuer Lesezeiger aus {@link Batch#nextOffset()}
+     * @throws IOException bei Schreibfehlern
+     */
+    public synchronized void commit(String mailbox, long offset) throws IOException {
+        Mailbox box = open(mailbox);
+        if (offset <= box.readOffset) {
+            return;
+        }
+        if (offset >= box.queue.size()) {
+            totalBytes -= box.queue.size();
+            box.queue.truncate(0);
+            offset = 0;
+        }
+        box.readOffset = offset;
+        ByteBuffer value = ByteBuffer.allocate(Long.BYTES).putLong(offset).flip();
+        box.cursor.write(value, 0);
+    }
+
+    /**
+     * Gibt an, ob im Postfach unbestätigte Einträge liegen.
+     *
+     * @param mailbox Postfach-ID
+     * @return {@code true}, wenn Einträge ausstehen
+     * @throws IOException bei Lesefehlern
+     */
+    public synchronized boolean hasPending(String mailbox) throws IOException {
+        Mailbox box = open(mailbox);
+        return box.queue.size() > box.readOffset;
+    }
+
+    /**
+     * Schliesst alle offenen Dateien.
+     */
+    @Override
+    public synchronized void close() {
+        for (Mailbox box : openMailboxes.values()) {
+            box.close();
+        }
+        openMailboxes.clear();
+    }
+
+    /**
+     * Öffnet ein Postfach oder liefert es aus dem LRU-Cache.
+     *
+     * @param mailbox Postfach-ID
+     * @return geöffnetes Postfach
+     * @throws IOException wenn die Dateien nicht geöffnet werden können
+     */
+    private Mailbox open(String mailbox) throws IOException {
+        Mailbox box = openMailboxes.get(mailbox);
+        if (box == null) {
+            box = new Mailbox(root.resolve(directoryName(mailbox)));
+            openMailboxes.put(mailbox, box);
+        }
+        return box;
+    }
+
+    /**
+     * Bildet eine Postfach-ID auf einen sicheren Verzeichnisnamen ab.
+     *
+     * @param mailbox Postfach-ID
+     * @return Hex-kodierter SHA-256-Hash der ID
+     */
+    private static String directoryName(String mailbox) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(mailbox.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    /**
+     * Schreibt einen Buffer ab einer Dateiposition vollständig.
+     *
+     * @param channel  Datei
+     * @param buffer   Quelle
+     * @param position Startposition
+     * @return Position hinter den geschriebenen Daten
+     * @throws IOException bei Schreibfehlern
+     */
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    /**
+     * Liest einen Buffer ab einer Dateiposition vollständig.
+     *
+     * @param channel  Datei
+     * @param buffer   Ziel
+     * @param position Startposition
+     * @throws IOException bei Lesefehlern oder vorzeitigem Dateiende
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unerwartetes Dateiende im Postfach");
+            }
+            position += read;
+        }
+    }
+}
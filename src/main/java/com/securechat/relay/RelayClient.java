@@ -0,0 +1,209 @@
+/**
+ * Client-Seite des Store-and-Forward-Relays.
+ * <p>
+ * Die Klasse {@code RelayClient} verbindet sich über den {@link ConnectionRacer} (bzw. den in
+ * {@code securechat.transport} gewählten lokalen Transport) mit einem
+ * {@link RelayServer}, authentifiziert sich mit dem Relay-Passkey und meldet das eigene Postfach
+ * an, indem es dessen Geheimnis vorlegt; Absender adressieren das Postfach über
+ * {@link #getMailbox()}. Nachrichten für abwesende Teilnehmer werden als undurchsichtige Payloads
+ * übergeben, die der Aufrufer zuvor selbst Ende-zu-Ende verschlüsseln muss; ausgelieferte Batches
+ * werden an einen {@link BatchListener} weitergereicht und danach automatisch bestätigt.
+ * <p>
+ * Das Chatfenster verwendet die Klasse bisher nicht: Chats laufen weiterhin nur zwischen
+ * gleichzeitig verbundenen Teilnehmern. Wer das Relay nutzen will, bindet {@code RelayClient}
+ * selbst ein und tauscht Postfach-Adressen und Ende-zu-Ende-Schlüssel auf eigenem Weg aus.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.relay;
+
+import com.google.gson.JsonObject;
+import com.securechat.io.BufferPool;
+import com.securechat.io.FrameDecoder;
+import com.securechat.io.FrameEncoder;
+import com.securechat.io.FrameReader;
+import com.securechat.io.FrameWriter;
+import com.securechat.io.SessionScope;
+import com.securechat.network.ConnectionRacer;
+import com.securechat.security.CryptoManager;
+import com.securechat.security.PasskeyManager;
+import com.securechat.transport.Connection;
+import com.securechat.transport.TcpTransport;
+import com.securechat.transport.Transport;
+import com.securechat.transport.Transports;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+
+public class RelayClient implements AutoCloseable {
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int MAX_FRAME_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Empfänger für ausgelieferte Batches.
+     */
+    public interface BatchListener {
+        /**
+         * Wird für jedes ausgelieferte Batch aufgerufen; die Bestätigung folgt nach der Rückkehr.
+         *
+         * @param payloads gespeicherte Frames in Sendereihenfolge
+         */
+        void onBatch(List<String> payloads);
+
+        /**
+         * Wird aufgerufen, wenn das Relay eine Übergabe abgelehnt hat, weil das Postfach des
+         * Empfängers oder die Ablage des Relays voll ist. Keine der Payloads wurde gespeichert.
+         *
+         * @param recipient Postfach-Adresse des Empfängers
+         */
+        default void onRejected(String recipient) {
+            System.err.println("Relay: Postfach " + recipient + " ist voll, Nachrichten nicht zugestellt");
+        }
+    }
+
+    private final Connection connection;
+    private final BufferPool bufferPool = BufferPool.shared();
+    private final FrameEncoder encoder;
+    private final FrameDecoder decoder;
+    private final FrameWriter writer;
+    private final SessionScope scope = new SessionScope("RelayClient");
+    private final String mailbox;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert und die Verbindung zum Relay aufbaut.
+     *
+     * @param host         Hostname oder IP-Adresse des Relays
+     * @param port         Port des Relays
+     * @param relayPasskey  Relay-Passkey
+     * @param mailboxSecret Geheimnis des eigenen Postfachs, siehe {@link #newMailboxSecret()}
+     * @param listener      Empfänger für ausgelieferte Batches
+     * @throws IOException wenn die Verbindung oder die Authentifizierung fehlschlägt
+     */
+    public RelayClient(String host, int port, String relayPasskey, byte[] mailboxSecret, BatchListener listener) throws IOException {
+        mailbox = RelayMessage.mailboxAddress(mailboxSecret);
+        Transport transport = Transports.fromSystemProperty();
+        connection = transport instanceof TcpTransport
+                ? TcpTransport.wrap(new ConnectionRacer(port, CONNECT_TIMEOUT).connect(host))
+                : transport.connect(host, port, CONNECT_TIMEOUT);
+        scope.register(connection);
+        try {
+            byte[] sessionKey = PasskeyManager.establishSession(connection, relayPasskey, false, CONNECT_TIMEOUT);
+            if (sessionKey == null) {
+                throw new IOException("Relay-Passkey abgelehnt");
+            }
+            CryptoManager cryptoManager = new CryptoManager(sessionKey);
+            encoder = new FrameEncoder(cryptoManager, bufferPool);
+            decoder = new FrameDecoder(cryptoManager, bufferPool);
+            writer = new FrameWriter(connection.getOutputStream());
+            send(RelayMessage.hello(mailbox, Base64.getEncoder().encodeToString(mailboxSecret)));
+        } catch (IOException e) {
+            scope.close();
+            throw e;
+        } catch (Exception e) {
+            scope.close();
+            throw new IOException("Anmeldung am Relay fehlgeschlagen", e);
+        }
+        scope.start("RelayClient-Thread", () -> readLoop(listener));
+    }
+
+    /**
+     * Erzeugt ein neues, zufälliges Postfach-Geheimnis. Es muss dauerhaft aufbewahrt werden, um
+     * das Postfach später wieder abzurufen.
+     *
+     * @return Postfach-Geheimnis
+     */
+    public static byte[] newMailboxSecret() {
+        byte[] secret = new byte[RelayMessage.SECRET_SIZE];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+
+    /**
+     * Gibt die Adresse des eigenen Postfachs zurück, unter der andere Teilnehmer Nachrichten
+     * hinterlegen.
+     *
+     * @return Postfach-Adresse
+     */
+    public String getMailbox() {
+        return mailbox;
+    }
+
+    /**
+     * Übergibt Payloads an das Relay zur Zustellung an ein Postfach. Lehnt das Relay sie wegen
+     * eines vollen Postfachs ab, wird {@link BatchListener#onRejected(String)} aufgerufen.
+     *
+     * @param recipient Postfach-Adresse des Empfängers
+     * @param payloads  vom Aufrufer Ende-zu-Ende verschlüsselte Payloads
+     * @throws IOException wenn das Senden fehlschlägt
+     */
+    public void send(String recipient, List<String> payloads) throws IOException {
+        send(new RelayMessage("SEND", recipient, payloads));
+    }
+
+    /**
+     * Trennt die Verbindung zum Relay.
+     */
+    @Override
+    public void close() {
+        scope.close();
+    }
+
+    /**
+     * Verschlüsselt und sendet einen Relay-Befehl.
+     *
+     * @param message Befehl
+     * @throws IOException wenn das Senden fehlschlägt
+     */
+    private void send(RelayMessage message) throws IOException {
+        synchronized (encoder) {
+            ByteBuffer frame;
+            try {
+                frame = encoder.encode(message);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Verschlüsselung fehlgeschlagen", e);
+            }
+            try {
+                writer.writeFrame(frame);
+            } finally {
+                bufferPool.release(frame);
+            }
+        }
+    }
+
+    /**
+     * Empfängt Batches, reicht sie weiter und bestätigt sie.
+     *
+     * @param listener Empfänger für ausgelieferte Batches
+     */
+    private void readLoop(BatchListener listener) {
+        try (FrameReader in = new FrameReader(connection.getInputStream(), bufferPool, MAX_FRAME_SIZE)) {
+            ByteBuffer frame;
+            while (!scope.isClosed() && (frame = in.nextFrame()) != null) {
+                RelayMessage message;
+                ByteBuffer plaintext = decoder.decrypt(frame);
+                try {
+                    JsonObject json = decoder.parse(plaintext);
+                    message = decoder.toMessage(json, RelayMessage.class);
+                } finally {
+                    bufferPool.release(plaintext);
+                }
+                if ("BATCH".equals(message.getCommand()) && message.getPayloads() != null) {
+                    listener.onBatch(message.getPayloads());
+                    send(new RelayMessage("ACK", null, null));
+                } else if ("FULL".equals(message.getCommand())) {
+                    listener.onRejected(message.getMailbox());
+                }
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            if (!scope.isClosed()) {
+                System.err.println("Verbindung zum Relay beendet: " + e.getMessage());
+            }
+        } finally {
+            scope.close();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Steuernachricht zwischen Relay-Server und Teilnehmern.
+ * <p>
+ * Die Klasse {@code RelayMessage} beschreibt das Protokoll des Store-and-Forward-Relays.
+ * Der Befehl bestimmt die Bedeutung der übrigen Felder:
+ * <ul>
+ *   <li>{@code HELLO}: Teilnehmer meldet sich für {@code mailbox} an und weist mit
+ *   {@code credential} nach, dass ihm das Postfach gehört</li>
+ *   <li>{@code SEND}: Teilnehmer übergibt {@code payloads} für den Empfänger {@code mailbox}</li>
+ *   <li>{@code BATCH}: Relay liefert gespeicherte {@code payloads} an den Teilnehmer aus</li>
+ *   <li>{@code ACK}: Teilnehmer bestätigt die zuletzt erhaltene Lieferung</li>
+ *   <li>{@code FULL}: Relay hat ein {@code SEND} an {@code mailbox} abgelehnt, weil das Postfach
+ *   oder die Ablage voll ist; keine der Payloads wurde gespeichert</li>
+ * </ul>
+ * Die Payloads sind für das Relay undurchsichtig: Es speichert und liefert sie unverändert aus.
+ * Ihre Ende-zu-Ende-Verschlüsselung ist Sache der Teilnehmer.
+ * <p>
+ * Postfach-Adressen sind der Hex-kodierte SHA-256-Hash eines zufälligen Postfach-Geheimnisses
+ * (siehe {@link #mailboxAddress(byte[])}). Absender kennen nur die Adresse; anmelden kann sich nur,
+ * wer das Geheimnis vorlegt. Der gemeinsame Relay-Passkey allein genügt dafür nicht.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.relay;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+public class RelayMessage {
+    public static final int SECRET_SIZE = 32;
+    private static final int ADDRESS_LENGTH = 64;
+
+    private String type;
+    private String command;
+    private String mailbox;
+    private List<String> payloads;
+    private String credential;
+
+    /**
+     * Erstellt eine neue RelayMessage mit festem Typ "RELAY".
+     *
+     * @param command  Befehl (HELLO, SEND, BATCH, ACK oder FULL)
+     * @param mailbox  betroffenes Postfach oder {@code null}
+     * @param payloads undurchsichtige Nutzdaten oder {@code null}
+     */
+    public RelayMessage(String command, String mailbox, List<String> payloads) {
+        this.type = "RELAY";
+        this.command = command;
+        this.mailbox = mailbox;
+        this.payloads = payloads;
+    }
+
+    /**
+     * Erstellt eine Anmeldung für ein Postfach.
+     *
+     * @param mailbox    Postfach-Adresse
+     * @param credential Base64-kodiertes Postfach-Geheimnis
+     * @return HELLO-Nachricht
+     */
+    public static RelayMessage hello(String mailbox, String credential) {
+        RelayMessage message = new RelayMessage("HELLO", mailbox, null);
+        message.credential = credential;
+        return message;
+    }
+
+    /**
+     * Gibt den Typ der Nachricht zurück.
+     * 
+     * @return Nachrichtentyp (immer "RELAY")
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gibt den Befehl zurück.
+     * 
+     * @return Befehl
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Gibt das betroffene Postfach zurück.
+     * 
+     * @return Postfach-ID
+     */
+    public String getMailbox() {
+        return mailbox;
+    }
+
+    /**
+     * Gibt die undurchsichtigen Nutzdaten zurück.
+     * 
+     * @return Nutzdaten oder {@code null}
+     */
+    public List<String> getPayloads() {
+        return payloads;
+    }
+
+    /**
+     * Gibt den Nachweis des Postfachbesitzes zurück.
+     * 
+     * @return Base64-kodiertes Postfach-Geheimnis oder {@code null}
+     */
+    public String getCredential() {
+        return credential;
+    }
+
+    /**
+     * Leitet die öffentliche Adresse eines Postfachs aus seinem Geheimnis ab.
+     *
+     * @param secret Postfach-Geheimnis
+     * @return Hex-kodierter SHA-256-Hash des Geheimnisses
+     */
+    public static String mailboxAddress(byte[] secret) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(secret));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+
+    /**
+     * Prüft, ob eine Zeichenkette die Form einer Postfach-Adresse hat.
+     *
+     * @param mailbox Postfach-Adresse oder {@code null}
+     * @return {@code true}, wenn sie aus 64 kleingeschriebenen Hex-Ziffern besteht
+     */
+    public static boolean isMailboxAddress(String mailbox) {
+        if (mailbox == null || mailbox.length() != ADDRESS_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            char c = mailbox.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prüft, ob ein Geheimnis zu einer Postfach-Adresse gehört. Der Vergleich dauert unabhängig
+     * davon, an welcher Stelle sich die Hashes unterscheiden, gleich lang.
+     *
+     * @param mailbox Postfach-Adresse
+     * @param secret  vorgelegtes Geheimnis
+     * @return {@code true}, wenn das Geheimnis passt
+     */
+    public static boolean ownsMailbox(String mailbox, byte[] secret) {
+        return MessageDigest.isEqual(mailboxAddress(secret).getBytes(StandardCharsets.US_ASCII),
+                mailbox.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * Headless Store-and-Forward-Relay für SecureChat.
+ * <p>
+ * Die Klasse {@code RelayServer} nimmt Verbindungen über den {@link HandshakeAcceptor} an, der
+ * auch dem Host-Modus des {@link com.securechat.network.ConnectionManager} zugrunde liegt, und
+ * authentifiziert Teilnehmer mit dem Relay-Passkey. Anschliessend melden sich die Teilnehmer mit
+ * ihrem Postfach an, wobei sie das Geheimnis hinter der Postfach-Adresse vorlegen müssen (siehe
+ * {@link RelayMessage#mailboxAddress(byte[])}), und übergeben Nachrichten für andere Postfächer.
+ * Diese werden als undurchsichtige Payloads im {@link MailboxStore} auf der Festplatte
+ * abgelegt und ausgeliefert, sobald der Empfänger verbunden ist – gebündelt in Batches, wobei das
+ * nächste Batch erst nach der Bestätigung des vorherigen gesendet wird. Ist das Postfach des
+ * Empfängers oder die Ablage insgesamt voll, erhält der Absender {@code FULL}. Das Relay
+ * interpretiert die Payloads nicht; sie vor der Übergabe Ende-zu-Ende zu verschlüsseln, ist Sache
+ * der Teilnehmer.
+ * <p>
+ * Das Chatfenster nutzt das Relay bisher nicht; Teilnehmer sprechen es über den
+ * {@link RelayClient} an.
+ * <p>
+ * Aufruf: {@code java -jar securechat.jar --relay <port> <relay-passkey> <verzeichnis>}. Die
+ * Kontingente lassen sich mit {@code securechat.relay.mailboxQuota} und
+ * {@code securechat.relay.totalQuota} (in Bytes) festlegen.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.relay;
+
+import com.google.gson.JsonObject;
+import com.securechat.io.BufferPool;
+import com.securechat.io.FrameDecoder;
+import com.securechat.io.FrameEncoder;
+import com.securechat.io.FrameReader;
+import com.securechat.io.FrameWriter;
+import com.securechat.io.SessionScope;
+import com.securechat.network.HandshakeAcceptor;
+import com.securechat.security.CryptoManager;
+import com.securechat.transport.Connection;
+import com.securechat.transport.ConnectionListener;
+import com.securechat.transport.Transports;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RelayServer {
+    public static final int DEFAULT_PORT = 5001;
+    private static final int MAX_FRAME_SIZE = 32 * 1024 * 1024;
+    private static final int BATCH_MAX_COUNT = 64;
+    private static final int BATCH_MAX_BYTES = 256 * 1024;
+
+    private final int port;
+    private final String passkey;
+    private final MailboxStore store;
+    private final BufferPool bufferPool = BufferPool.shared();
+    private final Map<String, RelayPeer> onlinePeers = new ConcurrentHashMap<>();
+    private final SessionScope scope = new SessionScope("Relay");
+    private final AtomicInteger peerCounter = new AtomicInteger();
+    private volatile HandshakeAcceptor acceptor;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param port    Port, auf dem das Relay lauscht
+     * @param passkey Relay-Passkey zur Authentifizierung der Teilnehmer
+     * @param store   Ablage für die Postfächer
+     */
+    public RelayServer(int port, String passkey, MailboxStore store) {
+        this.port = port;
+        this.passkey = passkey;
+        this.store = store;
+    }
+
+    /**
+     * Startet das Relay ohne grafische Oberfläche.
+     *
+     * @param args Port, Relay-Passkey und Speicherverzeichnis
+     * @throws IOException wenn das Relay nicht gestartet werden kann
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Aufruf: --relay <port> <relay-passkey> <verzeichnis>");
+            System.exit(2);
+        }
+        MailboxStore store = new MailboxStore(Path.of(args[2]),
+                Long.getLong("securechat.relay.mailboxQuota", MailboxStore.DEFAULT_MAILBOX_QUOTA),
+                Long.getLong("securechat.relay.totalQuota", MailboxStore.DEFAULT_TOTAL_QUOTA));
+        RelayServer server = new RelayServer(Integer.parseInt(args[0]), args[1], store);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "RelayShutdown-Thread"));
+        server.run();
+    }
+
+    /**
+     * Nimmt Verbindungen an, bis {@link #stop()} aufgerufen wird.
+     *
+     * @throws IOException wenn der Listener des Transports nicht geöffnet werden kann
+     */
+    public void run() throws IOException {
+        ConnectionListener connectionListener = Transports.fromSystemProperty().listen(port);
+        log("Relay lauscht auf " + connectionListener.getLocalDescription());
+        acceptor = new HandshakeAcceptor(connectionListener, passkey, new HandshakeAcceptor.Listener() {
+            @Override
+            public boolean onAuthenticated(Connection connection, byte[] sessionKey) {
+                startPeer(connection, sessionKey);
+                return false;
+            }
+
+            @Override
+            public void onRejected(InetAddress source, String reason) {
+                log("Verbindung von " + source.getHostAddress() + " abgelehnt: " + reason);
+            }
+        });
+        acceptor.run();
+    }
+
+    /**
+     * Beendet das Relay und trennt alle Teilnehmer.
+     */
+    public void stop() {
+        if (acceptor != null) {
+            acceptor.stop();
+        }
+        scope.close();
+        store.close();
+    }
+
+    /**
+     * Startet die Verarbeitung eines authentifizierten Teilnehmers.
+     *
+     * @param connection authentifizierte Verbindung
+     * @param sessionKey ausgehandelter Sitzungsschlüssel
+     */
+    private void startPeer(Connection connection, byte[] sessionKey) {
+        try {
+            RelayPeer peer = new RelayPeer(connection, new CryptoManager(sessionKey));
+            scope.register(connection);
+            if (scope.start("Peer-Thread-" + peerCounter.incrementAndGet(), peer::readLoop) == null) {
+                scope.deregister(connection);
+                connection.close();
+            }
+        } catch (IOException e) {
+            log("Teilnehmer konnte nicht gestartet werden: " + e.getMessage());
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Gibt eine Meldung mit Zeitstempel aus.
+     *
+     * @param message Meldung
+     */
+    private static void log(String message) {
+        System.out.println("[" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")) + "] " + message);
+    }
+
+    /**
+     * Verbindung zu einem einzelnen Teilnehmer.
+     */
+    private final class RelayPeer {
+        private final Connection connection;
+        private final FrameWriter writer;
+        private final FrameEncoder encoder;
+        private final FrameDecoder decoder;
+        private String mailbox;
+        private boolean awaitingAck;
+        private long inflightOffset;
+
+        private RelayPeer(Connection connection, CryptoManager cryptoManager) throws IOException {
+            this.connection = connection;
+            this.encoder = new FrameEncoder(cryptoManager, bufferPool);
+            this.decoder = new FrameDecoder(cryptoManager, bufferPool);
+            this.writer = new FrameWriter(connection.getOutputStream());
+        }
+
+        /**
+         * Liest Befehle des Teilnehmers, bis die Verbindung endet.
+         */
+        private void readLoop() {
+            String source = connection.getRemoteDescription();
+            try (FrameReader in = new FrameReader(connection.getInputStream(), bufferPool, MAX_FRAME_SIZE)) {
+                ByteBuffer frame;
+                while ((frame = in.nextFrame()) != null) {
+                    ByteBuffer plaintext = decoder.decrypt(frame);
+                    try {
+                        JsonObject json = decoder.parse(plaintext);
+                        handle(decoder.toMessage(json, RelayMessage.class));
+                    } finally {
+                        bufferPool.release(plaintext);
+                    }
+                }
+            } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                log("Verbindung zu " + source + " beendet: " + e.getMessage());
+            } finally {
+                if (mailbox != null) {
+                    onlinePeers.remove(mailbox, this);
+                    log("Postfach " + mailbox + " getrennt");
+                }
+                scope.deregister(connection);
+                try {
+                    connection.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        /**
+         * Verarbeitet einen Befehl des Teilnehmers.
+         *
+         * @param message empfangener Befehl
+         * @throws IOException bei Fehlern im Store oder beim Senden
+         * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+         */
+        private void handle(RelayMessage message) throws IOException, GeneralSecurityException {
+            switch (message.getCommand()) {
+                case "HELLO":
+                    String requested = message.getMailbox();
+                    if (!RelayMessage.isMailboxAddress(requested) || message.getCredential() == null) {
+                        throw new IOException("Ungültiges Postfach");
+                    }
+                    if (mailbox != null) {
+                        throw new IOException("Bereits angemeldet");
+                    }
+                    if (!RelayMessage.ownsMailbox(requested, Base64.getDecoder().decode(message.getCredential()))) {
+                        throw new IOException("Anmeldung für Postfach " + requested + " ohne gültigen Nachweis");
+                    }
+                    mailbox = requested;
+                    RelayPeer previous = onlinePeers.put(mailbox, this);
+                    if (previous != null && previous != this) {
+                        previous.connection.close();
+                    }
+                    log("Postfach " + mailbox + " angemeldet");
+                    deliverPending();
+                    break;
+                case "SEND":
+                    String recipient = message.getMailbox();
+                    if (!RelayMessage.isMailboxAddress(recipient) || message.getPayloads() == null) {
+                        throw new IOException("Ungültige Sendeanfrage");
+                    }
+                    List<byte[]> payloads = new ArrayList<>(message.getPayloads().size());
+                    for (String payload : message.getPayloads()) {
+                        payloads.add(payload.getBytes(StandardCharsets.US_ASCII));
+                    }
+                    if (!store.append(recipient, payloads)) {
+                        log("Postfach " + recipient + " voll, " + payloads.size() + " Nachrichten abgelehnt");
+                        reply(new RelayMessage("FULL", recipient, null));
+                        break;
+                    }
+                    RelayPeer online = onlinePeers.get(recipient);
+                    if (online != null) {
+                        online.deliverPending();
+                    }
+                    break;
+                case "ACK":
+                    synchronized (this) {
+                        if (awaitingAck) {
+                            store.commit(mailbox, inflightOffset);
+                            awaitingAck = false;
+                        }
+                    }
+                    deliverPending();
+                    break;
+                default:
+                    throw new IOException("Unbekannter Relay-Befehl: " + message.getCommand());
+            }
+        }
+
+        /**
+         * Sendet das nächste Batch gespeicherter Nachrichten, sofern kein Batch unbestätigt ist.
+         *
+         * @throws IOException bei Fehlern im Store oder beim Senden
+         * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+         */
+        private synchronized void deliverPending() throws IOException, GeneralSecurityException {
+            if (mailbox == null || awaitingAck) {
+                return;
+            }
+            MailboxStore.Batch batch = store.readBatch(mailbox, BATCH_MAX_COUNT, BATCH_MAX_BYTES);
+            if (batch.payloads().isEmpty()) {
+                return;
+            }
+            List<String> payloads = new ArrayList<>(batch.payloads().size());
+            for (byte[] payload : batch.payloads()) {
+                payloads.add(new String(payload, StandardCharsets.US_ASCII));
+            }
+            reply(new RelayMessage("BATCH", mailbox, payloads));
+            awaitingAck = true;
+            inflightOffset = batch.nextOffset();
+        }
+
+        /**
+         * Verschlüsselt und sendet eine Nachricht an den Teilnehmer.
+         *
+         * @param message Nachricht
+         * @throws IOException bei Fehlern beim Senden
+         * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+         */
+        private synchronized void reply(RelayMessage message) throws IOException, GeneralSecurityException {
+            ByteBuffer frame = encoder.encode(message);
+            try {
+                writer.writeFrame(frame);
+            } finally {
+                bufferPool.release(frame);
+            }
+        }
+    }
+}
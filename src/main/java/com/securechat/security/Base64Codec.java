@@ -0,0 +1,130 @@
+/**
+ * Allokationsfreie Base64-Kodierung auf Byte-Array-Bereichen.
+ * <p>
+ * Die Klasse {@code Base64Codec} kodiert und dekodiert Base64 (RFC 4648, mit Padding) direkt
+ * zwischen vorhandenen Arrays mit Offset und Länge. Im Gegensatz zu {@link java.util.Base64}
+ * werden dabei keine Zwischen-Arrays angelegt, sodass gepoolte Buffer durchgereicht werden können.
+ * Das Format ist kompatibel zu {@code Base64.getEncoder()} bzw. {@code Base64.getDecoder()}.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.security;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public final class Base64Codec {
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] DECODE = new int[256];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = i;
+        }
+    }
+
+    private Base64Codec() {
+    }
+
+    /**
+     * Berechnet die Länge der Base64-Darstellung.
+     *
+     * @param length Anzahl Eingabebytes
+     * @return Anzahl Ausgabebytes
+     */
+    public static int encodedLength(int length) {
+        return 4 * ((length + 2) / 3);
+    }
+
+    /**
+     * Berechnet die maximale Länge der dekodierten Daten.
+     *
+     * @param length Länge der Base64-Darstellung
+     * @return maximale Anzahl dekodierter Bytes
+     */
+    public static int maxDecodedLength(int length) {
+        return 3 * (length / 4);
+    }
+
+    /**
+     * Kodiert einen Bereich nach Base64.
+     *
+     * @param src    Quelle
+     * @param offset Start in der Quelle
+     * @param length Anzahl zu kodierender Bytes
+     * @param dst    Ziel (mindestens {@link #encodedLength(int)} Bytes ab {@code dstOffset})
+     * @param dstOffset Start im Ziel
+     * @return Anzahl geschriebener Bytes
+     */
+    public static int encode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        int end = offset + length;
+        int out = dstOffset;
+        int i = offset;
+        while (end - i >= 3) {
+            int bits = (src[i++] & 0xff) << 16 | (src[i++] & 0xff) << 8 | (src[i++] & 0xff);
+            dst[out++] = ALPHABET[(bits >>> 18) & 0x3f];
+            dst[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+            dst[out++] = ALPHABET[(bits >>> 6) & 0x3f];
+            dst[out++] = ALPHABET[bits & 0x3f];
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (src[i++] & 0xff) << 16;
+            if (remaining == 2) {
+                bits |= (src[i] & 0xff) << 8;
+            }
+            dst[out++] = ALPHABET[(bits >>> 18) & 0x3f];
+            dst[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+            dst[out++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : (byte) '=';
+            dst[out++] = '=';
+        }
+        return out - dstOffset;
+    }
+
+    /**
+     * Dekodiert einen Base64-Bereich.
+     *
+     * @param src    Quelle
+     * @param offset Start in der Quelle
+     * @param length Länge der Base64-Darstellung (Vielfaches von 4)
+     * @param dst    Ziel (mindestens {@link #maxDecodedLength(int)} Bytes ab {@code dstOffset})
+     * @param dstOffset Start im Ziel
+     * @return Anzahl geschriebener Bytes
+     * @throws IllegalArgumentException bei ungültiger Eingabe
+     */
+    public static int decode(byte[] src, int offset, int length, byte[] dst, int dstOffset) {
+        if (length % 4 != 0) {
+            throw new IllegalArgumentException("Ungültige Base64-Länge: " + length);
+        }
+        int end = offset + length;
+        int padding = 0;
+        if (length > 0 && src[end - 1] == '=') {
+            padding++;
+            if (src[end - 2] == '=') {
+                padding++;
+            }
+        }
+        int out = dstOffset;
+        for (int i = offset; i < end; i += 4) {
+            boolean last = i + 4 == end;
+            int c0 = DECODE[src[i] & 0xff];
+            int c1 = DECODE[src[i + 1] & 0xff];
+            int c2 = last && padding == 2 ? 0 : DECODE[src[i + 2] & 0xff];
+            int c3 = last && padding >= 1 ? 0 : DECODE[src[i + 3] & 0xff];
+            if ((c0 | c1 | c2 | c3) < 0) {
+                throw new IllegalArgumentException("Ungültiges Base64-Zeichen");
+            }
+            int bits = c0 << 18 | c1 << 12 | c2 << 6 | c3;
+            dst[out++] = (byte) (bits >>> 16);
+            if (!last || padding < 2) {
+                dst[out++] = (byte) (bits >>> 8);
+            }
+            if (!last || padding < 1) {
+                dst[out++] = (byte) bits;
+            }
+        }
+        return out - dstOffset;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Passwortauthentifizierter Schlüsselaustausch nach CPace über X25519.
+ * <p>
+ * Die Klasse {@code CPace} bildet den Passkey per Hash und Elligator2 auf einen Punkt der
+ * Curve25519 ab, der als Generator eines gewöhnlichen ephemeren Diffie-Hellman-Austauschs dient.
+ * Beide Seiten senden nur {@code X25519(skalar, generator)}; ohne den Passkey ist daraus weder
+ * der Generator noch das gemeinsame Geheimnis zu berechnen. Ein Angreifer, der einen Handshake
+ * mitschneidet oder selbst führt, kann daher pro Verbindung genau einen Passkey prüfen und erhält
+ * nichts, womit er offline weitere Passkeys durchprobieren könnte.
+ * <p>
+ * Die Skalarmultiplikation übernimmt {@code KeyAgreement("X25519")} des JDK, das beliebige
+ * u-Koordinaten als öffentlichen Schlüssel annimmt und Punkte kleiner Ordnung ablehnt. Hash auf
+ * den Körper und Elligator2 folgen RFC 9380 (Abschnitt 6.7.1); die Kodierung ist nicht mit
+ * anderen CPace-Implementierungen kompatibel.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.security;
+
+import javax.crypto.KeyAgreement;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.NamedParameterSpec;
+import java.security.spec.XECPrivateKeySpec;
+import java.security.spec.XECPublicKeySpec;
+
+public final class CPace {
+    public static final int ELEMENT_SIZE = 32;
+    private static final String CURVE = "X25519";
+    private static final byte[] DOMAIN = "CPace255".getBytes(StandardCharsets.US_ASCII);
+    private static final BigInteger P = BigInteger.TWO.pow(255).subtract(BigInteger.valueOf(19));
+    private static final BigInteger A = BigInteger.valueOf(486662);
+    private static final BigInteger Z = BigInteger.TWO;
+    private static final BigInteger LEGENDRE_EXPONENT = P.subtract(BigInteger.ONE).shiftRight(1);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private CPace() {
+    }
+
+    /**
+     * Leitet den Generator aus Passkey und Kanalkennung ab.
+     *
+     * @param passkey gemeinsamer Passkey
+     * @param channel Kennung des Protokolls bzw. Kanals
+     * @return u-Koordinate des Generators
+     * @throws GeneralSecurityException wenn SHA-512 nicht verfügbar ist
+     */
+    public static BigInteger generator(String passkey, String channel) throws GeneralSecurityException {
+        byte[] secret = passkey.getBytes(StandardCharsets.UTF_8);
+        byte[] context = channel.getBytes(StandardCharsets.UTF_8);
+        MessageDigest digest = MessageDigest.getInstance("SHA-512");
+        digest.update(DOMAIN);
+        digest.update(ByteBuffer.allocate(4).putInt(secret.length).array());
+        digest.update(secret);
+        digest.update(ByteBuffer.allocate(4).putInt(context.length).array());
+        digest.update(context);
+        return elligator2(new BigInteger(1, digest.digest()).mod(P));
+    }
+
+    /**
+     * Erzeugt einen zufälligen ephemeren Skalar.
+     *
+     * @return Skalar (wird bei der Multiplikation nach RFC 7748 geklemmt)
+     */
+    public static byte[] newScalar() {
+        byte[] scalar = new byte[ELEMENT_SIZE];
+        RANDOM.nextBytes(scalar);
+        return scalar;
+    }
+
+    /**
+     * Multipliziert einen Punkt mit einem Skalar.
+     *
+     * @param scalar Skalar
+     * @param u      u-Koordinate des Punkts
+     * @return u-Koordinate des Ergebnisses, 32 Byte Little-Endian
+     * @throws GeneralSecurityException bei einem Punkt kleiner Ordnung
+     */
+    public static byte[] multiply(byte[] scalar, BigInteger u) throws GeneralSecurityException {
+        KeyFactory factory = KeyFactory.getInstance(CURVE);
+        PrivateKey privateKey = factory.generatePrivate(new XECPrivateKeySpec(NamedParameterSpec.X25519, scalar));
+        PublicKey point = factory.generatePublic(new XECPublicKeySpec(NamedParameterSpec.X25519, u));
+        KeyAgreement agreement = KeyAgreement.getInstance(CURVE);
+        agreement.init(privateKey);
+        agreement.doPhase(point, true);
+        return agreement.generateSecret();
+    }
+
+    /**
+     * Multipliziert einen empfangenen Punkt mit einem Skalar.
+     *
+     * @param scalar  Skalar
+     * @param element u-Koordinate, 32 Byte Little-Endian
+     * @return u-Koordinate des Ergebnisses, 32 Byte Little-Endian
+     * @throws GeneralSecurityException bei falscher Länge oder einem Punkt kleiner Ordnung
+     */
+    public static byte[] multiply(byte[] scalar, byte[] element) throws GeneralSecurityException {
+        if (element.length != ELEMENT_SIZE) {
+            throw new GeneralSecurityException("Ungültige Punktlänge " + element.length);
+        }
+        byte[] bigEndian = new byte[ELEMENT_SIZE];
+        for (int i = 0; i < ELEMENT_SIZE; i++) {
+            bigEndian[i] = element[ELEMENT_SIZE - 1 - i];
+        }
+        bigEndian[0] &= 0x7F;
+        return multiply(scalar, new BigInteger(1, bigEndian).mod(P));
+    }
+
+    /**
+     * Bildet ein Körperelement per Elligator2 auf die u-Koordinate eines Punkts der Curve25519 ab.
+     *
+     * @param r Körperelement
+     * @return u-Koordinate
+     */
+    private static BigInteger elligator2(BigInteger r) {
+        BigInteger t = Z.multiply(r).multiply(r).mod(P);
+        if (t.equals(P.subtract(BigInteger.ONE))) {
+            t = BigInteger.ZERO;
+        }
+        BigInteger x1 = A.negate().multiply(t.add(BigInteger.ONE).modInverse(P)).mod(P);
+        BigInteger gx1 = x1.pow(3).add(A.multiply(x1.pow(2))).add(x1).mod(P);
+        if (isSquare(gx1)) {
+            return x1;
+        }
+        return x1.negate().subtract(A).mod(P);
+    }
+
+    private static boolean isSquare(BigInteger value) {
+        return !value.modPow(LEGENDRE_EXPONENT, P).equals(P.subtract(BigInteger.ONE));
+    }
+}
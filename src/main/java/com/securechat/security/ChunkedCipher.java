@@ -0,0 +1,262 @@
+/**
+ * Parallele, blockweise authentifizierte Verschlüsselung grosser Nutzdaten.
+ * <p>
+ * Die Klasse {@code ChunkedCipher} zerlegt den Klartext in Blöcke fester Grösse
+ * ({@link #CHUNK_SIZE}) und verschlüsselt sie unabhängig voneinander mit AES-GCM auf einem
+ * {@link ForkJoinPool}. Jeder Block erhält ein eigenes Authentifizierungs-Tag; der Nonce setzt
+ * sich aus einem zufälligen Präfix je Nachricht und dem Blockindex zusammen. Der Header
+ * (Version, Schlüsselepoche, Präfix, Absenderkennung, Sequenznummer, Blockanzahl, Klartextlänge) fliesst als
+ * Associated Data in jeden Block ein, sodass vertauschte, fehlende oder angehängte Blöcke beim
+ * Entschlüsseln erkannt werden. Sequenznummer und Absenderkennung teilen sich mit den
+ * gewöhnlichen Frames des {@link CryptoManager} und werden ebenso gegen das
+ * {@link ReplayWindow} geprüft.
+ * Da alle Blöcke ausser dem letzten gleich lang sind, ist die Position jedes Blocks im Chiffrat
+ * und im Klartext berechenbar: Die Empfangsseite entschlüsselt ebenfalls parallel und schreibt
+ * jeden Block direkt an seine Stelle, womit die Reihenfolge ohne Umkopieren erhalten bleibt.
+ * <p>
+ * Format: {@code [Version:1][Epoche:1][Präfix:8][Absender:4][Sequenz:8][Blockanzahl:4][Klartextlänge:4]} gefolgt von den
+ * Blöcken, jeweils Chiffrat und 16 Byte Tag.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class ChunkedCipher {
+    public static final int CHUNK_SIZE = 64 * 1024;
+    public static final int HEADER_SIZE = 30;
+    private static final byte VERSION = 3;
+    private static final int TAG_SIZE = 16;
+    private static final int NONCE_SIZE = 12;
+
+    private final CryptoManager cryptoManager;
+    private final ForkJoinPool pool;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(ChunkedCipher::newCipher);
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert und den gemeinsamen ForkJoinPool verwendet.
+     *
+     * @param cryptoManager Schlüsselverwaltung der Sitzung
+     */
+    public ChunkedCipher(CryptoManager cryptoManager) {
+        this(cryptoManager, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param cryptoManager Schlüsselverwaltung der Sitzung
+     * @param pool          Pool, auf dem die Blöcke verarbeitet werden
+     */
+    public ChunkedCipher(CryptoManager cryptoManager, ForkJoinPool pool) {
+        this.cryptoManager = cryptoManager;
+        this.pool = pool;
+    }
+
+    /**
+     * Berechnet die Länge des Chiffrats für eine Klartextlänge.
+     *
+     * @param plaintextLength Länge des Klartexts in Byte
+     * @return Länge des Chiffrats inklusive Header und Tags
+     */
+    public static int encryptedLength(int plaintextLength) {
+        return HEADER_SIZE + plaintextLength + chunkCount(plaintextLength) * TAG_SIZE;
+    }
+
+    /**
+     * Liest die Klartextlänge aus dem Header eines Chiffrats.
+     *
+     * @param ciphertext Chiffrat ab Position
+     * @return Klartextlänge in Byte
+     * @throws GeneralSecurityException wenn der Header ungültig ist
+     */
+    public static int plaintextLength(ByteBuffer ciphertext) throws GeneralSecurityException {
+        if (ciphertext.remaining() < HEADER_SIZE || ciphertext.get(ciphertext.position()) != VERSION) {
+            throw new GeneralSecurityException("Ungültiger Header");
+        }
+        int length = ciphertext.getInt(ciphertext.position() + 26);
+        if (length < 0 || length > ciphertext.remaining() || encryptedLength(length) != ciphertext.remaining()) {
+            throw new GeneralSecurityException("Ungültige Länge");
+        }
+        return length;
+    }
+
+    /**
+     * Verschlüsselt den Inhalt von {@code plaintext} nach {@code out}.
+     * Beide Buffer müssen Heap-Buffer sein; {@code out} benötigt mindestens
+     * {@link #encryptedLength(int)} freie Bytes.
+     *
+     * @param plaintext Klartext zwischen Position und Limit; wird vollständig konsumiert
+     * @param out       Ziel; die Position wird um die Länge des Chiffrats erhöht
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     */
+    public void encrypt(ByteBuffer plaintext, ByteBuffer out) throws GeneralSecurityException {
+        int length = plaintext.remaining();
+        int chunks = chunkCount(length);
+        int epoch = cryptoManager.getSendEpoch();
+        cryptoManager.countProcessed(length);
+        byte[] header = new byte[HEADER_SIZE];
+        ByteBuffer.wrap(header).put(VERSION).put((byte) epoch).putLong(random.nextLong())
+                .putInt(cryptoManager.getSenderId()).putLong(cryptoManager.nextSequence())
+                .putInt(chunks).putInt(length);
+        out.put(header);
+        run(new ChunkTask(true, cryptoManager.keyForEpoch(epoch), header,
+                plaintext.array(), plaintext.arrayOffset() + plaintext.position(),
+                out.array(), out.arrayOffset() + out.position(), length, 0, chunks));
+        plaintext.position(plaintext.limit());
+        out.position(out.position() + encryptedLength(length) - HEADER_SIZE);
+    }
+
+    /**
+     * Prüft und entschlüsselt ein Chiffrat nach {@code plaintext}.
+     * Beide Buffer müssen Heap-Buffer sein; {@code plaintext} benötigt mindestens
+     * {@link #plaintextLength(ByteBuffer)} freie Bytes.
+     *
+     * @param ciphertext Chiffrat zwischen Position und Limit; wird vollständig konsumiert
+     * @param plaintext  Ziel; die Position wird um die Klartextlänge erhöht
+     * @param window     Fenster der bereits empfangenen Sequenznummern des Absenders
+     * @throws GeneralSecurityException wenn ein Block manipuliert wurde, der Header ungültig ist
+     *                                  oder die Nachricht wiederholt wurde
+     */
+    public void decrypt(ByteBuffer ciphertext, ByteBuffer plaintext, ReplayWindow window) throws GeneralSecurityException {
+        int length = plaintextLength(ciphertext);
+        int chunks = chunkCount(length);
+        byte[] header = new byte[HEADER_SIZE];
+        ciphertext.get(header);
+        ByteBuffer headerView = ByteBuffer.wrap(header);
+        if (headerView.getInt(22) != chunks) {
+            throw new GeneralSecurityException("Ungültige Blockanzahl");
+        }
+        run(new ChunkTask(false, cryptoManager.keyForEpoch(header[1] & 0xFF), header,
+                ciphertext.array(), ciphertext.arrayOffset() + ciphertext.position(),
+                plaintext.array(), plaintext.arrayOffset() + plaintext.position(), length, 0, chunks));
+        // Der Header ist erst nach der Prüfung aller Blöcke authentisch
+        cryptoManager.checkReplay(headerView.getInt(10), headerView.getLong(14), window);
+        cryptoManager.confirmEpoch(header[1] & 0xFF);
+        cryptoManager.countProcessed(length);
+        ciphertext.position(ciphertext.limit());
+        plaintext.position(plaintext.position() + length);
+    }
+
+    /**
+     * Führt eine Aufgabe aus; einzelne Blöcke laufen direkt im aufrufenden Thread.
+     *
+     * @param task auszuführende Aufgabe
+     * @throws GeneralSecurityException bei Fehlern in einem Block
+     */
+    private void run(ChunkTask task) throws GeneralSecurityException {
+        try {
+            if (task.to - task.from <= 1) {
+                task.compute();
+            } else {
+                pool.invoke(task);
+            }
+        } catch (ChunkFailure e) {
+            throw e.cause;
+        }
+    }
+
+    /**
+     * Berechnet die Anzahl der Blöcke für eine Klartextlänge (mindestens einer).
+     *
+     * @param plaintextLength Länge des Klartexts in Byte
+     * @return Anzahl der Blöcke
+     */
+    private static int chunkCount(int plaintextLength) {
+        return Math.max(1, (plaintextLength + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    /**
+     * Erstellt eine AES-GCM-Cipher-Instanz.
+     *
+     * @return Cipher
+     */
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM nicht verfügbar", e);
+        }
+    }
+
+    /**
+     * Transportiert eine {@link GeneralSecurityException} aus dem ForkJoinPool.
+     */
+    private static final class ChunkFailure extends RuntimeException {
+        private final GeneralSecurityException cause;
+
+        private ChunkFailure(GeneralSecurityException cause) {
+            super(cause);
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * Ver- oder entschlüsselt einen Bereich von Blöcken; grössere Bereiche werden halbiert.
+     */
+    private final class ChunkTask extends RecursiveAction {
+        private final boolean encrypt;
+        private final SecretKey key;
+        private final byte[] header;
+        private final byte[] src;
+        private final int srcOffset;
+        private final byte[] dst;
+        private final int dstOffset;
+        private final int length;
+        private final int from;
+        private final int to;
+
+        private ChunkTask(boolean encrypt, SecretKey key, byte[] header, byte[] src, int srcOffset, byte[] dst, int dstOffset,
+                          int length, int from, int to) {
+            this.encrypt = encrypt;
+            this.key = key;
+            this.header = header;
+            this.src = src;
+            this.srcOffset = srcOffset;
+            this.dst = dst;
+            this.dstOffset = dstOffset;
+            this.length = length;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(encrypt, key, header, src, srcOffset, dst, dstOffset, length, from, middle),
+                        new ChunkTask(encrypt, key, header, src, srcOffset, dst, dstOffset, length, middle, to));
+                return;
+            }
+            int plainStart = from * CHUNK_SIZE;
+            int plainLength = Math.min(CHUNK_SIZE, length - plainStart);
+            int cipherStart = from * (CHUNK_SIZE + TAG_SIZE);
+            byte[] nonce = new byte[NONCE_SIZE];
+            System.arraycopy(header, 2, nonce, 0, 8);
+            ByteBuffer.wrap(nonce).putInt(8, from);
+            try {
+                Cipher c = cipher.get();
+                c.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, key,
+                        new GCMParameterSpec(TAG_SIZE * 8, nonce));
+                c.updateAAD(header);
+                if (encrypt) {
+                    c.doFinal(src, srcOffset + plainStart, plainLength, dst, dstOffset + cipherStart);
+                } else {
+                    c.doFinal(src, srcOffset + cipherStart, plainLength + TAG_SIZE, dst, dstOffset + plainStart);
+                }
+            } catch (GeneralSecurityException e) {
+                throw new ChunkFailure(e);
+            }
+        }
+    }
+}
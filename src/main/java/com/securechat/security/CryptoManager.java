@@ -4,17 +4,51 @@
  * Die Klasse {@code CryptoManager} erlaubt es, Strings mit einem geteilten Schlüssel
  * per AES zu verschlüsseln und zu entschlüsseln. Der Schlüssel wird intern auf 16 Bytes 
  * angepasst. Die verschlüsselten Daten werden Base64-kodiert übertragen.
+ * <p>
+ * Für die Nachrichtenpfade stehen zusätzlich buffer-basierte Methoden bereit, die mit
+ * vom Aufrufer gestellten (gepoolten) Heap-Buffern arbeiten und je Thread eine
+ * {@link Cipher}-Instanz wiederverwenden. Frames werden mit AES-GCM verschlüsselt; der Nonce
+ * besteht aus einer zufälligen Absenderkennung und einer fortlaufenden Sequenznummer, wird dem
+ * Chiffrat vorangestellt und ist damit authentifiziert. Beim Empfang verwirft ein
+ * {@link ReplayWindow} wiederholte, zu alte und eigene (zurückgespiegelte) Frames.
+ * <p>
+ * Jeder Frame trägt die Epoche seines Schlüssels. Beim Schlüsselwechsel durch den
+ * {@link KeyRotator} wird der neue Schlüssel zunächst nur installiert und erst danach zum
+ * Senden aktiviert; der vorherige Schlüssel bleibt bis zum nächsten Wechsel zum Entschlüsseln
+ * gültig. So müssen weder Sende- noch Empfangspfad während eines Wechsels warten.
  * 
  * @author Milos Hornik
  */
 package com.securechat.security;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class CryptoManager {
+    private static final int HEADER_SIZE = 1 + 12;
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+    private static final int EPOCHS = 256;
+
     private final SecretKeySpec secretKey;
+    private final AtomicReferenceArray<SecretKeySpec> epochKeys = new AtomicReferenceArray<>(EPOCHS);
+    private final AtomicLong processedBytes = new AtomicLong();
+    private volatile int sendEpoch;
+    private final AtomicInteger confirmationEpoch = new AtomicInteger(-1);
+    private final int senderId = new SecureRandom().nextInt();
+    private final AtomicLong sendSequence = new AtomicLong();
+    private final ThreadLocal<Cipher> frameCipher = ThreadLocal.withInitial(CryptoManager::newFrameCipher);
 
     /**
      * Erstellt einen CryptoManager mit dem angegebenen Schlüssel.
@@ -26,6 +60,17 @@ public class CryptoManager {
         // Kürze oder erweitere Key auf 16 Byte für AES
         String fixedKey = String.format("%-16s", key).substring(0, 16);
         this.secretKey = new SecretKeySpec(fixedKey.getBytes(), "AES");
+        this.epochKeys.set(0, secretKey);
+    }
+
+    /**
+     * Erstellt einen CryptoManager mit einem ausgehandelten Sitzungsschlüssel (Epoche 0).
+     *
+     * @param sessionKey Sitzungsschlüssel aus {@link PasskeyManager#establishSession}
+     */
+    public CryptoManager(byte[] sessionKey) {
+        this.secretKey = new SecretKeySpec(sessionKey, "AES");
+        this.epochKeys.set(0, secretKey);
     }
 
     /**
@@ -38,7 +83,7 @@ public class CryptoManager {
     public String encrypt(String data) throws Exception {
         Cipher cipher = Cipher.getInstance("AES");
         cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-        byte[] encrypted = cipher.doFinal(data.getBytes());
+        byte[] encrypted = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder().encodeToString(encrypted);
     }
 
@@ -54,9 +99,218 @@ public class CryptoManager {
             Cipher cipher = Cipher.getInstance("AES");
             cipher.init(Cipher.DECRYPT_MODE, secretKey);
             byte[] decoded = Base64.getDecoder().decode(encryptedData);
-            return new String(cipher.doFinal(decoded));
+            return new String(cipher.doFinal(decoded), StandardCharsets.UTF_8);
         } catch (Exception e) {
             return "";
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Berechnet die Länge des Chiffrats (ohne Base64) für eine Klartextlänge.
+     *
+     * @param plaintextLength Länge des Klartexts in Byte
+     * @return Länge des Chiffrats in Byte
+     */
+    public static int ciphertextLength(int plaintextLength) {
+        return HEADER_SIZE + plaintextLength + TAG_SIZE;
+    }
+
+    /**
+     * Berechnet die Länge eines Base64-kodierten Frames für eine Klartextlänge.
+     *
+     * @param plaintextLength Länge des Klartexts in Byte
+     * @return Länge des Frames in Byte
+     */
+    public static int frameLength(int plaintextLength) {
+        return Base64Codec.encodedLength(ciphertextLength(plaintextLength));
+    }
+
+    /**
+     * Verschlüsselt den Inhalt von {@code plaintext} unter der nächsten Sequenznummer und schreibt
+     * ihn Base64-kodiert nach {@code frame}.
+     * Alle Buffer müssen Heap-Buffer sein; {@code scratch} benötigt mindestens
+     * {@link #ciphertextLength(int)} und {@code frame} mindestens {@link #frameLength(int)} freie Bytes.
+     *
+     * @param plaintext Klartext zwischen Position und Limit; wird vollständig konsumiert
+     * @param scratch   Zwischenspeicher für das Chiffrat
+     * @param frame     Ziel; die Position wird um die Framelänge erhöht
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     */
+    public void encryptFrame(ByteBuffer plaintext, ByteBuffer scratch, ByteBuffer frame) throws GeneralSecurityException {
+        int epoch = sendEpoch;
+        processedBytes.addAndGet(plaintext.remaining());
+        scratch.clear();
+        scratch.put((byte) epoch).putInt(senderId).putLong(nextSequence());
+        Cipher cipher = frameCipher.get();
+        cipher.init(Cipher.ENCRYPT_MODE, keyForEpoch(epoch),
+                new GCMParameterSpec(TAG_SIZE * 8, scratch.array(), scratch.arrayOffset() + 1, NONCE_SIZE));
+        int cipherLength = HEADER_SIZE + cipher.doFinal(plaintext, scratch);
+        int written = Base64Codec.encode(scratch.array(), scratch.arrayOffset(), cipherLength,
+                frame.array(), frame.arrayOffset() + frame.position());
+        frame.position(frame.position() + written);
+    }
+
+    /**
+     * Dekodiert, prüft und entschlüsselt einen Base64-Frame nach {@code plaintext}.
+     * Alle Buffer müssen Heap-Buffer sein; {@code scratch} und {@code plaintext} benötigen
+     * mindestens so viele freie Bytes wie der Frame lang ist.
+     *
+     * @param frame     Base64-Frame zwischen Position und Limit; wird vollständig konsumiert
+     * @param scratch   Zwischenspeicher für das Chiffrat
+     * @param plaintext Ziel; die Position wird um die Klartextlänge erhöht
+     * @param window    Fenster der bereits empfangenen Sequenznummern des Absenders
+     * @throws GeneralSecurityException bei manipulierten oder wiederholten Frames
+     * @throws IllegalArgumentException bei ungültigem Base64
+     */
+    public void decryptFrame(ByteBuffer frame, ByteBuffer scratch, ByteBuffer plaintext, ReplayWindow window)
+            throws GeneralSecurityException {
+        scratch.clear();
+        int cipherLength = Base64Codec.decode(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(),
+                scratch.array(), scratch.arrayOffset());
+        frame.position(frame.limit());
+        if (cipherLength < HEADER_SIZE + TAG_SIZE) {
+            throw new AEADBadTagException("Frame zu kurz");
+        }
+        int epoch = scratch.get(0) & 0xFF;
+        int sender = scratch.getInt(1);
+        long sequence = scratch.getLong(5);
+        Cipher cipher = frameCipher.get();
+        cipher.init(Cipher.DECRYPT_MODE, keyForEpoch(epoch),
+                new GCMParameterSpec(TAG_SIZE * 8, scratch.array(), scratch.arrayOffset() + 1, NONCE_SIZE));
+        scratch.position(HEADER_SIZE).limit(cipherLength);
+        processedBytes.addAndGet(cipher.doFinal(scratch, plaintext));
+        checkReplay(sender, sequence, window);
+        confirmEpoch(epoch);
+    }
+
+    /**
+     * Verwirft eigene und bereits empfangene Frames. Erst nach der Authentifizierung aufrufen.
+     *
+     * @param sender   Absenderkennung des Frames
+     * @param sequence Sequenznummer des Frames
+     * @param window   Fenster der bereits empfangenen Sequenznummern
+     * @throws GeneralSecurityException wenn der Frame abgelehnt wird
+     */
+    void checkReplay(int sender, long sequence, ReplayWindow window) throws GeneralSecurityException {
+        if (sender == senderId || !window.accept(sender, sequence)) {
+            throw new GeneralSecurityException("Wiederholter Frame abgelehnt (Sequenz " + sequence + ")");
+        }
+    }
+
+    /**
+     * Installiert den Schlüssel einer neuen Epoche zum Entschlüsseln. Der Schlüssel der
+     * vorletzten Epoche wird dabei verworfen, der vorherige bleibt gültig.
+     *
+     * @param epoch Epoche (0-255, fortlaufend modulo 256)
+     * @param key   Schlüsselmaterial
+     */
+    public void installKey(int epoch, byte[] key) {
+        epochKeys.set(epoch & 0xFF, new SecretKeySpec(key, "AES"));
+        epochKeys.set((epoch - 2) & 0xFF, null);
+    }
+
+    /**
+     * Verwendet ab sofort den Schlüssel der angegebenen Epoche zum Senden.
+     *
+     * @param epoch bereits installierte Epoche
+     */
+    public void activateSendEpoch(int epoch) {
+        sendEpoch = epoch & 0xFF;
+    }
+
+    /**
+     * Verwendet den Schlüssel der angegebenen Epoche zum Senden, sobald der erste Frame dieser
+     * Epoche von der Gegenseite authentisch entschlüsselt wurde. Bis dahin wird mit der bisherigen
+     * Epoche gesendet; so gehen keine Frames verloren, die die Gegenseite noch nicht lesen könnte.
+     *
+     * @param epoch bereits installierte Epoche
+     */
+    public void activateSendEpochOnConfirmation(int epoch) {
+        confirmationEpoch.set(epoch & 0xFF);
+    }
+
+    /**
+     * Schaltet auf eine mit {@link #activateSendEpochOnConfirmation(int)} vorgemerkte Epoche um,
+     * nachdem ein Frame dieser Epoche angenommen wurde.
+     *
+     * @param epoch Epoche des angenommenen Frames
+     */
+    void confirmEpoch(int epoch) {
+        if (confirmationEpoch.get() == epoch && confirmationEpoch.compareAndSet(epoch, -1)) {
+            sendEpoch = epoch;
+        }
+    }
+
+    /**
+     * Liefert die zum Senden verwendete Epoche.
+     *
+     * @return Epoche
+     */
+    public int getSendEpoch() {
+        return sendEpoch;
+    }
+
+    /**
+     * Liefert die Anzahl der seit dem Start ver- und entschlüsselten Klartextbytes.
+     *
+     * @return Anzahl Bytes
+     */
+    public long getProcessedBytes() {
+        return processedBytes.get();
+    }
+
+    /**
+     * Liefert den Schlüssel einer Epoche.
+     *
+     * @param epoch Epoche
+     * @return Schlüssel
+     * @throws GeneralSecurityException wenn die Epoche nicht (mehr) bekannt ist
+     */
+    SecretKeySpec keyForEpoch(int epoch) throws GeneralSecurityException {
+        SecretKeySpec key = epochKeys.get(epoch & 0xFF);
+        if (key == null) {
+            throw new GeneralSecurityException("Unbekannte Schlüsselepoche " + epoch);
+        }
+        return key;
+    }
+
+    /**
+     * Zählt verarbeitete Klartextbytes für die Auslösung des Schlüsselwechsels.
+     *
+     * @param length Anzahl Bytes
+     */
+    void countProcessed(long length) {
+        processedBytes.addAndGet(length);
+    }
+
+    /**
+     * Liefert die zufällige Absenderkennung dieser Instanz.
+     *
+     * @return Absenderkennung
+     */
+    int getSenderId() {
+        return senderId;
+    }
+
+    /**
+     * Vergibt die nächste Sequenznummer für ausgehende Frames.
+     *
+     * @return Sequenznummer
+     */
+    long nextSequence() {
+        return sendSequence.getAndIncrement();
+    }
+
+    /**
+     * Erstellt eine AES-GCM-Cipher-Instanz; sie wird je Frame mit eigenem Nonce initialisiert.
+     *
+     * @return Cipher
+     */
+    private static Cipher newFrameCipher() {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM nicht verfügbar", e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Kryptografische Grundbausteine für den Schlüsselaustausch.
+ * <p>
+ * Die Klasse {@code KeyExchange} kapselt ephemere X25519-Schlüsselpaare, die
+ * Diffie-Hellman-Vereinbarung sowie HMAC und HKDF (RFC 5869) mit SHA-256. Sie wird vom
+ * {@link PasskeyManager} für den Sitzungsaufbau und vom {@link KeyRotator} für den
+ * Schlüsselwechsel verwendet.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.security;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+
+public final class KeyExchange {
+    public static final int SESSION_KEY_SIZE = 32;
+    private static final String CURVE = "X25519";
+    private static final String HMAC = "HmacSHA256";
+
+    private KeyExchange() {
+    }
+
+    /**
+     * Erzeugt ein ephemeres Schlüsselpaar.
+     *
+     * @return neues Schlüsselpaar
+     * @throws GeneralSecurityException wenn X25519 nicht verfügbar ist
+     */
+    public static KeyPair generateKeyPair() throws GeneralSecurityException {
+        return KeyPairGenerator.getInstance(CURVE).generateKeyPair();
+    }
+
+    /**
+     * Liefert die übertragbare Darstellung eines öffentlichen Schlüssels.
+     *
+     * @param key öffentlicher Schlüssel
+     * @return X.509-kodierter Schlüssel
+     */
+    public static byte[] encodePublicKey(PublicKey key) {
+        return key.getEncoded();
+    }
+
+    /**
+     * Berechnet das gemeinsame Geheimnis aus eigenem privaten und fremdem öffentlichen Schlüssel.
+     *
+     * @param privateKey      eigener privater Schlüssel
+     * @param peerPublicKey   X.509-kodierter öffentlicher Schlüssel der Gegenseite
+     * @return gemeinsames Geheimnis
+     * @throws GeneralSecurityException bei ungültigem Schlüssel
+     */
+    public static byte[] agree(PrivateKey privateKey, byte[] peerPublicKey) throws GeneralSecurityException {
+        PublicKey peer = KeyFactory.getInstance(CURVE).generatePublic(new X509EncodedKeySpec(peerPublicKey));
+        KeyAgreement agreement = KeyAgreement.getInstance(CURVE);
+        agreement.init(privateKey);
+        agreement.doPhase(peer, true);
+        return agreement.generateSecret();
+    }
+
+    /**
+     * Berechnet einen HMAC-SHA256 über die Verkettung der Teile.
+     *
+     * @param key   Schlüssel
+     * @param parts zu authentifizierende Teile
+     * @return MAC
+     * @throws GeneralSecurityException wenn HMAC-SHA256 nicht verfügbar ist
+     */
+    public static byte[] mac(byte[] key, byte[]... parts) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(HMAC);
+        mac.init(new SecretKeySpec(key, HMAC));
+        for (byte[] part : parts) {
+            mac.update(part);
+        }
+        return mac.doFinal();
+    }
+
+    /**
+     * Vergleicht zwei MACs in konstanter Zeit.
+     *
+     * @param expected erwarteter Wert
+     * @param actual   empfangener Wert
+     * @return {@code true}, wenn beide gleich sind
+     */
+    public static boolean macEquals(byte[] expected, byte[] actual) {
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /**
+     * Leitet Schlüsselmaterial per HKDF-SHA256 ab.
+     *
+     * @param salt   Salz
+     * @param ikm    Eingangsschlüsselmaterial
+     * @param info   Kontextbezeichnung
+     * @param length gewünschte Länge in Byte (höchstens 255 * 32)
+     * @return abgeleitetes Schlüsselmaterial
+     * @throws GeneralSecurityException wenn HMAC-SHA256 nicht verfügbar ist
+     */
+    public static byte[] hkdf(byte[] salt, byte[] ikm, String info, int length) throws GeneralSecurityException {
+        byte[] prk = mac(salt, ikm);
+        byte[] infoBytes = info.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream okm = new ByteArrayOutputStream(length);
+        byte[] block = new byte[0];
+        for (int counter = 1; okm.size() < length; counter++) {
+            block = mac(prk, block, infoBytes, new byte[] {(byte) counter});
+            okm.write(block, 0, Math.min(block.length, length - okm.size()));
+        }
+        return okm.toByteArray();
+    }
+
+    /**
+     * Berechnet den SHA-256-Hash über die Verkettung der Teile.
+     *
+     * @param parts Teile
+     * @return Hash
+     * @throws GeneralSecurityException wenn SHA-256 nicht verfügbar ist
+     */
+    public static byte[] sha256(byte[]... parts) throws GeneralSecurityException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (byte[] part : parts) {
+            digest.update(part);
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Wechselt den Sitzungsschlüssel im Hintergrund per ephemerem X25519-Austausch.
+ * <p>
+ * Die Klasse {@code KeyRotator} löst auf der initiierenden Seite (Host) einen Schlüsselwechsel
+ * aus, sobald seit dem letzten Wechsel {@code maxBytes} Klartextbytes verarbeitet wurden oder
+ * {@code maxMillis} vergangen sind. Der Wechsel läuft über zwei Nachrichten, die noch mit dem
+ * alten Schlüssel verschlüsselt werden:
+ * <ol>
+ *   <li>Host → Client: neue Epoche und eigener öffentlicher Schlüssel</li>
+ *   <li>Client → Host: dieselbe Epoche und eigener öffentlicher Schlüssel</li>
+ * </ol>
+ * Der Client installiert den neuen Schlüssel vor seiner Antwort, sendet aber weiter mit der alten
+ * Epoche. Der Host installiert den Schlüssel beim Eintreffen der Antwort und sendet ab dann mit der
+ * neuen Epoche; der erste solche Frame bestätigt dem Client, dass der Host den Schlüssel kennt,
+ * und erst dann schaltet auch der Client um ({@link CryptoManager#activateSendEpochOnConfirmation(int)}).
+ * So sendet keine Seite mit einem Schlüssel, den die Gegenseite noch nicht installiert hat, auch
+ * wenn die Antwort beim Host erst verzögert über Empfangspipeline und Rotations-Thread ankommt.
+ * Da der alte Schlüssel zum Entschlüsseln gültig bleibt, kann jede Seite Frames beider Epochen
+ * verarbeiten und kein Pfad muss warten. Der neue Schlüssel wird per HKDF aus dem
+ * DH-Geheimnis und dem bisherigen Schlüssel abgeleitet und bleibt so an die
+ * Passkey-Authentifizierung der Sitzung gebunden.
+ * <p>
+ * Die Schlüsselarbeit erfolgt ausschliesslich in {@link #process(long)}, das der Aufrufer in
+ * einem eigenen Thread aufruft; {@link #onRekeyMessage(int, byte[])} legt empfangene
+ * Nachrichten nur ab. Grenzwerte: System-Properties {@code securechat.rekey.bytes} und
+ * {@code securechat.rekey.seconds}.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.security;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class KeyRotator {
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    public static final long DEFAULT_MAX_SECONDS = 600;
+
+    /**
+     * Verbindung des KeyRotators zur Sitzung.
+     */
+    public interface Listener {
+
+        /**
+         * Sendet eine Wechselnachricht an die Gegenseite (mit dem aktuellen Schlüssel).
+         *
+         * @param epoch     neue Epoche
+         * @param publicKey eigener öffentlicher Schlüssel
+         * @throws IOException bei Sendefehlern
+         */
+        void sendRekey(int epoch, byte[] publicKey) throws IOException;
+
+        /**
+         * Wird aufgerufen, nachdem ein neuer Schlüssel installiert wurde.
+         *
+         * @param epoch neue Epoche
+         * @param key   neuer Schlüssel
+         */
+        void onKeyInstalled(int epoch, byte[] key);
+
+        /**
+         * Wird aufgerufen, wenn ein Schlüsselwechsel fehlgeschlagen ist.
+         *
+         * @param reason Grund
+         */
+        void onRekeyFailed(String reason);
+    }
+
+    private final CryptoManager cryptoManager;
+    private final boolean initiator;
+    private final Listener listener;
+    private final long maxBytes;
+    private final long maxNanos;
+    private final BlockingQueue<Proposal> inbox = new LinkedBlockingQueue<>();
+    private byte[] chainKey;
+    private int epoch;
+    private KeyPair pendingPair;
+    private long bytesMark;
+    private long lastRekeyNanos = System.nanoTime();
+    private volatile int rekeyCount;
+
+    /**
+     * Ein empfangener Wechselvorschlag bzw. eine Antwort.
+     */
+    private record Proposal(int epoch, byte[] publicKey) {
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert; die Grenzwerte stammen aus den System-Properties.
+     *
+     * @param cryptoManager Schlüsselverwaltung der Sitzung
+     * @param sessionKey    ausgehandelter Sitzungsschlüssel (Epoche 0)
+     * @param initiator     {@code true}, wenn diese Seite Wechsel auslöst (Host)
+     * @param listener      Verbindung zur Sitzung
+     */
+    public KeyRotator(CryptoManager cryptoManager, byte[] sessionKey, boolean initiator, Listener listener) {
+        this(cryptoManager, sessionKey, initiator, listener,
+                Long.getLong("securechat.rekey.bytes", DEFAULT_MAX_BYTES),
+                TimeUnit.SECONDS.toMillis(Long.getLong("securechat.rekey.seconds", DEFAULT_MAX_SECONDS)));
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param cryptoManager Schlüsselverwaltung der Sitzung
+     * @param sessionKey    ausgehandelter Sitzungsschlüssel (Epoche 0)
+     * @param initiator     {@code true}, wenn diese Seite Wechsel auslöst (Host)
+     * @param listener      Verbindung zur Sitzung
+     * @param maxBytes      Klartextbytes bis zum nächsten Wechsel
+     * @param maxMillis     Millisekunden bis zum nächsten Wechsel
+     */
+    public KeyRotator(CryptoManager cryptoManager, byte[] sessionKey, boolean initiator, Listener listener,
+                      long maxBytes, long maxMillis) {
+        this.cryptoManager = cryptoManager;
+        this.chainKey = sessionKey.clone();
+        this.initiator = initiator;
+        this.listener = listener;
+        this.maxBytes = maxBytes;
+        this.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        this.epoch = cryptoManager.getSendEpoch();
+        this.bytesMark = cryptoManager.getProcessedBytes();
+    }
+
+    /**
+     * Nimmt eine empfangene Wechselnachricht entgegen, ohne zu blockieren.
+     *
+     * @param epoch     Epoche aus der Nachricht
+     * @param publicKey öffentlicher Schlüssel der Gegenseite
+     */
+    public void onRekeyMessage(int epoch, byte[] publicKey) {
+        inbox.offer(new Proposal(epoch & 0xFF, publicKey));
+    }
+
+    /**
+     * Verarbeitet höchstens eine empfangene Nachricht und prüft die Grenzwerte.
+     * Wartet bis zu {@code timeoutMs} Millisekunden auf eine Nachricht.
+     *
+     * @param timeoutMs maximale Wartezeit in Millisekunden
+     * @throws InterruptedException wenn der Thread unterbrochen wird
+     */
+    public void process(long timeoutMs) throws InterruptedException {
+        Proposal proposal = inbox.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            if (proposal != null) {
+                handle(proposal);
+            }
+            if (initiator && pendingPair == null && isDue()) {
+                pendingPair = KeyExchange.generateKeyPair();
+                listener.sendRekey(next(epoch), KeyExchange.encodePublicKey(pendingPair.getPublic()));
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            pendingPair = null;
+            listener.onRekeyFailed(e.getMessage());
+        }
+    }
+
+    /**
+     * Liefert die Anzahl abgeschlossener Schlüsselwechsel.
+     *
+     * @return Anzahl Wechsel
+     */
+    public int getRekeyCount() {
+        return rekeyCount;
+    }
+
+    /**
+     * Verarbeitet einen Vorschlag (Client) bzw. eine Antwort (Host).
+     *
+     * @param proposal empfangene Nachricht
+     * @throws IOException bei Sendefehlern
+     * @throws GeneralSecurityException bei ungültigem Schlüssel
+     */
+    private void handle(Proposal proposal) throws IOException, GeneralSecurityException {
+        if (proposal.epoch() != next(epoch)) {
+            listener.onRekeyFailed("Unerwartete Epoche " + proposal.epoch());
+            return;
+        }
+        if (initiator) {
+            if (pendingPair == null) {
+                return;
+            }
+            byte[] key = deriveKey(KeyExchange.agree(pendingPair.getPrivate(), proposal.publicKey()), proposal.epoch());
+            install(proposal.epoch(), key);
+            cryptoManager.activateSendEpoch(proposal.epoch());
+        } else {
+            KeyPair pair = KeyExchange.generateKeyPair();
+            byte[] key = deriveKey(KeyExchange.agree(pair.getPrivate(), proposal.publicKey()), proposal.epoch());
+            install(proposal.epoch(), key);
+            // Antwort mit dem alten Schlüssel; umgeschaltet wird erst, wenn der Host mit dem neuen sendet
+            listener.sendRekey(proposal.epoch(), KeyExchange.encodePublicKey(pair.getPublic()));
+            cryptoManager.activateSendEpochOnConfirmation(proposal.epoch());
+        }
+        pendingPair = null;
+        rekeyCount++;
+    }
+
+    /**
+     * Installiert einen neuen Schlüssel und setzt die Grenzwerte zurück.
+     *
+     * @param newEpoch neue Epoche
+     * @param key      neuer Schlüssel
+     */
+    private void install(int newEpoch, byte[] key) {
+        cryptoManager.installKey(newEpoch, key);
+        listener.onKeyInstalled(newEpoch, key);
+        chainKey = key;
+        epoch = newEpoch;
+        bytesMark = cryptoManager.getProcessedBytes();
+        lastRekeyNanos = System.nanoTime();
+    }
+
+    /**
+     * Leitet den Schlüssel der neuen Epoche ab.
+     *
+     * @param shared   DH-Geheimnis
+     * @param newEpoch neue Epoche
+     * @return neuer Schlüssel
+     * @throws GeneralSecurityException bei Krypto-Fehlern
+     */
+    private byte[] deriveKey(byte[] shared, int newEpoch) throws GeneralSecurityException {
+        return KeyExchange.hkdf(chainKey, shared, "securechat rekey " + newEpoch, KeyExchange.SESSION_KEY_SIZE);
+    }
+
+    private boolean isDue() {
+        return cryptoManager.getProcessedBytes() - bytesMark >= maxBytes
+                || System.nanoTime() - lastRekeyNanos >= maxNanos;
+    }
+
+    private static int next(int epoch) {
+        return (epoch + 1) & 0xFF;
+    }
+}
@@ -1,22 +1,48 @@
 /**
  * Verwaltet die Verifizierung des Passworts (Passkey) zwischen zwei Chat-Teilnehmern.
  * <p>
- * Die Klasse {@code PasskeyManager} bietet eine Methode, um einen Passkey 
- * zwischen Host und Client auszutauschen und zu verifizieren.
- * Die Kommunikation erfolgt verschlüsselt über den {@link CryptoManager}.
- * Abhängig von der Rolle (Host oder Client) wird der Passkey gesendet bzw. geprüft.
+ * Die Klasse {@code PasskeyManager} baut zwischen Host und Client eine Sitzung auf: Beide Seiten
+ * führen einen {@link CPace}-Austausch mit einem aus dem Passkey abgeleiteten Generator durch und
+ * beweisen sich anschliessend per HMAC über das Transkript, dass sie denselben Schlüssel erhalten
+ * haben. Der Passkey selbst wird dabei nie übertragen. Aus dem gemeinsamen Geheimnis wird ein
+ * eigener Sitzungsschlüssel abgeleitet, sodass jede Sitzung mit einem anderen Schlüssel
+ * verschlüsselt wird und aufgezeichnete Frames einer Sitzung in keiner anderen gültig sind.
+ * <p>
+ * Ablauf (zeilenbasiert, Base64): Client sendet {@code SC3 <Ya>}, Host antwortet {@code <Yb>},
+ * Client beweist zuerst mit {@code <macC>}, Host bestätigt mit {@code VALID <macH>} bzw.
+ * {@code NOT VALID}. Keine der Nachrichten erlaubt es, Passkeys offline durchzuprobieren; wer den
+ * Passkey nicht kennt, kann pro Verbindung genau einen Passkey raten. Die Zahl dieser Versuche
+ * begrenzt der {@link com.securechat.network.HandshakeGate} je Quelladresse, ein kurzer Passkey
+ * bleibt trotzdem online erratbar.
  * 
  * @author Milos Hornik
  */
 package com.securechat.security;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import com.securechat.transport.Connection;
+import com.securechat.transport.TcpTransport;
+import java.nio.charset.StandardCharsets;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.HexFormat;
 
 public class PasskeyManager {
+    private static final String PROTOCOL = "SC3";
+    private static final String CHANNEL = "securechat " + PROTOCOL;
+    private static final String ACCEPTED = "VALID";
+    private static final String REJECTED = "NOT VALID";
+    private static final int MAX_LINE_LENGTH = 1024;
+    private static final byte[] HOST_LABEL = "host".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLIENT_LABEL = "client".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PEER_ID_CONTEXT = "securechat peer id".getBytes(StandardCharsets.US_ASCII);
 
     /**
      * Überprüft den Passkey zwischen Host und Client über einen Socket.
@@ -29,23 +55,262 @@ public class PasskeyManager {
      * @throws Exception bei Netzwerk- oder Krypto-Fehlern.
      */
     public static boolean verifyPasskey(Socket socket, String passkey, boolean isHost) throws Exception {
-        CryptoManager crypto = new CryptoManager(passkey);
-        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+        return verifyPasskey(socket, passkey, isHost, 0);
+    }
+
+    /**
+     * Überprüft den Passkey wie {@link #verifyPasskey(Socket, String, boolean)}, wartet aber
+     * höchstens {@code timeoutMs} Millisekunden auf jede Antwort der Gegenseite.
+     * Der ausgehandelte Sitzungsschlüssel wird verworfen; siehe {@link #establishSession}.
+     *
+     * @param socket    Der Socket für die Kommunikation.
+     * @param passkey   Das zu überprüfende Passwort.
+     * @param isHost    {@code true}, wenn diese Instanz als Host agiert, {@code false} für Client.
+     * @param timeoutMs maximale Wartezeit pro Lesevorgang in Millisekunden, {@code 0} für unbegrenzt.
+     * @return {@code true}, wenn die Verifizierung erfolgreich war, sonst {@code false}.
+     * @throws Exception bei Netzwerk- oder Krypto-Fehlern, insbesondere bei Zeitüberschreitung.
+     */
+    public static boolean verifyPasskey(Socket socket, String passkey, boolean isHost, int timeoutMs) throws Exception {
+        return establishSession(socket, passkey, isHost, timeoutMs) != null;
+    }
+
+    /**
+     * Prüft den Passkey und handelt einen Sitzungsschlüssel aus. Wartet höchstens
+     * {@code timeoutMs} Millisekunden auf jede Antwort der Gegenseite; danach wird der
+     * ursprüngliche Socket-Timeout wiederhergestellt.
+     *
+     * @param socket    Der Socket für die Kommunikation.
+     * @param passkey   Das zu überprüfende Passwort.
+     * @param isHost    {@code true}, wenn diese Instanz als Host agiert, {@code false} für Client.
+     * @param timeoutMs maximale Wartezeit pro Lesevorgang in Millisekunden, {@code 0} für unbegrenzt.
+     * @return Sitzungsschlüssel oder {@code null}, wenn die Verifizierung fehlgeschlagen ist.
+     * @throws Exception bei Netzwerk- oder Krypto-Fehlern, insbesondere bei Zeitüberschreitung.
+     */
+    public static byte[] establishSession(Socket socket, String passkey, boolean isHost, int timeoutMs) throws Exception {
+        return establishSession(TcpTransport.wrap(socket), passkey, isHost, timeoutMs);
+    }
+
+    /**
+     * Prüft den Passkey und handelt einen Sitzungsschlüssel über eine beliebige
+     * {@link Connection} aus, unabhängig vom darunterliegenden Transport.
+     *
+     * @param connection Die Verbindung für die Kommunikation.
+     * @param passkey    Das zu überprüfende Passwort.
+     * @param isHost     {@code true}, wenn diese Instanz als Host agiert, {@code false} für Client.
+     * @param timeoutMs  maximale Wartezeit pro Lesevorgang in Millisekunden, {@code 0} für unbegrenzt.
+     * @return Sitzungsschlüssel oder {@code null}, wenn die Verifizierung fehlgeschlagen ist.
+     * @throws Exception bei Netzwerk- oder Krypto-Fehlern, insbesondere bei Zeitüberschreitung.
+     */
+    public static byte[] establishSession(Connection connection, String passkey, boolean isHost, int timeoutMs) throws Exception {
         if (isHost) {
-            String encryptedReceived = in.readLine();
-            String received = crypto.decrypt(encryptedReceived);
-            if (received.equals(passkey)) {
-                out.println(crypto.encrypt("VALID"));
-                return true;
-            } else {
-                out.println(crypto.encrypt("NOT VALID"));
-                return false;
+            return acceptSession(connection, passkey, timeoutMs, timeoutMs, () -> {
+            });
+        }
+        int previousTimeout = connection.getReadTimeout();
+        connection.setReadTimeout(timeoutMs);
+        try {
+            return clientHandshake(connection.getInputStream(), connection.getOutputStream(), passkey);
+        } finally {
+            if (!connection.isClosed()) {
+                connection.setReadTimeout(previousTimeout);
+            }
+        }
+    }
+
+    /**
+     * Führt den Handshake als Host durch. Die erste Nachricht des Clients muss vollständig
+     * innerhalb von {@code firstMessageTimeoutMs} eintreffen; ein legitimer Client sendet sie
+     * direkt nach dem Verbindungsaufbau, ein stummer belegt den Host so nur kurz.
+     *
+     * @param connection            Die Verbindung für die Kommunikation.
+     * @param passkey               Das zu überprüfende Passwort.
+     * @param firstMessageTimeoutMs Frist für die erste Nachricht des Clients in Millisekunden.
+     * @param timeoutMs             maximale Wartezeit pro weiterem Lesevorgang in Millisekunden.
+     * @param onFirstMessage        wird aufgerufen, sobald die erste Nachricht eingetroffen ist.
+     * @return Sitzungsschlüssel oder {@code null}, wenn die Verifizierung fehlgeschlagen ist.
+     * @throws Exception bei Netzwerk- oder Krypto-Fehlern, insbesondere bei Zeitüberschreitung.
+     */
+    public static byte[] acceptSession(Connection connection, String passkey, int firstMessageTimeoutMs, int timeoutMs,
+                                       Runnable onFirstMessage) throws Exception {
+        int previousTimeout = connection.getReadTimeout();
+        connection.setReadTimeout(firstMessageTimeoutMs);
+        try {
+            InputStream in = connection.getInputStream();
+            String hello = readLine(in, firstMessageTimeoutMs * 1_000_000L);
+            onFirstMessage.run();
+            connection.setReadTimeout(timeoutMs);
+            return hostHandshake(hello, in, connection.getOutputStream(), passkey);
+        } finally {
+            if (!connection.isClosed()) {
+                connection.setReadTimeout(previousTimeout);
+            }
+        }
+    }
+
+    /**
+     * Führt den Handshake als Host durch. Der Host gibt seinen Beweis erst preis, nachdem der
+     * Client seinen gültigen Beweis gesendet hat.
+     *
+     * @param hello   bereits gelesene erste Nachricht des Clients.
+     * @param in      Eingabestrom der Verbindung.
+     * @param out     Ausgabestrom der Verbindung.
+     * @param passkey Das zu überprüfende Passwort.
+     * @return Sitzungsschlüssel oder {@code null} bei ungültigem Passkey.
+     * @throws Exception bei Netzwerk- oder Krypto-Fehlern.
+     */
+    private static byte[] hostHandshake(String hello, InputStream in, OutputStream out, String passkey) throws Exception {
+        if (hello == null || !hello.startsWith(PROTOCOL + " ")) {
+            return null;
+        }
+        byte[] clientElement = Base64.getDecoder().decode(hello.substring(PROTOCOL.length() + 1));
+        byte[] scalar = CPace.newScalar();
+        byte[] hostElement = CPace.multiply(scalar, CPace.generator(passkey, CHANNEL));
+        byte[] isk = intermediateKey(CPace.multiply(scalar, clientElement), clientElement, hostElement);
+        writeLine(out, encode(hostElement));
+
+        String response = readLine(in);
+        if (response == null) {
+            return null;
+        }
+        byte[] expected = KeyExchange.mac(isk, CLIENT_LABEL, clientElement, hostElement);
+        if (!KeyExchange.macEquals(expected, Base64.getDecoder().decode(response))) {
+            writeLine(out, REJECTED);
+            return null;
+        }
+        writeLine(out, ACCEPTED + " " + encode(KeyExchange.mac(isk, HOST_LABEL, clientElement, hostElement)));
+        return sessionKey(isk, clientElement, hostElement);
+    }
+
+    /**
+     * Führt den Handshake als Client durch.
+     *
+     * @param in      Eingabestrom der Verbindung.
+     * @param out     Ausgabestrom der Verbindung.
+     * @param passkey Das zu überprüfende Passwort.
+     * @return Sitzungsschlüssel oder {@code null} bei ungültigem Passkey.
+     * @throws Exception bei Netzwerk- oder Krypto-Fehlern.
+     */
+    private static byte[] clientHandshake(InputStream in, OutputStream out, String passkey) throws Exception {
+        BigInteger generator = CPace.generator(passkey, CHANNEL);
+        byte[] scalar = CPace.newScalar();
+        byte[] clientElement = CPace.multiply(scalar, generator);
+        writeLine(out, PROTOCOL + " " + encode(clientElement));
+
+        String reply = readLine(in);
+        if (reply == null) {
+            return null;
+        }
+        byte[] hostElement = Base64.getDecoder().decode(reply);
+        byte[] isk = intermediateKey(CPace.multiply(scalar, hostElement), clientElement, hostElement);
+        writeLine(out, encode(KeyExchange.mac(isk, CLIENT_LABEL, clientElement, hostElement)));
+
+        String response = readLine(in);
+        if (response == null || !response.startsWith(ACCEPTED + " ")) {
+            return null;
+        }
+        byte[] expected = KeyExchange.mac(isk, HOST_LABEL, clientElement, hostElement);
+        if (!KeyExchange.macEquals(expected, Base64.getDecoder().decode(response.substring(ACCEPTED.length() + 1)))) {
+            return null;
+        }
+        return sessionKey(isk, clientElement, hostElement);
+    }
+
+    /**
+     * Leitet aus dem CPace-Geheimnis den Zwischenschlüssel für die Beweise ab.
+     *
+     * @param shared        CPace-Geheimnis
+     * @param clientElement öffentlicher Wert des Clients
+     * @param hostElement   öffentlicher Wert des Hosts
+     * @return Zwischenschlüssel
+     * @throws Exception bei Krypto-Fehlern
+     */
+    private static byte[] intermediateKey(byte[] shared, byte[] clientElement, byte[] hostElement) throws Exception {
+        return KeyExchange.hkdf(KeyExchange.sha256(clientElement, hostElement), shared, "securechat cpace isk",
+                KeyExchange.SESSION_KEY_SIZE);
+    }
+
+    /**
+     * Leitet den Sitzungsschlüssel aus Zwischenschlüssel und Transkript ab.
+     *
+     * @param isk           Zwischenschlüssel
+     * @param clientElement öffentlicher Wert des Clients
+     * @param hostElement   öffentlicher Wert des Hosts
+     * @return Sitzungsschlüssel
+     * @throws Exception bei Krypto-Fehlern
+     */
+    private static byte[] sessionKey(byte[] isk, byte[] clientElement, byte[] hostElement) throws Exception {
+        return KeyExchange.hkdf(KeyExchange.sha256(clientElement, hostElement), isk, "securechat session",
+                KeyExchange.SESSION_KEY_SIZE);
+    }
+
+    /**
+     * Leitet aus dem Passkey eine Kennung der Gegenstelle ab, unter der z. B. ihr Verlauf über
+     * Verbindungen hinweg wiedergefunden wird. Der Passkey ist die einzige Authentifizierung der
+     * Gegenstelle; anders als ihre Adresse kann ihn kein Dritter vorweisen. Die Kennung ist ein
+     * Hash mit eigenem Kontext und wird nie übertragen.
+     *
+     * @param passkey gemeinsamer Passkey
+     * @return Kennung in Hex
+     * @throws GeneralSecurityException wenn SHA-256 nicht verfügbar ist
+     */
+    public static String peerId(String passkey) throws GeneralSecurityException {
+        return HexFormat.of().formatHex(KeyExchange.sha256(PEER_ID_CONTEXT, passkey.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Liest eine Zeile ungepuffert, damit nach dem Handshake keine Frames im Puffer verloren gehen.
+     *
+     * @param in Eingabestrom
+     * @return Zeile ohne Zeilenende oder {@code null} bei Verbindungsende
+     * @throws IOException bei Lesefehlern oder zu langer Zeile
+     */
+    private static String readLine(InputStream in) throws IOException {
+        return readLine(in, Long.MAX_VALUE);
+    }
+
+    /**
+     * Liest eine Zeile ungepuffert, die innerhalb einer festen Frist vollständig sein muss. So
+     * kann ein Client die Frist nicht verlängern, indem er einzelne Bytes tröpfeln lässt.
+     *
+     * @param in       Eingabestrom
+     * @param maxNanos Frist ab Beginn des Lesens in Nanosekunden
+     * @return Zeile ohne Zeilenende oder {@code null} bei Verbindungsende
+     * @throws IOException bei Lesefehlern, zu langer Zeile oder abgelaufener Frist
+     */
+    private static String readLine(InputStream in, long maxNanos) throws IOException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return null;
+            }
+            if (System.nanoTime() - start > maxNanos) {
+                throw new SocketTimeoutException("Frist für Handshake-Zeile abgelaufen");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > MAX_LINE_LENGTH) {
+                throw new IOException("Handshake-Zeile zu lang");
             }
-        } else {
-            out.println(crypto.encrypt(passkey));
-            String response = crypto.decrypt(in.readLine());
-            return response.equals("VALID");
         }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Schreibt eine Zeile und leert den Ausgabestrom.
+     *
+     * @param out  Ausgabestrom
+     * @param line Zeile ohne Zeilenende
+     * @throws IOException bei Schreibfehlern
+     */
+    private static void writeLine(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static String encode(byte[] data) {
+        return Base64.getEncoder().encodeToString(data);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,72 @@
+/**
+ * Gleitendes Fenster zur Erkennung wiederholter Frames.
+ * <p>
+ * Die Klasse {@code ReplayWindow} merkt sich die höchste bisher akzeptierte Sequenznummer
+ * eines Absenders sowie in einer Bitmap, welche der {@link #WINDOW_SIZE} vorangehenden
+ * Nummern bereits gesehen wurden. Doppelte Nummern und Nummern, die älter als das Fenster
+ * sind, werden abgelehnt; leicht umsortierte Frames innerhalb des Fensters bleiben zulässig.
+ * Die Prüfung benötigt konstante Zeit und legt keine Objekte an. Das Fenster bindet sich an
+ * den Absender des ersten akzeptierten Frames, sodass Frames anderer Absender (z. B. eigene,
+ * zurückgespiegelte Frames) abgelehnt werden.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.security;
+
+import java.util.Arrays;
+
+public class ReplayWindow {
+    public static final int WINDOW_SIZE = 1024;
+    // Ein zusätzliches Wort, damit beim Vorrücken immer ganze Wörter verworfen werden können
+    private static final int WORDS = WINDOW_SIZE / Long.SIZE + 1;
+
+    private final long[] bitmap = new long[WORDS];
+    private long highest = -1;
+    private int sender;
+    private boolean bound;
+
+    /**
+     * Prüft eine Sequenznummer und merkt sie sich, falls sie akzeptiert wird.
+     * Darf erst nach erfolgreicher Authentifizierung des Frames aufgerufen werden.
+     *
+     * @param senderId Absenderkennung aus dem Nonce
+     * @param sequence Sequenznummer aus dem Nonce
+     * @return {@code true}, wenn der Frame neu ist
+     */
+    public synchronized boolean accept(int senderId, long sequence) {
+        if (sequence < 0) {
+            return false;
+        }
+        if (bound && senderId != sender) {
+            return false;
+        }
+        if (sequence > highest) {
+            long oldWord = highest < 0 ? -1 : highest / Long.SIZE;
+            long steps = Math.min(sequence / Long.SIZE - oldWord, WORDS);
+            for (long i = 1; i <= steps; i++) {
+                bitmap[(int) ((oldWord + i) % WORDS)] = 0L;
+            }
+            highest = sequence;
+        } else if (highest - sequence >= WINDOW_SIZE) {
+            return false;
+        }
+        int word = (int) ((sequence / Long.SIZE) % WORDS);
+        long mask = 1L << (sequence % Long.SIZE);
+        if ((bitmap[word] & mask) != 0) {
+            return false;
+        }
+        bitmap[word] |= mask;
+        sender = senderId;
+        bound = true;
+        return true;
+    }
+
+    /**
+     * Setzt das Fenster zurück, z. B. für die wiederholte Wiedergabe einer Aufzeichnung.
+     */
+    public synchronized void reset() {
+        Arrays.fill(bitmap, 0L);
+        highest = -1;
+        bound = false;
+    }
+}
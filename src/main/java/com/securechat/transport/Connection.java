@@ -0,0 +1,87 @@
+/**
+ * Bidirektionale Byte-Verbindung zwischen zwei Chat-Teilnehmern.
+ * <p>
+ * Das Interface {@code Connection} ist die Schnittstelle zwischen der Sitzungsschicht
+ * ({@link com.securechat.security.PasskeyManager}, {@link com.securechat.io.IOManager}) und dem
+ * darunterliegenden {@link Transport}. Die Sitzungsschicht benötigt nur zwei Byte-Ströme, einen
+ * Lese-Timeout für den Handshake und eine Quelladresse für das
+ * {@link com.securechat.network.HandshakeGate}; ob die Bytes über TCP, einen Unix Domain Socket
+ * oder eine prozessinterne Pipe laufen, bleibt ihr verborgen.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+
+public interface Connection extends Closeable {
+
+    /**
+     * Gibt den Eingabestrom der Verbindung zurück. Lesevorgänge werfen nach Ablauf des
+     * Lese-Timeouts eine {@link java.net.SocketTimeoutException}.
+     *
+     * @return Eingabestrom
+     * @throws IOException wenn die Verbindung bereits geschlossen ist
+     */
+    InputStream getInputStream() throws IOException;
+
+    /**
+     * Gibt den Ausgabestrom der Verbindung zurück.
+     *
+     * @return Ausgabestrom
+     * @throws IOException wenn die Verbindung bereits geschlossen ist
+     */
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * Gibt die Quelladresse der Gegenseite zurück. Lokale Transporte liefern die Loopback-Adresse.
+     *
+     * @return Adresse der Gegenseite
+     */
+    InetAddress getInetAddress();
+
+    /**
+     * Gibt eine lesbare Beschreibung der Gegenseite zurück, z. B. für Statusmeldungen.
+     *
+     * @return Beschreibung der Gegenseite
+     */
+    String getRemoteDescription();
+
+    /**
+     * Setzt den Lese-Timeout.
+     *
+     * @param timeoutMs maximale Wartezeit pro Lesevorgang in Millisekunden, {@code 0} für unbegrenzt
+     * @throws IOException wenn die Verbindung bereits geschlossen ist
+     */
+    void setReadTimeout(int timeoutMs) throws IOException;
+
+    /**
+     * Gibt den aktuellen Lese-Timeout zurück.
+     *
+     * @return Lese-Timeout in Millisekunden, {@code 0} für unbegrenzt
+     * @throws IOException wenn die Verbindung bereits geschlossen ist
+     */
+    int getReadTimeout() throws IOException;
+
+    /**
+     * Legt fest, ob die danach geschriebenen Nachrichten (jeweils eine mit {@code '\n'}
+     * abgeschlossene Zeile) der Reihe nach ausgeliefert werden müssen. Ungeordnete Nachrichten
+     * dürfen andere ungeordnete Nachrichten überholen, aber nie eine zuvor gesendete geordnete.
+     * Transporte mit einem einzigen Bytestrom ignorieren die Einstellung; Standard ist geordnet.
+     *
+     * @param ordered {@code true} für geordnete Auslieferung
+     */
+    default void setOrderedDelivery(boolean ordered) {
+    }
+
+    /**
+     * Gibt an, ob die Verbindung geschlossen wurde.
+     *
+     * @return {@code true}, wenn die Verbindung geschlossen ist
+     */
+    boolean isClosed();
+}
@@ -0,0 +1,39 @@
+/**
+ * Lauscht auf eingehende Verbindungen eines {@link Transport}.
+ * <p>
+ * Das Interface {@code ConnectionListener} entspricht dem {@link java.net.ServerSocket}:
+ * {@link #accept()} blockiert bis zur nächsten Verbindung, {@link #close()} bricht einen
+ * laufenden Aufruf mit einer {@link java.net.SocketException} ab.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface ConnectionListener extends Closeable {
+
+    /**
+     * Wartet auf die nächste eingehende Verbindung.
+     *
+     * @return angenommene Verbindung
+     * @throws java.net.SocketException wenn der Listener geschlossen wurde
+     * @throws IOException bei sonstigen Fehlern
+     */
+    Connection accept() throws IOException;
+
+    /**
+     * Gibt an, ob der Listener geschlossen wurde.
+     *
+     * @return {@code true}, wenn der Listener geschlossen ist
+     */
+    boolean isClosed();
+
+    /**
+     * Gibt eine lesbare Beschreibung der lokalen Adresse zurück.
+     *
+     * @return Beschreibung der Adresse, z. B. Port oder Pfad
+     */
+    String getLocalDescription();
+}
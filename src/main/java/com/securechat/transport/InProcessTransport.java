@@ -0,0 +1,340 @@
+/**
+ * Transport innerhalb eines Prozesses, z. B. für Benchmarks oder zwei Sitzungen in einer JVM.
+ * <p>
+ * Die Klasse {@code InProcessTransport} verbindet beide Seiten über je eine {@link Pipe} pro
+ * Richtung, einen Ringpuffer im Heap. Es sind keine Systemaufrufe und keine Kopien in den Kernel
+ * nötig; der Schreiber kopiert direkt in den Ringpuffer, der Leser direkt daraus. Lauschende
+ * Listener werden in einer prozessweiten Registry unter ihrem Port abgelegt.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class InProcessTransport implements Transport {
+    public static final String NAME = "inproc";
+    private static final int PIPE_CAPACITY = 256 * 1024;
+    private static final Map<Integer, InProcessListener> listeners = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Verbindet sich mit dem Listener des Ports in diesem Prozess; der Host wird ignoriert.
+     */
+    @Override
+    public Connection connect(String host, int port, int timeoutMs) throws IOException {
+        InProcessListener listener = listeners.get(port);
+        if (listener == null) {
+            throw new ConnectException("Kein prozessinterner Listener auf Port " + port);
+        }
+        Pipe toServer = new Pipe(PIPE_CAPACITY);
+        Pipe toClient = new Pipe(PIPE_CAPACITY);
+        PipeConnection client = new PipeConnection(toClient, toServer, "inproc:" + port);
+        listener.offer(new PipeConnection(toServer, toClient, "inproc:" + port + "/client"));
+        return client;
+    }
+
+    @Override
+    public ConnectionListener listen(int port) throws IOException {
+        InProcessListener listener = new InProcessListener(port);
+        if (listeners.putIfAbsent(port, listener) != null) {
+            throw new BindException("Prozessinterner Port " + port + " bereits belegt");
+        }
+        return listener;
+    }
+
+    /**
+     * Listener in der prozessweiten Registry.
+     */
+    private static final class InProcessListener implements ConnectionListener {
+        private final int port;
+        private final BlockingQueue<PipeConnection> pending = new LinkedBlockingQueue<>();
+        private final PipeConnection closedMarker = new PipeConnection(null, null, null);
+        private volatile boolean closed;
+
+        private InProcessListener(int port) {
+            this.port = port;
+        }
+
+        private void offer(PipeConnection connection) throws IOException {
+            if (closed) {
+                throw new ConnectException("Verbindung abgelehnt");
+            }
+            pending.add(connection);
+        }
+
+        @Override
+        public Connection accept() throws IOException {
+            PipeConnection connection;
+            try {
+                connection = closed ? closedMarker : pending.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Unterbrochen");
+            }
+            if (connection == closedMarker) {
+                pending.add(closedMarker);
+                throw new SocketException("Listener geschlossen");
+            }
+            return connection;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public String getLocalDescription() {
+            return "prozessinterner Port " + port;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            listeners.remove(port, this);
+            PipeConnection connection;
+            while ((connection = pending.poll()) != null) {
+                connection.close();
+            }
+            pending.add(closedMarker);
+        }
+    }
+
+    /**
+     * Verbindung aus einer lesenden und einer schreibenden {@link Pipe}.
+     */
+    private static final class PipeConnection implements Connection {
+        private final Pipe inbound;
+        private final Pipe outbound;
+        private final String description;
+        private final InputStream in;
+        private final OutputStream out;
+        private volatile int readTimeout;
+        private volatile boolean closed;
+
+        private PipeConnection(Pipe inbound, Pipe outbound, String description) {
+            this.inbound = inbound;
+            this.outbound = outbound;
+            this.description = description;
+            this.in = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return inbound.read(b, off, len, readTimeout);
+                }
+            };
+            this.out = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    outbound.write(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public String getRemoteDescription() {
+            return description;
+        }
+
+        @Override
+        public void setReadTimeout(int timeoutMs) {
+            readTimeout = timeoutMs;
+        }
+
+        @Override
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            if (inbound != null) {
+                inbound.closeReader();
+                outbound.closeWriter();
+            }
+        }
+    }
+
+    /**
+     * Einseitige Pipe mit Ringpuffer. Nach {@link #closeWriter()} liest der Leser die restlichen
+     * Bytes und danach das Stromende; nach {@link #closeReader()} schlagen weitere Schreibvorgänge
+     * fehl und ein blockierter Leser bricht ab.
+     */
+    static final class Pipe {
+        private final byte[] buffer;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private int readIndex;
+        private int count;
+        private boolean writerClosed;
+        private boolean readerClosed;
+
+        Pipe(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        /**
+         * Liest mindestens ein Byte, sobald verfügbar.
+         *
+         * @param b         Zielpuffer
+         * @param off       Startposition im Zielpuffer
+         * @param len       maximale Anzahl Bytes
+         * @param timeoutMs maximale Wartezeit in Millisekunden, {@code 0} für unbegrenzt
+         * @return Anzahl gelesener Bytes oder {@code -1} am Stromende
+         * @throws IOException bei Zeitüberschreitung, Unterbrechung oder geschlossener Leseseite
+         */
+        int read(byte[] b, int off, int len, int timeoutMs) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+                while (count == 0) {
+                    if (readerClosed) {
+                        throw new SocketException("Socket closed");
+                    }
+                    if (writerClosed) {
+                        return -1;
+                    }
+                    if (timeoutMs > 0) {
+                        if (remaining <= 0) {
+                            throw new SocketTimeoutException("Read timed out");
+                        }
+                        remaining = notEmpty.awaitNanos(remaining);
+                    } else {
+                        notEmpty.await();
+                    }
+                }
+                if (readerClosed) {
+                    throw new SocketException("Socket closed");
+                }
+                int n = Math.min(len, count);
+                int first = Math.min(n, buffer.length - readIndex);
+                System.arraycopy(buffer, readIndex, b, off, first);
+                System.arraycopy(buffer, 0, b, off + first, n - first);
+                readIndex = (readIndex + n) % buffer.length;
+                count -= n;
+                notFull.signal();
+                return n;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Unterbrochen");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Schreibt alle Bytes und wartet dabei, solange der Ringpuffer voll ist.
+         *
+         * @param b   Quellpuffer
+         * @param off Startposition im Quellpuffer
+         * @param len Anzahl Bytes
+         * @throws IOException wenn eine Seite geschlossen wurde oder der Thread unterbrochen wurde
+         */
+        void write(byte[] b, int off, int len) throws IOException {
+            lock.lock();
+            try {
+                while (len > 0) {
+                    while (count == buffer.length && !readerClosed && !writerClosed) {
+                        notFull.await();
+                    }
+                    if (readerClosed || writerClosed) {
+                        throw new SocketException("Broken pipe");
+                    }
+                    int writeIndex = (readIndex + count) % buffer.length;
+                    int n = Math.min(len, Math.min(buffer.length - count, buffer.length - writeIndex));
+                    System.arraycopy(b, off, buffer, writeIndex, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                    notEmpty.signal();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Unterbrochen");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void closeWriter() {
+            lock.lock();
+            try {
+                writerClosed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void closeReader() {
+            lock.lock();
+            try {
+                readerClosed = true;
+                count = 0;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Lokaler UDP-Proxy, der eine verlustbehaftete Verbindung nachbildet.
+ * <p>
+ * Die Klasse {@code LossyLinkSimulator} nimmt Datagramme auf einem Port entgegen und leitet sie an
+ * ein Ziel weiter; die Antworten gehen über einen eigenen Socket je Client zurück. In beide
+ * Richtungen wird jedes Datagramm mit der eingestellten Wahrscheinlichkeit verworfen und sonst um
+ * eine feste Verzögerung plus gleichverteilten Jitter verzögert, wodurch auch Umsortierungen
+ * entstehen. So lässt sich der {@link UdpTransport} ohne Administratorrechte (etwa für
+ * {@code tc netem}) unter Verlust testen, z. B. zwischen zwei SecureChat-Instanzen auf einem Rechner.
+ * <p>
+ * Aufruf: {@code LossyLinkSimulator <port> <zielhost> <zielport> [verlust_prozent] [verzögerung_ms] [jitter_ms]}
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LossyLinkSimulator implements Closeable {
+    private final DatagramChannel front;
+    private final InetSocketAddress target;
+    private final double loss;
+    private final long delayNanos;
+    private final long jitterNanos;
+    private final Random random;
+    private final Selector selector;
+    private final Map<SocketAddress, DatagramChannel> upstreams = new HashMap<>();
+    private final PriorityQueue<Scheduled> scheduled = new PriorityQueue<>();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Verzögertes Datagramm.
+     */
+    private record Scheduled(long due, DatagramChannel via, SocketAddress to, ByteBuffer data) implements Comparable<Scheduled> {
+        @Override
+        public int compareTo(Scheduled other) {
+            return Long.compare(due, other.due);
+        }
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert und den Proxy startet.
+     *
+     * @param port     lokaler Port, an den sich die Clients wenden
+     * @param target   Adresse des eigentlichen Servers
+     * @param loss     Verlustwahrscheinlichkeit je Datagramm zwischen {@code 0} und {@code 1}
+     * @param delayMs  feste Verzögerung je Richtung in Millisekunden
+     * @param jitterMs maximaler zusätzlicher, gleichverteilter Jitter in Millisekunden
+     * @param seed     Startwert des Zufallsgenerators für reproduzierbare Läufe
+     * @throws IOException wenn der Port nicht gebunden werden kann
+     */
+    public LossyLinkSimulator(int port, InetSocketAddress target, double loss, long delayMs, long jitterMs, long seed) throws IOException {
+        this.target = target;
+        this.loss = loss;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMs);
+        this.jitterNanos = TimeUnit.MILLISECONDS.toNanos(jitterMs);
+        this.random = new Random(seed);
+        this.selector = Selector.open();
+        this.front = DatagramChannel.open();
+        front.bind(new InetSocketAddress(port));
+        front.configureBlocking(false);
+        front.register(selector, SelectionKey.OP_READ);
+        this.thread = new Thread(this::run, "LinkSimulator-Thread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Startet den Proxy, bis der Prozess beendet wird.
+     *
+     * @param args Port, Zielhost, Zielport, optional Verlust in Prozent, Verzögerung und Jitter in ms
+     * @throws Exception bei Fehlern beim Binden
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Aufruf: LossyLinkSimulator <port> <zielhost> <zielport> [verlust_prozent] [verzögerung_ms] [jitter_ms]");
+            System.exit(2);
+        }
+        double loss = args.length > 3 ? Double.parseDouble(args[3]) / 100 : 0.02;
+        long delay = args.length > 4 ? Long.parseLong(args[4]) : 20;
+        long jitter = args.length > 5 ? Long.parseLong(args[5]) : 5;
+        try (LossyLinkSimulator simulator = new LossyLinkSimulator(Integer.parseInt(args[0]),
+                new InetSocketAddress(args[1], Integer.parseInt(args[2])), loss, delay, jitter, System.nanoTime())) {
+            System.out.printf("Proxy %s -> %s, Verlust %.1f %%, Verzögerung %d ms, Jitter %d ms%n",
+                    args[0], simulator.target, loss * 100, delay, jitter);
+            while (true) {
+                Thread.sleep(10_000);
+                System.out.printf("weitergeleitet %d, verworfen %d%n", simulator.getForwarded(), simulator.getDropped());
+            }
+        }
+    }
+
+    /**
+     * Gibt die Anzahl weitergeleiteter Datagramme zurück.
+     *
+     * @return weitergeleitete Datagramme
+     */
+    public long getForwarded() {
+        return forwarded.get();
+    }
+
+    /**
+     * Gibt die Anzahl verworfener Datagramme zurück.
+     *
+     * @return verworfene Datagramme
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ereignisschleife: Datagramme empfangen, verwerfen oder einplanen und fällige senden.
+     */
+    private void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try {
+            while (!closed) {
+                long now = System.nanoTime();
+                Scheduled next;
+                while ((next = scheduled.peek()) != null && next.due() - now <= 0) {
+                    scheduled.poll();
+                    next.via().send(next.data(), next.to());
+                }
+                long waitMs = next == null ? 100 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.due() - now));
+                selector.select(waitMs);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    SocketAddress client = (SocketAddress) key.attachment();
+                    SocketAddress from;
+                    while ((from = channel.receive(buffer)) != null) {
+                        buffer.flip();
+                        if (client == null) {
+                            schedule(upstream(from), target, buffer);
+                        } else {
+                            schedule(front, client, buffer);
+                        }
+                        buffer.clear();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Simulator beendet: " + e.getMessage());
+        } finally {
+            try {
+                selector.close();
+                front.close();
+                for (DatagramChannel upstream : upstreams.values()) {
+                    upstream.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private DatagramChannel upstream(SocketAddress client) throws IOException {
+        DatagramChannel upstream = upstreams.get(client);
+        if (upstream == null) {
+            upstream = DatagramChannel.open();
+            upstream.bind(null);
+            upstream.configureBlocking(false);
+            upstream.register(selector, SelectionKey.OP_READ, client);
+            upstreams.put(client, upstream);
+        }
+        return upstream;
+    }
+
+    private void schedule(DatagramChannel via, SocketAddress to, ByteBuffer data) {
+        if (random.nextDouble() < loss) {
+            dropped.incrementAndGet();
+            return;
+        }
+        forwarded.incrementAndGet();
+        long jitter = jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0;
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining()).put(data).flip();
+        scheduled.add(new Scheduled(System.nanoTime() + delayNanos + jitter, via, to, copy));
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Single-Producer/Single-Consumer-Ringpuffer in einem gemeinsam genutzten Speicherbereich.
+ * <p>
+ * Die Klasse {@code SharedMemoryRing} legt in einem (typischerweise per {@code mmap} zwischen zwei
+ * Prozessen geteilten) Direct-Buffer einen Kopf mit Schreib- und Leseindex und dahinter die Daten
+ * ab. Beide Indizes laufen monoton hoch und werden nur von ihrer eigenen Seite geschrieben; der
+ * Schreiber veröffentlicht neue Bytes mit einem Release-Store des Schreibindex, der Leser gibt
+ * Platz mit einem Release-Store des Leseindex frei. Damit kommt der Ring ohne Sperren und ohne
+ * Systemaufrufe aus. Die Indizes liegen auf getrennten Cache-Lines, und jede Seite merkt sich den
+ * zuletzt gelesenen Index der Gegenseite, um die fremde Cache-Line nur bei Bedarf zu laden.
+ * <p>
+ * Layout ab {@code base}: Schreibindex (8 Byte, Offset 0), Leseindex (8 Byte, Offset 128),
+ * Daten ab Offset {@value #HEADER_SIZE}. Die Kapazität muss eine Zweierpotenz sein.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class SharedMemoryRing {
+    public static final int HEADER_SIZE = 256;
+    private static final int WRITE_INDEX = 0;
+    private static final int READ_INDEX = 128;
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer buffer;
+    private final int base;
+    private final int data;
+    private final int capacity;
+    private final int mask;
+    private long writeIndex;
+    private long cachedReadIndex;
+    private long readIndex;
+    private long cachedWriteIndex;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert. Ein neu angelegter (mit Nullen gefüllter)
+     * Bereich ist ein leerer Ring.
+     *
+     * @param buffer   gemeinsamer Direct-Buffer
+     * @param base     Offset des Rings im Buffer, durch 8 teilbar
+     * @param capacity Datenkapazität in Byte, Zweierpotenz
+     */
+    public SharedMemoryRing(ByteBuffer buffer, int base, int capacity) {
+        if (!buffer.isDirect() || (base & 7) != 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ungültiges Ring-Layout");
+        }
+        this.buffer = buffer;
+        this.base = base;
+        this.data = base + HEADER_SIZE;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.writeIndex = (long) LONG.getAcquire(buffer, base + WRITE_INDEX);
+        this.readIndex = (long) LONG.getAcquire(buffer, base + READ_INDEX);
+        this.cachedReadIndex = readIndex;
+        this.cachedWriteIndex = writeIndex;
+    }
+
+    /**
+     * Gibt den Platzbedarf eines Rings samt Kopf zurück.
+     *
+     * @param capacity Datenkapazität in Byte
+     * @return Platzbedarf in Byte
+     */
+    public static int size(int capacity) {
+        return HEADER_SIZE + capacity;
+    }
+
+    /**
+     * Schreibt so viele Bytes, wie Platz ist, ohne zu warten. Darf nur vom Schreiber aufgerufen werden.
+     *
+     * @param b   Quellpuffer
+     * @param off Startposition im Quellpuffer
+     * @param len maximale Anzahl Bytes
+     * @return Anzahl geschriebener Bytes, {@code 0} wenn der Ring voll ist
+     */
+    public int offer(byte[] b, int off, int len) {
+        long free = capacity - (writeIndex - cachedReadIndex);
+        if (free < len) {
+            cachedReadIndex = (long) LONG.getAcquire(buffer, base + READ_INDEX);
+            free = capacity - (writeIndex - cachedReadIndex);
+        }
+        int n = (int) Math.min(len, free);
+        if (n == 0) {
+            return 0;
+        }
+        int position = (int) (writeIndex & mask);
+        int first = Math.min(n, capacity - position);
+        buffer.put(data + position, b, off, first);
+        buffer.put(data, b, off + first, n - first);
+        writeIndex += n;
+        LONG.setRelease(buffer, base + WRITE_INDEX, writeIndex);
+        return n;
+    }
+
+    /**
+     * Liest die verfügbaren Bytes, ohne zu warten. Darf nur vom Leser aufgerufen werden.
+     *
+     * @param b   Zielpuffer
+     * @param off Startposition im Zielpuffer
+     * @param len maximale Anzahl Bytes
+     * @return Anzahl gelesener Bytes, {@code 0} wenn der Ring leer ist
+     */
+    public int poll(byte[] b, int off, int len) {
+        long available = cachedWriteIndex - readIndex;
+        if (available == 0) {
+            cachedWriteIndex = (long) LONG.getAcquire(buffer, base + WRITE_INDEX);
+            available = cachedWriteIndex - readIndex;
+        }
+        int n = (int) Math.min(len, available);
+        if (n == 0) {
+            return 0;
+        }
+        int position = (int) (readIndex & mask);
+        int first = Math.min(n, capacity - position);
+        buffer.get(data + position, b, off, first);
+        buffer.get(data, b, off + first, n - first);
+        readIndex += n;
+        LONG.setRelease(buffer, base + READ_INDEX, readIndex);
+        return n;
+    }
+
+    /**
+     * Gibt die Datenkapazität zurück.
+     *
+     * @return Kapazität in Byte
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
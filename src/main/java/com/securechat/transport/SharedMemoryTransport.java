@@ -0,0 +1,449 @@
+/**
+ * Transport über gemeinsamen Speicher für Teilnehmer auf demselben Rechner.
+ * <p>
+ * Die Klasse {@code SharedMemoryTransport} tauscht die Bytes zweier Prozesse über eine per
+ * {@link FileChannel#map} eingeblendete Datei aus, die je Richtung einen {@link SharedMemoryRing}
+ * enthält. Auf dem Datenpfad gibt es weder Systemaufrufe noch Kopien in den Kernel; wartende Leser
+ * und Schreiber drehen zunächst aktiv ({@link Thread#onSpinWait()}), geben dann den Prozessor ab
+ * und parken schliesslich mit wachsender Dauer bis {@value #MAX_PARK_NANOS} ns. Solange Nachrichten
+ * in kurzen Abständen eintreffen, liegt die Latenz damit im Bereich unter einer Mikrosekunde; die
+ * erste Nachricht nach einer Pause kann bis zur maximalen Parkdauer verzögert werden. Die Anzahl
+ * der Spin-Runden wird mit {@code securechat.shm.spin} eingestellt und ist auf Rechnern mit nur
+ * einem Prozessor standardmässig {@code 0}, da Spinnen dort nur der Gegenseite Zeit stiehlt.
+ * <p>
+ * Der Verbindungsaufbau läuft über einen Unix Domain Socket {@code securechat-<port>.shm}: Der
+ * Client legt die Ring-Datei (nur für den Eigentümer lesbar) an, übergibt ihren Pfad und löscht
+ * sie, sobald der Listener sie eingeblendet hat. Der Socket bleibt offen und dient nur noch der
+ * Lebenserkennung: Endet er, weil die Gegenseite die Verbindung schliesst oder der Prozess endet,
+ * liefert der Leser nach den restlichen Bytes das Stromende. Das Verzeichnis ist
+ * {@code securechat.transport.dir}, sonst {@code /dev/shm} bzw. das temporäre Verzeichnis.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+
+public class SharedMemoryTransport implements Transport {
+    public static final String NAME = "shm";
+    public static final int RING_CAPACITY = 1 << 20;
+
+    private static final byte[] MAGIC = "SCSHM1".getBytes(StandardCharsets.US_ASCII);
+    private static final int FILE_HEADER_SIZE = 128;
+    private static final int MAX_PATH_LENGTH = 4096;
+    private static final int RENDEZVOUS_TIMEOUT = 5000;
+    private static final int YIELD_ROUNDS = 64;
+    private static final int PARK_ROUNDS = 10;
+    private static final long MIN_PARK_NANOS = 1_000;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+    private static final int SPIN_ROUNDS = Integer.getInteger("securechat.shm.spin",
+            Runtime.getRuntime().availableProcessors() > 1 ? 20_000 : 0);
+
+    private final Path directory;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert. Das Verzeichnis wird der System-Property
+     * {@code securechat.transport.dir} entnommen, sonst {@code /dev/shm}, falls vorhanden.
+     */
+    public SharedMemoryTransport() {
+        this(defaultDirectory());
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param directory Verzeichnis für Rendezvous-Socket und Ring-Dateien
+     */
+    public SharedMemoryTransport(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Legt die Ring-Datei an und übergibt sie dem Listener des Ports; der Host wird ignoriert.
+     */
+    @Override
+    public Connection connect(String host, int port, int timeoutMs) throws IOException {
+        Path file = directory.resolve("securechat-" + port + "-" + UUID.randomUUID() + ".ring");
+        SocketChannel control = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            MappedByteBuffer mapped = createRingFile(file);
+            control.connect(UnixDomainSocketAddress.of(controlPath(port)));
+            byte[] path = file.toString().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer request = ByteBuffer.allocate(4 + path.length).putInt(path.length).put(path).flip();
+            while (request.hasRemaining()) {
+                control.write(request);
+            }
+            if (readFully(control, ByteBuffer.allocate(1), timeoutMs).get(0) != 1) {
+                throw new SocketException("Ring-Datei abgelehnt");
+            }
+            return new ShmConnection(control, mapped, 1, 0, file.getFileName().toString());
+        } catch (IOException e) {
+            control.close();
+            throw e;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public ConnectionListener listen(int port) throws IOException {
+        Path path = controlPath(port);
+        Files.deleteIfExists(path);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(path));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        return new ConnectionListener() {
+            @Override
+            public Connection accept() throws IOException {
+                SocketChannel control;
+                try {
+                    control = server.accept();
+                } catch (ClosedChannelException e) {
+                    throw new SocketException("Listener geschlossen");
+                }
+                try {
+                    int length = readFully(control, ByteBuffer.allocate(4), RENDEZVOUS_TIMEOUT).getInt(0);
+                    if (length <= 0 || length > MAX_PATH_LENGTH) {
+                        throw new SocketException("Ungültiger Pfad der Ring-Datei");
+                    }
+                    Path file = Path.of(new String(readFully(control, ByteBuffer.allocate(length), RENDEZVOUS_TIMEOUT).array(), StandardCharsets.UTF_8));
+                    if (!directory.equals(file.getParent())) {
+                        throw new SocketException("Ring-Datei ausserhalb des Transportverzeichnisses");
+                    }
+                    MappedByteBuffer mapped = openRingFile(file);
+                    control.write(ByteBuffer.wrap(new byte[] {1}));
+                    return new ShmConnection(control, mapped, 0, 1, file.getFileName().toString());
+                } catch (IOException e) {
+                    control.close();
+                    throw e;
+                }
+            }
+
+            @Override
+            public boolean isClosed() {
+                return !server.isOpen();
+            }
+
+            @Override
+            public String getLocalDescription() {
+                return "Shared Memory " + path;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    server.close();
+                } finally {
+                    Files.deleteIfExists(path);
+                }
+            }
+        };
+    }
+
+    /**
+     * Bildet einen Port auf den Pfad des Rendezvous-Sockets ab.
+     *
+     * @param port Port
+     * @return Pfad des Sockets
+     */
+    public Path controlPath(int port) {
+        return directory.resolve("securechat-" + port + ".shm");
+    }
+
+    private static Path defaultDirectory() {
+        String configured = System.getProperty("securechat.transport.dir");
+        if (configured != null) {
+            return Path.of(configured);
+        }
+        Path shm = Path.of("/dev/shm");
+        return Files.isDirectory(shm) && Files.isWritable(shm) ? shm : Path.of(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * Legt eine Ring-Datei mit zwei leeren Ringen an und blendet sie ein.
+     *
+     * @param file Pfad der Datei
+     * @return eingeblendeter Bereich
+     * @throws IOException wenn die Datei nicht angelegt werden kann
+     */
+    private static MappedByteBuffer createRingFile(Path file) throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+        }
+        MappedByteBuffer mapped = map(file);
+        mapped.put(0, MAGIC);
+        mapped.putInt(MAGIC.length, RING_CAPACITY);
+        return mapped;
+    }
+
+    /**
+     * Blendet eine vom Client angelegte Ring-Datei ein und prüft den Kopf.
+     *
+     * @param file Pfad der Datei
+     * @return eingeblendeter Bereich
+     * @throws IOException wenn die Datei fehlt oder kein gültiger Ring ist
+     */
+    private static MappedByteBuffer openRingFile(Path file) throws IOException {
+        if (Files.size(file) != fileSize()) {
+            throw new SocketException("Ungültige Ring-Datei");
+        }
+        MappedByteBuffer mapped = map(file);
+        byte[] magic = new byte[MAGIC.length];
+        mapped.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC) || mapped.getInt(MAGIC.length) != RING_CAPACITY) {
+            throw new SocketException("Ungültige Ring-Datei");
+        }
+        return mapped;
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(fileSize());
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize());
+        }
+    }
+
+    private static int fileSize() {
+        return FILE_HEADER_SIZE + 2 * SharedMemoryRing.size(RING_CAPACITY);
+    }
+
+    private static int ringBase(int ring) {
+        return FILE_HEADER_SIZE + ring * SharedMemoryRing.size(RING_CAPACITY);
+    }
+
+    /**
+     * Liest während des Verbindungsaufbaus eine feste Anzahl Bytes vom Rendezvous-Socket.
+     *
+     * @param channel   Rendezvous-Socket im blockierenden Modus
+     * @param target    Zielpuffer, wird vollständig gefüllt
+     * @param timeoutMs maximale Wartezeit in Millisekunden
+     * @return der gefüllte Zielpuffer
+     * @throws IOException bei Zeitüberschreitung oder vorzeitigem Verbindungsende
+     */
+    private static ByteBuffer readFully(SocketChannel channel, ByteBuffer target, int timeoutMs) throws IOException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000L;
+        channel.configureBlocking(false);
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_READ);
+            while (true) {
+                if (channel.read(target) < 0) {
+                    throw new SocketException("Verbindung beim Aufbau beendet");
+                }
+                if (!target.hasRemaining()) {
+                    break;
+                }
+                long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+                if (remainingMs <= 0) {
+                    throw new SocketTimeoutException("Zeitüberschreitung beim Verbindungsaufbau");
+                }
+                selector.select(remainingMs);
+                selector.selectedKeys().clear();
+            }
+        }
+        channel.configureBlocking(true);
+        return target;
+    }
+
+    /**
+     * Wartet eine Runde gemäss der Strategie Spinnen, Abgeben, Parken.
+     *
+     * @param round bisherige Anzahl erfolgloser Runden
+     * @throws InterruptedIOException wenn der Thread unterbrochen wurde
+     */
+    private static void idle(int round) throws InterruptedIOException {
+        if (round < SPIN_ROUNDS) {
+            Thread.onSpinWait();
+        } else if (round < SPIN_ROUNDS + YIELD_ROUNDS) {
+            Thread.yield();
+        } else {
+            int exponent = Math.min(PARK_ROUNDS, round - SPIN_ROUNDS - YIELD_ROUNDS);
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, MIN_PARK_NANOS << exponent));
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Unterbrochen");
+            }
+        }
+    }
+
+    private static int nextRound(int round) {
+        return Math.min(round + 1, SPIN_ROUNDS + YIELD_ROUNDS + PARK_ROUNDS);
+    }
+
+    /**
+     * Verbindung über zwei Ringe einer gemeinsamen Datei und einen Socket zur Lebenserkennung.
+     */
+    private static final class ShmConnection implements Connection {
+        private final SocketChannel control;
+        private final SharedMemoryRing inbound;
+        private final SharedMemoryRing outbound;
+        private final String description;
+        private final InputStream in = new RingInputStream();
+        private final OutputStream out = new RingOutputStream();
+        private volatile int readTimeout;
+        private volatile boolean closed;
+        private volatile boolean peerGone;
+
+        private ShmConnection(SocketChannel control, MappedByteBuffer mapped, int inboundRing, int outboundRing, String description) {
+            this.control = control;
+            this.inbound = new SharedMemoryRing(mapped, ringBase(inboundRing), RING_CAPACITY);
+            this.outbound = new SharedMemoryRing(mapped, ringBase(outboundRing), RING_CAPACITY);
+            this.description = description;
+            Thread watcher = new Thread(this::watchPeer, "ShmWatch-Thread");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+
+        /**
+         * Blockiert auf dem Rendezvous-Socket, bis die Gegenseite ihn schliesst.
+         */
+        private void watchPeer() {
+            ByteBuffer scratch = ByteBuffer.allocate(1);
+            try {
+                while (control.read(scratch) >= 0) {
+                    scratch.clear();
+                }
+            } catch (IOException ignored) {
+            }
+            peerGone = true;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public String getRemoteDescription() {
+            return "shm:" + description;
+        }
+
+        @Override
+        public void setReadTimeout(int timeoutMs) {
+            readTimeout = timeoutMs;
+        }
+
+        @Override
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            control.close();
+        }
+
+        private final class RingInputStream extends InputStream {
+            private final byte[] single = new byte[1];
+
+            @Override
+            public int read() throws IOException {
+                return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public synchronized int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int timeout = readTimeout;
+                long deadline = timeout > 0 ? System.nanoTime() + timeout * 1_000_000L : 0;
+                for (int round = 0; ; round = nextRound(round)) {
+                    if (closed) {
+                        throw new SocketException("Socket closed");
+                    }
+                    boolean gone = peerGone;
+                    int n = inbound.poll(b, off, len);
+                    if (n > 0) {
+                        return n;
+                    }
+                    if (gone) {
+                        return -1;
+                    }
+                    if (timeout > 0 && System.nanoTime() - deadline >= 0) {
+                        throw new SocketTimeoutException("Read timed out");
+                    }
+                    idle(round);
+                }
+            }
+        }
+
+        private final class RingOutputStream extends OutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) throws IOException {
+                int round = 0;
+                while (len > 0) {
+                    if (closed || peerGone) {
+                        throw new SocketException(closed ? "Socket closed" : "Broken pipe");
+                    }
+                    int n = outbound.offer(b, off, len);
+                    if (n > 0) {
+                        off += n;
+                        len -= n;
+                        round = 0;
+                    } else {
+                        idle(round);
+                        round = nextRound(round);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Transport über TCP-Sockets.
+ * <p>
+ * Die Klasse {@code TcpTransport} ist der Standard-Transport und verhält sich wie die bisherige
+ * direkte Verwendung von {@link Socket} und {@link ServerSocket}. Der Client-Modus des
+ * {@link com.securechat.network.ConnectionManager} baut TCP-Verbindungen weiterhin über den
+ * {@link com.securechat.network.ConnectionRacer} auf und hüllt den gewonnenen Socket mit
+ * {@link #wrap(Socket)} ein.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+public class TcpTransport implements Transport {
+    public static final String NAME = "tcp";
+    /**
+     * Länge der Annahme-Warteschlange des Betriebssystems; grösser als der Standardwert 50, damit
+     * eine Flut von Verbindungsversuchen legitime Verbindungen nicht schon vor dem
+     * {@link com.securechat.network.HandshakeAcceptor} verwirft.
+     */
+    private static final int ACCEPT_BACKLOG = 512;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Connection connect(String host, int port, int timeoutMs) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return wrap(socket);
+    }
+
+    @Override
+    public ConnectionListener listen(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(port, ACCEPT_BACKLOG);
+        return new ConnectionListener() {
+            @Override
+            public Connection accept() throws IOException {
+                return wrap(serverSocket.accept());
+            }
+
+            @Override
+            public boolean isClosed() {
+                return serverSocket.isClosed();
+            }
+
+            @Override
+            public String getLocalDescription() {
+                return "TCP-Port " + serverSocket.getLocalPort();
+            }
+
+            @Override
+            public void close() throws IOException {
+                serverSocket.close();
+            }
+        };
+    }
+
+    /**
+     * Hüllt einen bereits verbundenen Socket in eine {@link Connection} ein.
+     *
+     * @param socket verbundener Socket
+     * @return Verbindung über den Socket
+     */
+    public static Connection wrap(Socket socket) {
+        return new Connection() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return socket.getOutputStream();
+            }
+
+            @Override
+            public InetAddress getInetAddress() {
+                return socket.getInetAddress();
+            }
+
+            @Override
+            public String getRemoteDescription() {
+                return socket.getInetAddress().getHostAddress();
+            }
+
+            @Override
+            public void setReadTimeout(int timeoutMs) throws IOException {
+                socket.setSoTimeout(timeoutMs);
+            }
+
+            @Override
+            public int getReadTimeout() throws IOException {
+                return socket.getSoTimeout();
+            }
+
+            @Override
+            public boolean isClosed() {
+                return socket.isClosed();
+            }
+
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Schnittstelle für die Transportschicht unterhalb der Sitzung.
+ * <p>
+ * Ein {@code Transport} baut {@link Connection}s auf und nimmt sie über einen
+ * {@link ConnectionListener} an. Adressiert wird einheitlich über Host und Port; lokale Transporte
+ * leiten daraus einen eigenen Namen ab (Socket-Datei bzw. Eintrag in der prozessinternen Registry)
+ * und ignorieren den Host. Welcher Transport verwendet wird, bestimmt {@link Transports}.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.IOException;
+
+public interface Transport {
+
+    /**
+     * Gibt den Namen des Transports zurück, wie er in {@code securechat.transport} angegeben wird.
+     *
+     * @return Name des Transports
+     */
+    String getName();
+
+    /**
+     * Baut eine Verbindung auf.
+     *
+     * @param host      Hostname oder IP-Adresse der Gegenseite
+     * @param port      Port der Gegenseite
+     * @param timeoutMs maximale Wartezeit für den Verbindungsaufbau in Millisekunden
+     * @return aufgebaute Verbindung
+     * @throws IOException wenn die Gegenseite nicht erreichbar ist
+     */
+    Connection connect(String host, int port, int timeoutMs) throws IOException;
+
+    /**
+     * Beginnt, auf eingehende Verbindungen zu lauschen.
+     *
+     * @param port lokaler Port
+     * @return gebundener Listener
+     * @throws IOException wenn die Adresse nicht gebunden werden kann
+     */
+    ConnectionListener listen(int port) throws IOException;
+}
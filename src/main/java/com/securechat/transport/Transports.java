@@ -0,0 +1,51 @@
+/**
+ * Auswahl des {@link Transport}s für neue Sitzungen.
+ * <p>
+ * Die Klasse {@code Transports} liest die System-Property {@code securechat.transport}
+ * ({@code tcp}, {@code udp}, {@code unix}, {@code shm} oder {@code inproc}, Standard {@code tcp}). Da ein lokaler Transport
+ * nur Teilnehmer auf demselben Rechner bzw. in derselben JVM erreicht, müssen beide Seiten
+ * denselben Transport verwenden.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+public final class Transports {
+
+    private Transports() {
+    }
+
+    /**
+     * Gibt den Transport gemäß der System-Property {@code securechat.transport} zurück.
+     *
+     * @return konfigurierter Transport
+     * @throws IllegalArgumentException bei einem unbekannten Namen
+     */
+    public static Transport fromSystemProperty() {
+        return byName(System.getProperty("securechat.transport", TcpTransport.NAME));
+    }
+
+    /**
+     * Gibt den Transport mit dem angegebenen Namen zurück.
+     *
+     * @param name {@code tcp}, {@code udp}, {@code unix}, {@code shm} oder {@code inproc}
+     * @return Transport
+     * @throws IllegalArgumentException bei einem unbekannten Namen
+     */
+    public static Transport byName(String name) {
+        switch (name) {
+            case TcpTransport.NAME:
+                return new TcpTransport();
+            case UdpTransport.NAME:
+                return new UdpTransport();
+            case UnixSocketTransport.NAME:
+                return new UnixSocketTransport();
+            case SharedMemoryTransport.NAME:
+                return new SharedMemoryTransport();
+            case InProcessTransport.NAME:
+                return new InProcessTransport();
+            default:
+                throw new IllegalArgumentException("Unbekannter Transport: " + name);
+        }
+    }
+}
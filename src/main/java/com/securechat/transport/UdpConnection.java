@@ -0,0 +1,931 @@
+/**
+ * Zuverlässige Verbindung über UDP mit selektiven Bestätigungen.
+ * <p>
+ * Die Klasse {@code UdpConnection} zerlegt jede geschriebene Zeile (bei SecureChat ein Frame) in
+ * Datagramme mit fortlaufender Paketnummer und setzt sie beim Empfänger wieder zusammen. Der
+ * Empfänger bestätigt kumulativ und mit bis zu {@value #MAX_SACK_BLOCKS} SACK-Blöcken; der Sender
+ * erkennt Verluste zeitbasiert (ein später gesendetes Paket ist angekommen, das fehlende nicht)
+ * und per Retransmission-Timeout nach RFC 6298 (mindestens {@value #MIN_RTO_MS} ms). Die
+ * Staukontrolle folgt NewReno: Slow Start, additive Erhöhung und Halbierung des Fensters einmal
+ * pro Verlustereignis; zusätzlich begrenzt das vom Empfänger gemeldete Fenster den Sender. Eine
+ * Nachricht darf mehr Pakete umfassen als das Fenster: Für die älteste unvollständige Nachricht
+ * gibt der Empfänger das Fenster bis zu ihrem letzten Paket frei, damit ihre bereits gepufferten
+ * Teile es nicht dauerhaft füllen. Zeilen über {@value #MAX_MESSAGE} Byte werden abgelehnt.
+ * <p>
+ * Anders als bei TCP blockiert ein verlorenes Paket nur seine eigene Nachricht: Ungeordnete
+ * Nachrichten werden ausgeliefert, sobald sie vollständig sind und alle vor ihnen gesendeten
+ * geordneten Nachrichten ausgeliefert wurden. Dazu trägt jede Nachricht eine Schranke, die
+ * Nummer der Nachricht, bis zu der alles ausgeliefert sein muss. Geordnet sind standardmässig
+ * alle Nachrichten und immer unvollständige Zeilen, die mit {@link OutputStream#flush()}
+ * vorzeitig abgeschickt werden; siehe {@link #setOrderedDelivery(boolean)}.
+ * <p>
+ * Der Zustand wird von den Anwendungs-Threads und dem Thread des {@link UdpEndpoint} unter dem
+ * Monitor dieser Instanz geändert; Pakete verschickt ausschliesslich der Endpunkt.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+public class UdpConnection implements Connection {
+    public static final int MAX_DATAGRAM = 1200;
+    public static final int MAX_MESSAGE = 32 * 1024 * 1024;
+
+    static final byte SYN = 1;
+    static final byte SYN_ACK = 2;
+    static final byte DATA = 3;
+    static final byte ACK = 4;
+
+    private static final int FLAG_ORDERED = 1;
+    private static final int FLAG_FIN = 2;
+    private static final int DATA_HEADER = 1 + 4 + 1 + 8 + 8 + 8 + 4 + 4;
+    private static final int MAX_PAYLOAD = MAX_DATAGRAM - DATA_HEADER;
+    private static final int MAX_FRAGMENTS = (MAX_MESSAGE + MAX_PAYLOAD - 1) / MAX_PAYLOAD;
+    private static final int MAX_SACK_BLOCKS = 16;
+    private static final int RECEIVE_WINDOW = 4096;
+    private static final int MAX_SEND_PACKETS = 4096;
+    private static final double INITIAL_CWND = 10;
+    private static final double MIN_CWND = 2;
+    private static final long MIN_RTO_MS = 50;
+    private static final long INITIAL_RTO_MS = 500;
+    private static final long MAX_RTO_MS = 5_000;
+    private static final int MAX_CONSECUTIVE_RTOS = 8;
+    private static final long SYN_INTERVAL_MS = 200;
+    private static final long KEEPALIVE_MS = 2_000;
+    private static final long IDLE_TIMEOUT_MS = 15_000;
+    private static final long LINGER_MS = 3_000;
+
+    private final UdpEndpoint endpoint;
+    private final InetSocketAddress remote;
+    private final int connectionId;
+    private final InputStream in = new UdpInputStream();
+    private final OutputStream out = new UdpOutputStream();
+
+    // Sender
+    private final Deque<Packet> unsent = new ArrayDeque<>();
+    private final Deque<Packet> retransmissions = new ArrayDeque<>();
+    private final NavigableMap<Long, Packet> inflight = new TreeMap<>();
+    private long nextSequence;
+    private long sentBoundary;
+    private boolean cwndLimited;
+    private long nextMessage;
+    private long lastOrderedMessage = -1;
+    private boolean ordered = true;
+    private boolean partialLineSent;
+    private double cwnd = INITIAL_CWND;
+    private double ssthresh = Double.MAX_VALUE;
+    private long recoveryPoint;
+    private long peerLimit = RECEIVE_WINDOW;
+    private long srttNanos;
+    private long rttvarNanos;
+    private long rtoNanos = TimeUnit.MILLISECONDS.toNanos(INITIAL_RTO_MS);
+    private long latestAckedSendNanos;
+    private int consecutiveRtos;
+    private long lastSentNanos;
+    private long retransmittedPackets;
+
+    // Empfänger
+    private final TreeSet<Long> receivedAhead = new TreeSet<>();
+    private final Map<Long, Assembly> assemblies = new TreeMap<>();
+    private final NavigableMap<Long, Assembly> complete = new TreeMap<>();
+    private final TreeSet<Long> deliveredAhead = new TreeSet<>();
+    private final Deque<byte[]> readable = new ArrayDeque<>();
+    private long cumulative;
+    private long deliveredBelow;
+    private int bufferedPackets;
+    private long readableBytes;
+    private int readOffset;
+    private long advertisedLimit = RECEIVE_WINDOW;
+    private boolean ackPending;
+    private boolean endOfStream;
+    private long lastReceivedNanos = System.nanoTime();
+
+    // Verbindung
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private boolean established;
+    private boolean closed;
+    private boolean finished;
+    private IOException failure;
+    private long lastSynNanos;
+    private long closeDeadline;
+    private volatile int readTimeout;
+
+    /**
+     * Zu sendendes bzw. unbestätigtes Datagramm.
+     */
+    private static final class Packet {
+        private final long sequence;
+        private final byte[] datagram;
+        private long sentNanos;
+        private boolean sent;
+        private boolean retransmitted;
+        private boolean sacked;
+        private boolean lost;
+
+        private Packet(long sequence, byte[] datagram) {
+            this.sequence = sequence;
+            this.datagram = datagram;
+        }
+    }
+
+    /**
+     * Teilweise oder vollständig empfangene Nachricht.
+     */
+    private static final class Assembly {
+        private final byte[][] parts;
+        private final int flags;
+        private final long barrier;
+        private final long end;
+        private int received;
+
+        private Assembly(int fragments, int flags, long barrier, long end) {
+            this.parts = new byte[fragments][];
+            this.flags = flags;
+            this.barrier = barrier;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param endpoint     Endpunkt, über den die Datagramme laufen
+     * @param remote       Adresse der Gegenseite
+     * @param connectionId Kennung der Verbindung, vom Client gewählt
+     * @param established  {@code true} auf der Serverseite, die erst nach einem SYN entsteht
+     */
+    UdpConnection(UdpEndpoint endpoint, InetSocketAddress remote, int connectionId, boolean established) {
+        this.endpoint = endpoint;
+        this.remote = remote;
+        this.connectionId = connectionId;
+        this.established = established;
+        this.ackPending = established;
+        this.lastSentNanos = lastReceivedNanos;
+        this.lastSynNanos = lastReceivedNanos - TimeUnit.MILLISECONDS.toNanos(SYN_INTERVAL_MS);
+    }
+
+    InetSocketAddress getRemote() {
+        return remote;
+    }
+
+    int getConnectionId() {
+        return connectionId;
+    }
+
+    /**
+     * Wartet auf die Antwort des Servers auf das SYN.
+     *
+     * @param timeoutMs maximale Wartezeit in Millisekunden
+     * @throws IOException bei Zeitüberschreitung oder Unterbrechung
+     */
+    synchronized void awaitEstablished(int timeoutMs) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs > 0 ? timeoutMs : IDLE_TIMEOUT_MS);
+        while (!established && failure == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                failure = new SocketTimeoutException("connect timed out");
+                finished = true;
+                break;
+            }
+            waitNanos(remaining);
+        }
+        if (!established) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Gibt an, ob die Verbindung abgebaut ist und aus dem Endpunkt entfernt werden kann.
+     *
+     * @return {@code true}, wenn die Verbindung beendet ist
+     */
+    synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Beendet die Verbindung sofort, z. B. wenn der Endpunkt geschlossen wird.
+     *
+     * @param reason Grund für wartende Leser und Schreiber
+     */
+    synchronized void abort(String reason) {
+        if (failure == null) {
+            failure = new SocketException(reason);
+        }
+        finished = true;
+        notifyAll();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return remote.getAddress();
+    }
+
+    @Override
+    public String getRemoteDescription() {
+        return remote.getAddress().getHostAddress() + " (UDP)";
+    }
+
+    @Override
+    public void setReadTimeout(int timeoutMs) {
+        readTimeout = timeoutMs;
+    }
+
+    @Override
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    @Override
+    public synchronized void setOrderedDelivery(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    @Override
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Schliesst die Verbindung. Noch nicht bestätigte Daten und das Stromende werden im
+     * Hintergrund höchstens {@value #LINGER_MS} ms lang weiter zugestellt.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MS);
+            if (established && !finished) {
+                if (line.size() > 0) {
+                    enqueueMessage(line.toByteArray(), FLAG_ORDERED);
+                    line.reset();
+                }
+                enqueueMessage(new byte[0], FLAG_ORDERED | FLAG_FIN);
+            } else {
+                finished = true;
+            }
+            notifyAll();
+        }
+        endpoint.wakeup();
+    }
+
+    /**
+     * Gibt die Anzahl wiederholt gesendeter Pakete zurück.
+     *
+     * @return Anzahl Retransmissionen
+     */
+    public synchronized long getRetransmittedPackets() {
+        return retransmittedPackets;
+    }
+
+    /**
+     * Gibt das aktuelle Staukontrollfenster zurück.
+     *
+     * @return Fenster in Paketen
+     */
+    public synchronized double getCongestionWindow() {
+        return cwnd;
+    }
+
+    /**
+     * Gibt die geglättete Umlaufzeit zurück.
+     *
+     * @return Umlaufzeit in Mikrosekunden, {@code 0} solange noch keine Messung vorliegt
+     */
+    public synchronized long getSmoothedRttMicros() {
+        return srttNanos / 1_000;
+    }
+
+    // ---------------------------------------------------------------- Senden
+
+    /**
+     * Zerlegt eine Nachricht in Pakete und reiht sie zum Senden ein. Aufrufer hält den Monitor.
+     *
+     * @param message Nachricht
+     * @param flags   {@link #FLAG_ORDERED} und/oder {@link #FLAG_FIN}
+     */
+    private void enqueueMessage(byte[] message, int flags) {
+        long messageSequence = nextMessage++;
+        long barrier = (flags & FLAG_ORDERED) != 0 ? messageSequence - 1 : lastOrderedMessage;
+        if ((flags & FLAG_ORDERED) != 0) {
+            lastOrderedMessage = messageSequence;
+        }
+        int fragments = Math.max(1, (message.length + MAX_PAYLOAD - 1) / MAX_PAYLOAD);
+        for (int fragment = 0; fragment < fragments; fragment++) {
+            int offset = fragment * MAX_PAYLOAD;
+            int length = Math.min(MAX_PAYLOAD, message.length - offset);
+            long sequence = nextSequence++;
+            ByteBuffer datagram = ByteBuffer.allocate(DATA_HEADER + length);
+            datagram.put(DATA).putInt(connectionId).put((byte) flags).putLong(sequence).putLong(messageSequence)
+                    .putLong(barrier).putInt(fragment).putInt(fragments).put(message, offset, length);
+            unsent.add(new Packet(sequence, datagram.array()));
+        }
+    }
+
+    /**
+     * Nimmt geschriebene Bytes entgegen und reiht jede vollständige Zeile als Nachricht ein.
+     *
+     * @param b     Quellpuffer
+     * @param off   Startposition
+     * @param len   Anzahl Bytes
+     * @param flush {@code true}, um auch eine unvollständige Zeile abzuschicken
+     * @throws IOException wenn die Verbindung geschlossen oder fehlgeschlagen ist
+     */
+    private synchronized void write(byte[] b, int off, int len, boolean flush) throws IOException {
+        int end = off + len;
+        while (off < end || flush) {
+            checkWritable();
+            while (unsent.size() + inflight.size() >= MAX_SEND_PACKETS) {
+                waitNanos(0);
+                checkWritable();
+            }
+            int newline = -1;
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            if (line.size() + (newline < 0 ? end : newline + 1) - off > MAX_MESSAGE) {
+                line.reset();
+                throw new IOException("Zeile überschreitet die maximale Nachrichtengröße von " + MAX_MESSAGE + " Byte");
+            }
+            if (newline < 0) {
+                line.write(b, off, end - off);
+                off = end;
+                if (flush && line.size() > 0) {
+                    enqueueMessage(line.toByteArray(), FLAG_ORDERED);
+                    line.reset();
+                    partialLineSent = true;
+                }
+                break;
+            }
+            line.write(b, off, newline + 1 - off);
+            off = newline + 1;
+            enqueueMessage(line.toByteArray(), ordered || partialLineSent ? FLAG_ORDERED : 0);
+            line.reset();
+            partialLineSent = false;
+        }
+        endpoint.wakeup();
+    }
+
+    private void checkWritable() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new SocketException("Socket closed");
+        }
+        if (endOfStream) {
+            throw new SocketException("Broken pipe");
+        }
+    }
+
+    // ---------------------------------------------------------------- Empfangen
+
+    /**
+     * Liest ausgelieferte Bytes.
+     *
+     * @param b   Zielpuffer
+     * @param off Startposition
+     * @param len maximale Anzahl Bytes
+     * @return Anzahl gelesener Bytes oder {@code -1} am Stromende
+     * @throws IOException bei Zeitüberschreitung, Fehler oder geschlossener Verbindung
+     */
+    private int read(byte[] b, int off, int len) throws IOException {
+        boolean windowUpdate;
+        int n;
+        synchronized (this) {
+            int timeout = readTimeout;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (readable.isEmpty()) {
+                if (closed) {
+                    throw new SocketException("Socket closed");
+                }
+                if (endOfStream) {
+                    return -1;
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                long remaining = timeout > 0 ? deadline - System.nanoTime() : 0;
+                if (timeout > 0 && remaining <= 0) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                waitNanos(remaining);
+            }
+            byte[] head = readable.peek();
+            n = Math.min(len, head.length - readOffset);
+            System.arraycopy(head, readOffset, b, off, n);
+            readOffset += n;
+            readableBytes -= n;
+            if (readOffset == head.length) {
+                readable.poll();
+                readOffset = 0;
+            }
+            // Fenster wieder öffnen, sobald der Leser ein Viertel freigegeben hat
+            windowUpdate = receiveLimit() - advertisedLimit >= RECEIVE_WINDOW / 4;
+            if (windowUpdate) {
+                ackPending = true;
+            }
+        }
+        if (windowUpdate) {
+            endpoint.wakeup();
+        }
+        return n;
+    }
+
+    private long receiveLimit() {
+        long limit = cumulative + Math.max(0, RECEIVE_WINDOW - bufferedPackets - (int) (readableBytes / MAX_PAYLOAD));
+        // Die älteste unvollständige Nachricht muss fertig werden können, auch wenn sie das Fenster übersteigt
+        Iterator<Assembly> oldest = assemblies.values().iterator();
+        return oldest.hasNext() ? Math.max(limit, oldest.next().end) : limit;
+    }
+
+    /**
+     * Verarbeitet ein empfangenes Datagramm. Wird vom Thread des Endpunkts aufgerufen.
+     *
+     * @param type   Pakettyp
+     * @param packet Datagramm ab dem Feld nach der Verbindungskennung
+     * @param now    aktueller Zeitpunkt ({@link System#nanoTime()})
+     */
+    synchronized void onPacket(byte type, ByteBuffer packet, long now) {
+        lastReceivedNanos = now;
+        switch (type) {
+            case SYN:
+                ackPending = true;
+                break;
+            case SYN_ACK:
+                if (!established) {
+                    established = true;
+                    notifyAll();
+                }
+                break;
+            case DATA:
+                if (established) {
+                    onData(packet);
+                }
+                break;
+            case ACK:
+                if (established) {
+                    onAck(packet, now);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onData(ByteBuffer packet) {
+        ackPending = true;
+        if (packet.remaining() < DATA_HEADER - 5) {
+            return;
+        }
+        int flags = packet.get();
+        long sequence = packet.getLong();
+        long messageSequence = packet.getLong();
+        long barrier = packet.getLong();
+        int fragment = packet.getInt();
+        int fragments = packet.getInt();
+        if (fragments <= 0 || fragments > MAX_FRAGMENTS || fragment < 0 || fragment >= fragments || barrier >= messageSequence) {
+            return;
+        }
+        if (sequence < cumulative || receivedAhead.contains(sequence)
+                || sequence >= Math.max(cumulative + RECEIVE_WINDOW, advertisedLimit) + RECEIVE_WINDOW) {
+            return;
+        }
+        if (sequence == cumulative) {
+            cumulative++;
+            while (receivedAhead.remove(cumulative)) {
+                cumulative++;
+            }
+        } else {
+            receivedAhead.add(sequence);
+        }
+        if (messageSequence < deliveredBelow || deliveredAhead.contains(messageSequence) || complete.containsKey(messageSequence)) {
+            return;
+        }
+        Assembly assembly = assemblies.get(messageSequence);
+        if (assembly == null) {
+            assembly = new Assembly(fragments, flags, barrier, sequence - fragment + fragments);
+            assemblies.put(messageSequence, assembly);
+        }
+        if (assembly.parts.length != fragments || assembly.parts[fragment] != null) {
+            return;
+        }
+        byte[] payload = new byte[packet.remaining()];
+        packet.get(payload);
+        assembly.parts[fragment] = payload;
+        assembly.received++;
+        bufferedPackets++;
+        if (assembly.received == fragments) {
+            assemblies.remove(messageSequence);
+            complete.put(messageSequence, assembly);
+            deliverReady();
+        }
+    }
+
+    /**
+     * Liefert alle vollständigen Nachrichten aus, deren Schranke erreicht ist.
+     */
+    private void deliverReady() {
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            Iterator<Map.Entry<Long, Assembly>> it = complete.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Assembly> entry = it.next();
+                Assembly assembly = entry.getValue();
+                if (assembly.barrier >= deliveredBelow) {
+                    continue;
+                }
+                it.remove();
+                deliver(entry.getKey(), assembly);
+                progress = true;
+            }
+        }
+    }
+
+    private void deliver(long messageSequence, Assembly assembly) {
+        if (messageSequence == deliveredBelow) {
+            deliveredBelow++;
+            while (deliveredAhead.remove(deliveredBelow)) {
+                deliveredBelow++;
+            }
+        } else {
+            deliveredAhead.add(messageSequence);
+        }
+        bufferedPackets -= assembly.parts.length;
+        if ((assembly.flags & FLAG_FIN) != 0) {
+            endOfStream = true;
+        } else {
+            int length = 0;
+            for (byte[] part : assembly.parts) {
+                length += part.length;
+            }
+            byte[] message = new byte[length];
+            int offset = 0;
+            for (byte[] part : assembly.parts) {
+                System.arraycopy(part, 0, message, offset, part.length);
+                offset += part.length;
+            }
+            if (length > 0) {
+                readable.add(message);
+                readableBytes += length;
+            }
+        }
+        notifyAll();
+    }
+
+    private void onAck(ByteBuffer packet, long now) {
+        if (packet.remaining() < 8 + 8 + 1) {
+            return;
+        }
+        long acked = packet.getLong();
+        long limit = packet.getLong();
+        int blocks = packet.get();
+        if (acked > nextSequence) {
+            return;
+        }
+        peerLimit = Math.max(peerLimit, limit);
+        boolean progress = false;
+        long newestSample = -1;
+        // Kumulativ bestätigt
+        Iterator<Packet> it = inflight.headMap(acked, false).values().iterator();
+        while (it.hasNext()) {
+            Packet p = it.next();
+            if (!p.sacked) {
+                newestSample = Math.max(newestSample, onDelivered(p));
+                progress = true;
+            }
+            it.remove();
+        }
+        // Selektiv bestätigt
+        for (int i = 0; i < blocks && packet.remaining() >= 16; i++) {
+            long start = packet.getLong();
+            long end = packet.getLong();
+            for (Packet p : inflight.subMap(start, true, end, false).values()) {
+                if (!p.sacked) {
+                    p.sacked = true;
+                    newestSample = Math.max(newestSample, onDelivered(p));
+                    progress = true;
+                }
+            }
+        }
+        if (newestSample > 0) {
+            updateRtt(now - newestSample);
+        }
+        if (progress) {
+            consecutiveRtos = 0;
+            detectLosses(now);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Verbucht ein beim Empfänger angekommenes Paket und vergrössert das Staufenster.
+     *
+     * @param p angekommenes Paket
+     * @return Sendezeitpunkt für eine RTT-Messung oder {@code -1} bei wiederholtem Paket (Karn)
+     */
+    private long onDelivered(Packet p) {
+        latestAckedSendNanos = Math.max(latestAckedSendNanos, p.sentNanos);
+        // Nur wachsen, wenn das Fenster zuletzt tatsächlich ausgeschöpft wurde
+        if (p.sequence >= recoveryPoint && cwndLimited) {
+            cwnd += cwnd < ssthresh ? 1 : 1 / cwnd;
+        }
+        return p.retransmitted ? -1 : p.sentNanos;
+    }
+
+    private void updateRtt(long sampleNanos) {
+        if (srttNanos == 0) {
+            srttNanos = sampleNanos;
+            rttvarNanos = sampleNanos / 2;
+        } else {
+            rttvarNanos = (3 * rttvarNanos + Math.abs(srttNanos - sampleNanos)) / 4;
+            srttNanos = (7 * srttNanos + sampleNanos) / 8;
+        }
+        rtoNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(MAX_RTO_MS),
+                Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_RTO_MS), srttNanos + 4 * rttvarNanos));
+    }
+
+    /**
+     * Erklärt Pakete für verloren, die deutlich vor einem bereits bestätigten Paket gesendet wurden.
+     *
+     * @param now aktueller Zeitpunkt
+     */
+    private void detectLosses(long now) {
+        long reorderWindow = Math.max(TimeUnit.MILLISECONDS.toNanos(1), srttNanos / 4);
+        for (Packet p : inflight.values()) {
+            if (p.sacked || p.lost || !p.sent) {
+                continue;
+            }
+            if (p.sentNanos + reorderWindow < latestAckedSendNanos) {
+                markLost(p);
+            }
+        }
+    }
+
+    private void markLost(Packet p) {
+        p.lost = true;
+        retransmissions.add(p);
+        if (p.sequence >= recoveryPoint) {
+            ssthresh = Math.max(cwnd / 2, MIN_CWND);
+            cwnd = ssthresh;
+            recoveryPoint = sentBoundary;
+        }
+    }
+
+    // ---------------------------------------------------------------- Zeitsteuerung
+
+    /**
+     * Sendet fällige Pakete und prüft die Timer. Wird vom Thread des Endpunkts aufgerufen.
+     *
+     * @param now aktueller Zeitpunkt ({@link System#nanoTime()})
+     * @return Zeitpunkt, zu dem spätestens erneut aufgerufen werden soll
+     */
+    synchronized long service(long now) {
+        if (finished) {
+            return Long.MAX_VALUE;
+        }
+        if (!established) {
+            if (now - lastSynNanos >= TimeUnit.MILLISECONDS.toNanos(SYN_INTERVAL_MS)) {
+                lastSynNanos = now;
+                sendControl(SYN, now);
+            }
+            return lastSynNanos + TimeUnit.MILLISECONDS.toNanos(SYN_INTERVAL_MS);
+        }
+        if (now - lastReceivedNanos > TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS)) {
+            fail("Gegenseite antwortet nicht mehr");
+            return Long.MAX_VALUE;
+        }
+        if (closed && ((unsent.isEmpty() && inflight.isEmpty()) || now - closeDeadline > 0)) {
+            finished = true;
+            notifyAll();
+            return Long.MAX_VALUE;
+        }
+        long next = now + TimeUnit.MILLISECONDS.toNanos(KEEPALIVE_MS);
+
+        // Retransmission-Timeout für das älteste unbestätigte Paket
+        long oldest = Long.MAX_VALUE;
+        for (Packet p : inflight.values()) {
+            if (p.sent && !p.sacked && !p.lost) {
+                oldest = Math.min(oldest, p.sentNanos);
+            }
+        }
+        if (oldest != Long.MAX_VALUE) {
+            if (now - oldest >= rtoNanos) {
+                if (++consecutiveRtos > MAX_CONSECUTIVE_RTOS) {
+                    fail("Zu viele Zeitüberschreitungen");
+                    return Long.MAX_VALUE;
+                }
+                ssthresh = Math.max(cwnd / 2, MIN_CWND);
+                cwnd = MIN_CWND;
+                recoveryPoint = sentBoundary;
+                rtoNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(MAX_RTO_MS), rtoNanos * 2);
+                for (Packet p : inflight.values()) {
+                    if (p.sent && !p.sacked && !p.lost) {
+                        p.lost = true;
+                        retransmissions.add(p);
+                    }
+                }
+            } else {
+                next = Math.min(next, oldest + rtoNanos);
+            }
+        }
+
+        int pipe = 0;
+        for (Packet p : inflight.values()) {
+            if (p.sent && !p.sacked && !p.lost) {
+                pipe++;
+            }
+        }
+        boolean sentData = false;
+        while (pipe < (int) cwnd) {
+            Packet p = retransmissions.poll();
+            if (p != null) {
+                if (p.sacked || !p.lost || inflight.get(p.sequence) != p) {
+                    continue;
+                }
+                p.retransmitted = true;
+                retransmittedPackets++;
+            } else {
+                p = unsent.peek();
+                if (p == null || p.sequence >= peerLimit) {
+                    break;
+                }
+                unsent.poll();
+                inflight.put(p.sequence, p);
+                sentBoundary = p.sequence + 1;
+            }
+            if (!endpoint.send(remote, ByteBuffer.wrap(p.datagram))) {
+                p.lost = true;
+                retransmissions.addFirst(p);
+                next = now + TimeUnit.MILLISECONDS.toNanos(1);
+                break;
+            }
+            p.sent = true;
+            p.lost = false;
+            p.sentNanos = now;
+            pipe++;
+            sentData = true;
+        }
+        cwndLimited = pipe >= (int) cwnd;
+        if (sentData) {
+            lastSentNanos = now;
+            notifyAll();
+        }
+        if (ackPending || now - lastSentNanos >= TimeUnit.MILLISECONDS.toNanos(KEEPALIVE_MS)) {
+            sendAck(now);
+        }
+        return Math.min(next, lastSentNanos + TimeUnit.MILLISECONDS.toNanos(KEEPALIVE_MS));
+    }
+
+    private void sendAck(long now) {
+        ackPending = false;
+        // Der Sender behält die höchste gemeldete Grenze; niedrigere Meldungen ändern nichts
+        advertisedLimit = Math.max(advertisedLimit, receiveLimit());
+        // Die ersten Lücken sind für Wiederholungen am wichtigsten, der höchste Block für die Verlusterkennung
+        long[] starts = new long[MAX_SACK_BLOCKS];
+        long[] ends = new long[MAX_SACK_BLOCKS];
+        int blocks = 0;
+        long start = -1;
+        long previous = -1;
+        for (long sequence : receivedAhead) {
+            if (sequence != previous + 1 || start < 0) {
+                if (start >= 0) {
+                    blocks = addBlock(starts, ends, blocks, start, previous + 1);
+                }
+                start = sequence;
+            }
+            previous = sequence;
+        }
+        if (start >= 0) {
+            blocks = addBlock(starts, ends, blocks, start, previous + 1);
+        }
+        ByteBuffer ack = ByteBuffer.allocate(1 + 4 + 8 + 8 + 1 + blocks * 16);
+        ack.put(ACK).putInt(connectionId).putLong(cumulative).putLong(advertisedLimit).put((byte) blocks);
+        for (int i = 0; i < blocks; i++) {
+            ack.putLong(starts[i]).putLong(ends[i]);
+        }
+        ack.flip();
+        if (endpoint.send(remote, ack)) {
+            lastSentNanos = now;
+        } else {
+            ackPending = true;
+        }
+    }
+
+    private static int addBlock(long[] starts, long[] ends, int blocks, long start, long end) {
+        if (blocks < starts.length) {
+            starts[blocks] = start;
+            ends[blocks] = end;
+            return blocks + 1;
+        }
+        starts[starts.length - 1] = start;
+        ends[ends.length - 1] = end;
+        return blocks;
+    }
+
+    private void sendControl(byte type, long now) {
+        ByteBuffer packet = ByteBuffer.allocate(1 + 4);
+        packet.put(type).putInt(connectionId).flip();
+        if (endpoint.send(remote, packet)) {
+            lastSentNanos = now;
+        }
+    }
+
+    /**
+     * Beantwortet ein SYN des Clients. Wird vom Thread des Endpunkts aufgerufen.
+     *
+     * @param now aktueller Zeitpunkt
+     */
+    synchronized void sendSynAck(long now) {
+        sendControl(SYN_ACK, now);
+    }
+
+    private void fail(String reason) {
+        failure = new SocketException(reason);
+        finished = true;
+        notifyAll();
+    }
+
+    private void waitNanos(long nanos) throws InterruptedIOException {
+        try {
+            if (nanos > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, nanos);
+            } else {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Unterbrochen");
+        }
+    }
+
+    private final class UdpInputStream extends InputStream {
+        private final byte[] single = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return UdpConnection.this.read(b, off, len);
+        }
+    }
+
+    private final class UdpOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            UdpConnection.this.write(b, off, len, false);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            UdpConnection.this.write(new byte[0], 0, 0, true);
+        }
+    }
+}
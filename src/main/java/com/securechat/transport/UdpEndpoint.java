@@ -0,0 +1,296 @@
+/**
+ * Gemeinsamer UDP-Socket und Ereignisschleife für eine oder mehrere {@link UdpConnection}s.
+ * <p>
+ * Die Klasse {@code UdpEndpoint} besitzt einen nicht-blockierenden {@link DatagramChannel} und
+ * einen Thread, der abwechselnd alle eingetroffenen Datagramme anhand der Absenderadresse an ihre
+ * Verbindung verteilt und die Verbindungen bedient (Daten, Wiederholungen, Bestätigungen,
+ * Keepalives). Geschlafen wird bis zum nächsten fälligen Timer oder bis eine Anwendung schreibt.
+ * Ein Client-Endpunkt trägt genau eine Verbindung und endet mit ihr; ein Server-Endpunkt legt für
+ * jedes SYN einer neuen Adresse eine Verbindung an und endet, wenn der Listener geschlossen und
+ * die letzte Verbindung abgebaut ist. Ein SYN mit fremder Kennung von einer Adresse, zu der schon
+ * eine Verbindung besteht, wird ignoriert, damit ein gefälschtes Datagramm keine laufende Sitzung
+ * abbrechen kann; ein neu gestarteter Client auf demselben Port kommt erst nach dem Ende der alten
+ * Verbindung (spätestens nach deren Leerlauf-Timeout) zum Zug.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class UdpEndpoint {
+    private static final int MAX_PENDING_ACCEPTS = 32;
+    private static final SecureRandom random = new SecureRandom();
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final boolean server;
+    private final Map<SocketAddress, UdpConnection> connections = new ConcurrentHashMap<>();
+    private final BlockingQueue<UdpConnection> accepted = new LinkedBlockingQueue<>();
+    private final UdpConnection closedMarker;
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private volatile boolean listening;
+    private volatile boolean closed;
+
+    private UdpEndpoint(DatagramChannel channel, boolean server) throws IOException {
+        this.channel = channel;
+        this.server = server;
+        this.listening = server;
+        this.selector = Selector.open();
+        this.closedMarker = new UdpConnection(this, new InetSocketAddress(0), 0, false);
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Startet die Ereignisschleife.
+     */
+    private void start() {
+        Thread thread = new Thread(this::run, "UdpTransport-Thread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Öffnet einen Server-Endpunkt auf dem angegebenen Port.
+     *
+     * @param port lokaler Port
+     * @return Endpunkt, der auf SYNs wartet
+     * @throws IOException wenn der Port nicht gebunden werden kann
+     */
+    public static UdpEndpoint listen(int port) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(port));
+            UdpEndpoint endpoint = new UdpEndpoint(channel, true);
+            endpoint.start();
+            return endpoint;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Öffnet einen Client-Endpunkt und baut eine Verbindung auf.
+     *
+     * @param remote    Adresse des Servers
+     * @param timeoutMs maximale Wartezeit für den Verbindungsaufbau
+     * @return aufgebaute Verbindung
+     * @throws IOException wenn der Server nicht antwortet
+     */
+    public static UdpConnection connect(InetSocketAddress remote, int timeoutMs) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        UdpEndpoint endpoint;
+        try {
+            channel.bind(null);
+            endpoint = new UdpEndpoint(channel, false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        UdpConnection connection = new UdpConnection(endpoint, remote, random.nextInt(), false);
+        endpoint.connections.put(remote, connection);
+        endpoint.start();
+        try {
+            connection.awaitEstablished(timeoutMs);
+        } catch (IOException e) {
+            endpoint.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    /**
+     * Wartet auf die nächste neue Verbindung eines Server-Endpunkts.
+     *
+     * @return neue Verbindung
+     * @throws IOException wenn der Listener geschlossen wurde oder der Thread unterbrochen wird
+     */
+    public UdpConnection accept() throws IOException {
+        UdpConnection connection;
+        try {
+            connection = listening ? accepted.take() : closedMarker;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Unterbrochen");
+        }
+        if (connection == closedMarker) {
+            accepted.add(closedMarker);
+            throw new SocketException("Listener geschlossen");
+        }
+        return connection;
+    }
+
+    /**
+     * Nimmt keine neuen Verbindungen mehr an. Bestehende Verbindungen laufen weiter.
+     */
+    public void stopListening() {
+        listening = false;
+        UdpConnection pending;
+        while ((pending = accepted.poll()) != null) {
+            if (pending != closedMarker) {
+                pending.close();
+            }
+        }
+        accepted.add(closedMarker);
+        wakeup();
+    }
+
+    /**
+     * Gibt an, ob der Endpunkt noch neue Verbindungen annimmt.
+     *
+     * @return {@code true}, solange der Listener offen ist
+     */
+    public boolean isListening() {
+        return listening;
+    }
+
+    /**
+     * Gibt den lokalen Port zurück.
+     *
+     * @return Port
+     */
+    public int getLocalPort() {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Weckt die Ereignisschleife, z. B. nachdem eine Anwendung Daten eingereiht hat.
+     */
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * Sendet ein Datagramm. Wird nur vom Thread des Endpunkts aufgerufen.
+     *
+     * @param to     Empfänger
+     * @param packet Datagramm
+     * @return {@code false}, wenn der Sendepuffer des Betriebssystems voll ist
+     */
+    boolean send(SocketAddress to, ByteBuffer packet) {
+        try {
+            return channel.send(packet, to) > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Schliesst den Endpunkt sofort und bricht alle Verbindungen ab.
+     */
+    private void close() {
+        closed = true;
+        listening = false;
+        accepted.add(closedMarker);
+        for (UdpConnection connection : connections.values()) {
+            connection.abort("Socket closed");
+        }
+        wakeup();
+    }
+
+    /**
+     * Ereignisschleife des Endpunkts.
+     */
+    private void run() {
+        try {
+            while (!closed) {
+                long now = System.nanoTime();
+                receive(now);
+                long next = now + TimeUnit.SECONDS.toNanos(1);
+                Iterator<UdpConnection> it = connections.values().iterator();
+                while (it.hasNext()) {
+                    UdpConnection connection = it.next();
+                    next = Math.min(next, connection.service(now));
+                    if (connection.isFinished()) {
+                        it.remove();
+                    }
+                }
+                if (connections.isEmpty() && !listening) {
+                    break;
+                }
+                long waitMs = TimeUnit.NANOSECONDS.toMillis(next - System.nanoTime());
+                if (waitMs <= 0) {
+                    selector.selectNow();
+                } else {
+                    selector.select(waitMs);
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            System.err.println("UDP-Transport beendet: " + e.getMessage());
+        } finally {
+            close();
+            try {
+                selector.close();
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Liest alle eingetroffenen Datagramme und verteilt sie an ihre Verbindungen.
+     *
+     * @param now aktueller Zeitpunkt
+     * @throws IOException bei Fehlern des Sockets
+     */
+    private void receive(long now) throws IOException {
+        SocketAddress from;
+        while ((from = channel.receive(receiveBuffer)) != null) {
+            receiveBuffer.flip();
+            if (receiveBuffer.remaining() >= 5) {
+                byte type = receiveBuffer.get();
+                int connectionId = receiveBuffer.getInt();
+                UdpConnection connection = connections.get(from);
+                if (connection == null) {
+                    connection = type == UdpConnection.SYN ? open((InetSocketAddress) from, connectionId) : null;
+                }
+                if (connection != null && connection.getConnectionId() == connectionId) {
+                    connection.onPacket(type, receiveBuffer, now);
+                    if (type == UdpConnection.SYN) {
+                        connection.sendSynAck(now);
+                    }
+                }
+            }
+            receiveBuffer.clear();
+        }
+    }
+
+    /**
+     * Legt auf ein SYN hin eine neue Verbindung an, sofern der Listener Verbindungen annimmt.
+     *
+     * @param from         Adresse des Clients
+     * @param connectionId vom Client gewählte Kennung
+     * @return neue Verbindung oder {@code null}, wenn keine angenommen wird
+     */
+    private UdpConnection open(InetSocketAddress from, int connectionId) {
+        if (!server || !listening || accepted.size() >= MAX_PENDING_ACCEPTS) {
+            return null;
+        }
+        UdpConnection connection = new UdpConnection(this, from, connectionId, true);
+        connections.put(from, connection);
+        accepted.add(connection);
+        return connection;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Transport über UDP mit eigener Zuverlässigkeit für verlustbehaftete Verbindungen.
+ * <p>
+ * Die Klasse {@code UdpTransport} baut {@link UdpConnection}s über {@link UdpEndpoint}s auf. Im
+ * Gegensatz zu TCP hält ein verlorenes Datagramm nur die Nachricht auf, zu der es gehört; andere
+ * Nachrichten, die der Sender mit {@link Connection#setOrderedDelivery(boolean)} als ungeordnet
+ * markiert hat, werden sofort ausgeliefert. Zum Vergleich der Latenzen unter Verlust dient der
+ * {@link LossyLinkSimulator}.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+public class UdpTransport implements Transport {
+    public static final String NAME = "udp";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Connection connect(String host, int port, int timeoutMs) throws IOException {
+        InetSocketAddress remote = new InetSocketAddress(host, port);
+        if (remote.isUnresolved()) {
+            throw new UnknownHostException(host);
+        }
+        return UdpEndpoint.connect(remote, timeoutMs);
+    }
+
+    @Override
+    public ConnectionListener listen(int port) throws IOException {
+        UdpEndpoint endpoint = UdpEndpoint.listen(port);
+        return new ConnectionListener() {
+            @Override
+            public Connection accept() throws IOException {
+                return endpoint.accept();
+            }
+
+            @Override
+            public boolean isClosed() {
+                return !endpoint.isListening();
+            }
+
+            @Override
+            public String getLocalDescription() {
+                return "UDP-Port " + endpoint.getLocalPort();
+            }
+
+            @Override
+            public void close() {
+                endpoint.stopListening();
+            }
+        };
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * Transport über Unix Domain Sockets für Teilnehmer auf demselben Rechner.
+ * <p>
+ * Die Klasse {@code UnixSocketTransport} verwendet {@link SocketChannel}s mit
+ * {@link UnixDomainSocketAddress} und umgeht damit den TCP-Loopback-Stack (keine Prüfsummen,
+ * kein Nagle, keine Staukontrolle). Der Port wird auf eine Socket-Datei
+ * {@code securechat-<port>.sock} im Verzeichnis aus {@code securechat.transport.dir} abgebildet,
+ * standardmässig im temporären Verzeichnis. Da Channels ohne Socket-Adapter keinen Lese-Timeout
+ * kennen, arbeiten die Ströme nicht-blockierend und warten mit einem {@link Selector}.
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class UnixSocketTransport implements Transport {
+    public static final String NAME = "unix";
+
+    private final Path directory;
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert. Das Verzeichnis der Socket-Dateien wird der
+     * System-Property {@code securechat.transport.dir} entnommen.
+     */
+    public UnixSocketTransport() {
+        this(Path.of(System.getProperty("securechat.transport.dir", System.getProperty("java.io.tmpdir"))));
+    }
+
+    /**
+     * Konstruktor, der die Instanzen initialisiert.
+     *
+     * @param directory Verzeichnis der Socket-Dateien
+     */
+    public UnixSocketTransport(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Verbindet sich mit der Socket-Datei des Ports; der Host wird ignoriert.
+     */
+    @Override
+    public Connection connect(String host, int port, int timeoutMs) throws IOException {
+        Path path = socketPath(port);
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(path));
+            return new ChannelConnection(channel, path.toString());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Bindet die Socket-Datei des Ports. Eine verwaiste Datei eines früheren Prozesses wird ersetzt;
+     * beim Schliessen wird die Datei entfernt.
+     */
+    @Override
+    public ConnectionListener listen(int port) throws IOException {
+        Path path = socketPath(port);
+        Files.deleteIfExists(path);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(path));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        return new ConnectionListener() {
+            @Override
+            public Connection accept() throws IOException {
+                try {
+                    return new ChannelConnection(server.accept(), path.toString());
+                } catch (ClosedChannelException e) {
+                    throw new SocketException("Listener geschlossen");
+                }
+            }
+
+            @Override
+            public boolean isClosed() {
+                return !server.isOpen();
+            }
+
+            @Override
+            public String getLocalDescription() {
+                return "Unix-Socket " + path;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    server.close();
+                } finally {
+                    Files.deleteIfExists(path);
+                }
+            }
+        };
+    }
+
+    /**
+     * Bildet einen Port auf die Socket-Datei ab.
+     *
+     * @param port Port
+     * @return Pfad der Socket-Datei
+     */
+    public Path socketPath(int port) {
+        return directory.resolve("securechat-" + port + ".sock");
+    }
+
+    /**
+     * Verbindung über einen nicht-blockierenden {@link SocketChannel}. Lese- und Schreibseite
+     * warten jeweils mit einem eigenen {@link Selector}, damit sie unabhängig voneinander
+     * blockieren können.
+     */
+    private static final class ChannelConnection implements Connection {
+        private final SocketChannel channel;
+        private final String description;
+        private final Selector readSelector;
+        private final Selector writeSelector;
+        private final InputStream in = new ChannelInputStream();
+        private final OutputStream out = new ChannelOutputStream();
+        private volatile int readTimeout;
+
+        private ChannelConnection(SocketChannel channel, String description) throws IOException {
+            this.channel = channel;
+            this.description = description;
+            channel.configureBlocking(false);
+            this.readSelector = Selector.open();
+            this.writeSelector = Selector.open();
+            channel.register(readSelector, SelectionKey.OP_READ);
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public InetAddress getInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public String getRemoteDescription() {
+            return description;
+        }
+
+        @Override
+        public void setReadTimeout(int timeoutMs) {
+            readTimeout = timeoutMs;
+        }
+
+        @Override
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                readSelector.wakeup();
+                writeSelector.wakeup();
+                readSelector.close();
+                writeSelector.close();
+            }
+        }
+
+        private final class ChannelInputStream extends InputStream {
+            private final byte[] single = new byte[1];
+
+            @Override
+            public int read() throws IOException {
+                int n = read(single, 0, 1);
+                return n < 0 ? -1 : single[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                ByteBuffer target = ByteBuffer.wrap(b, off, len);
+                int timeout = readTimeout;
+                long deadline = timeout > 0 ? System.nanoTime() + timeout * 1_000_000L : 0;
+                synchronized (readSelector) {
+                    while (true) {
+                        int n = channel.read(target);
+                        if (n != 0) {
+                            return n;
+                        }
+                        long remainingMs = 0;
+                        if (timeout > 0) {
+                            remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+                            if (remainingMs <= 0) {
+                                throw new SocketTimeoutException("Read timed out");
+                            }
+                        }
+                        await(readSelector, remainingMs);
+                    }
+                }
+            }
+        }
+
+        private final class ChannelOutputStream extends OutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer source = ByteBuffer.wrap(b, off, len);
+                synchronized (writeSelector) {
+                    while (source.hasRemaining()) {
+                        if (channel.write(source) == 0) {
+                            await(writeSelector, 0);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Wartet, bis der Channel bereit ist, die Frist abläuft oder die Verbindung geschlossen wird.
+         *
+         * @param selector  Selector der Lese- bzw. Schreibseite
+         * @param timeoutMs maximale Wartezeit in Millisekunden, {@code 0} für unbegrenzt
+         * @throws IOException wenn die Verbindung geschlossen oder der Thread unterbrochen wurde
+         */
+        private void await(Selector selector, long timeoutMs) throws IOException {
+            if (!channel.isOpen() || !selector.isOpen()) {
+                throw new SocketException("Socket closed");
+            }
+            try {
+                selector.select(timeoutMs);
+                selector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {
+                throw new SocketException("Socket closed");
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Unterbrochen");
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Prüft die pro Nachricht allokierten Bytes des Sende- und Empfangspfads gegen feste Budgets.
+ * <p>
+ * Die Klasse {@code AllocationBudgetTest} führt die Stufen, die der {@link IOManager} pro Nachricht
+ * durchläuft, ohne Fenster und Netzwerk in einem einzigen Thread aus: Senden ist
+ * {@link FrameEncoder} plus {@link FrameWriter} in einen verwerfenden Strom, Empfangen ist
+ * {@link FrameReader} plus {@link ReceivePipeline} ohne Pool, die im lesenden Thread dekodiert.
+ * Nach einer Aufwärmphase misst sie mit {@code ThreadMXBean.getThreadAllocatedBytes} die
+ * allokierten Bytes pro Nachricht und vergleicht sie mit den Budgets aus
+ * {@code allocation-budgets.properties}, die neben dieser Klasse versioniert sind. Surefire führt
+ * den Test in der Phase {@code test} aus; ein überschrittenes Budget lässt den Build fehlschlagen
+ * ({@code -Dallocation.skip=true} überspringt die Prüfung). Unterstützt die JVM die Messung nicht,
+ * wird der Test übersprungen statt bestanden.
+ * <p>
+ * Die Anzahl Nachrichten pro Messung lässt sich über {@code securechat.allocation.messages}
+ * einstellen.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import com.securechat.model.ChatMessage;
+import com.securechat.model.SystemMessage;
+import com.securechat.security.CryptoManager;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AllocationBudgetTest {
+    private static final String BUDGET_FILE = "allocation-budgets.properties";
+    private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final String SENDER_IP = "192.168.0.12";
+
+    /**
+     * Führt alle Messungen aus und vergleicht sie mit den Budgets.
+     *
+     * @throws Exception bei Fehlern im gemessenen Pfad
+     */
+    @Test
+    void sendAndReceiveStayWithinBudgets() throws Exception {
+        assumeFalse(Boolean.getBoolean("allocation.skip"), "Allokationsprüfung abgeschaltet");
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "Allokationsmessung wird von dieser JVM nicht unterstützt");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Allokationsmessung wird von dieser JVM nicht unterstützt");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        int messages = Integer.getInteger("securechat.allocation.messages", 20_000);
+        Properties budgets = loadBudgets();
+        Map<String, Object> scenarios = new LinkedHashMap<>();
+        scenarios.put("chat.short", new ChatMessage("x".repeat(64), SENDER_IP));
+        scenarios.put("chat.long", new ChatMessage("x".repeat(4096), SENDER_IP));
+        scenarios.put("system", new SystemMessage("CLOCKSYNC", "RESP 1760000000000000 1760000000000100 1760000000000200", SENDER_IP));
+
+        System.out.printf("%d Nachrichten pro Messung%n", messages);
+        System.out.printf("%-20s %14s %14s%n", "Pfad", "Bytes/Nachr.", "Budget");
+        List<String> exceeded = new ArrayList<>();
+        for (Map.Entry<String, Object> scenario : scenarios.entrySet()) {
+            long[] measured = measure(threads, scenario.getValue(), messages);
+            report("send." + scenario.getKey(), measured[0], budgets, exceeded);
+            report("receive." + scenario.getKey(), measured[1], budgets, exceeded);
+        }
+        assertTrue(exceeded.isEmpty(), "Allokationsbudget überschritten: " + exceeded);
+    }
+
+    /**
+     * Lädt die Budgets aus der versionierten Ressource.
+     *
+     * @return Budgets in Bytes pro Nachricht
+     * @throws IOException wenn die Budgets nicht gelesen werden können
+     */
+    private static Properties loadBudgets() throws IOException {
+        Properties budgets = new Properties();
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream(BUDGET_FILE)) {
+            if (in == null) {
+                throw new IOException(BUDGET_FILE + " nicht gefunden");
+            }
+            budgets.load(in);
+        }
+        return budgets;
+    }
+
+    /**
+     * Gibt eine Zeile aus und prüft das Budget.
+     *
+     * @param name     Name der Messung
+     * @param measured allokierte Bytes pro Nachricht
+     * @param budgets  Budgets
+     * @param exceeded Sammlung überschrittener bzw. fehlender Budgets
+     */
+    private static void report(String name, long measured, Properties budgets, List<String> exceeded) {
+        String budget = budgets.getProperty(name);
+        if (budget == null) {
+            System.out.printf("%-20s %14d %14s  KEIN BUDGET%n", name, measured, "-");
+            exceeded.add(name + " ohne Budget");
+            return;
+        }
+        boolean over = measured > Long.parseLong(budget.trim());
+        System.out.printf("%-20s %14d %14s  %s%n", name, measured, budget.trim(), over ? "ÜBERSCHRITTEN" : "ok");
+        if (over) {
+            exceeded.add(name + " " + measured + " > " + budget.trim());
+        }
+    }
+
+    /**
+     * Misst Senden und Empfangen einer Nachricht. Jede Runde verwendet frische Schlüssel, damit
+     * die Sequenznummern zum Replay-Schutz passen; gezählt wird nur die letzte Runde.
+     *
+     * @param threads  Thread-Bean für die Allokationsmessung
+     * @param message  zu sendende Nachricht
+     * @param messages Anzahl Nachrichten pro Runde
+     * @return allokierte Bytes pro Nachricht für Senden und Empfangen
+     * @throws Exception bei Fehlern im gemessenen Pfad
+     */
+    private static long[] measure(com.sun.management.ThreadMXBean threads, Object message, int messages) throws Exception {
+        long[] result = new long[2];
+        BufferPool pool = new BufferPool(false);
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            byte[] sessionKey = new byte[32];
+            new SecureRandom().nextBytes(sessionKey);
+            ByteArrayOutputStream wire = new ByteArrayOutputStream();
+            FrameEncoder encoder = new FrameEncoder(new CryptoManager(sessionKey), pool);
+            FrameWriter writer = new FrameWriter(wire);
+            // Ungemessen: Frames für den Empfang erzeugen
+            for (int i = 0; i < messages; i++) {
+                ByteBuffer frame = encoder.encode(message);
+                writer.writeFrame(frame);
+                pool.release(frame);
+            }
+            byte[] frames = wire.toByteArray();
+            wire = null;
+
+            FrameWriter sink = new FrameWriter(OutputStream.nullOutputStream());
+            long before = allocatedBytes(threads);
+            for (int i = 0; i < messages; i++) {
+                ByteBuffer frame = encoder.encode(message);
+                sink.writeFrame(frame);
+                pool.release(frame);
+            }
+            result[0] = (allocatedBytes(threads) - before) / messages;
+
+            int[] received = {0};
+            ReceivePipeline.Sink counter = decoded -> {
+                if (decoded.message() == null) {
+                    throw new IllegalStateException("Frame nicht dekodiert", decoded.error());
+                }
+                received[0]++;
+            };
+            try (ReceivePipeline pipeline = new ReceivePipeline(new CryptoManager(sessionKey), pool, 0, counter);
+                 FrameReader reader = new FrameReader(new ByteArrayInputStream(frames), pool, MAX_FRAME_SIZE)) {
+                before = allocatedBytes(threads);
+                ByteBuffer frame;
+                while ((frame = reader.nextFrame()) != null) {
+                    pipeline.submit(frame, 0, 0);
+                }
+                result[1] = (allocatedBytes(threads) - before) / messages;
+            }
+            if (received[0] != messages) {
+                throw new IllegalStateException(received[0] + " von " + messages + " Nachrichten empfangen");
+            }
+        }
+        return result;
+    }
+
+    private static long allocatedBytes(com.sun.management.ThreadMXBean threads) {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+}
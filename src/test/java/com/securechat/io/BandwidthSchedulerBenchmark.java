@@ -0,0 +1,83 @@
+/**
+ * Zeigt die Wirkung des {@link BandwidthScheduler} bei gemischter Last.
+ * <p>
+ * Die Klasse {@code BandwidthSchedulerBenchmark} lässt eine Sitzung ununterbrochen grosse Frames
+ * senden (z. B. Bilder) und mehrere interaktive Sitzungen in kurzen Abständen kleine
+ * Chat-Nachrichten. Die Gesamtrate ist begrenzt, sodass um Bandbreite konkurriert wird.
+ * Ausgegeben werden je Sitzung Durchsatz sowie mittlere und maximale Wartezeit je
+ * Anforderung (grosse Frames in Abschnitten); die interaktiven Sitzungen sollten trotz der Last
+ * nur kurz warten.
+ * <p>
+ * Aufruf: {@code BandwidthSchedulerBenchmark [gesamtrate_bytes_pro_s] [sekunden] [interaktive_sitzungen]}
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BandwidthSchedulerBenchmark {
+    private static final int BULK_FRAME = 256 * 1024;
+    private static final int CHAT_FRAME = 300;
+    private static final long CHAT_INTERVAL_MS = 10;
+
+    /**
+     * Führt die Messung aus.
+     *
+     * @param args optional Gesamtrate, Dauer und Anzahl interaktiver Sitzungen
+     * @throws InterruptedException wenn der Thread unterbrochen wird
+     */
+    public static void main(String[] args) throws InterruptedException {
+        long rate = args.length > 0 ? Long.parseLong(args[0]) : 8L * 1024 * 1024;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int interactive = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        BandwidthScheduler scheduler = new BandwidthScheduler(rate, 0, BandwidthScheduler.DEFAULT_QUANTUM);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        List<Thread> senders = new ArrayList<>();
+        BandwidthScheduler.Peer bulk = scheduler.register("Bulk");
+        senders.add(new Thread(() -> send(bulk, BULK_FRAME, 0, deadline), "Bulk-Thread"));
+        for (int i = 1; i <= interactive; i++) {
+            BandwidthScheduler.Peer chat = scheduler.register("Chat " + i);
+            senders.add(new Thread(() -> send(chat, CHAT_FRAME, CHAT_INTERVAL_MS, deadline), "Chat-Thread-" + i));
+        }
+        for (Thread sender : senders) {
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        System.out.printf("Gesamtrate %.1f MB/s, %d s%n", rate / 1e6, seconds);
+        for (BandwidthScheduler.Peer peer : scheduler.getPeers()) {
+            System.out.printf("%-8s %10.1f kB/s %8d Zuteilungen  Wartezeit Mittel %9.1f us, Max %8d us%n", peer.getName(),
+                    peer.getBytesSent() / 1e3 / seconds, peer.getGrants(), peer.getMeanWaitMicros(), peer.getMaxWaitMicros());
+        }
+    }
+
+    /**
+     * Fordert bis zum Ende der Messung Sendeerlaubnisse an.
+     *
+     * @param peer       Sitzung
+     * @param frameSize  Grösse der Frames
+     * @param intervalMs Pause zwischen zwei Frames, 0 für Dauerlast
+     * @param deadline   Ende der Messung ({@link System#nanoTime()})
+     */
+    private static void send(BandwidthScheduler.Peer peer, int frameSize, long intervalMs, long deadline) {
+        try {
+            while (System.nanoTime() < deadline) {
+                // Wie der FrameWriter: grosse Frames abschnittsweise anfordern
+                for (int remaining = frameSize; remaining > 0; remaining -= peer.getQuantum()) {
+                    peer.acquire(Math.min(remaining, peer.getQuantum()));
+                }
+                if (intervalMs > 0) {
+                    Thread.sleep(intervalMs);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
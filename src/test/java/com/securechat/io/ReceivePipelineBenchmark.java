@@ -0,0 +1,126 @@
+/**
+ * Misst den Durchsatz des Empfangspfads in Abhängigkeit von der Anzahl der Dekodier-Threads.
+ * <p>
+ * Die Klasse {@code ReceivePipelineBenchmark} verschlüsselt vorab eine Folge von Chat-Nachrichten
+ * und reicht die Frames anschliessend so schnell wie möglich bei einer {@link ReceivePipeline}
+ * ein, einmal ohne Pool (wie der bisherige Empfangs-Thread) und danach mit 1, 2, 4 … Threads bis
+ * zur Anzahl der Prozessoren. Ausgegeben werden Nachrichten und Megabyte pro Sekunde sowie der
+ * Faktor gegenüber der Dekodierung im lesenden Thread. Nebenbei wird geprüft, dass alle
+ * Nachrichten fehlerfrei und in Reihenfolge ausgeliefert werden.
+ * <p>
+ * Aufruf: {@code ReceivePipelineBenchmark [nachrichten] [zeichen_pro_nachricht]}
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import com.securechat.model.ChatMessage;
+import com.securechat.security.CryptoManager;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReceivePipelineBenchmark {
+
+    /**
+     * Führt die Messung aus.
+     *
+     * @param args optional Anzahl Nachrichten und Zeichen pro Nachricht
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     * @throws InterruptedException     wenn der Thread unterbrochen wird
+     */
+    public static void main(String[] args) throws GeneralSecurityException, InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int textLength = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        byte[] sessionKey = new byte[32];
+        new SecureRandom().nextBytes(sessionKey);
+        BufferPool pool = new BufferPool(false);
+        List<ByteBuffer> frames = encode(new CryptoManager(sessionKey), pool, count, textLength);
+        long totalBytes = frames.stream().mapToLong(ByteBuffer::remaining).sum();
+
+        int cpus = Runtime.getRuntime().availableProcessors();
+        List<Integer> threadCounts = new ArrayList<>(List.of(0));
+        for (int threads = 1; threads <= Math.max(1, cpus); threads *= 2) {
+            threadCounts.add(threads);
+        }
+        System.out.printf("%d Nachrichten à %d Zeichen, %d Prozessoren%n", count, textLength, cpus);
+        double baseline = 0;
+        for (int round = 0; round < 2; round++) {
+            for (int threads : threadCounts) {
+                double seconds = measure(sessionKey, pool, frames, threads);
+                double rate = count / seconds;
+                if (threads == 0) {
+                    baseline = rate;
+                }
+                System.out.printf("%-12s %10.0f Nachr./s %8.1f MB/s  Faktor %.2f%n",
+                        threads == 0 ? "inline" : threads + " Threads", rate, totalBytes / seconds / 1e6, rate / baseline);
+            }
+        }
+    }
+
+    /**
+     * Verschlüsselt die Testnachrichten und kopiert die Frames in eigene Buffer.
+     *
+     * @param sender     Schlüsselverwaltung des Senders
+     * @param pool       Buffer-Pool
+     * @param count      Anzahl Nachrichten
+     * @param textLength Zeichen pro Nachricht
+     * @return Frames im Lesemodus
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     */
+    private static List<ByteBuffer> encode(CryptoManager sender, BufferPool pool, int count, int textLength)
+            throws GeneralSecurityException {
+        FrameEncoder encoder = new FrameEncoder(sender, pool);
+        String padding = "x".repeat(textLength);
+        List<ByteBuffer> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ByteBuffer frame = encoder.encode(new ChatMessage(i + " " + padding, "192.168.0.12"));
+            ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+            copy.put(frame).flip();
+            pool.release(frame);
+            frames.add(copy);
+        }
+        return frames;
+    }
+
+    /**
+     * Reicht alle Frames ein und wartet auf die Auslieferung.
+     *
+     * @param sessionKey Sitzungsschlüssel
+     * @param pool       Buffer-Pool
+     * @param frames     verschlüsselte Frames
+     * @param threads    Anzahl Dekodier-Threads
+     * @return Dauer in Sekunden
+     * @throws InterruptedException wenn der Thread unterbrochen wird
+     */
+    private static double measure(byte[] sessionKey, BufferPool pool, List<ByteBuffer> frames, int threads)
+            throws InterruptedException {
+        int[] expected = {0};
+        ReceivePipeline.Sink sink = decoded -> {
+            if (!(decoded.message() instanceof ChatMessage message)) {
+                throw new IllegalStateException("Frame nicht dekodiert", decoded.error());
+            }
+            String text = message.getText();
+            if (Integer.parseInt(text.substring(0, text.indexOf(' '))) != expected[0]++) {
+                throw new IllegalStateException("Reihenfolge verletzt bei Nachricht " + (expected[0] - 1));
+            }
+        };
+        try (ReceivePipeline pipeline = new ReceivePipeline(new CryptoManager(sessionKey), pool, threads, sink)) {
+            long start = System.nanoTime();
+            for (ByteBuffer frame : frames) {
+                pipeline.submit(frame.duplicate(), 0, 0);
+            }
+            if (!pipeline.awaitDelivery(60_000)) {
+                throw new IllegalStateException("Zeitüberschreitung bei der Auslieferung");
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (expected[0] != frames.size()) {
+                throw new IllegalStateException("Ausgeliefert: " + expected[0] + " von " + frames.size());
+            }
+            return seconds;
+        }
+    }
+}
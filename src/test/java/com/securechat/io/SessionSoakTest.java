@@ -0,0 +1,238 @@
+/**
+ * Prüft, dass wiederholtes Verbinden und Trennen weder Threads noch Speicher zurücklässt.
+ * <p>
+ * Die Klasse {@code SessionSoakTest} baut über den {@link InProcessTransport} nacheinander viele
+ * Sitzungen aus je zwei echten {@link IOManager}n auf und wieder ab, mit allen Threads, die auch
+ * im Chat laufen (Sender, Receiver, ChatHandler, KeyRotation, ClockSync, Abgleich des Verlaufs).
+ * Statt des Chatfensters erhalten sie eine {@link ChatWindowAccess}-Implementierung ohne
+ * Bildschirm. Pro Zyklus senden beide Seiten eine Chat-Nachricht; danach werden beide
+ * geschlossen und es wird auf das Ende ihrer Threads gewartet.
+ * <p>
+ * Nach einer Aufwärmphase werden Thread-Anzahl und belegter Heap nach einer Garbage Collection
+ * als Ausgangswert festgehalten und am Ende erneut gemessen. Liegt die Thread-Anzahl dann über dem
+ * Ausgangswert oder der Heap mehr als {@code MAX_HEAP_GROWTH} darüber, schlägt der Test fehl
+ * ({@code -Dsoak.skip=true} überspringt ihn). Die Anzahl Zyklen lässt sich über
+ * {@code securechat.soak.cycles} einstellen.
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.io;
+
+import com.securechat.gui.ChatWindowAccess;
+import com.securechat.gui.StartWindowAccess;
+import com.securechat.transport.Connection;
+import com.securechat.transport.ConnectionListener;
+import com.securechat.transport.InProcessTransport;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.security.SecureRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+class SessionSoakTest {
+    private static final int PORT = 47_032;
+    private static final int WARMUP_CYCLES = 100;
+    private static final int REPORT_INTERVAL = 500;
+    private static final long MAX_HEAP_GROWTH = 16L * 1024 * 1024;
+    private static final long TIMEOUT_MS = 5000;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    /**
+     * Führt die Zyklen aus und vergleicht Threads und Heap mit dem Ausgangswert.
+     *
+     * @throws Exception bei Fehlern im Verbindungsaufbau
+     */
+    @Test
+    void repeatedSessionsLeaveNoThreadsOrHeapBehind() throws Exception {
+        assumeFalse(Boolean.getBoolean("soak.skip"), "Dauertest abgeschaltet");
+        int cycles = Integer.getInteger("securechat.soak.cycles", 2000);
+        InProcessTransport transport = new InProcessTransport();
+        ConnectionListener listener = transport.listen(PORT);
+        try {
+            for (int i = 0; i < WARMUP_CYCLES; i++) {
+                cycle(transport, listener, i);
+            }
+            int baseThreads = settledThreadCount(Integer.MAX_VALUE);
+            long baseHeap = usedHeapAfterGc();
+            System.out.printf("%d Zyklen, Ausgangswert nach %d Zyklen: %d Threads, %.1f MiB Heap%n",
+                    cycles, WARMUP_CYCLES, baseThreads, baseHeap / 1048576.0);
+            System.out.printf("%8s %10s %12s%n", "Zyklus", "Threads", "Heap MiB");
+            int threads = baseThreads;
+            long heap = baseHeap;
+            for (int i = 1; i <= cycles; i++) {
+                cycle(transport, listener, WARMUP_CYCLES + i);
+                if (i % REPORT_INTERVAL == 0 || i == cycles) {
+                    threads = settledThreadCount(baseThreads);
+                    heap = usedHeapAfterGc();
+                    System.out.printf("%8d %10d %12.1f%n", i, threads, heap / 1048576.0);
+                }
+            }
+            assertTrue(threads <= baseThreads, "Thread-Anzahl gewachsen: " + threads + " statt " + baseThreads);
+            assertTrue(heap - baseHeap <= MAX_HEAP_GROWTH,
+                    String.format("Heap um %.1f MiB gewachsen", (heap - baseHeap) / 1048576.0));
+        } finally {
+            listener.close();
+        }
+    }
+
+    /**
+     * Baut eine Sitzung auf, tauscht je eine Chat-Nachricht aus und baut sie wieder ab.
+     *
+     * @param transport Transport
+     * @param listener  lauschender Listener des Hosts
+     * @param cycle     Nummer des Zyklus, für getrennte Verläufe der Gegenstellen
+     * @throws Exception wenn Aufbau, Austausch oder Abbau scheitern
+     */
+    private static void cycle(InProcessTransport transport, ConnectionListener listener, int cycle) throws Exception {
+        byte[] sessionKey = new byte[32];
+        new SecureRandom().nextBytes(sessionKey);
+        Connection clientConnection = transport.connect("localhost", PORT, (int) TIMEOUT_MS);
+        Connection hostConnection = listener.accept();
+        // Je Seite die eigene und die empfangene Nachricht
+        CountDownLatch exchanged = new CountDownLatch(4);
+        IOManager host = new IOManager(hostConnection, sessionKey, "soak-" + cycle + "-client", true, new SilentStatus(),
+                ioManager -> new HeadlessChat(exchanged));
+        IOManager client = new IOManager(clientConnection, sessionKey, "soak-" + cycle + "-host", false, new SilentStatus(),
+                ioManager -> new HeadlessChat(exchanged));
+        try {
+            host.startCommunicationThreads();
+            client.startCommunicationThreads();
+            client.sendChatMessage();
+            host.sendChatMessage();
+            assertTrue(exchanged.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), "Nachrichten nicht zugestellt");
+        } finally {
+            client.close();
+            host.close();
+        }
+        assertTrue(client.awaitTermination(TIMEOUT_MS) && host.awaitTermination(TIMEOUT_MS),
+                "Threads einer Sitzung nicht beendet");
+    }
+
+    /**
+     * Liest die Anzahl lebender Threads. Threads beendeter Executor-Pools können den Aufruf von
+     * {@code awaitTermination} kurz überleben; daher wird bis zu einer Sekunde gewartet, bis die
+     * Anzahl die Obergrenze nicht mehr überschreitet.
+     *
+     * @param limit erwartete Obergrenze
+     * @return Anzahl lebender Threads
+     * @throws InterruptedException wenn der Thread unterbrochen wird
+     */
+    private static int settledThreadCount(int limit) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        int count = THREADS.getThreadCount();
+        while (count > limit && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            count = THREADS.getThreadCount();
+        }
+        return count;
+    }
+
+    /**
+     * Misst den belegten Heap nach einer vollständigen Garbage Collection.
+     *
+     * @return belegter Heap in Byte
+     * @throws InterruptedException wenn der Thread unterbrochen wird
+     */
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Chatfenster ohne Bildschirm: liefert immer dieselbe Eingabe und zählt angezeigte Nachrichten.
+     */
+    private static final class HeadlessChat implements ChatWindowAccess {
+        private final CountDownLatch shown;
+
+        private HeadlessChat(CountDownLatch shown) {
+            this.shown = shown;
+        }
+
+        @Override
+        public String getInputText() {
+            return "ping";
+        }
+
+        @Override
+        public void clearInput() {
+        }
+
+        @Override
+        public void appendMessage(String text, Color color) {
+        }
+
+        @Override
+        public void appendStored(int index) {
+            shown.countDown();
+        }
+
+        @Override
+        public void appendBackfilled(int index) {
+        }
+
+        @Override
+        public void beginStream(String streamId, int index) {
+        }
+
+        @Override
+        public void appendStream(String streamId, int index) {
+        }
+
+        @Override
+        public void endStream(String streamId) {
+        }
+
+        @Override
+        public void storeImage(String imageId, byte[] imageData) {
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+
+    /**
+     * Verwirft alle Statusmeldungen.
+     */
+    private static final class SilentStatus implements StartWindowAccess {
+        @Override
+        public void onStatusUpdate(String message) {
+        }
+
+        @Override
+        public void onConnecting() {
+        }
+
+        @Override
+        public void onConnected() {
+        }
+
+        @Override
+        public void onDisconnected() {
+        }
+
+        @Override
+        public void onRemoteDisconnect() {
+        }
+
+        @Override
+        public void onConnectionFailed(String error) {
+        }
+
+        @Override
+        public void onConnectionAborted() {
+        }
+    }
+}
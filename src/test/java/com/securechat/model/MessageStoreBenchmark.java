@@ -0,0 +1,129 @@
+/**
+ * Vergleicht den Speicherbedarf des {@link MessageStore} mit einer Liste von {@link ChatMessage}-Objekten.
+ * <p>
+ * Die Klasse {@code MessageStoreBenchmark} erzeugt dieselben Nachrichten einmal als Objekte, wie
+ * sie Gson beim Empfang anlegt (eigene Strings je Feld), und einmal im {@link MessageStore}, und
+ * misst jeweils den belegten Heap nach einer Garbage Collection. Zusätzlich wird die Dauer einer
+ * Volltextsuche über alle Nachrichten ausgegeben.
+ * <p>
+ * Danach werden zwei gestreamte Nachrichten abwechselnd in Stücken zu {@code CHUNK_CHARS} Zeichen
+ * fortgesetzt, wie der Empfang von {@link ChatChunk}s es tut, und Dauer sowie belegter Heap im
+ * Verhältnis zur Textlänge ausgegeben. Der Faktor muss unabhängig von der Anzahl Stücke klein
+ * bleiben.
+ * <p>
+ * Aufruf: {@code MessageStoreBenchmark [nachrichten [stücke]]}, sinnvoll mit z. B. {@code -Xmx2g}
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MessageStoreBenchmark {
+    private static final String[] SENDERS = {"192.168.0.12", "192.168.0.27", "10.0.0.5", "fe80::1c2b:3aff:fe4d:5e6f"};
+    private static final String[] WORDS = {"hallo", "wie", "geht", "es", "dir", "heute", "morgen", "treffen", "wir", "uns",
+            "um", "acht", "im", "büro", "danke", "gut", "bis", "später", "ok", "super"};
+    private static final int CHUNK_CHARS = 8192;
+
+    /**
+     * Führt die Messung aus.
+     *
+     * @param args optional Anzahl Nachrichten und Anzahl Stücke pro gestreamter Nachricht
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int chunks = args.length > 1 ? Integer.parseInt(args[1]) : 1280;
+        String[] texts = new String[1024];
+        Random random = new Random(42);
+        for (int i = 0; i < texts.length; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0, words = 3 + random.nextInt(10); w < words; w++) {
+                text.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            texts[i] = text.toString();
+        }
+
+        long base = usedHeap();
+        List<ChatMessage> objects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            objects.add(new ChatMessage(new String(texts[i % texts.length] + " " + i), new String(SENDERS[i % SENDERS.length]),
+                    String.format("2025-01-%02d %02d:%02d:%02d", 1 + i / 86400 % 28, i / 3600 % 24, i / 60 % 60, i % 60)));
+        }
+        long objectBytes = usedHeap() - base;
+        long textBytes = objects.stream().mapToLong(m -> m.getText().length()).sum();
+        objects = null;
+
+        base = usedHeap();
+        MessageStore store = new MessageStore();
+        for (int i = 0; i < count; i++) {
+            store.append(texts[i % texts.length] + " " + i, SENDERS[i % SENDERS.length], 1_735_689_600_000L + i * 1000L,
+                    i % 2 == 0 ? MessageStore.INCOMING : 0);
+        }
+        long storeBytes = usedHeap() - base;
+
+        System.out.printf("%d Nachrichten, mittlere Textlänge %.1f Zeichen%n", count, (double) textBytes / count);
+        System.out.printf("ChatMessage-Objekte: %8.1f MB, %6.1f Bytes/Nachricht%n", objectBytes / 1e6, (double) objectBytes / count);
+        System.out.printf("MessageStore:        %8.1f MB, %6.1f Bytes/Nachricht (Faktor %.1f)%n",
+                storeBytes / 1e6, (double) storeBytes / count, (double) objectBytes / storeBytes);
+
+        for (int round = 0; round < 3; round++) {
+            int[] hits = {0};
+            long start = System.nanoTime();
+            store.search("Treffen um ACHT", index -> hits[0]++);
+            System.out.printf("Suche: %d Treffer in %.1f ms%n", hits[0], (System.nanoTime() - start) / 1e6);
+        }
+        MessageStore.View view = store.view().moveTo(count - 1);
+        System.out.println("Letzte Nachricht: [" + view.getTimestamp() + "] " + view.getSenderIp() + ": " + view.getText());
+        store = null;
+        view = null;
+
+        streamed(chunks);
+    }
+
+    /**
+     * Setzt zwei gestreamte Nachrichten abwechselnd fort und misst Dauer und belegten Heap.
+     *
+     * @param chunks Anzahl Stücke pro Nachricht
+     */
+    private static void streamed(int chunks) {
+        String chunk = "x".repeat(CHUNK_CHARS);
+        long base = usedHeap();
+        MessageStore store = new MessageStore();
+        long start = System.nanoTime();
+        int first = store.append(chunk, SENDERS[0], 1_735_689_600_000L, MessageStore.INCOMING);
+        int second = store.append(chunk, SENDERS[1], 1_735_689_600_000L, MessageStore.INCOMING);
+        for (int i = 1; i < chunks; i++) {
+            store.extend(first, chunk);
+            store.extend(second, chunk);
+        }
+        long elapsed = System.nanoTime() - start;
+        long storeBytes = usedHeap() - base;
+        long textBytes = 2L * chunks * CHUNK_CHARS;
+        MessageStore.View view = store.view();
+        if (view.moveTo(first).getTextBytes() != textBytes / 2 || view.moveTo(second).getTextBytes() != textBytes / 2) {
+            throw new IllegalStateException("Gestreamter Text unvollständig");
+        }
+        System.out.printf("Gestreamt: 2 x %d Stücke, %.1f MB Text in %.1f ms, Heap %.1f MB (Faktor %.2f)%n",
+                chunks, textBytes / 1e6, elapsed / 1e6, storeBytes / 1e6, (double) storeBytes / textBytes);
+    }
+
+    /**
+     * Ermittelt den belegten Heap nach mehreren Garbage Collections.
+     *
+     * @return belegte Bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
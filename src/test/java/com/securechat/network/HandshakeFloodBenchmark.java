@@ -0,0 +1,212 @@
+/**
+ * Misst Annahmedurchsatz und Handshake-Latenz eines Hosts unter einer Flut von Verbindungsversuchen.
+ * <p>
+ * Die Klasse {@code HandshakeFloodBenchmark} startet einen {@link HandshakeAcceptor} auf einem
+ * TCP-Port über Loopback und lässt mehrere Angreifer-Threads ununterbrochen Verbindungen öffnen.
+ * Jeder Angreifer nutzt eigene Quelladressen aus {@code 127.2.0.0/16} (unter Linux ist das ganze
+ * Netz {@code 127.0.0.0/8} lokal erreichbar); abwechselnd bleibt eine Verbindung stumm, bis die
+ * Frist des Hosts sie schliesst, oder sendet einen falschen Handshake. Gleichzeitig baut ein
+ * legitimer Client mit dem richtigen Passkey nacheinander Sitzungen auf, jeweils von einer
+ * eigenen Adresse aus {@code 127.1.0.0/16}. Ausgegeben werden die erfolgreichen Handshakes und
+ * die abgelehnten Versuche pro Sekunde, die Ablehnungsgründe des Hosts sowie Median, p99 und
+ * Maximum der Handshake-Dauer des legitimen Clients, zum Vergleich auch ohne Flut.
+ * <p>
+ * Aufruf: {@code HandshakeFloodBenchmark [sekunden] [angreifer]}
+ *
+ * @author Milos Hornik
+ */
+package com.securechat.network;
+
+import com.securechat.security.PasskeyManager;
+import com.securechat.transport.Connection;
+import com.securechat.transport.ConnectionListener;
+import com.securechat.transport.TcpTransport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HandshakeFloodBenchmark {
+    private static final String PASSKEY = "benchmark-passkey";
+    private static final int CONNECT_TIMEOUT = 2000;
+    private static final int HANDSHAKE_TIMEOUT = 5000;
+
+    /**
+     * Führt die Messung ohne und mit Flut aus.
+     *
+     * @param args optional Dauer pro Messung in Sekunden und Anzahl Angreifer-Threads
+     * @throws Exception bei Fehlern des Listeners
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int attackers = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        System.out.printf("%d s pro Messung, %d Angreifer-Threads%n", seconds, attackers);
+        System.out.printf("%-10s %10s %12s %12s %12s %12s %12s %10s%n",
+                "", "Annahmen/s", "Ablehnungen/s", "Handshakes", "Median ms", "p99 ms", "Max ms", "Fehler");
+        run("ohne Flut", seconds, 0);
+        run("mit Flut", seconds, attackers);
+    }
+
+    /**
+     * Führt eine Messung aus und gibt eine Zeile samt Ablehnungsgründen aus.
+     *
+     * @param name      Bezeichnung der Zeile
+     * @param seconds   Dauer in Sekunden
+     * @param attackers Anzahl Angreifer-Threads
+     * @throws Exception bei Fehlern des Listeners
+     */
+    private static void run(String name, int seconds, int attackers) throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        ConnectionListener connectionListener = new TcpTransport().listen(port);
+        AtomicLong accepted = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        Map<String, AtomicInteger> rejections = new ConcurrentHashMap<>();
+        HandshakeAcceptor acceptor = new HandshakeAcceptor(connectionListener, PASSKEY, new HandshakeAcceptor.Listener() {
+            @Override
+            public boolean onAuthenticated(Connection connection, byte[] sessionKey) {
+                accepted.incrementAndGet();
+                try {
+                    connection.close();
+                } catch (IOException ignored) {
+                }
+                return false;
+            }
+
+            @Override
+            public void onRejected(InetAddress source, String reason) {
+                rejected.incrementAndGet();
+                rejections.computeIfAbsent(reason, k -> new AtomicInteger()).incrementAndGet();
+            }
+        });
+        Thread acceptThread = new Thread(() -> {
+            try {
+                acceptor.run();
+            } catch (IOException e) {
+                System.err.println("Listener fehlgeschlagen: " + e.getMessage());
+            }
+        }, "Accept-Thread");
+        acceptThread.start();
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < attackers; i++) {
+            int attacker = i;
+            Thread thread = new Thread(() -> flood(port, attacker, end), "Flood-Thread-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        List<Long> latencies = new ArrayList<>();
+        int failures = 0;
+        for (int attempt = 0; System.nanoTime() < end; attempt++) {
+            long start = System.nanoTime();
+            if (legitimateHandshake(port, address(1, attempt))) {
+                latencies.add((System.nanoTime() - start) / 1_000);
+            } else {
+                failures++;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        acceptor.stop();
+        acceptThread.join();
+
+        Collections.sort(latencies);
+        int count = latencies.size();
+        System.out.printf("%-10s %10.0f %12.0f %12d %12.1f %12.1f %12.1f %10d%n", name,
+                accepted.get() / (double) seconds, rejected.get() / (double) seconds, count,
+                count == 0 ? 0 : latencies.get(count / 2) / 1000.0,
+                count == 0 ? 0 : latencies.get(Math.min(count - 1, (int) (count * 0.99))) / 1000.0,
+                count == 0 ? 0 : latencies.get(count - 1) / 1000.0,
+                failures);
+        rejections.forEach((reason, n) -> System.out.printf("%-10s   abgelehnt: %s (%d)%n", "", reason, n.get()));
+    }
+
+    /**
+     * Öffnet bis zum Ende der Messung fortlaufend Verbindungen, die stumm bleiben oder einen
+     * ungültigen Handshake senden.
+     *
+     * @param port     Port des Hosts
+     * @param attacker Nummer des Angreifers
+     * @param end      Ende der Messung ({@link System#nanoTime()})
+     */
+    private static void flood(int port, int attacker, long end) {
+        List<Socket> silent = new ArrayList<>();
+        for (int attempt = 0; System.nanoTime() < end; attempt++) {
+            Socket socket = new Socket();
+            try {
+                socket.bind(new InetSocketAddress(address(2, attacker * 4096 + attempt % 4096), 0));
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+                if (attempt % 2 == 0) {
+                    silent.add(socket);
+                } else {
+                    OutputStream out = socket.getOutputStream();
+                    out.write("SC3 AAAA\n".getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                    socket.close();
+                }
+            } catch (IOException e) {
+                closeQuietly(socket);
+            }
+            if (silent.size() > 256) {
+                closeQuietly(silent.remove(0));
+            }
+        }
+        silent.forEach(HandshakeFloodBenchmark::closeQuietly);
+    }
+
+    /**
+     * Baut als legitimer Client eine Sitzung auf.
+     *
+     * @param port   Port des Hosts
+     * @param source lokale Quelladresse
+     * @return {@code true}, wenn ein Sitzungsschlüssel ausgehandelt wurde
+     */
+    private static boolean legitimateHandshake(int port, InetAddress source) {
+        try (Socket socket = new Socket()) {
+            socket.bind(new InetSocketAddress(source, 0));
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+            return PasskeyManager.establishSession(socket, PASSKEY, false, HANDSHAKE_TIMEOUT) != null;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Bildet eine Loopback-Adresse {@code 127.<netz>.x.y} zu einer laufenden Nummer.
+     *
+     * @param network zweites Oktett
+     * @param n       laufende Nummer
+     * @return Adresse
+     */
+    private static InetAddress address(int network, int n) {
+        try {
+            return InetAddress.getByAddress(new byte[]{127, (byte) network, (byte) (n / 250 % 256), (byte) (n % 250 + 1)});
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
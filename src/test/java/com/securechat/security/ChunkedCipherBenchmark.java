@@ -0,0 +1,114 @@
+/**
+ * Misst den Durchsatz des {@link ChunkedCipher} in Abhängigkeit der Kernanzahl.
+ * <p>
+ * Die Klasse {@code ChunkedCipherBenchmark} ver- und entschlüsselt eine zufällige Nutzlast
+ * wiederholt mit ForkJoinPools steigender Parallelität (1, 2, 4, … bis zur Anzahl verfügbarer
+ * Kerne) und gibt den Durchsatz sowie die Skalierung gegenüber einem Kern aus. Als Referenz
+ * dient ein einzelnes {@code doFinal} des bisherigen Frame-Verfahrens.
+ * <p>
+ * Aufruf: {@code ChunkedCipherBenchmark [nutzlast-MB] [wiederholungen]}
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.security;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class ChunkedCipherBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+
+    /**
+     * Führt die Messung aus.
+     *
+     * @param args optional Nutzlastgrösse in MB und Anzahl Wiederholungen
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     */
+    public static void main(String[] args) throws GeneralSecurityException {
+        int payloadSize = (args.length > 0 ? Integer.parseInt(args[0]) : 16) * 1024 * 1024;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        byte[] data = new byte[payloadSize];
+        new Random(42).nextBytes(data);
+        CryptoManager cryptoManager = new CryptoManager("benchmark");
+        CryptoManager receiverManager = new CryptoManager("benchmark");
+        ReplayWindow window = new ReplayWindow();
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("Nutzlast: %.1f MB, %d Wiederholungen, %d Kerne%n", payloadSize / 1e6, rounds, cores);
+        ByteBuffer scratch = ByteBuffer.allocate(CryptoManager.ciphertextLength(payloadSize));
+        ByteBuffer frame = ByteBuffer.allocate(CryptoManager.frameLength(payloadSize));
+        double baseline = measure(rounds, () -> {
+            scratch.clear();
+            frame.clear();
+            cryptoManager.encryptFrame(ByteBuffer.wrap(data), scratch, frame);
+        }, payloadSize);
+        System.out.printf("%-22s %10.1f MB/s%n", "Frame (ein doFinal)", baseline);
+
+        double single = 0;
+        for (int parallelism = 1; ; parallelism = Math.min(parallelism * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                ChunkedCipher cipher = new ChunkedCipher(cryptoManager, pool);
+                ChunkedCipher receiver = new ChunkedCipher(receiverManager, pool);
+                ByteBuffer encrypted = ByteBuffer.allocate(ChunkedCipher.encryptedLength(payloadSize));
+                ByteBuffer decrypted = ByteBuffer.allocate(payloadSize);
+                double encrypt = measure(rounds, () -> {
+                    encrypted.clear();
+                    cipher.encrypt(ByteBuffer.wrap(data), encrypted);
+                }, payloadSize);
+                double decrypt = measure(rounds, () -> {
+                    encrypted.flip();
+                    decrypted.clear();
+                    // Dieselbe Nachricht wird wiederholt entschlüsselt, daher das Fenster zurücksetzen
+                    window.reset();
+                    receiver.decrypt(encrypted, decrypted, window);
+                    encrypted.position(encrypted.limit());
+                }, payloadSize);
+                if (!Arrays.equals(data, decrypted.array())) {
+                    throw new IllegalStateException("Entschlüsselter Inhalt weicht ab");
+                }
+                if (parallelism == 1) {
+                    single = encrypt;
+                }
+                System.out.printf("%-22s %10.1f MB/s (ver) %10.1f MB/s (ent)  x%.2f%n",
+                        "Blockweise, " + parallelism + " Kern(e)", encrypt, decrypt, encrypt / single);
+            } finally {
+                pool.shutdown();
+            }
+            if (parallelism == cores) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Misst den Durchsatz einer Operation nach einer Aufwärmphase.
+     *
+     * @param rounds      Anzahl gemessener Wiederholungen
+     * @param operation   zu messende Operation
+     * @param payloadSize verarbeitete Bytes je Wiederholung
+     * @return Durchsatz in MB/s
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     */
+    private static double measure(int rounds, Operation operation, int payloadSize) throws GeneralSecurityException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            operation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            operation.run();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return (double) payloadSize * rounds / 1e6 / seconds;
+    }
+
+    /**
+     * Zu messende Operation.
+     */
+    private interface Operation {
+        void run() throws GeneralSecurityException;
+    }
+}
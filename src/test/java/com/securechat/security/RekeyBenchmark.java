@@ -0,0 +1,225 @@
+/**
+ * Misst die Latenz der Frames während eines Schlüsselwechsels.
+ * <p>
+ * Die Klasse {@code RekeyBenchmark} verbindet zwei {@link CryptoManager} samt
+ * {@link KeyRotator} über In-Memory-Warteschlangen, die die Reihenfolge wie ein TCP-Strom
+ * erhalten. Der Host sendet Frames in festem Takt an den Client; jeder Frame trägt seinen
+ * Sendezeitpunkt und die Angabe, ob gerade ein Schlüsselwechsel läuft. Ausgegeben werden die
+ * Latenz-Perzentile einmal ohne Schlüsselwechsel und einmal mit häufigen Wechseln, jeweils
+ * getrennt nach Frames während und ausserhalb eines Wechsels.
+ * <p>
+ * Aufruf: {@code RekeyBenchmark [sekunden] [frames-pro-sekunde] [rekey-kb]}
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+public class RekeyBenchmark {
+    private static final int PAYLOAD_SIZE = 256;
+
+    /**
+     * Eine Wechselnachricht auf der simulierten Leitung.
+     */
+    private record Rekey(int epoch, byte[] publicKey) {
+    }
+
+    /**
+     * Führt die Messung aus.
+     *
+     * @param args optional Dauer je Durchlauf, Senderate und Datenmenge bis zum Wechsel
+     * @throws Exception bei Fehlern
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        long rekeyBytes = (args.length > 2 ? Long.parseLong(args[2]) : 512) * 1024;
+        run("Aufwärmen", 1, rate, rekeyBytes);
+        run("Ohne Wechsel", seconds, rate, Long.MAX_VALUE);
+        run("Wechsel alle " + rekeyBytes / 1024 + " KB", seconds, rate, rekeyBytes);
+    }
+
+    /**
+     * Führt einen Durchlauf aus und gibt die Latenzen aus.
+     *
+     * @param label      Bezeichnung
+     * @param seconds    Dauer in Sekunden
+     * @param rate       Frames pro Sekunde
+     * @param rekeyBytes Datenmenge bis zum Wechsel
+     * @throws Exception bei Fehlern
+     */
+    private static void run(String label, int seconds, int rate, long rekeyBytes) throws Exception {
+        byte[] sessionKey = new byte[KeyExchange.SESSION_KEY_SIZE];
+        new SecureRandom().nextBytes(sessionKey);
+        CryptoManager host = new CryptoManager(sessionKey);
+        CryptoManager client = new CryptoManager(sessionKey);
+        BlockingQueue<Object> toClient = new LinkedBlockingQueue<>();
+        BlockingQueue<Object> toHost = new LinkedBlockingQueue<>();
+        AtomicBoolean rekeying = new AtomicBoolean();
+
+        KeyRotator hostRotator = new KeyRotator(host, sessionKey, true, new BenchListener(toClient) {
+            @Override
+            public void sendRekey(int epoch, byte[] publicKey) throws IOException {
+                rekeying.set(true);
+                super.sendRekey(epoch, publicKey);
+            }
+
+            @Override
+            public void onKeyInstalled(int epoch, byte[] key) {
+                rekeying.set(false);
+            }
+        }, rekeyBytes, Long.MAX_VALUE / 2_000_000);
+        KeyRotator clientRotator = new KeyRotator(client, sessionKey, false, new BenchListener(toHost),
+                Long.MAX_VALUE, Long.MAX_VALUE / 2_000_000);
+
+        int total = seconds * rate;
+        long[] latencies = new long[total];
+        boolean[] duringRekey = new boolean[total];
+        Thread[] threads = {
+                rotatorThread(hostRotator), rotatorThread(clientRotator),
+                new Thread(() -> hostReceiver(toHost, hostRotator), "HostReceiver-Thread"),
+                new Thread(() -> clientReceiver(toClient, client, clientRotator, latencies, duringRekey), "ClientReceiver-Thread")
+        };
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        ByteBuffer scratch = ByteBuffer.allocate(CryptoManager.ciphertextLength(PAYLOAD_SIZE));
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long next = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            ByteBuffer plain = ByteBuffer.wrap(payload);
+            plain.putInt(0, i).putLong(4, System.nanoTime()).put(12, (byte) (rekeying.get() ? 1 : 0));
+            ByteBuffer frame = ByteBuffer.allocate(CryptoManager.frameLength(PAYLOAD_SIZE));
+            host.encryptFrame(plain, scratch, frame);
+            frame.flip();
+            toClient.put(frame);
+        }
+        toClient.put(Boolean.TRUE);
+        threads[3].join();
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        report(label, latencies, duringRekey, hostRotator.getRekeyCount());
+    }
+
+    private static Thread rotatorThread(KeyRotator rotator) {
+        return new Thread(() -> {
+            try {
+                while (true) {
+                    rotator.process(5);
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }, "KeyRotation-Thread");
+    }
+
+    private static void hostReceiver(BlockingQueue<Object> toHost, KeyRotator rotator) {
+        try {
+            while (true) {
+                Rekey rekey = (Rekey) toHost.take();
+                rotator.onRekeyMessage(rekey.epoch(), rekey.publicKey());
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private static void clientReceiver(BlockingQueue<Object> toClient, CryptoManager client, KeyRotator rotator,
+                                       long[] latencies, boolean[] duringRekey) {
+        ReplayWindow window = new ReplayWindow();
+        ByteBuffer scratch = ByteBuffer.allocate(CryptoManager.frameLength(PAYLOAD_SIZE));
+        ByteBuffer plaintext = ByteBuffer.allocate(CryptoManager.frameLength(PAYLOAD_SIZE));
+        try {
+            while (true) {
+                Object item = toClient.take();
+                if (item instanceof Rekey rekey) {
+                    rotator.onRekeyMessage(rekey.epoch(), rekey.publicKey());
+                } else if (item instanceof ByteBuffer frame) {
+                    plaintext.clear();
+                    client.decryptFrame(frame, scratch, plaintext, window);
+                    int index = plaintext.getInt(0);
+                    latencies[index] = System.nanoTime() - plaintext.getLong(4);
+                    duringRekey[index] = plaintext.get(12) != 0;
+                } else {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Empfang abgebrochen: " + e);
+        }
+    }
+
+    private static void report(String label, long[] latencies, boolean[] duringRekey, int rekeys) {
+        int during = 0;
+        for (boolean flag : duringRekey) {
+            if (flag) {
+                during++;
+            }
+        }
+        long[] inside = new long[during];
+        long[] outside = new long[latencies.length - during];
+        for (int i = 0, a = 0, b = 0; i < latencies.length; i++) {
+            if (duringRekey[i]) {
+                inside[a++] = latencies[i];
+            } else {
+                outside[b++] = latencies[i];
+            }
+        }
+        System.out.printf("%s: %d Wechsel%n", label, rekeys);
+        printPercentiles("  ausserhalb", outside);
+        printPercentiles("  während", inside);
+    }
+
+    private static void printPercentiles(String label, long[] values) {
+        if (values.length == 0) {
+            System.out.printf("%-12s keine Frames%n", label);
+            return;
+        }
+        Arrays.sort(values);
+        System.out.printf("%-12s %8d Frames  p50 %7.1f µs  p99 %7.1f µs  p99.9 %7.1f µs  max %8.1f µs%n",
+                label, values.length,
+                values[values.length / 2] / 1e3, values[(int) (values.length * 0.99)] / 1e3,
+                values[(int) (values.length * 0.999)] / 1e3, values[values.length - 1] / 1e3);
+    }
+
+    /**
+     * Leitet Wechselnachrichten in die simulierte Leitung.
+     */
+    private static class BenchListener implements KeyRotator.Listener {
+        private final BlockingQueue<Object> wire;
+
+        private BenchListener(BlockingQueue<Object> wire) {
+            this.wire = wire;
+        }
+
+        @Override
+        public void sendRekey(int epoch, byte[] publicKey) throws IOException {
+            wire.add(new Rekey(epoch, publicKey));
+        }
+
+        @Override
+        public void onKeyInstalled(int epoch, byte[] key) {
+        }
+
+        @Override
+        public void onRekeyFailed(String reason) {
+            System.err.println("Wechsel fehlgeschlagen: " + reason);
+        }
+    }
+}
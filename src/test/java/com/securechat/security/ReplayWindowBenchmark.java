@@ -0,0 +1,91 @@
+/**
+ * Misst den Zusatzaufwand der Wiederholungsprüfung im Empfangspfad.
+ * <p>
+ * Die Klasse {@code ReplayWindowBenchmark} vergleicht die Kosten von
+ * {@link ReplayWindow#accept(int, long)} (fortlaufend und leicht umsortiert) mit der
+ * Entschlüsselung eines typischen Chat-Frames und gibt den Anteil der Prüfung aus.
+ * <p>
+ * Aufruf: {@code ReplayWindowBenchmark [frames]}
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.security;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+public class ReplayWindowBenchmark {
+    private static final String SAMPLE =
+            "{\"type\":\"CHAT\",\"text\":\"Hallo, wie geht es dir heute?\",\"senderIp\":\"192.168.0.12\",\"timestamp\":\"12:00\"}";
+
+    /**
+     * Führt die Messung aus.
+     *
+     * @param args optional Anzahl Frames je Durchlauf
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     */
+    public static void main(String[] args) throws GeneralSecurityException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        for (int round = 0; round < 3; round++) {
+            double inOrder = measureWindow(count, false);
+            double reordered = measureWindow(count, true);
+            double decrypt = measureDecrypt(Math.max(1, count / 10));
+            System.out.printf("accept fortlaufend %6.1f ns, umsortiert %6.1f ns, Frame entschlüsseln %8.1f ns (Anteil %.2f %%)%n",
+                    inOrder, reordered, decrypt, 100 * reordered / decrypt);
+        }
+    }
+
+    /**
+     * Misst {@link ReplayWindow#accept(int, long)}.
+     *
+     * @param count     Anzahl Sequenznummern
+     * @param reordered {@code true}, um je vier Nummern vertauscht anzuliefern
+     * @return Nanosekunden je Aufruf
+     */
+    private static double measureWindow(int count, boolean reordered) {
+        ReplayWindow window = new ReplayWindow();
+        int accepted = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long sequence = reordered ? i ^ 3 : i;
+            if (window.accept(7, sequence)) {
+                accepted++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (accepted != count) {
+            throw new IllegalStateException("Gültige Frames abgelehnt: " + (count - accepted));
+        }
+        return (double) elapsed / count;
+    }
+
+    /**
+     * Misst die Entschlüsselung eines typischen Chat-Frames inklusive Prüfung.
+     *
+     * @param count Anzahl Frames
+     * @return Nanosekunden je Frame
+     * @throws GeneralSecurityException bei Verschlüsselungsfehlern
+     */
+    private static double measureDecrypt(int count) throws GeneralSecurityException {
+        CryptoManager sender = new CryptoManager("benchmark");
+        CryptoManager receiver = new CryptoManager("benchmark");
+        byte[] sample = SAMPLE.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer[] frames = new ByteBuffer[count];
+        ByteBuffer scratch = ByteBuffer.allocate(CryptoManager.ciphertextLength(sample.length));
+        for (int i = 0; i < count; i++) {
+            frames[i] = ByteBuffer.allocate(CryptoManager.frameLength(sample.length));
+            sender.encryptFrame(ByteBuffer.wrap(sample), scratch, frames[i]);
+            frames[i].flip();
+        }
+        ReplayWindow window = new ReplayWindow();
+        ByteBuffer plaintext = ByteBuffer.allocate(frames[0].remaining());
+        ByteBuffer decodeScratch = ByteBuffer.allocate(frames[0].remaining());
+        long start = System.nanoTime();
+        for (ByteBuffer frame : frames) {
+            plaintext.clear();
+            receiver.decryptFrame(frame, decodeScratch, plaintext, window);
+        }
+        return (double) (System.nanoTime() - start) / count;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Vergleicht Latenz und Durchsatz der Transporte.
+ * <p>
+ * Die Klasse {@code TransportBenchmark} baut für jeden {@link Transport} (TCP über Loopback,
+ * Unix Domain Socket, gemeinsamer Speicher und prozessinterne Pipe) eine Verbindung innerhalb dieser JVM auf und misst
+ * <ul>
+ *   <li>die Latenz als Ping-Pong kleiner Nachrichten, deren Umlaufzeit halbiert wird
+ *       (Median, 99. Perzentil, Maximum), und</li>
+ *   <li>den Durchsatz als einseitigen Strom grosser Blöcke, den die Gegenseite nur zählt
+ *       und am Ende mit einem Byte bestätigt.</li>
+ * </ul>
+ * Jede Messung läuft zweimal; die erste Runde dient dem Aufwärmen des JIT und wird nicht ausgegeben.
+ * <p>
+ * Aufruf: {@code TransportBenchmark [ping_pongs] [nachrichtengrösse] [megabyte]}
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+public class TransportBenchmark {
+    private static final int BASE_PORT = 47000;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    /**
+     * Führt die Messung aus.
+     *
+     * @param args optional Anzahl Ping-Pongs, Nachrichtengrösse in Byte und Megabyte für den Durchsatz
+     * @throws Exception bei Verbindungsfehlern
+     */
+    public static void main(String[] args) throws Exception {
+        int pingPongs = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int messageSize = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        int megabytes = args.length > 2 ? Integer.parseInt(args[2]) : 512;
+        System.out.printf("%d Ping-Pongs à %d Byte, Durchsatz mit %d MB in Blöcken à %d KiB%n",
+                pingPongs, messageSize, megabytes, BLOCK_SIZE / 1024);
+        System.out.printf("%-8s %12s %12s %12s %12s%n", "", "Median µs", "p99 µs", "Max µs", "MB/s");
+        List<Transport> transports = List.of(new TcpTransport(), new UnixSocketTransport(),
+                new SharedMemoryTransport(), new InProcessTransport());
+        int port = BASE_PORT + (int) (ProcessHandle.current().pid() % 1000) * 4;
+        for (Transport transport : transports) {
+            long[] latencies = null;
+            double throughput = 0;
+            for (int round = 0; round < 2; round++) {
+                latencies = measureLatency(transport, port++, pingPongs, messageSize);
+                throughput = measureThroughput(transport, port++, megabytes);
+            }
+            Arrays.sort(latencies);
+            System.out.printf("%-8s %12.1f %12.1f %12.1f %12.0f%n", transport.getName(),
+                    latencies[latencies.length / 2] / 1000.0,
+                    latencies[(int) (latencies.length * 0.99)] / 1000.0,
+                    latencies[latencies.length - 1] / 1000.0,
+                    throughput);
+        }
+    }
+
+    /**
+     * Misst die halbe Umlaufzeit einzelner Nachrichten, die die Gegenseite zurückschickt.
+     *
+     * @param transport   Transport
+     * @param port        freier Port
+     * @param pingPongs   Anzahl Umläufe
+     * @param messageSize Nachrichtengrösse in Byte
+     * @return halbe Umlaufzeiten in Nanosekunden
+     * @throws Exception bei Verbindungsfehlern
+     */
+    private static long[] measureLatency(Transport transport, int port, int pingPongs, int messageSize) throws Exception {
+        long[] latencies = new long[pingPongs];
+        try (ConnectionListener listener = transport.listen(port)) {
+            Thread echo = startPeer(listener, "Echo-Thread", connection -> {
+                InputStream in = connection.getInputStream();
+                OutputStream out = connection.getOutputStream();
+                byte[] buffer = new byte[messageSize];
+                for (int i = 0; i < pingPongs; i++) {
+                    readFully(in, buffer);
+                    out.write(buffer);
+                    out.flush();
+                }
+            });
+            try (Connection connection = transport.connect("localhost", port, CONNECT_TIMEOUT)) {
+                InputStream in = connection.getInputStream();
+                OutputStream out = connection.getOutputStream();
+                byte[] buffer = new byte[messageSize];
+                for (int i = 0; i < pingPongs; i++) {
+                    long start = System.nanoTime();
+                    out.write(buffer);
+                    out.flush();
+                    readFully(in, buffer);
+                    latencies[i] = (System.nanoTime() - start) / 2;
+                }
+            }
+            echo.join();
+        }
+        return latencies;
+    }
+
+    /**
+     * Misst den Durchsatz eines einseitigen Stroms bis zur Bestätigung durch die Gegenseite.
+     *
+     * @param transport Transport
+     * @param port      freier Port
+     * @param megabytes zu übertragende Datenmenge in Megabyte
+     * @return Durchsatz in Megabyte pro Sekunde
+     * @throws Exception bei Verbindungsfehlern
+     */
+    private static double measureThroughput(Transport transport, int port, int megabytes) throws Exception {
+        long total = megabytes * 1_000_000L;
+        try (ConnectionListener listener = transport.listen(port)) {
+            Thread sink = startPeer(listener, "Sink-Thread", connection -> {
+                InputStream in = connection.getInputStream();
+                byte[] buffer = new byte[BLOCK_SIZE];
+                long received = 0;
+                int n;
+                while (received < total && (n = in.read(buffer)) > 0) {
+                    received += n;
+                }
+                connection.getOutputStream().write(1);
+                connection.getOutputStream().flush();
+            });
+            try (Connection connection = transport.connect("localhost", port, CONNECT_TIMEOUT)) {
+                OutputStream out = connection.getOutputStream();
+                byte[] block = new byte[BLOCK_SIZE];
+                long start = System.nanoTime();
+                for (long sent = 0; sent < total; sent += block.length) {
+                    out.write(block, 0, (int) Math.min(block.length, total - sent));
+                }
+                out.flush();
+                if (connection.getInputStream().read() < 0) {
+                    throw new IOException("Gegenseite hat die Verbindung beendet");
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                sink.join();
+                return total / seconds / 1e6;
+            }
+        }
+    }
+
+    /**
+     * Aufgabe der Gegenseite auf einer angenommenen Verbindung.
+     */
+    private interface PeerTask {
+        void run(Connection connection) throws IOException;
+    }
+
+    /**
+     * Nimmt in einem eigenen Thread eine Verbindung an und führt die Aufgabe darauf aus.
+     *
+     * @param listener Listener des Transports
+     * @param name     Name des Threads
+     * @param task     Aufgabe der Gegenseite
+     * @return gestarteter Thread
+     */
+    private static Thread startPeer(ConnectionListener listener, String name, PeerTask task) {
+        Thread thread = new Thread(() -> {
+            try (Connection connection = listener.accept()) {
+                task.run(connection);
+            } catch (IOException e) {
+                System.err.println(name + ": " + e.getMessage());
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int n = in.read(buffer, offset, buffer.length - offset);
+            if (n < 0) {
+                throw new IOException("Verbindung vorzeitig beendet");
+            }
+            offset += n;
+        }
+    }
+}
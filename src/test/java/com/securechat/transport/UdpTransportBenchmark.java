@@ -0,0 +1,174 @@
+/**
+ * Vergleicht die Latenz geordneter und ungeordneter Auslieferung über eine verlustbehaftete Strecke.
+ * <p>
+ * Die Klasse {@code UdpTransportBenchmark} schickt über den {@link LossyLinkSimulator} in festen
+ * Abständen kleine Nachrichten mit eingebettetem Sendezeitpunkt und misst beim Empfänger die
+ * Latenz jeder Nachricht. Im Modus "geordnet" muss jede Nachricht auf alle vorherigen warten, wie
+ * in einem TCP-Bytestrom (Head-of-Line-Blocking); im Modus "ungeordnet" wird jede Nachricht
+ * ausgeliefert, sobald sie angekommen ist. Da sich der TCP-Stack des Betriebssystems ohne
+ * Administratorrechte nicht künstlich stören lässt, steht der geordnete Modus über dieselbe
+ * Strecke stellvertretend für den TCP-Pfad. Ausgegeben werden Median, 95., 99. Perzentil und
+ * Maximum sowie die Anzahl der Wiederholungen und der vom Simulator verworfenen Datagramme.
+ * Abschliessend wird über dieselbe Strecke eine einzelne Zeile von {@value #LARGE_MESSAGE} Byte
+ * übertragen, deutlich mehr Pakete als das Empfangsfenster fasst, und beim Empfänger Byte für Byte
+ * verglichen; bleibt sie hängen oder kommt sie verändert an, endet das Programm mit Exit-Code 1.
+ * <p>
+ * Aufruf: {@code UdpTransportBenchmark [nachrichten] [verlust_prozent] [verzögerung_ms] [jitter_ms] [abstand_ms]}
+ * 
+ * @author Milos Hornik
+ */
+package com.securechat.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+public class UdpTransportBenchmark {
+    private static final int BASE_PORT = 48000;
+    private static final int MESSAGE_PADDING = 160;
+    private static final int LARGE_MESSAGE = 10 * 1024 * 1024;
+    private static final long LARGE_TIMEOUT_MS = 120_000;
+
+    /**
+     * Führt die Messung aus.
+     *
+     * @param args optional Anzahl Nachrichten, Verlust in Prozent, Verzögerung, Jitter und Sendeabstand in ms
+     * @throws Exception bei Verbindungsfehlern
+     */
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        double loss = args.length > 1 ? Double.parseDouble(args[1]) / 100 : 0.02;
+        long delayMs = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        long jitterMs = args.length > 3 ? Long.parseLong(args[3]) : 2;
+        long intervalMs = args.length > 4 ? Long.parseLong(args[4]) : 10;
+        System.out.printf("%d Nachrichten alle %d ms, Verlust %.1f %%, Verzögerung %d ms, Jitter %d ms%n",
+                messages, intervalMs, loss * 100, delayMs, jitterMs);
+        System.out.printf("%-10s %10s %10s %10s %10s %12s %10s%n", "", "Median ms", "p95 ms", "p99 ms", "Max ms", "Wiederh.", "Verworfen");
+        int port = BASE_PORT + (int) (ProcessHandle.current().pid() % 1000) * 2;
+        for (boolean ordered : new boolean[] {true, false}) {
+            measure(ordered, port, port + 1, messages, loss, delayMs, jitterMs, intervalMs);
+            port += 2;
+        }
+        if (!transferLarge(port, port + 1, loss, delayMs, jitterMs)) {
+            System.exit(1);
+        }
+    }
+
+    private static void measure(boolean ordered, int serverPort, int proxyPort, int messages, double loss,
+                                long delayMs, long jitterMs, long intervalMs) throws Exception {
+        UdpTransport transport = new UdpTransport();
+        long[] latencies = new long[messages];
+        try (ConnectionListener listener = transport.listen(serverPort);
+             LossyLinkSimulator simulator = new LossyLinkSimulator(proxyPort,
+                     new InetSocketAddress("127.0.0.1", serverPort), loss, delayMs, jitterMs, 42)) {
+            UdpConnection client = (UdpConnection) transport.connect("127.0.0.1", proxyPort, 5000);
+            Connection server = listener.accept();
+            Thread sender = new Thread(() -> send(client, ordered, messages, intervalMs), "Sender-Thread");
+            sender.start();
+            InputStream in = server.getInputStream();
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            for (int received = 0; received < messages; ) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException("Verbindung vorzeitig beendet");
+                }
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String[] parts = line.toString(StandardCharsets.US_ASCII).split(" ", 3);
+                latencies[Integer.parseInt(parts[0])] = System.nanoTime() - Long.parseLong(parts[1]);
+                line.reset();
+                received++;
+            }
+            sender.join();
+            long retransmitted = client.getRetransmittedPackets();
+            client.close();
+            server.close();
+            Arrays.sort(latencies);
+            System.out.printf("%-10s %10.1f %10.1f %10.1f %10.1f %12d %10d%n", ordered ? "geordnet" : "ungeordnet",
+                    latencies[messages / 2] / 1e6, latencies[(int) (messages * 0.95)] / 1e6,
+                    latencies[(int) (messages * 0.99)] / 1e6, latencies[messages - 1] / 1e6, retransmitted,
+                    simulator.getDropped());
+        }
+    }
+
+    /**
+     * Überträgt eine einzelne grosse Zeile über die Strecke und vergleicht sie beim Empfänger.
+     *
+     * @param serverPort Port des Servers
+     * @param proxyPort  Port des Simulators
+     * @param loss       Verlustwahrscheinlichkeit
+     * @param delayMs    Verzögerung in ms
+     * @param jitterMs   Jitter in ms
+     * @return {@code true}, wenn die Zeile rechtzeitig und unverändert ankam
+     * @throws Exception bei Verbindungsfehlern
+     */
+    private static boolean transferLarge(int serverPort, int proxyPort, double loss, long delayMs, long jitterMs) throws Exception {
+        byte[] message = new byte[LARGE_MESSAGE + 1];
+        for (int i = 0; i < LARGE_MESSAGE; i++) {
+            message[i] = (byte) ('A' + i % 26);
+        }
+        message[LARGE_MESSAGE] = '\n';
+        UdpTransport transport = new UdpTransport();
+        try (ConnectionListener listener = transport.listen(serverPort);
+             LossyLinkSimulator simulator = new LossyLinkSimulator(proxyPort,
+                     new InetSocketAddress("127.0.0.1", serverPort), loss, delayMs, jitterMs, 42)) {
+            UdpConnection client = (UdpConnection) transport.connect("127.0.0.1", proxyPort, 5000);
+            Connection server = listener.accept();
+            server.setReadTimeout((int) LARGE_TIMEOUT_MS);
+            long start = System.nanoTime();
+            Thread sender = new Thread(() -> {
+                try {
+                    client.getOutputStream().write(message);
+                } catch (IOException e) {
+                    System.err.println("Senden fehlgeschlagen: " + e.getMessage());
+                }
+            }, "Sender-Thread");
+            sender.start();
+            byte[] received = new byte[message.length];
+            InputStream in = server.getInputStream();
+            int length = 0;
+            try {
+                while (length < received.length) {
+                    int n = in.read(received, length, received.length - length);
+                    if (n < 0) {
+                        break;
+                    }
+                    length += n;
+                }
+            } catch (IOException e) {
+                System.err.println("Empfang der grossen Nachricht fehlgeschlagen: " + e.getMessage());
+            }
+            sender.join();
+            boolean intact = length == message.length && Arrays.equals(message, received);
+            System.out.printf("%.1f MiB in einer Zeile: %s nach %.1f s, %d Wiederholungen, %d verworfen%n",
+                    LARGE_MESSAGE / 1048576.0, intact ? "unverändert angekommen" : "FEHLGESCHLAGEN (" + length + " Byte)",
+                    (System.nanoTime() - start) / 1e9, client.getRetransmittedPackets(), simulator.getDropped());
+            client.close();
+            server.close();
+            return intact;
+        }
+    }
+
+    private static void send(Connection connection, boolean ordered, int messages, long intervalMs) {
+        String padding = "x".repeat(MESSAGE_PADDING);
+        try {
+            connection.setOrderedDelivery(ordered);
+            OutputStream out = connection.getOutputStream();
+            long next = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                next += intervalMs * 1_000_000L;
+                LockSupport.parkNanos(next - System.nanoTime());
+                out.write((i + " " + System.nanoTime() + " " + padding + "\n").getBytes(StandardCharsets.US_ASCII));
+            }
+        } catch (IOException e) {
+            System.err.println("Senden fehlgeschlagen: " + e.getMessage());
+        }
+    }
+}